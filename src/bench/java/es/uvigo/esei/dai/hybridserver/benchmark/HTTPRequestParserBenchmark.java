@@ -0,0 +1,83 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestParser;
+
+/**
+ * Coste de parsear una petición con el constructor {@code HTTPRequest(Reader)} (tal y como lo
+ * usaba el servidor, decodificando el socket con un InputStreamReader) frente al
+ * {@link HTTPRequestParser} sobre bytes. Con {@code -prof gc} se ven los bytes asignados por
+ * petición.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HTTPRequestParserBenchmark {
+    private static final String GET =
+        "GET /html?uuid=6df1047e-cf19-4a83-8cf3-38f5e53f7725 HTTP/1.1\r\n"
+        + "Host: localhost:8888\r\n"
+        + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/115.0\r\n"
+        + "Accept: text/html,application/xhtml+xml\r\n"
+        + "Accept-Encoding: gzip, deflate\r\n"
+        + "Connection: keep-alive\r\n"
+        + "\r\n";
+
+    private static final String POST_BODY =
+        "html=%3Chtml%3E%3Cbody%3E%3Cp%3EHola+mundo%21%3C%2Fp%3E%3C%2Fbody%3E%3C%2Fhtml%3E";
+    private static final String POST =
+        "POST /html HTTP/1.1\r\n"
+        + "Host: localhost:8888\r\n"
+        + "Content-Type: application/x-www-form-urlencoded\r\n"
+        + "Content-Length: " + POST_BODY.length() + "\r\n"
+        + "Connection: keep-alive\r\n"
+        + "\r\n"
+        + POST_BODY;
+
+    @Param({ "GET", "POST" })
+    public String request;
+
+    private byte[] data;
+    private ByteBuffer buffer;
+    private HTTPRequestParser parser;
+
+    @Setup
+    public void setUp() {
+        this.data = ("GET".equals(request) ? GET : POST).getBytes(StandardCharsets.UTF_8);
+        this.buffer = ByteBuffer.wrap(data);
+        this.parser = new HTTPRequestParser();
+    }
+
+    @Benchmark
+    public HTTPRequest readerParser() throws IOException, HTTPParseException {
+        return new HTTPRequest(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public HTTPRequest byteParser() throws HTTPParseException {
+        buffer.clear();
+        return parser.parse(buffer);
+    }
+}
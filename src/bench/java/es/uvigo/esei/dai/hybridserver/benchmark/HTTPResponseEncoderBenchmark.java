@@ -0,0 +1,91 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+
+/**
+ * Coste de pasar una respuesta a bytes: {@code print(Writer)} sobre un OutputStreamWriter
+ * (modo bloqueante), {@code toString().getBytes()} (modo nio) y {@link HTTPResponseEncoder}.
+ * Todos escriben en un stream que descarta los bytes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HTTPResponseEncoderBenchmark {
+    @Param({ "200", "65536" })
+    public int contentSize;
+
+    private HTTPResponse response;
+    private OutputStream sink;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        final StringBuilder content = new StringBuilder("<html><body><p>");
+        while (content.length() < contentSize - 18) {
+            content.append("Olá mundo! ");
+        }
+        content.append("</p></body></html>");
+
+        this.response = new HTTPResponse();
+        this.response.putParameter("Content-Type", "text/html; charset=UTF-8");
+        this.response.putParameter("Connection", "keep-alive");
+        this.response.putParameter("Keep-Alive", "timeout=5, max=99");
+        this.response.setContent(content.toString());
+
+        this.sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                blackhole.consume(b);
+            }
+        };
+    }
+
+    @Benchmark
+    public void printWriter() throws IOException {
+        final Writer writer = new OutputStreamWriter(sink, StandardCharsets.UTF_8);
+        response.print(writer);
+    }
+
+    @Benchmark
+    public void toStringBytes() throws IOException {
+        sink.write(response.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ByteBuffer[] encoder() throws IOException {
+        final ByteBuffer[] buffers = HTTPResponseEncoder.encode(response);
+        for (ByteBuffer buffer : buffers) {
+            sink.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,94 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+
+/**
+ * Peticiones por segundo sirviendo una página pequeña con una conexión TCP nueva por
+ * petición frente a una conexión persistente (keep-alive) por hilo cliente.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(4)
+public class KeepAliveBenchmark {
+    private static final int PORT = 18888;
+    private static final String UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+    private static final byte[] GET_CLOSE = RawHttpClient.get("/html?uuid=" + UUID, false);
+    private static final byte[] GET_KEEP_ALIVE = RawHttpClient.get("/html?uuid=" + UUID, true);
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "blocking", "nio" })
+        public String mode;
+
+        private HybridServer server;
+
+        @Setup(Level.Trial)
+        public void start() {
+            final Properties properties = new Properties();
+            properties.setProperty("port", Integer.toString(PORT));
+            properties.setProperty("numClients", "8");
+            properties.setProperty("server.mode", mode);
+            properties.setProperty("server.maxKeepAliveRequests", Integer.toString(Integer.MAX_VALUE));
+
+            this.server = new HybridServer(
+                Collections.singletonMap(UUID, "<html><body><p>Small page</p></body></html>"), properties
+            );
+            this.server.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            this.server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private RawHttpClient client;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            this.client = new RawHttpClient(PORT);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            this.client.close();
+        }
+    }
+
+    @Benchmark
+    public int newConnectionPerRequest(Server server) throws IOException {
+        try (RawHttpClient client = new RawHttpClient(PORT)) {
+            return client.exchange(GET_CLOSE);
+        }
+    }
+
+    @Benchmark
+    public int persistentConnection(Server server, Connection connection) throws IOException {
+        return connection.client.exchange(GET_KEEP_ALIVE);
+    }
+}
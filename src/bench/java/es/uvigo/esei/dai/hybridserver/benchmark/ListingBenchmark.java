@@ -0,0 +1,125 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.PageListing;
+import es.uvigo.esei.dai.hybridserver.UuidPageIndex;
+
+/**
+ * Cuerpo de {@code GET /html} con {@code pages} páginas: generado recorriendo el almacén en
+ * cada petición, como hacía MAPdaw ({@code rebuild}), copiado de {@link PageListing}
+ * ({@code prerendered}) y copiado de {@link PageListing} justo después de crear y borrar una
+ * página, que obliga a volver a generar un segmento ({@code afterChange}); y, con paginación
+ * por clave, las {@link PageListing#DEFAULT_PAGE_SIZE} siguientes a un UUID cualquiera
+ * ({@code page}), que debería costar lo mismo haya las páginas que haya. Se escribe en un
+ * stream que solo cuenta los bytes, así que se mide lo que hace el servidor, no la red.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int pages;
+
+    @Param({ "rebuild", "prerendered", "afterChange", "page" })
+    public String listing;
+
+    private UuidPageIndex store;
+    private PageListing prerendered;
+    private final CountingOutputStream out = new CountingOutputStream();
+
+    @Setup
+    public void setUp() {
+        store = new UuidPageIndex();
+        for (int i = 0; i < pages; i++) {
+            store.putIfAbsent(UUID.randomUUID().toString(), ("<html>Page " + i + "</html>").getBytes(StandardCharsets.UTF_8));
+        }
+        prerendered = new PageListing(
+            "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Listado de páginas</title></head><body>"
+            + "<h1>Páginas disponibles</h1>",
+            "<p>No hay páginas almacenadas.</p>", "</body></html>", "/html?uuid=");
+        prerendered.addAll(store.uuids());
+    }
+
+    @Benchmark
+    public long listing() throws IOException {
+        out.count = 0;
+        switch (listing) {
+            case "rebuild":
+                rebuild(out);
+                break;
+            case "afterChange":
+                final String uuid = UUID.randomUUID().toString();
+                prerendered.add(uuid);
+                prerendered.remove(uuid);
+                prerendered.writeTo(out);
+                break;
+            case "page":
+                for (String key : prerendered.keysAfter(UUID.randomUUID().toString(), PageListing.DEFAULT_PAGE_SIZE + 1)) {
+                    out.write(key.getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+            default:
+                prerendered.writeTo(out);
+                break;
+        }
+        return out.count;
+    }
+
+    // Lo que hacía MAPdaw.buildListingHtmlAll() antes de PageListing
+    private void rebuild(OutputStream out) throws IOException {
+        final Writer html = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        html.write("<!DOCTYPE html><html><head><meta charset=\"utf-8\">");
+        html.write("<title>Listado de páginas</title></head><body>");
+        html.write("<h1>Páginas disponibles</h1>");
+        final Iterator<String> uuids = store.uuids();
+        html.write("<ul>");
+        while (uuids.hasNext()) {
+            final String id = uuids.next();
+            html.write("<li><a href=\"/html?uuid=");
+            html.write(id);
+            html.write("\">");
+            html.write(id);
+            html.write("</a></li>");
+        }
+        html.write("</ul>");
+        html.write("</body></html>");
+        html.flush();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.DurablePageStore;
+import es.uvigo.esei.dai.hybridserver.DurablePageStore.Fsync;
+import es.uvigo.esei.dai.hybridserver.UuidPageIndex;
+
+/**
+ * Arranque del modo memoria duradero con {@code pages} páginas pequeñas guardadas, después de
+ * haber creado y borrado otras tantas: desde la instantánea ({@code snapshot}, una página por
+ * registro) o recorriendo todo el log ({@code log}, tres registros por página), que es lo que
+ * haría falta sin instantáneas. Cada medida es un arranque completo, en frío, sobre un
+ * {@link UuidPageIndex} vacío.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class MapRecoveryBenchmark {
+    @Param({ "1000000" })
+    public int pages;
+
+    @Param({ "snapshot", "log" })
+    public String source;
+
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("map-recovery");
+        // Sin instantáneas automáticas: la de "snapshot" se guarda a mano y ningún arranque la cambia
+        try (DurablePageStore store = new DurablePageStore(new UuidPageIndex(), directory, Fsync.OS, 1, 0)) {
+            for (int i = 0; i < pages; i++) {
+                store.putIfAbsent(UUID.randomUUID().toString(), content(i));
+                final String removed = UUID.randomUUID().toString();
+                store.putIfAbsent(removed, content(-i));
+                store.remove(removed);
+            }
+            if (source.equals("snapshot")) {
+                store.snapshot();
+            }
+        }
+        System.out.printf("%n[%s] en disco: %d MB%n", source, size(directory) >> 20);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        try (DurablePageStore store = new DurablePageStore(new UuidPageIndex(), directory, Fsync.OS, 1, 0)) {
+            return store.size();
+        }
+    }
+
+    // Unos 100 bytes, como una página pequeña
+    private static byte[] content(int i) {
+        return ("<html><head><title>Page " + i + "</title></head><body><p>Hello world " + i + "</p></body></html>")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long size(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
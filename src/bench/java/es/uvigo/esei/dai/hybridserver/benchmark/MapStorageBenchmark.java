@@ -0,0 +1,73 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Almacén de páginas del modo memoria con varios hilos a la vez: un HashMap protegido con un
+ * único cerrojo ({@code Collections.synchronizedMap}, lo mínimo para que fuese correcto)
+ * frente al ConcurrentHashMap que usa {@code MAPdaw}. Cada operación es una lectura de una
+ * página existente o, con probabilidad {@code 100 - readPercent}, una alta seguida del borrado
+ * de otra página, como hacen POST y DELETE.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class MapStorageBenchmark {
+    private static final int PAGES = 10_000;
+
+    @Param({ "synchronized", "concurrent" })
+    public String storage;
+
+    @Param({ "99", "90", "50" })
+    public int readPercent;
+
+    private Map<String, String> pages;
+    private String[] uuids;
+
+    @Setup
+    public void setUp() {
+        this.pages = storage.equals("concurrent") ? new ConcurrentHashMap<>() : Collections.synchronizedMap(new HashMap<>());
+        this.uuids = new String[PAGES];
+        for (int i = 0; i < PAGES; i++) {
+            uuids[i] = UUID.randomUUID().toString();
+            pages.put(uuids[i], "<html><body>Page " + i + "</body></html>");
+        }
+    }
+
+    @Benchmark
+    public String mixed() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String uuid = uuids[random.nextInt(PAGES)];
+        if (random.nextInt(100) < readPercent) {
+            return pages.get(uuid);
+        }
+
+        // Se borra una página y se vuelve a crear para que el tamaño no cambie
+        final String removed = pages.remove(uuid);
+        pages.put(uuid, removed != null ? removed : "<html><body>New</body></html>");
+        return removed;
+    }
+}
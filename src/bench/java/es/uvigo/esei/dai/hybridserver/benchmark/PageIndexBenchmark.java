@@ -0,0 +1,113 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.ConcurrentMapPageStore;
+import es.uvigo.esei.dai.hybridserver.UuidPageIndex;
+
+/**
+ * Búsqueda de una página por UUID con muchas páginas pequeñas guardadas: el
+ * {@code ConcurrentHashMap<String, String>} que usaba MAPdaw, el mismo mapa con el contenido
+ * en bytes ({@link ConcurrentMapPageStore}) y el {@link UuidPageIndex} con el contenido en el
+ * heap o fuera de él. Salvo en el primero se pide la página como la pide MAPdaw, con
+ * {@code getBuffer}. Al preparar cada caso se imprime la memoria de heap ocupada por página
+ * (medida tras varios GC, aproximada).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class PageIndexBenchmark {
+    @Param({ "1000000" })
+    public int pages;
+
+    @Param({ "stringMap", "concurrent", "index", "offheap" })
+    public String storage;
+
+    private ConcurrentHashMap<String, String> stringMap;
+    private ConcurrentMapPageStore concurrent;
+    private UuidPageIndex index;
+    private String[] uuids;
+
+    @Setup
+    public void setUp() {
+        final UUID[] keys = new UUID[pages];
+        for (int i = 0; i < pages; i++) {
+            keys[i] = UUID.randomUUID();
+        }
+
+        final long before = usedHeap();
+        switch (storage) {
+            case "stringMap":
+                stringMap = new ConcurrentHashMap<>();
+                for (int i = 0; i < pages; i++) {
+                    stringMap.put(keys[i].toString(), content(i));
+                }
+                break;
+            case "concurrent":
+                concurrent = new ConcurrentMapPageStore();
+                for (int i = 0; i < pages; i++) {
+                    concurrent.putIfAbsent(keys[i].toString(), content(i).getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+            default:
+                index = new UuidPageIndex(storage.equals("offheap"));
+                for (int i = 0; i < pages; i++) {
+                    index.putIfAbsent(keys[i].toString(), content(i).getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+        }
+        final long after = usedHeap();
+        System.out.printf("%n[%s] heap por página: %d bytes%n", storage, (after - before) / pages);
+
+        // Las claves de búsqueda llegan como String, igual que desde la petición
+        uuids = new String[4096];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = keys[ThreadLocalRandom.current().nextInt(pages)].toString();
+        }
+    }
+
+    @Benchmark
+    public Object lookup() {
+        final String uuid = uuids[ThreadLocalRandom.current().nextInt(uuids.length)];
+        switch (storage) {
+            case "stringMap":
+                return stringMap.get(uuid);
+            case "concurrent":
+                return concurrent.getBuffer(uuid);
+            default:
+                return index.getBuffer(uuid);
+        }
+    }
+
+    // Unos 100 bytes, como una página pequeña
+    private static String content(int i) {
+        return "<html><head><title>Page " + i + "</title></head><body><p>Hello world " + i + "</p></body></html>";
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
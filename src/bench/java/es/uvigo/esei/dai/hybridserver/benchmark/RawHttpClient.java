@@ -0,0 +1,73 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cliente HTTP mínimo sobre un socket, para medir el servidor sin el coste de una librería
+ * cliente. Lee las respuestas por Content-Length, así que sirve con conexiones persistentes.
+ */
+class RawHttpClient implements AutoCloseable {
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    RawHttpClient(int port) throws IOException {
+        this.socket = new Socket("localhost", port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+    }
+
+    /** Envía la petición y devuelve el número de bytes de cuerpo recibidos. */
+    int exchange(byte[] request) throws IOException {
+        out.write(request);
+        out.flush();
+        return readResponse();
+    }
+
+    static byte[] get(String resource, boolean keepAlive) {
+        return ("GET " + resource + " HTTP/1.1\r\nHost: localhost\r\n"
+            + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private int readResponse() throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int contentLength = 0;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                if (line.length() == 0) {
+                    break;
+                }
+                final String header = line.toString();
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(header.substring(15).trim());
+                }
+                line.setLength(0);
+            } else if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+
+        final int read = in.readNBytes(contentLength).length;
+        if (read != contentLength) {
+            throw new IOException("Truncated response");
+        }
+        return read;
+    }
+
+    boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
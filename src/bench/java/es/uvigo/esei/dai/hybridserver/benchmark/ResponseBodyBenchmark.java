@@ -0,0 +1,67 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+import es.uvigo.esei.dai.hybridserver.http.MIME;
+
+/**
+ * Página leída de la base de datos hasta tenerla lista para enviar: antes se decodificaba a un
+ * String (getString) y {@code setContent} lo volvía a codificar guardando las dos copias; ahora
+ * los bytes UTF-8 que da el servidor van directos a {@link HTTPResponse#html(HTTPResponseStatus, byte[])}.
+ * Con {@code -prof gc} se ve además la memoria que deja de reservarse por respuesta.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBodyBenchmark {
+    @Param({ "1024", "65536" })
+    public int contentSize;
+
+    // Lo que llega del driver
+    private byte[] row;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder content = new StringBuilder("<html><body><p>");
+        while (content.length() < contentSize - 18) {
+            content.append("Olá mundo! ");
+        }
+        content.append("</p></body></html>");
+        this.row = content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ByteBuffer[] throughString() {
+        final HTTPResponse res = new HTTPResponse();
+        res.setStatus(HTTPResponseStatus.S200);
+        res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), MIME.TEXT_HTML.getMime());
+        res.setContent(new String(row, StandardCharsets.UTF_8));
+        return HTTPResponseEncoder.encode(res);
+    }
+
+    @Benchmark
+    public ByteBuffer[] bytes() {
+        return HTTPResponseEncoder.encode(HTTPResponse.html(HTTPResponseStatus.S200, row));
+    }
+}
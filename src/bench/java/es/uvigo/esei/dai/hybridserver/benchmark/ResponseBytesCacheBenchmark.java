@@ -0,0 +1,93 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.CachingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.CompressingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.ConditionalHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.HtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.ResponseBytesCache;
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+
+/**
+ * Una página ya en caché hasta tenerla lista para escribir en el socket: por los repositorios
+ * (caché de páginas o de comprimidas, ETag, cabeceras de keep-alive y {@link HTTPResponseEncoder})
+ * frente a {@link ResponseBytesCache}, que solo añade las cabeceras de la conexión a la
+ * respuesta que ya tiene codificada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBytesCacheBenchmark {
+    private static final byte[] CONNECTION = "Connection: keep-alive\r\nKeep-Alive: timeout=5, max=99\r\n"
+        .getBytes(StandardCharsets.US_ASCII);
+
+    @Param({ "1024", "16384" })
+    public int contentSize;
+
+    @Param({ "identity", "gzip" })
+    public String acceptEncoding;
+
+    private HtmlRepository repository;
+    private ResponseBytesCache responses;
+    private HTTPRequest request;
+
+    @Setup
+    public void setUp() throws IOException, HTTPParseException {
+        final String uuid = UUID.randomUUID().toString();
+        final StringBuilder content = new StringBuilder("<html><body><p>");
+        while (content.length() < contentSize - 18) {
+            content.append("Olá mundo! ");
+        }
+        content.append("</p></body></html>");
+
+        this.repository = new ConditionalHtmlRepository(new CompressingHtmlRepository(
+            new CachingHtmlRepository(new MAPdaw(Collections.singletonMap(uuid, content.toString())))));
+        this.responses = new ResponseBytesCache(ResponseBytesCache.DEFAULT_CACHE_SIZE);
+        this.request = new HTTPRequest(new StringReader("GET /html?uuid=" + uuid + " HTTP/1.1\r\nHost: localhost\r\n"
+            + "Accept-Encoding: " + acceptEncoding + "\r\n\r\n"));
+
+        // Las dos cachés ya tienen la página
+        final long generation = responses.generation();
+        responses.put(request, repository.getPage(request), generation);
+        repository.getPage(request);
+    }
+
+    @Benchmark
+    public ByteBuffer[] throughRepositories() throws IOException {
+        final HTTPResponse res = repository.getPage(request);
+        res.putParameter("Connection", "keep-alive");
+        res.putParameter("Keep-Alive", "timeout=5, max=99");
+        return HTTPResponseEncoder.encode(res);
+    }
+
+    @Benchmark
+    public ByteBuffer[] encodedResponse() {
+        return ResponseBytesCache.buffers(responses.get(request), CONNECTION);
+    }
+}
@@ -0,0 +1,96 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+
+/**
+ * Peticiones por segundo de una misma página, con conexiones persistentes, con la caché de
+ * respuestas codificadas activada y sin ella (el resto de cachés activadas en los dos casos).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@Threads(4)
+public class ResponseCacheServerBenchmark {
+    private static final int PORT = 18889;
+    private static final String UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "blocking", "nio" })
+        public String mode;
+
+        @Param({ "true", "false" })
+        public String responseCache;
+
+        @Param({ "identity", "gzip" })
+        public String acceptEncoding;
+
+        private HybridServer server;
+        private byte[] request;
+
+        @Setup(Level.Trial)
+        public void start() {
+            final Properties properties = new Properties();
+            properties.setProperty("port", Integer.toString(PORT));
+            properties.setProperty("numClients", "8");
+            properties.setProperty("server.mode", mode);
+            properties.setProperty("server.maxKeepAliveRequests", Integer.toString(Integer.MAX_VALUE));
+            properties.setProperty("cache.responses.enabled", responseCache);
+
+            this.server = new HybridServer(
+                Collections.singletonMap(UUID, "<html><body><p>" + "Olá mundo! ".repeat(400) + "</p></body></html>"), properties
+            );
+            this.server.start();
+            this.request = ("GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n"
+                + "Accept-Encoding: " + acceptEncoding + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            this.server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private RawHttpClient client;
+
+        @Setup(Level.Iteration)
+        public void open() throws IOException {
+            this.client = new RawHttpClient(PORT);
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() throws IOException {
+            this.client.close();
+        }
+    }
+
+    @Benchmark
+    public int persistentConnection(Server server, Connection connection) throws IOException {
+        return connection.client.exchange(server.request);
+    }
+}
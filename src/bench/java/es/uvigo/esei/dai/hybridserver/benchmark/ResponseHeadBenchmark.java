@@ -0,0 +1,74 @@
+package es.uvigo.esei.dai.hybridserver.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+import es.uvigo.esei.dai.hybridserver.http.MIME;
+
+/**
+ * Cabecera típica de una respuesta del servidor (línea de estado, Content-Type y Connection)
+ * construida concatenando texto y codificándolo, frente a copiar las constantes ya codificadas
+ * de {@link HTTPResponseStatus} y {@link HTTPHeaders}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseHeadBenchmark {
+    @Param({ "S200", "S404" })
+    public HTTPResponseStatus status;
+
+    private String version;
+    private String contentType;
+    private String connection;
+
+    @Setup
+    public void setUp() {
+        this.version = HTTPHeaders.HTTP_1_1.getHeader();
+        this.contentType = MIME.TEXT_HTML.getMime();
+        this.connection = "keep-alive";
+    }
+
+    @Benchmark
+    public byte[] concatenated() {
+        return (version + " " + status.getCode() + " " + status.getStatus() + "\r\n"
+            + HTTPHeaders.CONTENT_TYPE.getHeader() + ": " + contentType + "\r\n"
+            + HTTPHeaders.CONNECTION.getHeader() + ": " + connection + "\r\n"
+            + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] preEncoded() {
+        final byte[] statusLine = status.getStatusLine(version);
+        final byte[] contentTypeLine = HTTPHeaders.CONTENT_TYPE.getLine(contentType);
+        final byte[] connectionLine = HTTPHeaders.CONNECTION.getLine(connection);
+
+        final byte[] head = new byte[statusLine.length + contentTypeLine.length + connectionLine.length + 2];
+        int pos = 0;
+        System.arraycopy(statusLine, 0, head, pos, statusLine.length);
+        pos += statusLine.length;
+        System.arraycopy(contentTypeLine, 0, head, pos, contentTypeLine.length);
+        pos += contentTypeLine.length;
+        System.arraycopy(connectionLine, 0, head, pos, connectionLine.length);
+        pos += connectionLine.length;
+        head[pos++] = '\r';
+        head[pos] = '\n';
+        return head;
+    }
+}
@@ -0,0 +1,37 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+/**
+ * Versión asíncrona de {@link HtmlRepository}: cada operación devuelve enseguida un
+ * {@link CompletableFuture} que se completa con la respuesta cuando el repositorio termina, así
+ * que quien la pide (un event loop) puede seguir atendiendo otras conexiones mientras tanto.
+ * Un error del repositorio completa el future con la excepción.
+ */
+public interface AsyncHtmlRepository {
+    CompletableFuture<HTTPResponse> getPageAsync(HTTPRequest req);
+    CompletableFuture<HTTPResponse> postPageAsync(HTTPRequest req);
+    CompletableFuture<HTTPResponse> deletePageAsync(HTTPRequest req);
+
+    /**
+     * Adapta un repositorio síncrono: las peticiones que pueden esperar al almacenamiento
+     * ({@link HtmlRepository#mayBlock(HTTPRequest)}) se ejecutan en {@code executor} y las demás
+     * se completan en el mismo hilo que las pide.
+     */
+    static AsyncHtmlRepository of(HtmlRepository repository, Executor executor) {
+        return of(repository, executor, 0);
+    }
+
+    /**
+     * Como {@link #of(HtmlRepository, Executor)}, pero las peticiones que esperan más de
+     * {@code queueTimeoutMillis} ms a que el executor las empiece (0 = sin límite) fallan con una
+     * {@link java.util.concurrent.RejectedExecutionException}, igual que si estuviera lleno.
+     */
+    static AsyncHtmlRepository of(HtmlRepository repository, Executor executor, long queueTimeoutMillis) {
+        return new AsyncRepositoryAdapter(repository, executor, queueTimeoutMillis);
+    }
+}
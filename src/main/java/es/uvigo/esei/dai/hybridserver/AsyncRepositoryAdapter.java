@@ -0,0 +1,135 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+/**
+ * {@link AsyncHtmlRepository} sobre un {@link HtmlRepository} síncrono: lo que puede bloquear
+ * va a un executor propio (p. ej. uno con tantos hilos como conexiones a la base de datos) y lo
+ * que está en memoria se responde sin cambiar de hilo.
+ *
+ * Si el executor está lleno (rechaza la tarea) o una petición pasa más de {@code queueTimeout}
+ * ms esperando a que empiece, el future se completa enseguida con una
+ * {@link RejectedExecutionException} y la petición ya no llega al repositorio.
+ */
+class AsyncRepositoryAdapter implements AsyncHtmlRepository {
+    // Caduca las peticiones que llevan demasiado en la cola; el hilo solo se crea si hace falta
+    private static final ScheduledThreadPoolExecutor TIMEOUTS = timeouts();
+
+    private final HtmlRepository repository;
+    private final Executor executor;
+    private final long queueTimeoutMillis;
+
+    /** Una operación del repositorio síncrono. */
+    private interface Call {
+        HTTPResponse run(HTTPRequest req) throws IOException;
+    }
+
+    /** @param queueTimeoutMillis ms como máximo esperando en el executor (0 = sin límite) */
+    AsyncRepositoryAdapter(HtmlRepository repository, Executor executor, long queueTimeoutMillis) {
+        this.repository = repository;
+        this.executor = executor;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> getPageAsync(HTTPRequest req) {
+        return call(repository::getPage, req);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> postPageAsync(HTTPRequest req) {
+        return call(repository::postPage, req);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> deletePageAsync(HTTPRequest req) {
+        return call(repository::deletePage, req);
+    }
+
+    private CompletableFuture<HTTPResponse> call(Call call, HTTPRequest req) {
+        final CompletableFuture<HTTPResponse> result = new CompletableFuture<>();
+        if (!repository.mayBlock(req)) {
+            run(call, req, result);
+            return result;
+        }
+        final Queued task = new Queued(call, req, result);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (queueTimeoutMillis > 0 && !task.claimed.get()) {
+            task.timeout = TIMEOUTS.schedule(task::expire, queueTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    /** Una petición en la cola del executor: o empieza o caduca, lo que pase antes. */
+    private final class Queued implements Runnable {
+        private final Call call;
+        private final HTTPRequest req;
+        private final CompletableFuture<HTTPResponse> result;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timeout;
+
+        Queued(Call call, HTTPRequest req, CompletableFuture<HTTPResponse> result) {
+            this.call = call;
+            this.req = req;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            final ScheduledFuture<?> timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            AsyncRepositoryAdapter.run(call, req, result);
+        }
+
+        // La base de datos va tan lenta que el cliente ya habrá dejado de esperar: mejor un 503 ahora
+        void expire() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            if (executor instanceof ThreadPoolExecutor) {
+                // Deja su sitio en la cola a otra
+                ((ThreadPoolExecutor) executor).remove(this);
+            }
+            result.completeExceptionally(new RejectedExecutionException("Timed out waiting for the storage executor"));
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor timeouts() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, task -> {
+            final Thread thread = new Thread(task, "HybridServer-QueueTimeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static void run(Call call, HTTPRequest req, CompletableFuture<HTTPResponse> result) {
+        try {
+            result.complete(call.run(req));
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
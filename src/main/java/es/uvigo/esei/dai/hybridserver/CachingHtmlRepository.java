@@ -0,0 +1,129 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestMethod;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Caché de lectura delante de otro repositorio: las páginas ({@code /html?uuid=...}) no
+ * cambian después de crearlas, así que la primera lectura de cada una se guarda en una
+ * {@link PageCache} y las siguientes no llegan a la base de datos. Borrar una página la
+ * quita de la caché.
+ *
+ * Solo se guardan las páginas que el repositorio devuelve enteras; las grandes, que envía por
+ * chunks, siguen leyéndose del repositorio cada vez para no tenerlas completas en memoria.
+ */
+public class CachingHtmlRepository implements HtmlRepository {
+    public static final long DEFAULT_CACHE_SIZE = 32 * 1024 * 1024;
+
+    private final HtmlRepository delegate;
+    private final PageCache cache;
+
+    public CachingHtmlRepository(HtmlRepository delegate) {
+        this(delegate, DEFAULT_CACHE_SIZE);
+    }
+
+    /** @param cacheSize bytes como máximo de páginas en memoria */
+    public CachingHtmlRepository(HtmlRepository delegate, long cacheSize) {
+        this.delegate = delegate;
+        this.cache = new PageCache(cacheSize);
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid == null) {
+            return delegate.getPage(req);
+        }
+
+        final PageCache.Page cached = cache.get(uuid);
+        if (cached != null) {
+            final HTTPResponse res = new HTTPResponse();
+            res.setStatus(HTTPResponseStatus.S200);
+            if (cached.contentType != null) {
+                res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), cached.contentType);
+            }
+            res.setContentBytes(cached.content);
+            return res;
+        }
+
+        final long generation = cache.generation();
+        final HTTPResponse res = delegate.getPage(req);
+        if (res.getStatus() == HTTPResponseStatus.S200 && !res.isChunked()) {
+            final String contentType = res.getParameters().get(HTTPHeaders.CONTENT_TYPE.getHeader());
+            cache.put(uuid, new PageCache.Page(res.getContentBytes(), contentType), generation);
+        }
+        return res;
+    }
+
+    @Override
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        return delegate.postPage(req);
+    }
+
+    @Override
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid != null) {
+            cache.invalidate(uuid);
+        }
+        final HTTPResponse res = delegate.deletePage(req);
+        if (uuid != null) {
+            // Por si una lectura concurrente la ha vuelto a guardar mientras se borraba
+            cache.invalidate(uuid);
+        }
+        return res;
+    }
+
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        return cache.contains(uuid) || delegate.exists(uuid);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        // Las páginas que ya están en memoria se sirven sin llegar al repositorio
+        if (req.getMethod() == HTTPRequestMethod.GET) {
+            final String uuid = HtmlRepository.pageUuid(req);
+            if (uuid != null && cache.contains(uuid)) {
+                return false;
+            }
+        }
+        return delegate.mayBlock(req);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getCacheEvictions() {
+        return cache.getEvictions();
+    }
+
+    /** Páginas leídas que no se guardaron porque se piden menos que las que ya hay. */
+    public long getCacheRejections() {
+        return cache.getRejections();
+    }
+
+    /** Bytes de contenido guardados ahora mismo. */
+    public long getCacheBytes() {
+        return cache.getBytes();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+}
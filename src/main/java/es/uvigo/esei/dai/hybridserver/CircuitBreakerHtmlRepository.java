@@ -0,0 +1,298 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentWriter;
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Circuit breaker delante del repositorio: cuando el almacenamiento falla o va lento, deja de
+ * llamarlo durante un rato y responde enseguida 503 con Retry-After, en lugar de que cada
+ * petición espere hasta agotar su propio tiempo.
+ *
+ * Cuenta como fallo una excepción, una respuesta 500 (el error de la base de datos en
+ * {@link DBdaw}) o una llamada que tarda más de {@code slowCallMillis}. Las páginas que se
+ * envían por chunks se leen del almacenamiento al enviarlas: esa lectura pide también paso y
+ * cuenta si falla por el almacenamiento, pero no por lo que tarde, que depende del cliente. Tras
+ * {@code failureThreshold} fallos seguidos se abre durante {@code openMillis}; después deja
+ * pasar una sola petición de prueba (semiabierto): si va bien se cierra y si no vuelve a
+ * abrirse. Solo se vigilan las peticiones que pueden esperar al almacenamiento
+ * ({@link HtmlRepository#mayBlock(HTTPRequest)}), y mientras está abierto estas tampoco
+ * pasan por el executor de la base de datos. Va debajo de las cachés, que siguen
+ * respondiendo las páginas que tienen.
+ */
+public class CircuitBreakerHtmlRepository implements HtmlRepository {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 2_000;
+    public static final long DEFAULT_OPEN_MILLIS = 5_000;
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final HtmlRepository delegate;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+
+    // Se cambian con el cerrojo de this; state y openedAt también se leen sin él en mayBlock
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private int consecutiveFailures;
+    private boolean probing;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong halfOpened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CircuitBreakerHtmlRepository(HtmlRepository delegate) {
+        this(delegate, DEFAULT_FAILURE_THRESHOLD, DEFAULT_SLOW_CALL_MILLIS, DEFAULT_OPEN_MILLIS);
+    }
+
+    /**
+     * @param failureThreshold fallos seguidos que lo abren
+     * @param slowCallMillis una llamada que tarda más cuenta como fallo (0 = solo los errores)
+     * @param openMillis tiempo abierto antes de dejar pasar una petición de prueba
+     */
+    public CircuitBreakerHtmlRepository(HtmlRepository delegate, int failureThreshold, long slowCallMillis, long openMillis) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Invalid failure threshold: " + failureThreshold);
+        }
+        this.delegate = delegate;
+        this.failureThreshold = failureThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, slowCallMillis));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openMillis));
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        HTTPResponse apply(HTTPRequest req) throws IOException;
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        return guard(req, delegate::getPage);
+    }
+
+    @Override
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        return guard(req, delegate::postPage);
+    }
+
+    @Override
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
+        return guard(req, delegate::deletePage);
+    }
+
+    private HTTPResponse guard(HTTPRequest req, Call call) throws IOException {
+        if (!delegate.mayBlock(req)) {
+            return call.apply(req);
+        }
+        final Boolean probe = acquire();
+        if (probe == null) {
+            return unavailable();
+        }
+
+        final long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            final HTTPResponse res = call.apply(req);
+            failed = res.getStatus() == HTTPResponseStatus.S500;
+            if (res.isChunked() && HtmlRepository.pageUuid(req) != null) {
+                guardContent(res);
+            }
+            return res;
+        } finally {
+            record(probe, failed || isSlow(start));
+        }
+    }
+
+    private void guardContent(HTTPResponse res) {
+        final HTTPContentWriter writer = res.getContentWriter();
+        res.setContentWriter(out -> {
+            final Boolean probe = acquire();
+            if (probe == null) {
+                // Las cabeceras ya se han enviado: solo se puede cortar la conexión
+                throw new IOException("Storage unavailable");
+            }
+            Boolean failed = Boolean.TRUE;
+            try {
+                writer.writeTo(out);
+                failed = Boolean.FALSE;
+            } catch (IOException e) {
+                // Si lo que falla es la conexión con el cliente, no dice nada del almacenamiento
+                failed = isStorageError(e) ? Boolean.TRUE : null;
+                throw e;
+            } finally {
+                if (failed == null) {
+                    release(probe);
+                } else {
+                    record(probe, failed);
+                }
+            }
+        });
+    }
+
+    private static boolean isStorageError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Un error cuenta como fallo, igual que si tarda demasiado
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        final Boolean probe = acquire();
+        if (probe == null) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        boolean slow = true;
+        try {
+            final boolean exists = delegate.exists(uuid);
+            slow = isSlow(start);
+            return exists;
+        } finally {
+            record(probe, slow);
+        }
+    }
+
+    private boolean isSlow(long start) {
+        return slowCallNanos > 0 && System.nanoTime() - start > slowCallNanos;
+    }
+
+    /** null si no puede pasar; si no, si es la petición de prueba del estado semiabierto. */
+    private synchronized Boolean acquire() {
+        switch (state) {
+            case CLOSED:
+                return Boolean.FALSE;
+            case OPEN:
+                if (isRejecting()) {
+                    break;
+                }
+                transition(State.HALF_OPEN);
+                probing = true;
+                return Boolean.TRUE;
+            case HALF_OPEN:
+                if (probing) {
+                    break;
+                }
+                probing = true;
+                return Boolean.TRUE;
+        }
+        rejected.incrementAndGet();
+        return null;
+    }
+
+    // Sin resultado que cuente: solo deja paso a otra petición de prueba
+    private synchronized void release(boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+    }
+
+    private synchronized void record(boolean probe, boolean failed) {
+        if (probe) {
+            probing = false;
+            if (failed) {
+                open();
+            } else {
+                consecutiveFailures = 0;
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            // Las que empezaron antes de abrirse no cuentan: el estado ya lo decide la de prueba
+            if (!failed) {
+                consecutiveFailures = 0;
+            } else if (++consecutiveFailures >= failureThreshold) {
+                open();
+            }
+        }
+    }
+
+    // Abierto y sin que haya pasado aún el tiempo para probar
+    private boolean isRejecting() {
+        return state == State.OPEN && System.nanoTime() - openedAt < openNanos;
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        transition(State.OPEN);
+    }
+
+    private void transition(State next) {
+        if (state == next) {
+            return;
+        }
+        state = next;
+        switch (next) {
+            case OPEN:
+                opened.incrementAndGet();
+                System.err.printf("[WARN] Almacenamiento con fallos o lento: se responde 503 durante %d ms%n",
+                    TimeUnit.NANOSECONDS.toMillis(openNanos));
+                break;
+            case HALF_OPEN:
+                halfOpened.incrementAndGet();
+                break;
+            case CLOSED:
+                closed.incrementAndGet();
+                System.out.println("[INFO] Almacenamiento recuperado");
+                break;
+        }
+    }
+
+    private HTTPResponse unavailable() {
+        final long remaining;
+        synchronized (this) {
+            remaining = state == State.OPEN ? openNanos - (System.nanoTime() - openedAt) : 0;
+        }
+        final HTTPResponse res = HTTPResponse.error(HTTPResponseStatus.S503, "Service Unavailable");
+        res.putParameter(HTTPHeaders.RETRY_AFTER.getHeader(),
+            Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1))));
+        return res;
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        // Abierto, la respuesta es el 503 inmediato: no hace falta pasarla a otro hilo. La
+        // petición de prueba sí puede esperar
+        return delegate.mayBlock(req) && !isRejecting();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Veces que se ha abierto, incluidas las que vuelve a abrirse tras una prueba fallida. */
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    /** Veces que ha dejado pasar una petición de prueba. */
+    public long getHalfOpenedCount() {
+        return halfOpened.get();
+    }
+
+    /** Veces que se ha cerrado tras una prueba correcta. */
+    public long getClosedCount() {
+        return closed.get();
+    }
+
+    /** Peticiones respondidas con 503 sin llegar al repositorio. */
+    public long getRejectedCalls() {
+        return rejected.get();
+    }
+}
@@ -1,54 +1,126 @@
 package es.uvigo.esei.dai.hybridserver;
 
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
 import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestParser;
 import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
 import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
 import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
 
 import java.io.*;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 
 // Le paso el socket que se creó entre el cliente y el servidor y el listado de páginas almacenadas
 class ClientHandler implements Runnable {
-    private final Socket socket;
-    private final HtmlRepository repo;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String RETRY_AFTER_SECONDS = "1";
 
-    public ClientHandler(Socket socket, HtmlRepository repo) {
+    private final Socket socket;
+    private final AsyncHtmlRepository repo;
+    private final ResponseBytesCache responses;
+    private final KeepAlive keepAlive;
+    private final Set<ClientHandler> handlers;
+    // Hilos del pool: con más conexiones que hilos, alguna espera a que otra termine
+    private final int threads;
+
+    // true mientras se espera la siguiente petición (se puede cerrar sin cortar ninguna respuesta)
+    private volatile boolean idle = true;
+    // false mientras la conexión espera un hilo libre del pool
+    private volatile boolean started;
+
+    public ClientHandler(Socket socket, AsyncHtmlRepository repo, ResponseBytesCache responses, KeepAlive keepAlive,
+            Set<ClientHandler> handlers, int threads) {
         this.socket = socket;
         this.repo = repo;
+        this.responses = responses;
+        this.keepAlive = keepAlive;
+        this.handlers = handlers;
+        this.threads = threads;
     }
 
     @Override
     public void run() {
+        started = true;
         try (
-                Reader in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
-                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
-            // Parseamos la petición
-            HTTPRequest req = new HTTPRequest(in);
-
-            // Según la petición mostraremos, eliminaremos o añadiremos
-            switch (req.getMethod()) {
-                case GET:
-                    handleGet(req, out);
-                    break;
-                case POST:
-                    handlePost(req, out);
-                    break;
-                case DELETE:
-                    handleDelete(req, out);
-                    break;
-                default:
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream()) {
+            socket.setSoTimeout(keepAlive.getTimeoutMillis());
+            // La cabecera y el cuerpo grande van en writes separados: sin Nagle no se retrasa el segundo
+            socket.setTcpNoDelay(true);
+
+            // Bytes recibidos y aún sin parsear (en modo lectura): pueden ser de la siguiente petición
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).flip();
+            HTTPRequestParser parser = new HTTPRequestParser();
+            // Para enviar en un solo write las respuestas guardadas en bytes
+            byte[] scratch = null;
+
+            // Varias peticiones por conexión mientras el cliente y la política lo permitan
+            boolean keepOpen = true;
+            for (int served = 1; keepOpen && awaitRequest(in, buffer); served++) {
+                idle = false;
+
+                HTTPRequest req;
+                try {
+                    // Parseamos la petición
+                    req = readRequest(in, buffer, parser);
+                } catch (IOException | HTTPParseException e) {
+                    writeError(out, HTTPResponseStatus.S400, "Bad Request");
                     break;
+                }
+
+                // Si hay conexiones esperando un hilo, esta lo deja libre al responder
+                keepOpen = keepAlive.keepOpen(req, served) && handlers.size() <= threads;
+                final byte[] cached = responses.get(req);
+                if (cached != null) {
+                    if (scratch == null) {
+                        scratch = new byte[BUFFER_SIZE];
+                    }
+                    ResponseBytesCache.write(cached, keepAlive.headerLines(keepOpen, served), out, scratch);
+                } else {
+                    final long generation = responses.generation();
+                    HTTPResponse res = respond(req, repo);
+                    responses.put(req, res, generation);
+                    keepAlive.apply(res, keepOpen, served);
+                    HTTPResponseEncoder.write(res, out);
+                }
+
+                idle = true;
             }
-
-        } catch (IOException | HTTPParseException e) {
-            try (Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
-                writeError(out, HTTPResponseStatus.S400, "Bad Request");
+        } catch (IOException ignore) {
+            // El cliente cerró la conexión a mitad de respuesta
+        } finally {
+            handlers.remove(this);
+            try {
+                socket.close();
             } catch (IOException ignore) {
             }
-        } finally {
+        }
+    }
+
+    /**
+     * Cierra la conexión si ya tiene hilo y está esperando otra petición, para que lo use una
+     * conexión que espera en el pool. Devuelve si la ha cerrado.
+     */
+    boolean yieldIfIdle() {
+        if (!started || !idle || socket.isClosed()) {
+            return false;
+        }
+        closeIfIdle();
+        return true;
+    }
+
+    /** Cierra la conexión si está esperando una nueva petición (al parar el servidor). */
+    void closeIfIdle() {
+        if (idle) {
             try {
                 socket.close();
             } catch (IOException ignore) {
@@ -56,41 +128,122 @@ class ClientHandler implements Runnable {
         }
     }
 
-    private void handleGet(HTTPRequest req, Writer out) throws IOException {
+    /**
+     * Espera a que llegue el inicio de la siguiente petición. Devuelve {@code false} si el
+     * cliente cierra la conexión o se agota el tiempo de keep-alive.
+     */
+    private static boolean awaitRequest(InputStream in, ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            // Ya tenemos la siguiente petición (pipelining)
+            return true;
+        }
+        try {
+            return fill(in, buffer);
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    private static HTTPRequest readRequest(InputStream in, ByteBuffer buffer, HTTPRequestParser parser)
+            throws IOException, HTTPParseException {
+        HTTPRequest req;
+        while ((req = parser.parse(buffer)) == null) {
+            if (!fill(in, buffer)) {
+                throw new EOFException("Connection closed in the middle of a request");
+            }
+        }
+        return req;
+    }
 
-        // mapStorage es tu instancia de MapStorage (o MAPdaw)
-        String httpResponse = repo.getPage(req); // ← respuesta HTTP COMPLETA
-        out.write(httpResponse);
-        out.flush();
+    /** Lee del socket sobre el buffer, que el parser ya ha consumido entero. */
+    private static boolean fill(InputStream in, ByteBuffer buffer) throws IOException {
+        int n = in.read(buffer.array(), 0, buffer.capacity());
+        if (n == -1) {
+            return false;
+        }
+        buffer.position(0).limit(n);
+        return true;
+    }
 
+    /**
+     * Según la petición mostraremos, eliminaremos o añadiremos (modo bloqueante). Lo que espera a
+     * la base de datos se hace en su propio executor y este hilo solo espera el resultado; si ese
+     * executor está saturado se responde enseguida con 503.
+     */
+    static HTTPResponse respond(HTTPRequest req, AsyncHtmlRepository repo) throws IOException {
+        try {
+            return respondAsync(req, repo).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the repository");
+        } catch (ExecutionException e) {
+            return failureResponse(e.getCause());
+        }
     }
 
-    private void handlePost(HTTPRequest req, Writer out) throws IOException {
-        String httpResponse = repo.postPage(req);
-        out.write(httpResponse);
-        out.flush();
+    /** Como {@link #respond(HTTPRequest, AsyncHtmlRepository)}, sin esperar al repositorio (modo "nio"). */
+    static CompletableFuture<HTTPResponse> respondAsync(HTTPRequest req, AsyncHtmlRepository repo) {
+        final CompletableFuture<HTTPResponse> res;
+        switch (req.getMethod()) {
+            case GET:
+                res = repo.getPageAsync(req);
+                break;
+            case POST:
+                res = repo.postPageAsync(req);
+                break;
+            case DELETE:
+                res = repo.deletePageAsync(req);
+                break;
+            default:
+                return CompletableFuture.completedFuture(errorResponse(HTTPResponseStatus.S405, "Method Not Allowed"));
+        }
+
+        if (!"HTTP/1.0".equals(req.getHttpVersion())) {
+            return res;
+        }
+        return res.thenApply(response -> {
+            if (response.isChunked()) {
+                try {
+                    response.bufferContent();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return response;
+        });
     }
 
+    /** Respuesta a una petición que el repositorio no ha podido atender. */
+    static HTTPResponse failureResponse(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (error instanceof RejectedExecutionException) {
+            // Base de datos saturada: que el cliente lo intente otra vez en un momento
+            HTTPResponse res = errorResponse(HTTPResponseStatus.S503, "Service Unavailable");
+            res.putParameter(HTTPHeaders.RETRY_AFTER.getHeader(), RETRY_AFTER_SECONDS);
+            return res;
+        }
+        return errorResponse(HTTPResponseStatus.S500, "Internal Server Error");
+    }
 
-    private void handleDelete(HTTPRequest req, Writer out) throws IOException {
-        String httpResponse = repo.deletePage(req);
-        out.write(httpResponse);
-        out.flush();
+    private static void writeError(OutputStream out, HTTPResponseStatus status, String message) throws IOException {
+        HTTPResponse res = errorResponse(status, message);
+        res.putParameter(HTTPHeaders.CONNECTION.getHeader(), "close");
+        HTTPResponseEncoder.write(res, out);
     }
 
-    private static void writeError(Writer out, HTTPResponseStatus status, String message) throws IOException {
+    static HTTPResponse errorResponse(HTTPResponseStatus status, String message) {
         HTTPResponse res = new HTTPResponse();
         res.setStatus(status);
-        res.putParameter("Content-Type", "text/html; charset=UTF-8");
-        res.putParameter("Connection", "close");
+        res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), "text/html; charset=UTF-8");
 
         // Puedes enviar un HTML sencillo explicando el error (opcional)
         String body = "<html><body><h1>" + status.getCode() + " " + status.getStatus() + "</h1><p>" +
                 message + "</p></body></html>";
         res.setContent(body);
 
-        res.print(out);
-        out.flush();
+        return res;
     }
 
 }
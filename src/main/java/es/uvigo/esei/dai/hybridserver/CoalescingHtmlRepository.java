@@ -0,0 +1,139 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+/**
+ * Junta las lecturas simultáneas de una misma página ({@code /html?uuid=...}) en una sola
+ * llamada al repositorio (single-flight): el primer hilo que la pide la lee y los que llegan
+ * mientras tanto esperan a ese resultado en lugar de hacer cada uno su propia consulta. Así una
+ * página que se pone de moda de repente no abre una conexión por petición antes de que la
+ * caché la tenga.
+ *
+ * Cada hilo recibe su propia copia de la respuesta, que comparte el contenido (no se copian los
+ * bytes); un error de la lectura llega a todos los que esperaban. Borrar una página hace que
+ * las lecturas posteriores no se junten con una que empezó antes del borrado.
+ */
+public class CoalescingHtmlRepository implements HtmlRepository {
+    private final HtmlRepository delegate;
+    private final ConcurrentHashMap<String, CompletableFuture<HTTPResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong backendCalls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public CoalescingHtmlRepository(HtmlRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid == null) {
+            return delegate.getPage(req);
+        }
+
+        final CompletableFuture<HTTPResponse> call = new CompletableFuture<>();
+        final CompletableFuture<HTTPResponse> running = inFlight.putIfAbsent(uuid, call);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return copy(await(running));
+        }
+
+        backendCalls.incrementAndGet();
+        try {
+            final HTTPResponse res = delegate.getPage(req);
+            call.complete(res);
+            // Los demás copian de esta, así que no se devuelve tal cual: quien la reciba la modifica
+            return copy(res);
+        } catch (IOException | RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(uuid, call);
+        }
+    }
+
+    private static HTTPResponse await(CompletableFuture<HTTPResponse> running) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a concurrent read", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Misma respuesta con sus propias cabeceras; el contenido (o el generador, si va por chunks) se comparte
+    private static HTTPResponse copy(HTTPResponse res) {
+        final HTTPResponse copy = new HTTPResponse();
+        copy.setVersion(res.getVersion());
+        copy.setStatus(res.getStatus());
+        if (res.isChunked()) {
+            copy.setContentWriter(res.getContentWriter());
+        } else {
+            copy.setContentBuffer(res.getContentBuffer());
+        }
+        for (Map.Entry<String, String> parameter : res.getParameters().entrySet()) {
+            copy.putParameter(parameter.getKey(), parameter.getValue());
+        }
+        return copy;
+    }
+
+    @Override
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        return delegate.postPage(req);
+    }
+
+    @Override
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid != null) {
+            // La lectura en curso puede acabar con la página; las que lleguen después vuelven a leer
+            inFlight.remove(uuid);
+        }
+        return delegate.deletePage(req);
+    }
+
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        return delegate.exists(uuid);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        return delegate.mayBlock(req);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /** Lecturas de páginas que llegaron al repositorio. */
+    public long getBackendCalls() {
+        return backendCalls.get();
+    }
+
+    /** Lecturas que esperaron a otra en curso en lugar de llegar al repositorio. */
+    public long getCoalescedRequests() {
+        return coalesced.get();
+    }
+}
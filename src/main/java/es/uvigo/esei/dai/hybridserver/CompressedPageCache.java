@@ -0,0 +1,122 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentEncoding;
+
+/**
+ * Versiones ya comprimidas de las páginas, por UUID y codificación. Como el contenido de una
+ * página no cambia nunca, cada variante se comprime una vez y se reutiliza hasta que la página
+ * se borra o sale de la caché. El tamaño total de las variantes está limitado a
+ * {@code maxBytes}; al pasarse se descartan las menos usadas recientemente (LRU).
+ *
+ * Como en {@link PageCache}, una variante comprimida a partir de una lectura anterior a un
+ * borrado no se guarda: {@link #put} recibe la generación leída antes de pedir la página.
+ */
+class CompressedPageCache {
+    /** Una variante comprimida y el Content-Type con el que se sirve. */
+    static final class Variant {
+        final byte[] content;
+        final String contentType;
+
+        Variant(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+    }
+
+    private final long maxBytes;
+    // En orden de acceso: el primero es el que lleva más tiempo sin usarse
+    private final LinkedHashMap<String, Variant> variants = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    // Cambia con cada invalidación: una página leída antes no debe guardarse después
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    CompressedPageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    Variant get(String uuid, HTTPContentEncoding encoding) {
+        final Variant variant;
+        synchronized (this) {
+            variant = variants.get(key(uuid, encoding));
+        }
+        (variant != null ? hits : misses).incrementAndGet();
+        return variant;
+    }
+
+    /** Si está la variante, sin contarlo como acierto o fallo. */
+    synchronized boolean contains(String uuid, HTTPContentEncoding encoding) {
+        return variants.containsKey(key(uuid, encoding));
+    }
+
+    /** Valor a pasar a {@link #put} antes de leer la página del repositorio. */
+    synchronized long generation() {
+        return generation;
+    }
+
+    void put(String uuid, HTTPContentEncoding encoding, Variant variant, long generation) {
+        if (variant.content.length > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            if (generation != this.generation) {
+                return;
+            }
+            final Variant previous = variants.put(key(uuid, encoding), variant);
+            if (previous != null) {
+                bytes -= previous.content.length;
+            }
+            bytes += variant.content.length;
+
+            final Iterator<Variant> eldest = variants.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().content.length;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /** Descarta todas las variantes de una página (al borrarla). */
+    synchronized void invalidate(String uuid) {
+        generation++;
+        for (HTTPContentEncoding encoding : HTTPContentEncoding.values()) {
+            final Variant removed = variants.remove(key(uuid, encoding));
+            if (removed != null) {
+                bytes -= removed.content.length;
+            }
+        }
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized int size() {
+        return variants.size();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    private static String key(String uuid, HTTPContentEncoding encoding) {
+        return encoding.getName() + ':' + uuid;
+    }
+}
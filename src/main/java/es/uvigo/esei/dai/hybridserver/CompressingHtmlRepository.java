@@ -0,0 +1,180 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentEncoding;
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentWriter;
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestMethod;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Repositorio que comprime con gzip o deflate, según el Accept-Encoding del cliente, las
+ * respuestas 200 de otro repositorio.
+ *
+ * Las páginas ({@code /html?uuid=...}) no cambian una vez creadas, así que se comprimen una
+ * sola vez con el nivel máximo y se guardan en una {@link CompressedPageCache}; las siguientes
+ * peticiones se sirven desde ahí sin llegar al repositorio. Los listados y las páginas que el
+ * repositorio ya envía por chunks se comprimen mientras se generan, con el nivel por defecto.
+ * Las respuestas de menos de {@code minSize} bytes se envían tal cual: comprimirlas apenas
+ * ahorra nada.
+ */
+public class CompressingHtmlRepository implements HtmlRepository {
+    public static final int DEFAULT_MIN_SIZE = 1024;
+    public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    private static final String VARY_VALUE = HTTPHeaders.ACCEPT_ENCODING.getHeader();
+
+    private final HtmlRepository delegate;
+    private final int minSize;
+    private final CompressedPageCache cache;
+
+    public CompressingHtmlRepository(HtmlRepository delegate) {
+        this(delegate, DEFAULT_MIN_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param minSize   tamaño mínimo en bytes de un cuerpo para comprimirlo
+     * @param cacheSize bytes como máximo de páginas comprimidas en memoria (0 = sin caché)
+     */
+    public CompressingHtmlRepository(HtmlRepository delegate, int minSize, long cacheSize) {
+        this.delegate = delegate;
+        this.minSize = minSize;
+        this.cache = new CompressedPageCache(cacheSize);
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        final HTTPContentEncoding encoding =
+            HTTPContentEncoding.negotiate(req.getHeader(HTTPHeaders.ACCEPT_ENCODING.getHeader()));
+        final String uuid = HtmlRepository.pageUuid(req);
+
+        if (encoding != null && uuid != null) {
+            final CompressedPageCache.Variant cached = cache.get(uuid, encoding);
+            if (cached != null) {
+                return compressed(new HTTPResponse(), cached.contentType, cached.content, encoding);
+            }
+        }
+
+        // Antes de leerla: si se borra mientras tanto, la versión comprimida no se guarda
+        final long generation = cache.generation();
+        final HTTPResponse res = delegate.getPage(req);
+        if (res.getStatus() != HTTPResponseStatus.S200) {
+            return res;
+        }
+
+        // Los cachés intermedios deben distinguir la versión comprimida de la que no lo está
+        res.putParameter(HTTPHeaders.VARY.getHeader(), VARY_VALUE);
+        if (encoding == null) {
+            return res;
+        }
+
+        if (res.isChunked()) {
+            compressStreamed(res, encoding);
+            return res;
+        }
+
+        final byte[] content = res.getContentBytes();
+        if (content.length < minSize) {
+            return res;
+        }
+
+        final int level = uuid != null ? Deflater.BEST_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+        final byte[] encoded = encoding.encode(content, level);
+        // HTML ya comprimido o aleatorio: no compensa
+        if (encoded.length >= content.length) {
+            return res;
+        }
+
+        final String contentType = res.getParameters().get(HTTPHeaders.CONTENT_TYPE.getHeader());
+        if (uuid != null) {
+            cache.put(uuid, encoding, new CompressedPageCache.Variant(encoded, contentType), generation);
+        }
+        return compressed(res, contentType, encoded, encoding);
+    }
+
+    @Override
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        return delegate.postPage(req);
+    }
+
+    @Override
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
+        final HTTPResponse res = delegate.deletePage(req);
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid != null) {
+            cache.invalidate(uuid);
+        }
+        return res;
+    }
+
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        return delegate.exists(uuid);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        // Comprimir una página entera con el nivel máximo ocupa el hilo tanto como esperar al
+        // almacenamiento: solo no hace falta si ya está comprimida o el cliente no lo acepta
+        if (req.getMethod() == HTTPRequestMethod.GET && "html".equals(req.getResourceName())) {
+            final HTTPContentEncoding encoding =
+                HTTPContentEncoding.negotiate(req.getHeader(HTTPHeaders.ACCEPT_ENCODING.getHeader()));
+            final String uuid = HtmlRepository.pageUuid(req);
+            if (encoding != null && (uuid == null || !cache.contains(uuid, encoding))) {
+                return true;
+            }
+        }
+        return delegate.mayBlock(req);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getCacheEvictions() {
+        return cache.getEvictions();
+    }
+
+    /** Bytes comprimidos guardados ahora mismo en la caché. */
+    public long getCacheBytes() {
+        return cache.getBytes();
+    }
+
+    private static HTTPResponse compressed(HTTPResponse res, String contentType, byte[] content,
+            HTTPContentEncoding encoding) {
+        res.setStatus(HTTPResponseStatus.S200);
+        if (contentType != null) {
+            res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), contentType);
+        }
+        res.putParameter(HTTPHeaders.CONTENT_ENCODING.getHeader(), encoding.getName());
+        res.putParameter(HTTPHeaders.VARY.getHeader(), VARY_VALUE);
+        res.setContentBytes(content);
+        return res;
+    }
+
+    // El cuerpo se comprime a medida que lo genera el repositorio; cerrar el stream de
+    // compresión escribe el final del formato, pero no cierra la conexión
+    private static void compressStreamed(HTTPResponse res, HTTPContentEncoding encoding) {
+        final HTTPContentWriter writer = res.getContentWriter();
+        res.setContentWriter(out -> {
+            try (OutputStream compressed = encoding.wrap(out, Deflater.DEFAULT_COMPRESSION)) {
+                writer.writeTo(compressed);
+            }
+        });
+        res.putParameter(HTTPHeaders.CONTENT_ENCODING.getHeader(), encoding.getName());
+    }
+}
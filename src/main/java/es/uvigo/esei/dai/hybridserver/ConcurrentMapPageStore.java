@@ -0,0 +1,39 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** {@link PageStore} sobre un ConcurrentHashMap: admite cualquier clave, no solo UUID. */
+public class ConcurrentMapPageStore implements PageStore {
+    private final ConcurrentHashMap<String, byte[]> pages = new ConcurrentHashMap<>();
+
+    @Override
+    public byte[] get(String uuid) {
+        return pages.get(uuid);
+    }
+
+    @Override
+    public boolean putIfAbsent(String uuid, byte[] content) {
+        return pages.putIfAbsent(uuid, content) == null;
+    }
+
+    @Override
+    public boolean remove(String uuid) {
+        return pages.remove(uuid) != null;
+    }
+
+    @Override
+    public boolean contains(String uuid) {
+        return pages.containsKey(uuid);
+    }
+
+    @Override
+    public int size() {
+        return pages.size();
+    }
+
+    @Override
+    public Iterator<String> uuids() {
+        return pages.keySet().iterator();
+    }
+}
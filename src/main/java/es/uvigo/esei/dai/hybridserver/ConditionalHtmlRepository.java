@@ -0,0 +1,129 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentEncoding;
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Peticiones condicionales para las páginas ({@code /html?uuid=...}): añade ETag y
+ * Cache-Control a las respuestas 200 y responde 304 Not Modified, sin cuerpo, cuando el
+ * If-None-Match del cliente coincide.
+ *
+ * Una página no cambia nunca después de crearla y los UUID no se reutilizan, así que el propio
+ * UUID identifica el contenido y sirve como ETag fuerte; si la respuesta va comprimida se le
+ * añade la codificación, porque los bytes son otros. Para revalidar basta con comprobar que
+ * la página sigue existiendo ({@link HtmlRepository#exists(String)}), sin leer su contenido.
+ */
+public class ConditionalHtmlRepository implements HtmlRepository {
+    // Un año, el máximo habitual; "immutable" evita incluso la revalidación al recargar
+    private static final String CACHE_CONTROL_VALUE = "public, max-age=31536000, immutable";
+
+    private final HtmlRepository delegate;
+
+    public ConditionalHtmlRepository(HtmlRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid == null) {
+            return delegate.getPage(req);
+        }
+
+        final String ifNoneMatch = req.getHeader(HTTPHeaders.IF_NONE_MATCH.getHeader());
+        if (ifNoneMatch != null) {
+            final String matched = matchingTag(ifNoneMatch, uuid);
+            if (matched != null && delegate.exists(uuid)) {
+                return notModified(matched);
+            }
+        }
+
+        final HTTPResponse res = delegate.getPage(req);
+        if (res.getStatus() == HTTPResponseStatus.S200) {
+            final String encoding = res.getParameters().get(HTTPHeaders.CONTENT_ENCODING.getHeader());
+            res.putParameter(HTTPHeaders.ETAG.getHeader(), etag(uuid, encoding));
+            res.putParameter(HTTPHeaders.CACHE_CONTROL.getHeader(), CACHE_CONTROL_VALUE);
+        }
+        return res;
+    }
+
+    @Override
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        return delegate.postPage(req);
+    }
+
+    @Override
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
+        return delegate.deletePage(req);
+    }
+
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        return delegate.exists(uuid);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        return delegate.mayBlock(req);
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /** ETag de una página tal y como se envía (sin comprimir si {@code encoding} es null). */
+    static String etag(String uuid, String encoding) {
+        return encoding == null ? '"' + uuid + '"' : '"' + uuid + '-' + encoding + '"';
+    }
+
+    private static HTTPResponse notModified(String etag) {
+        final HTTPResponse res = new HTTPResponse();
+        res.setStatus(HTTPResponseStatus.S304);
+        res.putParameter(HTTPHeaders.ETAG.getHeader(), etag);
+        res.putParameter(HTTPHeaders.CACHE_CONTROL.getHeader(), CACHE_CONTROL_VALUE);
+        res.putParameter(HTTPHeaders.VARY.getHeader(), HTTPHeaders.ACCEPT_ENCODING.getHeader());
+        return res;
+    }
+
+    /**
+     * La etiqueta de If-None-Match que corresponde a alguna versión de la página, o null. Como
+     * manda HTTP para If-None-Match, la comparación es débil (se ignora "W/"); cualquier versión
+     * sirve porque todas tienen el mismo contenido.
+     */
+    private static String matchingTag(String ifNoneMatch, String uuid) {
+        for (String part : ifNoneMatch.split(",")) {
+            String tag = part.trim();
+            if (tag.equals("*")) {
+                return etag(uuid, null);
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() < uuid.length() + 2 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+                continue;
+            }
+            final String opaque = tag.substring(1, tag.length() - 1);
+            if (opaque.equals(uuid)
+                || (opaque.startsWith(uuid) && opaque.charAt(uuid.length()) == '-'
+                    && isEncoding(opaque.substring(uuid.length() + 1)))) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEncoding(String name) {
+        for (HTTPContentEncoding encoding : HTTPContentEncoding.values()) {
+            if (encoding.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
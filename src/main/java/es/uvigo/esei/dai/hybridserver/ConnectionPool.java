@@ -0,0 +1,403 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de conexiones JDBC acotado, para no pagar la conexión y autenticación con MySQL en cada
+ * petición HTTP.
+ *
+ * {@link #getConnection()} devuelve una conexión libre, abre una nueva si hay menos de
+ * {@code maxSize}, o espera hasta {@code acquireTimeoutMillis} a que se devuelva otra. La
+ * conexión que recibe el llamante es un envoltorio cuyo {@code close()} la devuelve al pool,
+ * así que el código de siempre con try-with-resources no cambia.
+ *
+ * Una conexión que lleva un rato sin usarse se valida con {@link Connection#isValid(int)}
+ * antes de entregarla. Un hilo de mantenimiento cierra las que llevan más de
+ * {@code idleTimeoutMillis} libres (sin bajar de {@code minSize}) y las que superan
+ * {@code maxLifetimeMillis} desde que se abrieron, y repone hasta {@code minSize}. Las
+ * conexiones físicas no se abren hasta la primera petición.
+ *
+ * Para que una base de datos que no responde no retenga a los llamantes sin límite, el driver
+ * recibe {@code connectTimeout} al abrir cada conexión y todas las sentencias que se crean con
+ * una conexión del pool llevan {@link Statement#setQueryTimeout(int)}: JDBC lo admite en
+ * segundos, así que se redondea hacia arriba.
+ */
+public class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_MIN_SIZE = 2;
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60_000;
+    public static final long DEFAULT_MAX_LIFETIME_MILLIS = 30 * 60_000;
+    public static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_QUERY_TIMEOUT_MILLIS = 10_000;
+
+    // Una conexión usada hace menos de esto se entrega sin validar
+    private static final long VALIDATION_INTERVAL_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = 30_000;
+
+    /** Conexión física y cuándo se abrió y se usó por última vez. */
+    private static final class PooledConnection {
+        final Connection connection;
+        final long createdAt;
+        long lastUsed;
+
+        PooledConnection(Connection connection, long now) {
+            this.connection = connection;
+            this.createdAt = now;
+            this.lastUsed = now;
+        }
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long connectTimeoutMillis;
+    private final int queryTimeoutSeconds;
+
+    // Libres, la usada más recientemente al principio (LIFO: las demás pueden caducar)
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    // Abiertas o abriéndose, libres o no
+    private int total;
+    private int waiting;
+    private boolean closed;
+    private ScheduledExecutorService housekeeper;
+
+    public ConnectionPool(String url, String user, String password) {
+        this(url, user, password, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS,
+            DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_LIFETIME_MILLIS);
+    }
+
+    /**
+     * @param idleTimeoutMillis tiempo máximo libre de una conexión por encima de {@code minSize} (0 = sin límite)
+     * @param maxLifetimeMillis tiempo máximo de vida de una conexión (0 = sin límite)
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long acquireTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis) {
+        this(url, user, password, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis, maxLifetimeMillis,
+            DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_QUERY_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param connectTimeoutMillis tiempo máximo para abrir una conexión con el servidor (0 = sin límite)
+     * @param queryTimeoutMillis tiempo máximo de cada sentencia, redondeado a segundos (0 = sin límite)
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long acquireTimeoutMillis, long idleTimeoutMillis, long maxLifetimeMillis,
+            long connectTimeoutMillis, long queryTimeoutMillis) {
+        if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.connectTimeoutMillis = Math.max(0, connectTimeoutMillis);
+        this.queryTimeoutSeconds = (int) Math.min(Integer.MAX_VALUE,
+            TimeUnit.MILLISECONDS.toSeconds(Math.max(0, queryTimeoutMillis) + 999));
+    }
+
+    /** Conexión del pool; al cerrarla vuelve al pool. */
+    public Connection getConnection() throws SQLException {
+        final long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+
+        while (true) {
+            final PooledConnection pooled = reserve(deadline);
+            if (pooled == null) {
+                // Hay hueco: la conexión se abre fuera del cerrojo
+                return wrap(open());
+            }
+            if (isUsable(pooled)) {
+                return wrap(pooled);
+            }
+            discard(pooled);
+        }
+    }
+
+    /** Conexiones entregadas y aún no devueltas. */
+    public synchronized int getActive() {
+        return total - idle.size();
+    }
+
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    /** Llamantes esperando a que se libere una conexión. */
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /** Cierra las conexiones libres; las que están en uso se cierran al devolverlas. */
+    @Override
+    public void close() {
+        final List<PooledConnection> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            notifyAll();
+            if (housekeeper != null) {
+                housekeeper.shutdownNow();
+            }
+        }
+        toClose.forEach(ConnectionPool::closeQuietly);
+    }
+
+    /**
+     * Una conexión libre, o null si el llamante debe abrir una nueva (ya contada en
+     * {@code total}). Espera si se ha llegado a {@code maxSize}.
+     */
+    private synchronized PooledConnection reserve(long deadline) throws SQLException {
+        startHousekeeper();
+
+        waiting++;
+        try {
+            while (!closed && idle.isEmpty() && total >= maxSize) {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new SQLTransientConnectionException(
+                        "Timed out after " + acquireTimeoutMillis + " ms waiting for a database connection");
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+        } finally {
+            waiting--;
+        }
+
+        if (closed) {
+            throw new SQLException("Connection pool closed");
+        }
+        if (!idle.isEmpty()) {
+            return idle.pollFirst();
+        }
+        total++;
+        return null;
+    }
+
+    private PooledConnection open() throws SQLException {
+        try {
+            return new PooledConnection(DriverManager.getConnection(url, connectionProperties()), System.currentTimeMillis());
+        } catch (SQLException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private Properties connectionProperties() {
+        final Properties properties = new Properties();
+        if (user != null) {
+            properties.setProperty("user", user);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        // Propiedad de Connector/J, en ms (0 = sin límite)
+        properties.setProperty("connectTimeout", Long.toString(connectTimeoutMillis));
+        return properties;
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        final long now = System.currentTimeMillis();
+        if (isExpired(pooled, now)) {
+            return false;
+        }
+        if (now - pooled.lastUsed < VALIDATION_INTERVAL_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return maxLifetimeMillis > 0 && now - pooled.createdAt >= maxLifetimeMillis;
+    }
+
+    // Llamado al cerrar el envoltorio
+    private void giveBack(PooledConnection pooled) {
+        boolean reusable;
+        try {
+            reusable = !pooled.connection.isClosed();
+            if (reusable && !pooled.connection.getAutoCommit()) {
+                // Una transacción a medias no debe llegar al siguiente
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        pooled.lastUsed = System.currentTimeMillis();
+        synchronized (this) {
+            if (reusable && !closed && !isExpired(pooled, pooled.lastUsed)) {
+                idle.addFirst(pooled);
+                notify();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    private void discard(PooledConnection pooled) {
+        release();
+        closeQuietly(pooled);
+    }
+
+    // Deja hueco para una conexión nueva
+    private synchronized void release() {
+        total--;
+        notify();
+    }
+
+    private synchronized void startHousekeeper() {
+        if (housekeeper != null || closed) {
+            return;
+        }
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "HybridServer-ConnectionPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, HOUSEKEEPING_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Cierra las conexiones libres caducadas o sobrantes y repone hasta {@code minSize}. */
+    void housekeep() {
+        final List<PooledConnection> toClose = new ArrayList<>();
+        int toOpen;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            // Las más antiguas en uso están al final
+            final Iterator<PooledConnection> oldest = idle.descendingIterator();
+            while (oldest.hasNext()) {
+                final PooledConnection pooled = oldest.next();
+                final boolean idleTooLong = idleTimeoutMillis > 0 && now - pooled.lastUsed >= idleTimeoutMillis
+                    && total - toClose.size() > minSize;
+                if (idleTooLong || isExpired(pooled, now)) {
+                    oldest.remove();
+                    toClose.add(pooled);
+                }
+            }
+            total -= toClose.size();
+            toOpen = closed ? 0 : Math.max(0, minSize - total);
+            total += toOpen;
+        }
+        toClose.forEach(ConnectionPool::closeQuietly);
+
+        for (; toOpen > 0; toOpen--) {
+            final PooledConnection pooled;
+            try {
+                pooled = open();
+            } catch (SQLException e) {
+                // La base de datos no está disponible: se reintentará en la siguiente vuelta
+                synchronized (this) {
+                    total -= toOpen - 1;
+                    notifyAll();
+                }
+                return;
+            }
+            giveBack(pooled);
+        }
+    }
+
+    private Connection wrap(PooledConnection pooled) {
+        return (Connection) Proxy.newProxyInstance(
+            ConnectionPool.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new ConnectionHandler(pooled)
+        );
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.connection.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    /** Conexión entregada: {@code close()} la devuelve al pool y después no admite más llamadas. */
+    private final class ConnectionHandler implements InvocationHandler {
+        private PooledConnection pooled;
+
+        ConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (pooled != null) {
+                        final PooledConnection returned = pooled;
+                        pooled = null;
+                        giveBack(returned);
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null || pooled.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + (pooled == null ? "[closed]" : pooled.connection.toString());
+                default:
+                    break;
+            }
+
+            if (pooled == null) {
+                throw new SQLException("Connection already returned to the pool");
+            }
+            final Object result;
+            try {
+                result = method.invoke(pooled.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // createStatement, prepareStatement y prepareCall
+            if (queryTimeoutSeconds > 0 && result instanceof Statement) {
+                ((Statement) result).setQueryTimeout(queryTimeoutSeconds);
+            }
+            return result;
+        }
+    }
+}
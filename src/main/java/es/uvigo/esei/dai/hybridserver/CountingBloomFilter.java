@@ -0,0 +1,123 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Conjunto aproximado de claves (filtro de Bloom con contadores de 4 bits, para poder borrar):
+ * si {@link #mightContain(String)} devuelve false la clave seguro que no se añadió, y si
+ * devuelve true puede que sí, con una probabilidad de equivocarse de {@code falsePositiveRate}
+ * mientras no tenga más de {@code capacity} claves. Ocupa unos 4,8 bytes por clave para un 1 %.
+ *
+ * Solo se debe quitar una clave que se añadió antes; los contadores que llegan a 15 ya no se
+ * restan, así que un borrado nunca hace que otra clave deje de estar (como mucho queda algún
+ * falso positivo de más). Se puede usar desde varios hilos a la vez.
+ */
+public class CountingBloomFilter {
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private static final int MAX_COUNT = 15;
+
+    // Cada long guarda 16 contadores de 4 bits
+    private final AtomicLongArray table;
+    private final long counters;
+    private final int hashes;
+    private final int capacity;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param capacity claves que caben antes de que empiecen a crecer los falsos positivos
+     * @param falsePositiveRate probabilidad de falso positivo con {@code capacity} claves (0-1)
+     */
+    public CountingBloomFilter(int capacity, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        this.capacity = Math.max(1, capacity);
+        // m = -n ln p / (ln 2)^2 contadores y k = m/n ln 2 funciones hash
+        final double ln2 = Math.log(2);
+        final long m = Math.max(64, (long) Math.ceil(-this.capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.table = new AtomicLongArray(Math.toIntExact((m + 15) / 16));
+        this.counters = table.length() * 16L;
+        this.hashes = (int) Math.max(1, Math.min(16, Math.round((double) counters / this.capacity * ln2)));
+    }
+
+    public void add(String key) {
+        final long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, i), 1);
+        }
+        size.incrementAndGet();
+    }
+
+    /** Quita una clave que se había añadido. */
+    public void remove(String key) {
+        final long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            update(index(hash, i), -1);
+        }
+        size.decrementAndGet();
+    }
+
+    public boolean mightContain(String key) {
+        final long hash = hash(key);
+        for (int i = 0; i < hashes; i++) {
+            final long index = index(hash, i);
+            if (count(table.get((int) (index >>> 4)), index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Claves añadidas menos las quitadas. */
+    public long size() {
+        return size.get();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void update(long index, int delta) {
+        final int slot = (int) (index >>> 4);
+        final int shift = (int) (index & 0xF) << 2;
+        while (true) {
+            final long word = table.get(slot);
+            final int count = count(word, index);
+            // Saturado: ya no se sabe cuántas claves hay detrás, así que no se toca
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+            if (table.compareAndSet(slot, word, word + ((long) delta << shift))) {
+                return;
+            }
+        }
+    }
+
+    private static int count(long word, long index) {
+        return (int) ((word >>> ((index & 0xF) << 2)) & 0xF);
+    }
+
+    // Doble hash (Kirsch-Mitzenmacher): la función i es h1 + i * h2
+    private long index(long hash, int i) {
+        final long h1 = hash >>> 32;
+        final long h2 = (hash & 0xFFFFFFFFL) | 1;
+        return Long.remainderUnsigned(h1 + i * h2, counters);
+    }
+
+    // 64 bits de hash de los caracteres (String.hashCode solo da 32 y se parece entre UUIDs)
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        // Mezcla final de MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,32 +1,138 @@
 package es.uvigo.esei.dai.hybridserver;
 
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
 import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
 import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+import es.uvigo.esei.dai.hybridserver.http.MIME;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DBdaw implements HtmlRepository {
 
-    private final String url;
-    private final String user;
-    private final String pass;
+    // Páginas más largas (en caracteres) se envían por chunks leyéndolas como stream
+    static final int STREAM_THRESHOLD = 64 * 1024;
+
+    public static final long DEFAULT_LISTING_MAX_AGE_MILLIS = 60_000;
+
+    private final ConnectionPool pool;
+
+    // Si no es null, las altas y bajas se juntan en transacciones con otras concurrentes
+    private final JdbcWriteBatcher batcher;
+
+    // GET /html ya en bytes: se carga de la tabla y lo mantienen postPage y deletePage; como la
+    // base de datos la pueden cambiar otros, se vuelve a cargar cuando tiene más de listingMaxAge.
+    // Las altas y bajas hechas mientras se recarga se guardan en listingChanges y se aplican al
+    // nuevo antes de publicarlo, para que no se pierdan en el que se descarta
+    private final long listingMaxAgeNanos;
+    private final Object listingLock = new Object();
+    private final Object listingChangesLock = new Object();
+    private volatile PageListing listing;
+    private volatile long listingLoadedAt;
+    private List<Consumer<PageListing>> listingChanges;
+
+    // UUIDs guardados, aproximadamente: si no está en el filtro, la página no existe y no hace falta
+    // preguntar a la base de datos. Cuando tiene más páginas que capacidad se rehace con el doble
+    // en segundo plano, en filterRebuilder; mientras, las altas van a los dos (null = sin filtro)
+    private static final int MIN_FILTER_CAPACITY = 1024;
+    private final double falsePositiveRate;
+    private final ExecutorService filterRebuilder;
+    private final Object filterLock = new Object();
+    private volatile CountingBloomFilter filter;
+    private CountingBloomFilter nextFilter;
+    private final AtomicLong avoidedLookups = new AtomicLong();
+
+    // Donde se leen las páginas grandes mientras se envían, para que cuenten en el mismo límite
+    // que el resto de consultas (null = en el hilo que envía la respuesta)
+    private final Executor streamExecutor;
 
     public DBdaw(String url, String user, String pass) {
-        this.url = url;
-        this.user = user;
-        this.pass = pass;
+        this(new ConnectionPool(url, user, pass));
+    }
+
+    public DBdaw(ConnectionPool pool) {
+        this(pool, DEFAULT_LISTING_MAX_AGE_MILLIS);
+    }
+
+    /** @param listingMaxAgeMillis ms que se sirve el listado sin volver a consultar la tabla (0 = siempre se consulta) */
+    public DBdaw(ConnectionPool pool, long listingMaxAgeMillis) {
+        this(pool, listingMaxAgeMillis, null);
     }
 
-    /** 🔹 Método auxiliar para abrir una nueva conexión por petición */
+    /** @param batcher por donde pasan las altas y bajas (null = una transacción por petición); se cierra con este */
+    public DBdaw(ConnectionPool pool, long listingMaxAgeMillis, JdbcWriteBatcher batcher) {
+        this(pool, listingMaxAgeMillis, batcher, 0);
+    }
+
+    /**
+     * @param falsePositiveRate de un filtro con los UUIDs de la tabla, que se carga ahora y
+     *        responde 404 sin consultarla a las páginas que seguro no existen (0 = sin filtro).
+     *        Solo vale si la tabla no recibe altas por otro camino que este repositorio
+     */
+    public DBdaw(ConnectionPool pool, long listingMaxAgeMillis, JdbcWriteBatcher batcher, double falsePositiveRate) {
+        this(pool, listingMaxAgeMillis, batcher, falsePositiveRate, null);
+    }
+
+    /**
+     * @param streamExecutor executor de las consultas, en el que se leen también las páginas que se
+     *        envían por chunks mientras el hilo de la respuesta espera; si está lleno, el envío
+     *        falla enseguida (null = en el hilo de la respuesta)
+     */
+    public DBdaw(ConnectionPool pool, long listingMaxAgeMillis, JdbcWriteBatcher batcher, double falsePositiveRate,
+            Executor streamExecutor) {
+        this.pool = pool;
+        this.streamExecutor = streamExecutor;
+        this.listingMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(listingMaxAgeMillis);
+        this.batcher = batcher;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filterRebuilder = falsePositiveRate > 0 ? Executors.newSingleThreadExecutor(task -> {
+            final Thread thread = new Thread(task, "HybridServer-FilterRebuild");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        if (falsePositiveRate > 0) {
+            try {
+                this.filter = loadFilter(new CountingBloomFilter(
+                        Math.max(MIN_FILTER_CAPACITY, 2 * countPages()), falsePositiveRate));
+            } catch (SQLException e) {
+                System.err.println("[WARN] No se pudo cargar el filtro de UUIDs, se consultará siempre la base de datos");
+            }
+        }
+    }
+
+    /** 🔹 Método auxiliar para tomar una conexión del pool (se devuelve al cerrarla) */
     private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, user, pass);
+        return pool.getConnection();
+    }
+
+    /** Pool de conexiones, para consultar cuántas hay en uso o esperando. */
+    public ConnectionPool getPool() {
+        return pool;
     }
 
     @Override
-    public String getPage(HTTPRequest req) throws IOException {
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
         // 1) raíz → página de bienvenida (200)
         final String chain = req.getResourceChain();
         if (chain == null || chain.isEmpty() || "/".equals(chain)) {
@@ -45,31 +151,29 @@ public class DBdaw implements HtmlRepository {
         final Map<String, String> params = req.getResourceParameters();
         final String uuid = params != null ? params.get("uuid") : null;
 
-        // GET /html → listado
+        // GET /html → listado, ya preparado en bytes; con limit/after, una página de él
         if (uuid == null || uuid.isBlank()) {
-            StringBuilder html = new StringBuilder("<html><body><h1>Paginas</h1><ul>");
-            try (Connection c = getConnection();
-                    PreparedStatement ps = c.prepareStatement("SELECT uuid FROM hstestdb.HTML ORDER BY uuid");
-                    ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    String id = rs.getString("uuid");
-                    html.append("<li><a href=\"html?uuid=").append(id).append("\">").append(id).append("</a></li>");
-                }
-            } catch (SQLException e) {
-                return err(HTTPResponseStatus.S500, "Database error");
+            if (params != null && (params.containsKey("limit") || params.containsKey("after"))) {
+                return listingPage(params.get("limit"), params.get("after"));
             }
-            html.append("</ul></body></html>");
-            return ok(html.toString());
+            return listing();
         }
 
-        // GET /html?uuid=xxx → recuperar página
+        // GET /html?uuid=xxx → recuperar página (las grandes se envían por chunks)
+        if (definitelyMissing(uuid)) {
+            return err(HTTPResponseStatus.S404, "Not found");
+        }
         try (Connection c = getConnection();
-                PreparedStatement ps = c.prepareStatement("SELECT content FROM HTML WHERE uuid = ?")) {
-            ps.setString(1, uuid);
+                PreparedStatement ps = c.prepareStatement(
+                        "SELECT CASE WHEN CHAR_LENGTH(content) <= ? THEN CONVERT(content USING utf8mb4) END AS content, "
+                        + "CHAR_LENGTH(content) AS length FROM HTML WHERE uuid = ?")) {
+            ps.setInt(1, STREAM_THRESHOLD);
+            ps.setString(2, uuid);
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    String content = rs.getString("content");
-                    return ok(content);
+                    // Ya en UTF-8 desde el servidor: se envían los bytes sin pasar por un String
+                    final byte[] content = rs.getBytes("content");
+                    return content != null ? ok(content) : largePage(uuid);
                 } else {
                     return err(HTTPResponseStatus.S404, "Not found");
                 }
@@ -79,8 +183,197 @@ public class DBdaw implements HtmlRepository {
         }
     }
 
+    private HTTPResponse listing() {
+        final PageListing current;
+        try {
+            current = currentListing();
+        } catch (SQLException e) {
+            return err(HTTPResponseStatus.S500, "Database error");
+        }
+        HTTPResponse res = new HTTPResponse();
+        res.setStatus(HTTPResponseStatus.S200);
+        res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), MIME.TEXT_HTML.getMime());
+        res.setContentWriter(current::writeTo);
+        return res;
+    }
+
+    // Paginación por clave: recorre la clave primaria desde "after", sin OFFSET, así que cada
+    // página cuesta lo mismo esté donde esté
+    private HTTPResponse listingPage(String limitParam, String after) {
+        final int limit = PageListing.pageSize(limitParam);
+        if (limit < 0) {
+            return err(HTTPResponseStatus.S400, "Invalid limit parameter");
+        }
+        final boolean first = after == null || after.isBlank();
+
+        final List<String> uuids = new ArrayList<>();
+        try (Connection c = getConnection();
+                PreparedStatement ps = c.prepareStatement(first
+                        ? "SELECT uuid FROM HTML ORDER BY uuid LIMIT ?"
+                        : "SELECT uuid FROM HTML WHERE uuid > ? ORDER BY uuid LIMIT ?")) {
+            int parameter = 1;
+            if (!first) {
+                ps.setString(parameter++, after.trim());
+            }
+            // Una más para saber si hay página siguiente
+            ps.setInt(parameter, limit + 1);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    uuids.add(rs.getString("uuid"));
+                }
+            }
+        } catch (SQLException e) {
+            return err(HTTPResponseStatus.S500, "Database error");
+        }
+
+        final StringBuilder html = new StringBuilder("<html><body><h1>Paginas</h1><ul>");
+        for (String id : uuids.subList(0, Math.min(limit, uuids.size()))) {
+            html.append("<li><a href=\"html?uuid=").append(id).append("\">").append(id).append("</a></li>");
+        }
+        html.append("</ul>");
+        if (uuids.size() > limit) {
+            html.append("<p><a rel=\"next\" href=\"html?limit=").append(limit).append("&amp;after=")
+                .append(URLEncoder.encode(uuids.get(limit - 1), StandardCharsets.UTF_8))
+                .append("\">Next page</a></p>");
+        }
+        html.append("</body></html>");
+        return ok(html.toString());
+    }
+
+    private PageListing currentListing() throws SQLException {
+        PageListing current = listing;
+        if (current != null && System.nanoTime() - listingLoadedAt < listingMaxAgeNanos) {
+            return current;
+        }
+        synchronized (listingLock) {
+            // Puede que otro hilo lo haya cargado mientras tanto
+            current = listing;
+            if (current != null && System.nanoTime() - listingLoadedAt < listingMaxAgeNanos) {
+                return current;
+            }
+            final long loadedAt = System.nanoTime();
+            final PageListing loaded = new PageListing(
+                    "<html><body><h1>Paginas</h1>", "<ul></ul>", "</body></html>", "html?uuid=");
+            final List<String> uuids = new ArrayList<>();
+            synchronized (listingChangesLock) {
+                listingChanges = new ArrayList<>();
+            }
+            try {
+                try (Connection c = getConnection();
+                        PreparedStatement ps = streamingStatement(c, "SELECT uuid FROM hstestdb.HTML ORDER BY uuid");
+                        ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        uuids.add(rs.getString("uuid"));
+                    }
+                }
+                loaded.addAll(uuids.iterator());
+                synchronized (listingChangesLock) {
+                    // Las que ya estaban en la tabla al leerla se repiten, pero add y remove no cambian nada
+                    listingChanges.forEach(change -> change.accept(loaded));
+                    listing = loaded;
+                    listingLoadedAt = loadedAt;
+                }
+                return loaded;
+            } finally {
+                synchronized (listingChangesLock) {
+                    listingChanges = null;
+                }
+            }
+        }
+    }
+
+    // Se llama después de confirmar el cambio en la tabla: una recarga que empiece más tarde ya lo ve
+    private void updateListing(Consumer<PageListing> change) {
+        final PageListing current;
+        synchronized (listingChangesLock) {
+            if (listingChanges != null) {
+                listingChanges.add(change);
+            }
+            current = listing;
+        }
+        if (current != null) {
+            change.accept(current);
+        }
+    }
+
+    private HTTPResponse largePage(String uuid) {
+        HTTPResponse res = new HTTPResponse();
+        res.setStatus(HTTPResponseStatus.S200);
+        res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), MIME.TEXT_HTML.getMime());
+        res.setContentWriter(out -> onStreamExecutor(() -> streamPage(uuid, out)));
+        return res;
+    }
+
+    private void streamPage(String uuid, OutputStream out) throws IOException {
+        Writer html = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        try (Connection c = getConnection();
+                PreparedStatement ps = streamingStatement(c, "SELECT content FROM HTML WHERE uuid = ?")) {
+            ps.setString(1, uuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IOException("Page deleted while sending it: " + uuid);
+                }
+                try (Reader content = rs.getCharacterStream("content")) {
+                    content.transferTo(html);
+                }
+            }
+            html.flush();
+        } catch (SQLException e) {
+            throw new IOException("Database error", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StorageTask {
+        void run() throws IOException;
+    }
+
+    // El hilo que envía la respuesta espera a que termine; lo que escribe la tarea en la conexión
+    // lo ve al volver de get()
+    private void onStreamExecutor(StorageTask task) throws IOException {
+        if (streamExecutor == null) {
+            task.run();
+            return;
+        }
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            streamExecutor.execute(() -> {
+                try {
+                    task.run();
+                    done.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    done.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Storage executor full", e);
+        }
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while streaming a page");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    /**
+     * Sentencia de solo lectura cuyo ResultSet llega fila a fila en lugar de cargarse entero
+     * en memoria (con Connector/J, fetch size Integer.MIN_VALUE).
+     */
+    private static PreparedStatement streamingStatement(Connection c, String sql) throws SQLException {
+        PreparedStatement ps = c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(Integer.MIN_VALUE);
+        return ps;
+    }
+
     @Override
-    public String postPage(HTTPRequest req) throws IOException {
+    public HTTPResponse postPage(HTTPRequest req) throws IOException {
         final String resource = req.getResourceName();
         if (resource == null || !resource.equals("html"))
             return err(HTTPResponseStatus.S400, "Bad Request");
@@ -93,14 +386,13 @@ public class DBdaw implements HtmlRepository {
 
         final String uuid = UUID.randomUUID().toString();
 
-        try (Connection c = getConnection();
-                PreparedStatement ps = c.prepareStatement("INSERT INTO HTML (uuid, content) VALUES (?, ?)")) {
-            ps.setString(1, uuid);
-            ps.setString(2, htmlContent);
-            ps.executeUpdate();
+        try {
+            insert(uuid, htmlContent);
         } catch (SQLException e) {
             return err(HTTPResponseStatus.S500, "Database error");
         }
+        updateListing(current -> current.add(uuid));
+        addToFilter(uuid);
 
         final String link = "<a href=\"html?uuid=" + uuid + "\">" + uuid + "</a>";
         final String body = "<html><body><h1>Created</h1><p>" + link + "</p></body></html>";
@@ -108,7 +400,7 @@ public class DBdaw implements HtmlRepository {
     }
 
     @Override
-    public String deletePage(HTTPRequest req) throws IOException {
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
         final String resource = req.getResourceName();
         if (resource == null || !resource.equals("html"))
             return err(HTTPResponseStatus.S400, "Bad Request");
@@ -120,37 +412,185 @@ public class DBdaw implements HtmlRepository {
             return err(HTTPResponseStatus.S400, "Missing uuid parameter");
         }
 
-        try (Connection c = getConnection();
-                PreparedStatement ps = c.prepareStatement("DELETE FROM HTML WHERE uuid = ?")) {
-            ps.setString(1, uuid);
-            int deleted = ps.executeUpdate();
-            if (deleted == 0)
+        try {
+            if (!delete(uuid))
                 return err(HTTPResponseStatus.S404, "Page not found");
         } catch (SQLException e) {
             return err(HTTPResponseStatus.S500, "Database error");
         }
+        updateListing(current -> current.remove(uuid));
+        final CountingBloomFilter currentFilter = filter;
+        if (currentFilter != null) {
+            // Solo del que está en uso: si hay uno cargándose, puede que aún la vea en la tabla
+            currentFilter.remove(uuid);
+        }
 
         return ok("<html><body><h1>Deleted</h1></body></html>");
     }
 
+    // Vuelven cuando el cambio está confirmado, vaya o no en un lote
+    private void insert(String uuid, String content) throws SQLException {
+        if (batcher != null) {
+            batcher.insert(uuid, content);
+            return;
+        }
+        try (Connection c = getConnection();
+                PreparedStatement ps = c.prepareStatement("INSERT INTO HTML (uuid, content) VALUES (?, ?)")) {
+            ps.setString(1, uuid);
+            ps.setString(2, content);
+            ps.executeUpdate();
+        }
+    }
+
+    private boolean delete(String uuid) throws SQLException {
+        if (batcher != null) {
+            return batcher.delete(uuid);
+        }
+        try (Connection c = getConnection();
+                PreparedStatement ps = c.prepareStatement("DELETE FROM HTML WHERE uuid = ?")) {
+            ps.setString(1, uuid);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
     @Override
-    public boolean exists(String path) {
+    public boolean mayBlock(HTTPRequest req) {
+        // La bienvenida y los 400 no consultan la base de datos
+        return "html".equals(req.getResourceName());
+    }
+
+    @Override
+    public boolean exists(String uuid) throws IOException {
+        if (definitelyMissing(uuid)) {
+            return false;
+        }
+        // Solo la clave primaria: no se lee el contenido
+        try (Connection c = getConnection();
+                PreparedStatement ps = c.prepareStatement("SELECT 1 FROM HTML WHERE uuid = ?")) {
+            ps.setString(1, uuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            // No es lo mismo que no exista: el error tiene que llegar a quien lo vigila
+            throw new IOException("Database error", e);
+        }
+    }
+
+    private boolean definitelyMissing(String uuid) {
+        final CountingBloomFilter current = filter;
+        if (current != null && !current.mightContain(uuid)) {
+            avoidedLookups.incrementAndGet();
+            return true;
+        }
         return false;
     }
 
-    private String ok(String body) {
-        return "HTTP/1.1 200 OK\r\n"
-                + "Content-Type: text/html\r\n"
-                + "Connection: close\r\n"
-                + "\r\n"
-                + body;
+    private void addToFilter(String uuid) {
+        final CountingBloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        synchronized (filterLock) {
+            current.add(uuid);
+            if (nextFilter != null) {
+                nextFilter.add(uuid);
+                return;
+            }
+            if (current.size() <= current.capacity()) {
+                return;
+            }
+            nextFilter = new CountingBloomFilter(2 * current.capacity(), falsePositiveRate);
+        }
+        try {
+            filterRebuilder.execute(this::rebuildFilter);
+        } catch (RejectedExecutionException e) {
+            // Se está cerrando: ya no hace falta ampliarlo
+            synchronized (filterLock) {
+                nextFilter = null;
+            }
+        }
+    }
+
+    private void rebuildFilter() {
+        final CountingBloomFilter next;
+        synchronized (filterLock) {
+            next = nextFilter;
+        }
+        try {
+            loadFilter(next);
+        } catch (SQLException e) {
+            System.err.println("[WARN] No se pudo ampliar el filtro de UUIDs: " + e.getMessage());
+            synchronized (filterLock) {
+                nextFilter = null;
+            }
+            return;
+        }
+        synchronized (filterLock) {
+            // Tiene lo que había en la tabla más las altas de mientras se cargaba; alguna puede
+            // estar dos veces o haberse borrado, lo que solo deja algún falso positivo
+            filter = next;
+            nextFilter = null;
+        }
+    }
+
+    private CountingBloomFilter loadFilter(CountingBloomFilter target) throws SQLException {
+        try (Connection c = getConnection();
+                PreparedStatement ps = streamingStatement(c, "SELECT uuid FROM HTML");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                target.add(rs.getString("uuid"));
+            }
+        }
+        return target;
+    }
+
+    private int countPages() throws SQLException {
+        try (Connection c = getConnection();
+                PreparedStatement ps = c.prepareStatement("SELECT COUNT(*) FROM HTML");
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /** Peticiones de páginas que el filtro respondió sin consultar la base de datos. */
+    public long getAvoidedLookups() {
+        return avoidedLookups.get();
+    }
+
+    /** Páginas que caben en el filtro de UUIDs sin pasar de la tasa de falsos positivos (0 = sin filtro). */
+    public int getFilterCapacity() {
+        final CountingBloomFilter current = filter;
+        return current != null ? current.capacity() : 0;
+    }
+
+    @Override
+    public void close() {
+        // Primero lo que quede por confirmar o por cargar en el filtro, que necesita el pool
+        if (batcher != null) {
+            batcher.close();
+        }
+        if (filterRebuilder != null) {
+            filterRebuilder.shutdownNow();
+            try {
+                filterRebuilder.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pool.close();
+    }
+
+    private static HTTPResponse ok(String body) {
+        return HTTPResponse.html(HTTPResponseStatus.S200, body);
+    }
+
+    private static HTTPResponse ok(byte[] body) {
+        return HTTPResponse.html(HTTPResponseStatus.S200, body);
     }
 
-    private String err(HTTPResponseStatus status, String msg) {
-        return "HTTP/1.1 " + status.getCode() + " " + status.getStatus() + "\r\n"
-                + "Content-Type: text/html\r\n"
-                + "Connection: close\r\n\r\n"
-                + "<html><body><h1>" + status.getCode() + " " + status.getStatus() + "</h1><p>"
-                + msg + "</p></body></html>";
+    private static HTTPResponse err(HTTPResponseStatus status, String msg) {
+        return HTTPResponse.error(status, msg);
     }
 }
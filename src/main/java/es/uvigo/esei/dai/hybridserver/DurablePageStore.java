@@ -0,0 +1,311 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durabilidad opcional para el modo memoria: envuelve otro {@link PageStore} (que sigue siendo
+ * el que responde a las lecturas) y anota cada alta y cada borrado en un
+ * {@link WriteAheadLog} antes de aplicarlo. Al abrirlo sobre un directorio con datos se
+ * reconstruye el estado: primero la última instantánea y después los registros del log
+ * posteriores a ella.
+ *
+ * Cada {@code snapshotIntervalMillis} (si ha habido cambios) y al cerrar se guarda una
+ * instantánea compacta con todas las páginas ({@code snapshot-NNNN.dat}) y se borran los
+ * ficheros del log que ya cubre, así que el arranque no depende de todo lo que se haya escrito
+ * desde el principio. La instantánea se toma sin parar las escrituras: el log se rota antes de
+ * empezarla y lo que se escribe mientras tanto se vuelve a aplicar al recuperar, cosa que no
+ * cambia el resultado porque altas y borrados se pueden repetir.
+ */
+public class DurablePageStore implements PageStore, AutoCloseable {
+
+    /** Cuándo se fuerza el log a disco. */
+    public enum Fsync {
+        /** En cada escritura, antes de responder. */
+        ALWAYS,
+        /** Varias escrituras juntas cada pocos ms; cada una responde cuando la suya está en disco. */
+        GROUP,
+        /** Cuando lo decida el sistema operativo: sobrevive a la caída del proceso, no a un corte de luz. */
+        OS
+    }
+
+    public static final long DEFAULT_GROUP_COMMIT_MILLIS = 5;
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = 60_000;
+
+    private final PageStore pages;
+    private final Path directory;
+    private final WriteAheadLog log;
+    private final boolean snapshots;
+    private final ScheduledExecutorService snapshotter;
+    // Serializa las instantáneas, para que una antigua no sustituya a otra más reciente
+    private final Object snapshotLock = new Object();
+
+    private final long snapshotPages;
+    private final long replayedRecords;
+    private boolean dirty;
+    private boolean closed;
+
+    public DurablePageStore(PageStore pages, Path directory) throws IOException {
+        this(pages, directory, Fsync.GROUP, DEFAULT_GROUP_COMMIT_MILLIS, DEFAULT_SNAPSHOT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param pages almacén vacío en el que se cargan las páginas y que responde a las lecturas
+     * @param groupCommitMillis con {@link Fsync#GROUP}, cuánto se espera a juntar escrituras
+     * @param snapshotIntervalMillis cada cuánto se guarda la instantánea; 0 = nunca, ni al cerrar
+     *        (el log crece sin límite)
+     */
+    public DurablePageStore(PageStore pages, Path directory, Fsync fsync, long groupCommitMillis,
+            long snapshotIntervalMillis) throws IOException {
+        this.pages = pages;
+        this.directory = directory;
+        this.log = new WriteAheadLog(directory, fsync, Math.max(1, groupCommitMillis));
+        this.snapshots = snapshotIntervalMillis > 0;
+
+        Files.createDirectories(directory);
+        final long[] loaded = new long[1];
+        final long covered = loadSnapshot(loaded);
+        this.snapshotPages = loaded[0];
+        this.replayedRecords = log.recover(covered, replayTarget());
+        this.dirty = replayedRecords > 0;
+
+        if (snapshots) {
+            this.snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "HybridServer-Snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("[WARN] No se pudo guardar la instantánea de las páginas: " + e.getMessage());
+                }
+            }, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotter = null;
+        }
+    }
+
+    @Override
+    public byte[] get(String uuid) {
+        return pages.get(uuid);
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String uuid) {
+        return pages.getBuffer(uuid);
+    }
+
+    @Override
+    public boolean putIfAbsent(String uuid, byte[] content) {
+        final long mark;
+        synchronized (this) {
+            if (pages.contains(uuid)) {
+                return false;
+            }
+            mark = write(WriteAheadLog.PUT, uuid, content);
+            pages.putIfAbsent(uuid, content);
+            dirty = true;
+        }
+        awaitDurable(mark);
+        return true;
+    }
+
+    @Override
+    public boolean remove(String uuid) {
+        final long mark;
+        synchronized (this) {
+            if (!pages.contains(uuid)) {
+                return false;
+            }
+            mark = write(WriteAheadLog.DELETE, uuid, null);
+            pages.remove(uuid);
+            dirty = true;
+        }
+        awaitDurable(mark);
+        return true;
+    }
+
+    @Override
+    public boolean contains(String uuid) {
+        return pages.contains(uuid);
+    }
+
+    @Override
+    public int size() {
+        return pages.size();
+    }
+
+    @Override
+    public Iterator<String> uuids() {
+        return pages.uuids();
+    }
+
+    /** Páginas cargadas de la instantánea al abrir. */
+    public long getSnapshotPages() {
+        return snapshotPages;
+    }
+
+    /** Registros del log aplicados al abrir (los posteriores a la instantánea). */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    /** Guarda ahora una instantánea si ha habido cambios y borra el log que cubre. */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            final long covered;
+            synchronized (this) {
+                if (!dirty || closed) {
+                    return;
+                }
+                // Lo que se escriba a partir de aquí va a otro fichero del log, que no se borra
+                covered = log.rotate();
+                dirty = false;
+            }
+
+            try {
+                writeSnapshot(covered);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+            for (Path old : snapshotFiles().headMap(covered, false).values()) {
+                Files.deleteIfExists(old);
+            }
+            log.deleteUpTo(covered);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (snapshots) {
+                snapshot();
+            }
+        } finally {
+            synchronized (this) {
+                closed = true;
+            }
+            log.close();
+        }
+    }
+
+    private long write(byte type, String uuid, byte[] content) {
+        try {
+            return log.append(type, uuid, content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir en el log", e);
+        }
+    }
+
+    private void awaitDurable(long mark) {
+        try {
+            log.awaitDurable(mark);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo forzar el log a disco", e);
+        }
+    }
+
+    // ===== instantánea =====
+
+    // Una página por registro, en el formato del log (cada uno con su CRC); la generación del log
+    // que cubre va en el nombre del fichero
+    private void writeSnapshot(long covered) throws IOException {
+        final Path temporary = directory.resolve("snapshot.tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+            for (Iterator<String> uuids = pages.uuids(); uuids.hasNext();) {
+                final String uuid = uuids.next();
+                final byte[] content = pages.get(uuid);
+                // Si se ha borrado mientras tanto, el borrado está en el log que no se borra
+                if (content != null) {
+                    out.write(WriteAheadLog.encode(WriteAheadLog.PUT, uuid, content));
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(String.format("snapshot-%016d.dat", covered)),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Carga la instantánea más reciente que sea válida y devuelve la última generación del log
+    // que cubre (0 si no hay ninguna); en loaded[0] deja cuántas páginas tenía
+    private long loadSnapshot(long[] loaded) throws IOException {
+        final WriteAheadLog.Replay target = replayTarget();
+        for (Map.Entry<Long, Path> snapshot : snapshotFiles().descendingMap().entrySet()) {
+            final Path path = snapshot.getValue();
+            final long[] valid = new long[1];
+            final long count = WriteAheadLog.replay(path, target, valid);
+            if (valid[0] == Files.size(path)) {
+                loaded[0] = count;
+                return snapshot.getKey();
+            }
+            // Se deshace lo cargado antes de probar con otra
+            System.err.printf("[WARN] Instantánea %s corrupta (byte %d), se descarta%n", path.getFileName(), valid[0]);
+            final List<String> partial = new ArrayList<>();
+            pages.uuids().forEachRemaining(partial::add);
+            partial.forEach(pages::remove);
+        }
+        return 0;
+    }
+
+    // Altas y borrados se pueden aplicar más de una vez con el mismo resultado
+    private WriteAheadLog.Replay replayTarget() {
+        return new WriteAheadLog.Replay() {
+            @Override
+            public void put(String key, byte[] content) {
+                pages.putIfAbsent(key, content);
+            }
+
+            @Override
+            public void delete(String key) {
+                pages.remove(key);
+            }
+        };
+    }
+
+    private TreeMap<Long, Path> snapshotFiles() throws IOException {
+        final TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "snapshot-*.dat")) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring("snapshot-".length(), name.length() - ".dat".length())), path);
+                } catch (NumberFormatException e) {
+                    System.err.println("[WARN] Fichero ignorado en el directorio de instantáneas: " + name);
+                }
+            }
+        }
+        return files;
+    }
+}
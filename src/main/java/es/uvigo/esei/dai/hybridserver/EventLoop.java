@@ -0,0 +1,173 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hilo con un {@link Selector} que atiende muchas conexiones a la vez. Cualquier cambio sobre
+ * sus canales (registros, respuestas listas...) se encola con {@link #execute(Runnable)} para
+ * que lo aplique el propio loop, de modo que las SelectionKey solo se tocan desde su hilo.
+ */
+class EventLoop implements Runnable {
+    private static final long IDLE_SWEEP_MILLIS = 1000;
+
+    private final EventLoopServer server;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks;
+    private volatile boolean stop;
+    private long lastSweep = System.currentTimeMillis();
+
+    EventLoop(EventLoopServer server, String name) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    void start() {
+        this.thread.start();
+    }
+
+    void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    void registerAcceptor(ServerSocketChannel serverChannel) {
+        execute(() -> {
+            try {
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new EventLoopConnection(this, server, channel, key));
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        try {
+            final int idleTimeout = server.getKeepAlive().getTimeoutMillis();
+            while (!stop) {
+                if (idleTimeout > 0) {
+                    selector.select(IDLE_SWEEP_MILLIS);
+                    closeIdleConnections(idleTimeout);
+                } else {
+                    selector.select();
+                }
+                runTasks();
+
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                        } else {
+                            final EventLoopConnection connection = (EventLoopConnection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                    } catch (CancelledKeyException ignore) {
+                        // La conexión se cerró mientras se procesaba
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (!stop) e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() instanceof SocketChannel) {
+                    closeQuietly(key.channel());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private void closeIdleConnections(int idleTimeout) {
+        final long now = System.currentTimeMillis();
+        if (now - lastSweep < IDLE_SWEEP_MILLIS) {
+            return;
+        }
+        lastSweep = now;
+
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof EventLoopConnection) {
+                ((EventLoopConnection) key.attachment()).closeIfIdle(now, idleTimeout);
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                server.assign(channel);
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    void shutdown() {
+        this.stop = true;
+        this.selector.wakeup();
+    }
+
+    void awaitTermination() {
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
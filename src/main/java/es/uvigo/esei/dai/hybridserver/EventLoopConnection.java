@@ -0,0 +1,203 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestParser;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Estado de una conexión atendida por un {@link EventLoop}: pasa los bytes leídos a un
+ * {@link HTTPRequestParser}, que guarda la petición a medio leer entre lecturas, y cuando está
+ * completa envía la respuesta que le devuelve el pool de trabajadores. Con keep-alive la
+ * conexión vuelve a leer tras cada respuesta; los bytes sobrantes son el inicio de la
+ * siguiente petición.
+ *
+ * La respuesta puede llegar entera ({@link #send(ByteBuffer[], boolean)}) o por partes a
+ * través de un {@link EventLoopOutputStream} cuando el cuerpo se genera mientras se envía.
+ * Salvo esos métodos y {@link #close()}, todos se llaman desde el hilo del loop.
+ */
+class EventLoopConnection {
+    private static final int BUFFER_SIZE = 4 * 1024;
+    private static final ByteBuffer[] NO_BUFFERS = new ByteBuffer[0];
+
+    private final EventLoop loop;
+    private final EventLoopServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+
+    private final ByteBuffer in;
+    private final HTTPRequestParser parser;
+    // Buffers pendientes de la respuesta en curso, escritos con un único write "gathering"
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    // Stream por el que llega la respuesta en curso si se genera por partes
+    private EventLoopOutputStream stream;
+    private boolean responseComplete;
+    private boolean keepOpen;
+    private boolean busy;
+    private int served;
+    private long lastActivity;
+
+    EventLoopConnection(EventLoop loop, EventLoopServer server, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.in = ByteBuffer.allocate(BUFFER_SIZE);
+        this.parser = new HTTPRequestParser();
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    void onReadable() {
+        final int read;
+        try {
+            read = channel.read(in);
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+
+        if (read == -1) {
+            closeNow();
+            return;
+        }
+
+        lastActivity = System.currentTimeMillis();
+        processInput();
+    }
+
+    void onWritable() {
+        final long written;
+        try {
+            written = channel.write(out.toArray(NO_BUFFERS));
+        } catch (IOException e) {
+            closeNow();
+            return;
+        }
+
+        while (!out.isEmpty() && !out.peek().hasRemaining()) {
+            out.poll();
+        }
+        if (stream != null && written > 0) {
+            stream.released((int) written);
+        }
+
+        if (!out.isEmpty()) {
+            return;
+        }
+        if (!responseComplete) {
+            // Esperando a que el trabajador genere más
+            key.interestOps(0);
+            return;
+        }
+
+        stream = null;
+        responseComplete = false;
+        busy = false;
+        lastActivity = System.currentTimeMillis();
+
+        if (!keepOpen) {
+            closeNow();
+            return;
+        }
+
+        key.interestOps(SelectionKey.OP_READ);
+        // Puede que ya tengamos la siguiente petición (pipelining)
+        if (in.position() > 0) {
+            processInput();
+        }
+    }
+
+    /** Cierra la conexión si lleva más de {@code timeoutMillis} sin actividad y sin petición en curso. */
+    void closeIfIdle(long now, int timeoutMillis) {
+        if (!busy && now - lastActivity > timeoutMillis) {
+            closeNow();
+        }
+    }
+
+    /** Llamado desde un hilo del pool cuando la respuesta está lista. */
+    void send(ByteBuffer[] response, boolean keepOpen) {
+        loop.execute(() -> enqueue(response, null, true, keepOpen));
+    }
+
+    /** Stream para enviar por partes la respuesta a la petición en curso. */
+    EventLoopOutputStream openStream(boolean keepOpen) {
+        return new EventLoopOutputStream(this, keepOpen);
+    }
+
+    /** Llamado por {@link EventLoopOutputStream} desde el hilo del pool. */
+    void sendPart(ByteBuffer part, EventLoopOutputStream stream) {
+        loop.execute(() -> enqueue(new ByteBuffer[] { part }, stream, false, false));
+    }
+
+    /** Llamado por {@link EventLoopOutputStream} desde el hilo del pool. */
+    void sendLast(EventLoopOutputStream stream, boolean keepOpen) {
+        loop.execute(() -> enqueue(NO_BUFFERS, stream, true, keepOpen));
+    }
+
+    /** Cierra la conexión desde cualquier hilo. */
+    void close() {
+        loop.execute(this::closeNow);
+    }
+
+    private void processInput() {
+        final HTTPRequest request;
+        in.flip();
+        try {
+            request = parser.parse(in);
+        } catch (HTTPParseException e) {
+            final HTTPResponse res = ClientHandler.errorResponse(HTTPResponseStatus.S400, "Bad Request");
+            res.putParameter(HTTPHeaders.CONNECTION.getHeader(), "close");
+            enqueue(HTTPResponseEncoder.encode(res), null, true, false);
+            return;
+        } finally {
+            // Lo que no se haya consumido es el inicio de la siguiente petición
+            in.compact();
+        }
+
+        if (request != null) {
+            // Mientras el pool trabaja no se lee más de este canal
+            busy = true;
+            key.interestOps(0);
+            server.dispatch(this, request, ++served);
+        }
+    }
+
+    private void enqueue(ByteBuffer[] buffers, EventLoopOutputStream stream, boolean last, boolean keepOpen) {
+        if (!key.isValid()) {
+            if (stream != null) {
+                stream.abort();
+            }
+            return;
+        }
+
+        for (ByteBuffer buffer : buffers) {
+            this.out.add(buffer);
+        }
+        this.stream = stream;
+        this.busy = true;
+        if (last) {
+            this.responseComplete = true;
+            this.keepOpen = keepOpen;
+        }
+        key.interestOps(SelectionKey.OP_WRITE);
+        // Casi siempre cabe en el buffer del socket: se intenta sin esperar al selector
+        onWritable();
+    }
+
+    private void closeNow() {
+        key.cancel();
+        EventLoop.closeQuietly(channel);
+        if (stream != null) {
+            stream.abort();
+        }
+    }
+}
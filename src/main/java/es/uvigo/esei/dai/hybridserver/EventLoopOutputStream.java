@@ -0,0 +1,91 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stream con el que un hilo del pool envía por partes una respuesta a una conexión NIO. Cada
+ * escritura se copia y se pasa al loop; si hay más de {@link #MAX_PENDING} bytes sin enviar
+ * el trabajador se bloquea hasta que el cliente los lea, así que la memoria por respuesta no
+ * depende del tamaño del cuerpo.
+ */
+class EventLoopOutputStream extends OutputStream {
+    static final int MAX_PENDING = 64 * 1024;
+    // Si el cliente no lee en este tiempo se da la respuesta por perdida
+    private static final long WRITE_TIMEOUT_MILLIS = 30_000;
+
+    private final EventLoopConnection connection;
+    private final boolean keepOpen;
+
+    private int pending;
+    private boolean aborted;
+    private boolean finished;
+
+    EventLoopOutputStream(EventLoopConnection connection, boolean keepOpen) {
+        this.connection = connection;
+        this.keepOpen = keepOpen;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+        if (len == 0) {
+            return;
+        }
+
+        awaitRoom(len);
+        connection.sendPart(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)), this);
+    }
+
+    /** Marca la respuesta como completa; después la conexión vuelve a leer o se cierra. */
+    void finish() {
+        if (!finished) {
+            finished = true;
+            connection.sendLast(this, keepOpen);
+        }
+    }
+
+    /** Llamado desde el loop: se han enviado {@code bytes} bytes. */
+    synchronized void released(int bytes) {
+        pending -= bytes;
+        notifyAll();
+    }
+
+    /** Llamado desde el loop: la conexión se ha cerrado. */
+    synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+
+    private synchronized void awaitRoom(int len) throws IOException {
+        final long deadline = System.currentTimeMillis() + WRITE_TIMEOUT_MILLIS;
+        try {
+            // Siempre se admite al menos una escritura aunque sea mayor que el límite
+            while (!aborted && pending > 0 && pending + len > MAX_PENDING) {
+                final long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    throw new IOException("Timed out waiting for the client to read");
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        if (aborted) {
+            throw new IOException("Connection closed");
+        }
+        pending += len;
+    }
+}
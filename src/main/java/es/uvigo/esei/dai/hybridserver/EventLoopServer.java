@@ -0,0 +1,147 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+
+/**
+ * Modo "nio" del servidor: unos pocos hilos con un Selector cada uno (event loops) aceptan,
+ * leen y escriben sin bloquear todas las conexiones abiertas. Las peticiones completas se
+ * pasan al {@link AsyncHtmlRepository}, que responde en el momento lo que está en memoria y
+ * manda a su propio executor lo que espera a la base de datos; el loop no espera a ninguna.
+ * El pool de trabajadores solo genera los cuerpos que se envían por chunks.
+ */
+class EventLoopServer implements AutoCloseable {
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final int port;
+    private final ExecutorService workers;
+    private final AsyncHtmlRepository repository;
+    private final ResponseBytesCache responses;
+    private final KeepAlive keepAlive;
+    private final EventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    private ServerSocketChannel serverChannel;
+
+    EventLoopServer(int port, int numLoops, ExecutorService workers, AsyncHtmlRepository repository,
+            ResponseBytesCache responses, KeepAlive keepAlive) {
+        this.port = port;
+        this.workers = workers;
+        this.repository = repository;
+        this.responses = responses;
+        this.keepAlive = keepAlive;
+        this.loops = new EventLoop[numLoops];
+    }
+
+    void start() throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, "HybridServer-EventLoop-" + i);
+        }
+
+        // El primer loop también se encarga de aceptar conexiones y repartirlas
+        loops[0].registerAcceptor(serverChannel);
+
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    /** Reparte las conexiones aceptadas entre los loops (round-robin). */
+    void assign(SocketChannel channel) {
+        final int index = Math.floorMod(nextLoop.getAndIncrement(), loops.length);
+        loops[index].register(channel);
+    }
+
+    KeepAlive getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Pide al repositorio la respuesta a una petición completa (se llama desde el loop, que no
+     * espera) y la devuelve a su loop cuando está. {@code served} es el número de la petición
+     * dentro de la conexión.
+     */
+    void dispatch(EventLoopConnection connection, HTTPRequest request, int served) {
+        // Las respuestas guardadas en bytes se envían desde el loop sin pasar por el repositorio
+        final byte[] cached = responses.get(request);
+        if (cached != null) {
+            final boolean keepOpen = keepAlive.keepOpen(request, served);
+            connection.send(ResponseBytesCache.buffers(cached, keepAlive.headerLines(keepOpen, served)), keepOpen);
+            return;
+        }
+
+        final long generation = responses.generation();
+        ClientHandler.respondAsync(request, repository).whenComplete((response, error) -> {
+            if (error != null) {
+                response = ClientHandler.failureResponse(error);
+            } else {
+                responses.put(request, response, generation);
+            }
+            send(connection, request, served, response);
+        });
+    }
+
+    private void send(EventLoopConnection connection, HTTPRequest request, int served, HTTPResponse response) {
+        final boolean keepOpen = keepAlive.keepOpen(request, served);
+        keepAlive.apply(response, keepOpen, served);
+
+        if (!response.isChunked()) {
+            // Se codifica en el hilo que la ha generado: el loop solo copia bytes al socket
+            connection.send(HTTPResponseEncoder.encode(response), keepOpen);
+            return;
+        }
+        try {
+            // El cuerpo se genera en un trabajador mientras el loop lo va enviando
+            workers.execute(() -> {
+                final EventLoopOutputStream out = connection.openStream(keepOpen);
+                try {
+                    HTTPResponseEncoder.write(response, out);
+                    out.finish();
+                } catch (IOException | RuntimeException e) {
+                    connection.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // El servidor se está cerrando
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.awaitTermination();
+            }
+        }
+
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ignore) {
+            }
+            serverChannel = null;
+        }
+    }
+}
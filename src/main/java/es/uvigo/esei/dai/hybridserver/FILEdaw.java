@@ -0,0 +1,26 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.Collections;
+
+/**
+ * Modo fichero: las mismas respuestas que {@link MAPdaw}, pero con las páginas guardadas en un
+ * {@link LogPageStore} en disco, así que sobreviven a que el servidor se pare.
+ */
+public class FILEdaw extends MAPdaw {
+
+    private final LogPageStore store;
+
+    public FILEdaw(LogPageStore store) {
+        super(Collections.emptyMap(), store);
+        this.store = store;
+    }
+
+    public LogPageStore getStore() {
+        return store;
+    }
+
+    @Override
+    protected String getModeName() {
+        return "File mode";
+    }
+}
@@ -0,0 +1,86 @@
+package es.uvigo.esei.dai.hybridserver;
+
+/**
+ * Estimación aproximada de cuántas veces se ha pedido cada clave (Count-Min sketch con
+ * contadores de 4 bits), usada por {@link PageCache} para decidir si una página nueva merece
+ * desplazar a otra. Ocupa 8 bytes por cada contador de 16 sin guardar las claves.
+ *
+ * Cada {@code 10 * ancho} incrementos se dividen todos los contadores entre dos, de modo que
+ * lo que fue popular hace tiempo va perdiendo peso frente a lo que se pide ahora.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // Cada long guarda 16 contadores de 4 bits
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    /** @param expectedEntries número aproximado de claves distintas a seguir */
+    FrequencySketch(int expectedEntries) {
+        final int counters = Integer.highestOneBit(Math.max(64, expectedEntries - 1) << 1);
+        this.table = new long[Math.max(1, counters / 16) * DEPTH];
+        this.sampleSize = 10 * counters;
+    }
+
+    /** Frecuencia estimada (0-15). */
+    int frequency(Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            final int index = indexOf(hash, i);
+            final int shift = offsetOf(hash, i);
+            frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            final int index = indexOf(hash, i);
+            final int shift = offsetOf(hash, i);
+            if (((table[index] >>> shift) & 0xF) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    // Divide entre dos todos los contadores
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions - (odd >>> 2)) >>> 1;
+    }
+
+    // Cada fila usa su propio cuarto de la tabla y su propia función hash
+    private int indexOf(int hash, int row) {
+        final long h = (hash + SEEDS[row]) * SEEDS[row];
+        final int rowLength = table.length / DEPTH;
+        return row * rowLength + (int) ((h >>> 32) & (rowLength - 1));
+    }
+
+    private static int offsetOf(int hash, int row) {
+        return (((hash >>> (row * 8)) & 0xF) << 2);
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -1,17 +1,39 @@
 package es.uvigo.esei.dai.hybridserver;
 
 import java.io.IOException;
-
+import java.util.Map;
 
 import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
 
 
 public interface HtmlRepository extends AutoCloseable {
-    String getPage(HTTPRequest req) throws IOException;
-    String postPage(HTTPRequest req) throws IOException;
-    String deletePage(HTTPRequest req) throws IOException;
-    boolean exists(String path);
+    // La cabecera Connection la decide quien gestiona la conexión, no el repositorio
+    HTTPResponse getPage(HTTPRequest req) throws IOException;
+    HTTPResponse postPage(HTTPRequest req) throws IOException;
+    HTTPResponse deletePage(HTTPRequest req) throws IOException;
+    // Si existe la página, sin cargar su contenido
+    boolean exists(String uuid) throws IOException;
+
+    // Si responder a la petición puede esperar al almacenamiento (base de datos, disco); si no,
+    // AsyncHtmlRepository la responde en el mismo hilo en lugar de pasarla a otro
+    default boolean mayBlock(HTTPRequest req) {
+        return true;
+    }
 
     @Override
     default void close() throws Exception {}
+
+    // UUID si la petición es de una página concreta (/html?uuid=...), o null
+    static String pageUuid(HTTPRequest req) {
+        if (!"html".equals(req.getResourceName())) {
+            return null;
+        }
+        final Map<String, String> params = req.getResourceParameters();
+        final String uuid = params != null ? params.get("uuid") : null;
+        if (uuid == null || uuid.trim().isEmpty()) {
+            return null;
+        }
+        return uuid.trim();
+    }
 }
@@ -1,13 +1,26 @@
 package es.uvigo.esei.dai.hybridserver;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HybridServer implements AutoCloseable {
   private int SERVICE_PORT = 8888;
@@ -15,21 +28,201 @@ public class HybridServer implements AutoCloseable {
   private Thread serverThread;
   private volatile boolean stop;
   private ExecutorService executor;
+  private volatile ServerSocket serverSocket;
+
+  // Modo de E/S: "blocking" (un hilo por conexión) o "nio" (event loops con Selector)
+  private boolean nioMode;
+  private int eventLoops = 2;
+  private EventLoopServer eventLoopServer;
+
+  // Hilos que esperan a la base de datos, aparte de los que atienden conexiones o los event loops,
+  // con su propia cola y tiempo máximo en ella: si la base de datos se atasca, solo se llenan
+  // estos y el resto de peticiones siguen atendiéndose (0 = sin executor propio)
+  private int storageThreads;
+  private int storageQueue;
+  private long storageQueueTimeout;
+  private ExecutorService storageExecutor;
+
+  // Conexiones persistentes (keep-alive) y conexiones atendidas ahora mismo en modo bloqueante
+  private KeepAlive keepAlive = new KeepAlive(KeepAlive.DEFAULT_TIMEOUT_MILLIS, KeepAlive.DEFAULT_MAX_REQUESTS);
+  private final Set<ClientHandler> handlers = ConcurrentHashMap.newKeySet();
+
+  // Caché de páginas delante del repositorio (en bytes)
+  private boolean pageCache = true;
+  private long pageCacheSize = CachingHtmlRepository.DEFAULT_CACHE_SIZE;
+
+  // Respuestas completas ya codificadas de las páginas más pedidas, delante de todo (en bytes)
+  private boolean responseCache = true;
+  private long responseCacheSize = ResponseBytesCache.DEFAULT_CACHE_SIZE;
+
+  // Una sola lectura del repositorio para las peticiones simultáneas de una misma página
+  private boolean coalescing = true;
+
+  // Compresión gzip/deflate de las respuestas y caché de las páginas ya comprimidas
+  private boolean compression = true;
+  private int compressionMinSize = CompressingHtmlRepository.DEFAULT_MIN_SIZE;
+  private long compressionCacheSize = CompressingHtmlRepository.DEFAULT_CACHE_SIZE;
 
   private final HtmlRepository repository;
 
   public HybridServer() {
-    this.repository = new DBdaw("jdbc:mysql://localhost:3306/hstestdb","hsdb","hsdbpass"); 
+    this.repository = decorate(new DBdaw("jdbc:mysql://localhost:3306/hstestdb","hsdb","hsdbpass"));
     this.numClients = 50;
   }
 
   public HybridServer(Map<String,String> pages) {
-    this.repository = new MAPdaw(pages); 
+    this.repository = decorate(new MAPdaw(pages));
     this.numClients = 50;
   }
 
+  // Modo memoria, pero con el resto de opciones (puerto, hilos, modo de E/S) leídas de la configuración
+  public HybridServer(Map<String,String> pages, Properties properties) {
+    configure(properties);
+    PageStore store = pageStore(properties);
+    if ("offheap".equalsIgnoreCase(properties.getProperty("map.storage", "index").trim())) {
+        // 🔹 Las páginas están fuera del heap: las cachés volverían a copiarlas en él
+        this.pageCache = false;
+        this.responseCache = false;
+    }
+    this.repository = decorate(new MAPdaw(pages, store));
+  }
+
 public HybridServer(Properties properties) {
-    
+    configure(properties);
+
+    // 🔹 Repositorio: "db" (MySQL, por defecto), "file" (segmentos en disco) o "map" (memoria, sin páginas iniciales)
+    String type = properties.getProperty("repository", "db").trim();
+    if (type.equalsIgnoreCase("file")) {
+        this.repository = decorate(new FILEdaw(logPageStore(properties)));
+    } else if (type.equalsIgnoreCase("map")) {
+        this.repository = decorate(new MAPdaw(Collections.emptyMap(), pageStore(properties)));
+    } else {
+        if (!type.equalsIgnoreCase("db")) {
+            System.err.println("[WARN] Valor inválido para 'repository', usando 'db' por defecto");
+        }
+        // 🔹 ms que se sirve el listado preparado antes de volver a leerlo de la tabla (0 = en cada petición)
+        int listingMaxAge = Math.max(0, intProperty(properties, "db.listing.maxAge", (int) DBdaw.DEFAULT_LISTING_MAX_AGE_MILLIS));
+        ConnectionPool pool = connectionPool(properties);
+        // 🔹 Hilos para las consultas: por defecto, uno por conexión del pool; peticiones que pueden esperar
+        // a que haya uno libre (por defecto, el doble) y ms como mucho esperando (0 = sin límite)
+        this.storageThreads = intProperty(properties, "db.executor.threads",
+            Math.max(1, intProperty(properties, "db.pool.maxSize", ConnectionPool.DEFAULT_MAX_SIZE)));
+        if (this.storageThreads <= 0) {
+            System.err.println("[WARN] 'db.executor.threads' menor o igual que 0, ajustando a 1");
+            this.storageThreads = 1;
+        }
+        this.storageQueue = Math.max(0, intProperty(properties, "db.executor.queue", 2 * this.storageThreads));
+        this.storageQueueTimeout = Math.max(0, intProperty(properties, "db.executor.queueTimeout", 1000));
+        if (!nioMode && this.storageThreads + this.storageQueue >= numClients) {
+            System.err.println("[WARN] 'db.executor.threads' + 'db.executor.queue' no es menor que 'numClients': "
+                + "las consultas lentas pueden ocupar todos los hilos");
+        }
+        this.repository = decorate(circuitBreaker(
+            new DBdaw(pool, listingMaxAge, writeBatcher(pool, properties), filterFalsePositiveRate(properties),
+                this::executeOnStorage), properties));
+    }
+
+    System.out.printf("[INFO] Servidor configurado en puerto %d con pool de %d hilos%n", SERVICE_PORT, numClients);
+}
+
+// 🔹 Las páginas grandes se leen de la base de datos al enviarlas: también en el executor de las consultas
+private void executeOnStorage(Runnable task) {
+    Executor storage = this.storageExecutor;
+    if (storage == null) {
+        task.run();
+    } else {
+        storage.execute(task);
+    }
+}
+
+private static ConnectionPool connectionPool(Properties properties) {
+    // 🔹 Credenciales de base de datos
+    String url  = properties.getProperty("db.url");
+    String user = properties.getProperty("db.user");
+    String pass = properties.getProperty("db.password");
+
+    // 🔹 Pool de conexiones: tamaño mínimo y máximo, y tiempos en ms (0 = sin límite de inactividad o de vida)
+    int minSize = intProperty(properties, "db.pool.minSize", ConnectionPool.DEFAULT_MIN_SIZE);
+    int maxSize = intProperty(properties, "db.pool.maxSize", ConnectionPool.DEFAULT_MAX_SIZE);
+    if (maxSize <= 0) {
+        System.err.println("[WARN] 'db.pool.maxSize' menor o igual que 0, ajustando a 1");
+        maxSize = 1;
+    }
+    minSize = Math.max(0, Math.min(minSize, maxSize));
+    // 🔹 ms como mucho para abrir una conexión y para cada consulta, que se redondea a segundos (0 = sin límite)
+    return new ConnectionPool(url, user, pass, minSize, maxSize,
+        Math.max(0, intProperty(properties, "db.pool.acquireTimeout", (int) ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS)),
+        Math.max(0, intProperty(properties, "db.pool.idleTimeout", (int) ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS)),
+        Math.max(0, intProperty(properties, "db.pool.maxLifetime", (int) ConnectionPool.DEFAULT_MAX_LIFETIME_MILLIS)),
+        Math.max(0, intProperty(properties, "db.connectTimeout", (int) ConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS)),
+        Math.max(0, intProperty(properties, "db.queryTimeout", (int) ConnectionPool.DEFAULT_QUERY_TIMEOUT_MILLIS)));
+}
+
+// 🔹 Circuit breaker: fallos seguidos (errores o consultas de más de slowCall ms) que lo abren y ms que responde 503
+// sin consultar la base de datos antes de probar con una petición
+private static HtmlRepository circuitBreaker(HtmlRepository repository, Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty("db.breaker.enabled", "true").trim())) {
+        return repository;
+    }
+    int threshold = intProperty(properties, "db.breaker.failureThreshold", CircuitBreakerHtmlRepository.DEFAULT_FAILURE_THRESHOLD);
+    if (threshold <= 0) {
+        System.err.println("[WARN] 'db.breaker.failureThreshold' menor o igual que 0, ajustando a 1");
+        threshold = 1;
+    }
+    int slowCall = Math.max(0, intProperty(properties, "db.breaker.slowCall", (int) CircuitBreakerHtmlRepository.DEFAULT_SLOW_CALL_MILLIS));
+    int openTime = Math.max(0, intProperty(properties, "db.breaker.openTime", (int) CircuitBreakerHtmlRepository.DEFAULT_OPEN_MILLIS));
+    return new CircuitBreakerHtmlRepository(repository, threshold, slowCall, openTime);
+}
+
+// 🔹 Altas y bajas juntas en una transacción: como máximo db.batch.maxSize, esperando db.batch.window ms desde
+// la primera (null si no está activado)
+private static JdbcWriteBatcher writeBatcher(ConnectionPool pool, Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty("db.batch.enabled", "false").trim())) {
+        return null;
+    }
+    int maxSize = intProperty(properties, "db.batch.maxSize", JdbcWriteBatcher.DEFAULT_MAX_BATCH_SIZE);
+    if (maxSize <= 0) {
+        System.err.println("[WARN] 'db.batch.maxSize' menor o igual que 0, ajustando a 1");
+        maxSize = 1;
+    }
+    int window = Math.max(0, intProperty(properties, "db.batch.window", (int) JdbcWriteBatcher.DEFAULT_WINDOW_MILLIS));
+    return new JdbcWriteBatcher(pool, maxSize, window);
+}
+
+// 🔹 Filtro de UUIDs delante de la tabla: probabilidad de que una página que no existe se consulte igualmente
+// (0 si no está activado)
+private static double filterFalsePositiveRate(Properties properties) {
+    if (!Boolean.parseBoolean(properties.getProperty("db.filter.enabled", "false").trim())) {
+        return 0;
+    }
+    double rate = doubleProperty(properties, "db.filter.falsePositiveRate", CountingBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+    if (!(rate > 0 && rate < 1)) {
+        System.err.printf("[WARN] 'db.filter.falsePositiveRate' fuera de (0, 1), usando %s por defecto%n",
+            CountingBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+        rate = CountingBloomFilter.DEFAULT_FALSE_POSITIVE_RATE;
+    }
+    return rate;
+}
+
+// 🔹 Modo fichero: directorio de los segmentos, su tamaño, si cada escritura se fuerza a disco y cada cuántos ms
+// se compacta y se guarda la instantánea del índice (0 = solo al cerrar)
+private static LogPageStore logPageStore(Properties properties) {
+    Path directory = Paths.get(properties.getProperty("file.directory", "pages").trim());
+    int segmentSize = intProperty(properties, "file.segmentSize", LogPageStore.DEFAULT_SEGMENT_SIZE);
+    if (segmentSize < 1024) {
+        System.err.println("[WARN] 'file.segmentSize' menor que 1024, ajustando a 1024");
+        segmentSize = 1024;
+    }
+    boolean fsync = Boolean.parseBoolean(properties.getProperty("file.fsync", "false").trim());
+    int interval = Math.max(0, intProperty(properties, "file.maintenanceInterval", (int) LogPageStore.DEFAULT_MAINTENANCE_INTERVAL_MILLIS));
+    try {
+        return new LogPageStore(directory, segmentSize, fsync, interval);
+    } catch (IOException e) {
+        throw new UncheckedIOException("No se pudo abrir el almacén de páginas en " + directory, e);
+    }
+}
+
+private void configure(Properties properties) {
     int port = 8888; // valor por defecto
     String portStr = properties.getProperty("port");
     if (portStr != null) {
@@ -60,15 +253,126 @@ public HybridServer(Properties properties) {
 
     this.numClients = threads;
 
-    // 🔹 Credenciales de base de datos
-    String url  = properties.getProperty("db.url");
-    String user = properties.getProperty("db.user");
-    String pass = properties.getProperty("db.password");
+    // 🔹 Modo de E/S: con "nio" unos pocos event loops atienden todas las conexiones abiertas
+    String mode = properties.getProperty("server.mode", "blocking").trim();
+    if (mode.equalsIgnoreCase("nio")) {
+        this.nioMode = true;
+    } else if (!mode.equalsIgnoreCase("blocking")) {
+        System.err.println("[WARN] Valor inválido para 'server.mode', usando 'blocking' por defecto");
+    }
 
-    // 🔹 Crea el repositorio basado en base de datos
-    this.repository = new DBdaw(url, user, pass);
+    this.eventLoops = intProperty(properties, "server.eventLoops", 2);
+    if (this.eventLoops <= 0) {
+        System.err.println("[WARN] 'server.eventLoops' menor o igual que 0, ajustando a 1");
+        this.eventLoops = 1;
+    }
 
-    System.out.printf("[INFO] Servidor configurado en puerto %d con pool de %d hilos%n", SERVICE_PORT, numClients);
+    // 🔹 Keep-alive: ms de espera entre peticiones (0 = sin límite) y peticiones por conexión (1 = sin keep-alive)
+    int timeout = intProperty(properties, "server.keepAliveTimeout", KeepAlive.DEFAULT_TIMEOUT_MILLIS);
+    int maxRequests = intProperty(properties, "server.maxKeepAliveRequests", KeepAlive.DEFAULT_MAX_REQUESTS);
+    if (timeout <= 0 && !this.nioMode) {
+        // Cada conexión abierta ocupa un hilo del pool: sin límite, los clientes inactivos lo llenarían
+        System.err.printf("[WARN] 'server.keepAliveTimeout' sin límite solo vale en modo nio, usando %d ms%n",
+            KeepAlive.DEFAULT_TIMEOUT_MILLIS);
+        timeout = KeepAlive.DEFAULT_TIMEOUT_MILLIS;
+    }
+    this.keepAlive = new KeepAlive(Math.max(0, timeout), Math.max(1, maxRequests));
+
+    // 🔹 Caché de páginas: bytes máximos de contenido en memoria
+    this.pageCache = Boolean.parseBoolean(properties.getProperty("cache.enabled", "true").trim());
+    this.pageCacheSize = Math.max(0, intProperty(properties, "cache.size", (int) CachingHtmlRepository.DEFAULT_CACHE_SIZE));
+
+    // 🔹 Caché de respuestas listas para enviar: bytes máximos de respuestas en memoria
+    this.responseCache = Boolean.parseBoolean(properties.getProperty("cache.responses.enabled", "true").trim());
+    this.responseCacheSize = Math.max(0, intProperty(properties, "cache.responses.size", (int) ResponseBytesCache.DEFAULT_CACHE_SIZE));
+
+    // 🔹 Lecturas simultáneas de una misma página: una sola consulta al repositorio para todas
+    this.coalescing = Boolean.parseBoolean(properties.getProperty("coalescing.enabled", "true").trim());
+
+    // 🔹 Compresión: bytes mínimos para comprimir una respuesta y bytes máximos de páginas comprimidas en caché
+    this.compression = Boolean.parseBoolean(properties.getProperty("compression.enabled", "true").trim());
+    this.compressionMinSize = Math.max(0, intProperty(properties, "compression.minSize", CompressingHtmlRepository.DEFAULT_MIN_SIZE));
+    this.compressionCacheSize = Math.max(0, intProperty(properties, "compression.cacheSize", (int) CompressingHtmlRepository.DEFAULT_CACHE_SIZE));
+}
+
+// 🔹 Almacén del modo memoria: "index" (índice por UUID con el contenido en segmentos), "offheap" (igual, con
+// los segmentos fuera del heap) o "concurrent" (ConcurrentHashMap)
+private static PageStore pageStore(Properties properties) {
+    String storage = properties.getProperty("map.storage", "index").trim();
+    PageStore store;
+    if (storage.equalsIgnoreCase("concurrent")) {
+        store = new ConcurrentMapPageStore();
+    } else if (storage.equalsIgnoreCase("offheap")) {
+        store = new UuidPageIndex(true);
+    } else {
+        if (!storage.equalsIgnoreCase("index")) {
+            System.err.println("[WARN] Valor inválido para 'map.storage', usando 'index' por defecto");
+        }
+        store = new UuidPageIndex();
+    }
+    return Boolean.parseBoolean(properties.getProperty("map.durable", "false").trim()) ? durable(store, properties) : store;
+}
+
+// 🔹 Modo memoria duradero: directorio del log y de las instantáneas, cuándo se fuerza el log a disco
+// ("always", "group" cada groupCommit ms u "os") y cada cuántos ms se guarda la instantánea (0 = nunca)
+private static DurablePageStore durable(PageStore store, Properties properties) {
+    Path directory = Paths.get(properties.getProperty("map.durable.directory", "wal").trim());
+    String policy = properties.getProperty("map.durable.fsync", "group").trim();
+    DurablePageStore.Fsync fsync;
+    try {
+        fsync = DurablePageStore.Fsync.valueOf(policy.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+        System.err.println("[WARN] Valor inválido para 'map.durable.fsync', usando 'group' por defecto");
+        fsync = DurablePageStore.Fsync.GROUP;
+    }
+    int groupCommit = Math.max(1, intProperty(properties, "map.durable.groupCommit", (int) DurablePageStore.DEFAULT_GROUP_COMMIT_MILLIS));
+    int interval = Math.max(0, intProperty(properties, "map.durable.snapshotInterval", (int) DurablePageStore.DEFAULT_SNAPSHOT_INTERVAL_MILLIS));
+    try {
+        return new DurablePageStore(store, directory, fsync, groupCommit, interval);
+    } catch (IOException e) {
+        throw new UncheckedIOException("No se pudo recuperar el modo memoria desde " + directory, e);
+    }
+}
+
+private HtmlRepository decorate(HtmlRepository repository) {
+    // Debajo de la caché: junta los fallos simultáneos de una misma página en una sola lectura
+    if (coalescing) {
+        repository = new CoalescingHtmlRepository(repository);
+    }
+    if (pageCache) {
+        repository = new CachingHtmlRepository(repository, pageCacheSize);
+    }
+    if (compression) {
+        repository = new CompressingHtmlRepository(repository, compressionMinSize, compressionCacheSize);
+    }
+    // Fuera de la compresión, para que el ETag distinga la versión comprimida
+    return new ConditionalHtmlRepository(repository);
+}
+
+private static double doubleProperty(Properties properties, String name, double defaultValue) {
+    String value = properties.getProperty(name);
+    if (value == null) {
+        return defaultValue;
+    }
+    try {
+        return Double.parseDouble(value.trim());
+    } catch (NumberFormatException ignore) {
+        System.err.printf("[WARN] Valor inválido para '%s', usando %s por defecto%n", name, defaultValue);
+        return defaultValue;
+    }
+}
+
+private static int intProperty(Properties properties, String name, int defaultValue) {
+    String value = properties.getProperty(name);
+    if (value == null) {
+        return defaultValue;
+    }
+    try {
+        return Integer.parseInt(value.trim());
+    } catch (NumberFormatException ignore) {
+        System.err.printf("[WARN] Valor inválido para '%s', usando %d por defecto%n", name, defaultValue);
+        return defaultValue;
+    }
 }
 
 
@@ -79,14 +383,67 @@ public HybridServer(Properties properties) {
   public void start() {
     
     this.executor = Executors.newFixedThreadPool(numClients);
+    final ResponseBytesCache responses = new ResponseBytesCache(responseCache ? responseCacheSize : 0);
 
     this.stop = false;
+
+    // Lo que espera a la base de datos va a su propio executor, con un máximo de peticiones en cola;
+    // sin él, en modo bloqueante se hace en el hilo de la conexión y en modo "nio" en el pool
+    Executor storage = nioMode ? executor : Runnable::run;
+    if (storageThreads > 0) {
+      this.storageExecutor = new ThreadPoolExecutor(storageThreads, storageThreads, 0L, TimeUnit.MILLISECONDS,
+          storageQueue > 0 ? new ArrayBlockingQueue<>(storageQueue) : new SynchronousQueue<>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "HybridServer-DB-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      storage = this.storageExecutor;
+    }
+    final AsyncHtmlRepository storageRepository = AsyncHtmlRepository.of(repository, storage, storageQueueTimeout);
+
+    if (nioMode) {
+      // Los event loops solo aceptan, leen y escriben; el pool genera los cuerpos por chunks
+      this.eventLoopServer = new EventLoopServer(SERVICE_PORT, eventLoops, executor,
+          storageRepository, responses, keepAlive);
+      try {
+        this.eventLoopServer.start();
+      } catch (IOException e) {
+        throw new UncheckedIOException("No se pudo iniciar el servidor NIO en el puerto " + SERVICE_PORT, e);
+      }
+      return;
+    }
+
+    // Se enlaza el puerto antes de volver, para que el servidor acepte conexiones en cuanto start() termina
+    final ServerSocket serverSocket;
+    try {
+      serverSocket = new ServerSocket(SERVICE_PORT);
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo abrir el puerto " + SERVICE_PORT, e);
+    }
+    this.serverSocket = serverSocket;
+
     this.serverThread = new Thread(() -> {
-      try (final ServerSocket serverSocket = new ServerSocket(SERVICE_PORT)) {
-        while (true) {
+      try (serverSocket) {
+        while (!stop) {
           final Socket socket = serverSocket.accept();
           if (stop) { try { socket.close(); } catch (IOException ignore) {} break; }
-          executor.submit(new ClientHandler(socket, repository)); 
+          final ClientHandler handler = new ClientHandler(socket, storageRepository, responses, keepAlive, handlers,
+              numClients);
+          handlers.add(handler);
+          executor.submit(handler);
+          // 🔹 Con todos los hilos ocupados, una conexión keep-alive inactiva deja el suyo a la nueva
+          if (handlers.size() > numClients) {
+            for (ClientHandler other : handlers) {
+              if (other.yieldIfIdle()) {
+                break;
+              }
+            }
+          }
         }
       } catch (IOException e) {
         if (!stop) e.printStackTrace();
@@ -99,7 +456,18 @@ public HybridServer(Properties properties) {
   @Override
 public void close() {
   this.stop = true;
-  try (Socket ignored = new Socket("localhost", SERVICE_PORT)) { } catch (IOException ignore) {}
+
+  if (this.eventLoopServer != null) {
+    this.eventLoopServer.close();
+    this.eventLoopServer = null;
+  }
+
+  // Cerrar el ServerSocket desbloquea el accept() del hilo servidor
+  final ServerSocket serverSocket = this.serverSocket;
+  if (serverSocket != null) {
+    try { serverSocket.close(); } catch (IOException ignore) {}
+    this.serverSocket = null;
+  }
 
   try {
     if (this.serverThread != null) this.serverThread.join();
@@ -109,18 +477,37 @@ public void close() {
     this.serverThread = null;
   }
 
-  if (this.executor != null) {
-    this.executor.shutdown();
-    try {
-      if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
-        this.executor.shutdownNow();
-      }
-    } catch (InterruptedException e) {
-      this.executor.shutdownNow();
-      Thread.currentThread().interrupt();
-    } finally {
-      this.executor = null;
+  // Las conexiones keep-alive que esperan otra petición no deben retrasar el cierre
+  for (ClientHandler handler : this.handlers) {
+    handler.closeIfIdle();
+  }
+
+  // Primero lo que espera a la base de datos: sus respuestas por chunks aún necesitan el pool
+  shutdown(this.storageExecutor);
+  this.storageExecutor = null;
+  shutdown(this.executor);
+  this.executor = null;
+
+  // Cierra las conexiones del pool de la base de datos, si lo hay
+  try {
+    this.repository.close();
+  } catch (Exception e) {
+    e.printStackTrace();
+  }
+}
+
+private static void shutdown(ExecutorService executor) {
+  if (executor == null) {
+    return;
+  }
+  executor.shutdown();
+  try {
+    if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+      executor.shutdownNow();
     }
+  } catch (InterruptedException e) {
+    executor.shutdownNow();
+    Thread.currentThread().interrupt();
   }
 }
 
@@ -0,0 +1,254 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Junta las altas y bajas de páginas que llegan a la vez en una sola transacción (group
+ * commit): un hilo recoge las operaciones pendientes durante {@code windowMillis} desde la
+ * primera, o hasta {@code maxBatchSize}, las ejecuta con {@code executeBatch()} sobre una
+ * conexión del pool con auto-commit desactivado y hace un único commit. Cada llamante espera
+ * en {@link #insert(String, String)} o {@link #delete(String)} hasta que su operación está
+ * confirmada, así que la respuesta HTTP no sale antes de que lo esté, igual que sin juntarlas.
+ *
+ * Las operaciones se ejecutan en el orden en que llegan. Si el lote falla (por ejemplo, un
+ * UUID repetido), se deshace entero y se repite operación a operación con auto-commit, para
+ * que el error llegue solo a quien lo causó.
+ */
+public class JdbcWriteBatcher implements AutoCloseable {
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_WINDOW_MILLIS = 2;
+
+    private static final String INSERT = "INSERT INTO HTML (uuid, content) VALUES (?, ?)";
+    private static final String DELETE = "DELETE FROM HTML WHERE uuid = ?";
+
+    /** Alta (content != null) o baja pendiente, y su resultado: filas afectadas. */
+    private static final class Operation {
+        final String uuid;
+        final String content;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        Operation(String uuid, String content) {
+            this.uuid = uuid;
+            this.content = content;
+        }
+
+        boolean isInsert() {
+            return content != null;
+        }
+    }
+
+    // Marca que despierta al hilo al cerrar
+    private static final Operation CLOSE = new Operation(null, null);
+
+    private final ConnectionPool pool;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final LinkedBlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private boolean closed;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+
+    public JdbcWriteBatcher(ConnectionPool pool) {
+        this(pool, DEFAULT_MAX_BATCH_SIZE, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param maxBatchSize operaciones como máximo por transacción
+     * @param windowMillis cuánto se espera desde la primera operación a que lleguen más (0 = solo
+     *        se juntan las que ya estaban esperando mientras se confirmaba el lote anterior)
+     */
+    public JdbcWriteBatcher(ConnectionPool pool, int maxBatchSize, long windowMillis) {
+        this.pool = pool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.worker = new Thread(this::run, "HybridServer-JdbcBatcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Inserta la página y espera a que esté confirmada. */
+    public void insert(String uuid, String content) throws SQLException {
+        submit(new Operation(uuid, content));
+    }
+
+    /** Borra la página y espera a que esté confirmado; false si no existía. */
+    public boolean delete(String uuid) throws SQLException {
+        final int rows = submit(new Operation(uuid, null));
+        return rows > 0 || rows == Statement.SUCCESS_NO_INFO;
+    }
+
+    /** Transacciones hechas. */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /** Operaciones confirmadas o fallidas. */
+    public long getOperations() {
+        return operations.get();
+    }
+
+    /** Lotes que fallaron y se repitieron operación a operación. */
+    public long getRetriedBatches() {
+        return retried.get();
+    }
+
+    /** Termina las operaciones ya recibidas y para el hilo; las siguientes fallan. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Detrás de todas las operaciones aceptadas: el hilo las ejecuta antes de pararse
+            queue.add(CLOSE);
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int submit(Operation operation) throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                throw new SQLException("Write batcher closed");
+            }
+            queue.add(operation);
+        }
+        try {
+            return operation.result.get();
+        } catch (InterruptedException e) {
+            // La operación sigue en el lote: puede acabar confirmada aunque aquí no se sepa
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+    }
+
+    private void run() {
+        final List<Operation> batch = new ArrayList<>(maxBatchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                final Operation first = queue.take();
+                if (first == CLOSE) {
+                    stopping = true;
+                } else {
+                    batch.add(first);
+                }
+                // Más operaciones hasta que pase la ventana o se llene el lote
+                final long deadline = System.nanoTime() + windowNanos;
+                while (!stopping && batch.size() < maxBatchSize) {
+                    final long remaining = deadline - System.nanoTime();
+                    final Operation next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        stopping = true;
+                    } else {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+
+            if (!batch.isEmpty()) {
+                execute(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void execute(List<Operation> batch) {
+        batches.incrementAndGet();
+        operations.addAndGet(batch.size());
+        final int[] rows = new int[batch.size()];
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement insert = c.prepareStatement(INSERT);
+                    PreparedStatement delete = c.prepareStatement(DELETE)) {
+                // Las operaciones seguidas del mismo tipo van en el mismo executeBatch; al cambiar
+                // de tipo se ejecuta lo anterior, para respetar el orden
+                int pendingFrom = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    final Operation operation = batch.get(i);
+                    if (i > pendingFrom && operation.isInsert() != batch.get(pendingFrom).isInsert()) {
+                        executeRun(batch, pendingFrom, i, insert, delete, rows);
+                        pendingFrom = i;
+                    }
+                    if (operation.isInsert()) {
+                        insert.setString(1, operation.uuid);
+                        insert.setString(2, operation.content);
+                        insert.addBatch();
+                    } else {
+                        delete.setString(1, operation.uuid);
+                        delete.addBatch();
+                    }
+                }
+                executeRun(batch, pendingFrom, batch.size(), insert, delete, rows);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result.completeExceptionally(e);
+            } else {
+                retried.incrementAndGet();
+                executeOneByOne(batch);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(rows[i]);
+        }
+    }
+
+    private static void executeRun(List<Operation> batch, int from, int to, PreparedStatement insert,
+            PreparedStatement delete, int[] rows) throws SQLException {
+        final int[] counts = (batch.get(from).isInsert() ? insert : delete).executeBatch();
+        if (counts.length != to - from) {
+            throw new BatchUpdateException("Unexpected update counts", counts);
+        }
+        System.arraycopy(counts, 0, rows, from, counts.length);
+    }
+
+    private void executeOneByOne(List<Operation> batch) {
+        for (Operation operation : batch) {
+            try (Connection c = pool.getConnection();
+                    PreparedStatement ps = c.prepareStatement(operation.isInsert() ? INSERT : DELETE)) {
+                ps.setString(1, operation.uuid);
+                if (operation.isInsert()) {
+                    ps.setString(2, operation.content);
+                }
+                operation.result.complete(ps.executeUpdate());
+            } catch (SQLException e) {
+                operation.result.completeExceptionally(e);
+            }
+        }
+    }
+}
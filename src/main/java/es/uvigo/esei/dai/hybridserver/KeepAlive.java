@@ -0,0 +1,109 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.nio.charset.StandardCharsets;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+/**
+ * Política de conexiones persistentes (HTTP keep-alive) común al modo bloqueante y al NIO.
+ *
+ * HTTP/1.1 mantiene la conexión abierta salvo que el cliente envíe "Connection: close";
+ * HTTP/1.0 solo la mantiene si el cliente pide "Connection: keep-alive". En ambos casos se
+ * cierra tras {@code maxRequests} peticiones o {@code timeoutMillis} ms sin recibir nada.
+ */
+class KeepAlive {
+    static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+    static final int DEFAULT_MAX_REQUESTS = 100;
+
+    // Como mucho se preparan las cabeceras de las primeras peticiones de cada conexión
+    private static final int MAX_PREPARED_LINES = 1024;
+
+    private final int timeoutMillis;
+    private final int maxRequests;
+
+    // Cabeceras ya codificadas de apply() para las respuestas que se envían en bytes
+    private final byte[] closeLine;
+    private final byte[][] keepAliveLines;
+
+    KeepAlive(int timeoutMillis, int maxRequests) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxRequests = maxRequests;
+        this.closeLine = HTTPHeaders.CONNECTION.getLine("close");
+        this.keepAliveLines = new byte[Math.min(maxRequests, MAX_PREPARED_LINES)][];
+        for (int served = 1; served < keepAliveLines.length; served++) {
+            keepAliveLines[served] = encodeKeepAlive(served);
+        }
+    }
+
+    int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Indica si la conexión puede seguir abierta después de responder a {@code req}, que es
+     * la petición número {@code served} (empezando en 1) de la conexión.
+     */
+    boolean keepOpen(HTTPRequest req, int served) {
+        if (maxRequests <= 1 || served >= maxRequests) {
+            return false;
+        }
+
+        final String connection = req.getHeader(HTTPHeaders.CONNECTION.getHeader());
+        if ("HTTP/1.0".equals(req.getHttpVersion())) {
+            return hasToken(connection, "keep-alive");
+        }
+        return !hasToken(connection, "close");
+    }
+
+    /** Añade a la respuesta las cabeceras Connection/Keep-Alive que correspondan. */
+    void apply(HTTPResponse res, boolean keepOpen, int served) {
+        if (keepOpen) {
+            res.putParameter(HTTPHeaders.CONNECTION.getHeader(), "keep-alive");
+            res.putParameter(HTTPHeaders.KEEP_ALIVE.getHeader(), keepAliveValue(served));
+        } else {
+            res.putParameter(HTTPHeaders.CONNECTION.getHeader(), "close");
+        }
+    }
+
+    /** Las mismas cabeceras que {@link #apply(HTTPResponse, boolean, int)}, ya codificadas (no se deben modificar). */
+    byte[] headerLines(boolean keepOpen, int served) {
+        if (!keepOpen) {
+            return closeLine;
+        }
+        return served < keepAliveLines.length ? keepAliveLines[served] : encodeKeepAlive(served);
+    }
+
+    private byte[] encodeKeepAlive(int served) {
+        return (HTTPHeaders.CONNECTION.getHeader() + ": keep-alive\r\n"
+            + HTTPHeaders.KEEP_ALIVE.getHeader() + ": " + keepAliveValue(served) + "\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Sin límite de tiempo no se anuncia timeout; si no, en segundos hacia arriba: timeout=0
+    // haría que el cliente cerrase la conexión enseguida
+    private String keepAliveValue(int served) {
+        final String max = "max=" + (maxRequests - served);
+        if (timeoutMillis <= 0) {
+            return max;
+        }
+        return "timeout=" + ((timeoutMillis + 999) / 1000) + ", " + max;
+    }
+
+    private static boolean hasToken(String value, String token) {
+        if (value == null) {
+            return false;
+        }
+        for (String part : value.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
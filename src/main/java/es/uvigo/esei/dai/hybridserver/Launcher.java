@@ -32,11 +32,14 @@ public class Launcher {
         samplePages.put("abc123", "<html><body><h1>Hola desde MAP</h1><p>Servidor en modo memoria</p></body></html>");
 
         // === Inicializar servidor ===
-        // Puedes cambiar fácilmente entre:
-        //   new HybridServer(config) → modo BD
-        //   new HybridServer(samplePages) → modo mapa
-        try (HybridServer server = new HybridServer(samplePages)) {
-            // try (HybridServer server = new HybridServer(samplePages)) { // ← modo memoria
+        // La propiedad "repository" elige el modo:
+        //   map (por defecto) → new HybridServer(samplePages, config), modo mapa
+        //   db → new HybridServer(config), modo BD
+        //   file → new HybridServer(config), páginas en disco (file.directory)
+        String repository = config.getProperty("repository", "map").trim();
+        try (HybridServer server = repository.equalsIgnoreCase("map")
+                ? new HybridServer(samplePages, config)
+                : new HybridServer(config)) {
             server.start();
             System.out.println("Servidor escuchando en http://localhost:" + server.getPort());
             System.out.println("Pulsa ENTER para parar...");
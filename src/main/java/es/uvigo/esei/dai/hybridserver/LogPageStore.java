@@ -0,0 +1,644 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link PageStore} persistente en un directorio local: cada alta o borrado se añade como un
+ * registro al final de un fichero de segmento ({@code segment-NNNNNNNN.log}) proyectado en
+ * memoria, y en el heap solo queda un índice de dónde está el contenido de cada página.
+ * Borrar añade una lápida. Lo escrito no se modifica nunca, así que una página se envía
+ * directamente desde la proyección, sin copiarla.
+ *
+ * Cada registro lleva un CRC32. Al abrir el almacén se recorren los segmentos y se para en el
+ * primer registro incompleto o corrupto, que es lo que deja una caída a mitad de escritura; si
+ * detrás de él queda algo, se sigue escribiendo en un segmento nuevo. Para no recorrerlo todo
+ * en cada arranque se guarda una instantánea del índice ({@code index.snapshot}) con la
+ * posición hasta la que está al día: solo se recorre lo escrito después.
+ *
+ * Un hilo de mantenimiento guarda la instantánea si ha habido cambios y compacta los segmentos
+ * ya cerrados en los que lo muerto ocupa más que lo vivo: copia al segmento activo las páginas
+ * vivas (y las lápidas que aún hacen falta) y borra el fichero.
+ *
+ * Con {@code fsync} cada escritura se fuerza a disco antes de responder; si no, lo escrito
+ * sobrevive a la caída del proceso (está en la caché de páginas del sistema operativo) pero
+ * no necesariamente a un corte de luz.
+ */
+public class LogPageStore implements PageStore, AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAINTENANCE_INTERVAL_MILLIS = 60_000;
+
+    // Registro: crc (4) | tipo (1) | longitud de la clave (2) | longitud del contenido (4) | clave | contenido.
+    // El CRC cubre todo lo que va detrás de él
+    private static final int HEADER_SIZE = 11;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final String SNAPSHOT = "index.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x48534958;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    /** Fichero de segmento proyectado; {@code end} y {@code liveBytes} se protegen con el cerrojo del almacén. */
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int end;
+        long liveBytes;
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    /** Contenido de una página: {@code length} bytes a partir de {@code offset} en el segmento. */
+    private static final class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+        final int recordSize;
+
+        Location(Segment segment, int offset, int length, int recordSize) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    // Segmentos por id; el último es el activo. Como el resto del estado de escritura, se
+    // protege con el cerrojo de this
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private boolean dirty;
+    private boolean closed;
+    private long replayedRecords;
+
+    // Serializa las instantáneas, para que una antigua no sustituya a otra más reciente
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService maintenance;
+
+    public LogPageStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, false, DEFAULT_MAINTENANCE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param segmentSize tamaño de cada segmento; una página mayor tiene uno propio
+     * @param fsync si cada escritura se fuerza a disco
+     * @param maintenanceIntervalMillis cada cuánto se compacta y se guarda la instantánea (0 = nunca)
+     */
+    public LogPageStore(Path directory, int segmentSize, boolean fsync, long maintenanceIntervalMillis) throws IOException {
+        if (segmentSize < HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + HEADER_SIZE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+
+        Files.createDirectories(directory);
+        recover();
+
+        if (maintenanceIntervalMillis > 0) {
+            this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "HybridServer-LogPageStore");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.maintenance.scheduleWithFixedDelay(this::maintain,
+                maintenanceIntervalMillis, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.maintenance = null;
+        }
+    }
+
+    @Override
+    public byte[] get(String uuid) {
+        final ByteBuffer page = getBuffer(uuid);
+        if (page == null) {
+            return null;
+        }
+        final byte[] content = new byte[page.remaining()];
+        page.get(content);
+        return content;
+    }
+
+    /** Vista de la página en el segmento proyectado, sin copiarla. */
+    @Override
+    public ByteBuffer getBuffer(String uuid) {
+        final Location location = uuid != null ? index.get(uuid) : null;
+        if (location == null) {
+            return null;
+        }
+        final ByteBuffer view = location.segment.buffer.asReadOnlyBuffer();
+        view.position(location.offset);
+        view.limit(location.offset + location.length);
+        return view;
+    }
+
+    @Override
+    public synchronized boolean putIfAbsent(String uuid, byte[] content) {
+        ensureOpen();
+        if (index.containsKey(uuid)) {
+            return false;
+        }
+        final Location location = append(PUT, key(uuid), ByteBuffer.wrap(content));
+        location.segment.liveBytes += location.recordSize;
+        index.put(uuid, location);
+        dirty = true;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(String uuid) {
+        ensureOpen();
+        final Location removed = index.get(uuid);
+        if (removed == null) {
+            return false;
+        }
+        // Primero la lápida: si no se puede escribir, la página sigue estando
+        append(DELETE, key(uuid), null);
+        index.remove(uuid);
+        removed.segment.liveBytes -= removed.recordSize;
+        dirty = true;
+        return true;
+    }
+
+    @Override
+    public boolean contains(String uuid) {
+        return uuid != null && index.containsKey(uuid);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public Iterator<String> uuids() {
+        return index.keySet().iterator();
+    }
+
+    /** Registros leídos de los segmentos al abrir el almacén (los que no cubría la instantánea). */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Compacta ahora los segmentos cerrados con más muerto que vivo y guarda la instantánea. */
+    public void compact() throws IOException {
+        final List<Segment> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.end - segment.liveBytes >= segment.liveBytes) {
+                    candidates.add(segment);
+                }
+            }
+        }
+        for (Segment segment : candidates) {
+            if (!compact(segment)) {
+                return;
+            }
+        }
+        snapshot();
+    }
+
+    /** Guarda la instantánea del índice si ha cambiado desde la última. */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            final TreeMap<Integer, Integer> ends = new TreeMap<>();
+            final List<Map.Entry<String, Location>> entries;
+            final int coveredSegment;
+            final int coveredOffset;
+            synchronized (this) {
+                if (!dirty) {
+                    return;
+                }
+                for (Segment segment : segments.values()) {
+                    ends.put(segment.id, segment.end);
+                }
+                coveredSegment = active.id;
+                coveredOffset = active.end;
+                entries = new ArrayList<>(index.entrySet());
+                dirty = false;
+            }
+
+            try {
+                writeSnapshot(ends, coveredSegment, coveredOffset, entries);
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            try {
+                maintenance.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            // A partir de aquí no se escribe más: la instantánea queda al día
+            closed = true;
+            if (!fsync) {
+                for (Segment segment : segments.values()) {
+                    segment.buffer.force();
+                }
+            }
+        }
+        snapshot();
+    }
+
+    private void maintain() {
+        try {
+            compact();
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[WARN] Mantenimiento del almacén de páginas fallido: " + e.getMessage());
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Page store closed");
+        }
+    }
+
+    // ===== escritura =====
+
+    private static byte[] key(String uuid) {
+        final byte[] key = uuid.getBytes(StandardCharsets.UTF_8);
+        if (key.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Key too long");
+        }
+        return key;
+    }
+
+    // Añade un registro al segmento activo (o a uno nuevo si no cabe) y devuelve dónde queda su contenido
+    private Location append(byte type, byte[] key, ByteBuffer content) {
+        final int length = content != null ? content.remaining() : 0;
+        final long size = (long) HEADER_SIZE + key.length + length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Page too large");
+        }
+        final int recordSize = (int) size;
+        if (active.buffer.capacity() - active.end < recordSize) {
+            roll(recordSize);
+        }
+
+        final int start = active.end;
+        final ByteBuffer record = active.buffer.duplicate();
+        record.position(start + 4);
+        record.put(type);
+        record.putShort((short) key.length);
+        record.putInt(length);
+        record.put(key);
+        if (content != null) {
+            record.put(content.duplicate());
+        }
+        record.putInt(start, checksum(active.buffer, start + 4, recordSize - 4));
+
+        if (fsync) {
+            active.buffer.force();
+        }
+        active.end = start + recordSize;
+        return new Location(active, start + HEADER_SIZE + key.length, length, recordSize);
+    }
+
+    // Cierra el segmento activo y abre otro de al menos minSize bytes
+    private void roll(int minSize) {
+        final int id = active != null ? active.id + 1 : 1;
+        try {
+            final Segment segment = openSegment(id, Math.max(segmentSize, minSize));
+            segments.put(id, segment);
+            active = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el segmento " + id, e);
+        }
+    }
+
+    private Segment openSegment(int id, int size) throws IOException {
+        final Path path = directory.resolve(String.format("segment-%08d.log", id));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // La proyección sigue siendo válida después de cerrar el canal
+            final int mapped = (int) Math.max(size, channel.size());
+            return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, mapped));
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.limit(offset + length);
+        final CRC32 crc = new CRC32();
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    // ===== compactación =====
+
+    // Copia lo vivo del segmento al activo, registro a registro y con el cerrojo solo para cada
+    // uno, y después borra el fichero. Devuelve false si el almacén se ha cerrado entre tanto
+    private boolean compact(Segment segment) throws IOException {
+        int position = 0;
+        while (position < segment.end) {
+            final ByteBuffer record = segment.buffer.duplicate();
+            record.position(position + 4);
+            final byte type = record.get();
+            final int keyLength = record.getShort();
+            final int length = record.getInt();
+            final byte[] keyBytes = new byte[keyLength];
+            record.get(keyBytes);
+            final String key = new String(keyBytes, StandardCharsets.UTF_8);
+            final int offset = position + HEADER_SIZE + keyLength;
+
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                if (type == PUT) {
+                    final Location current = index.get(key);
+                    if (current != null && current.segment == segment && current.offset == offset) {
+                        record.limit(offset + length);
+                        final Location moved = append(PUT, keyBytes, record.slice());
+                        moved.segment.liveBytes += moved.recordSize;
+                        segment.liveBytes -= current.recordSize;
+                        index.put(key, moved);
+                    }
+                } else if (!index.containsKey(key) && segments.firstKey() != segment.id) {
+                    // La lápida aún tapa una versión anterior en un segmento más antiguo
+                    append(DELETE, keyBytes, null);
+                }
+            }
+            position = offset + length;
+        }
+
+        synchronized (this) {
+            segments.remove(segment.id);
+            dirty = true;
+        }
+        // La instantánea ya no menciona el segmento antes de borrarlo
+        snapshot();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            // Se reintenta al abrir el almacén: no está en la instantánea
+            System.err.println("[WARN] No se pudo borrar " + segment.path + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    // ===== recuperación =====
+
+    private void recover() throws IOException {
+        final TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    files.put(Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length())), path);
+                } catch (NumberFormatException e) {
+                    System.err.println("[WARN] Fichero ignorado en el almacén de páginas: " + name);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            // El último se proyecta entero para seguir escribiendo en él
+            final int size = file.getKey().equals(files.lastKey()) ? segmentSize : 0;
+            segments.put(file.getKey(), openSegment(file.getKey(), size));
+        }
+
+        // Con una instantánea válida solo se recorre lo escrito después de ella
+        final long covered = loadSnapshot();
+        final int replayFrom = covered >= 0 ? (int) (covered >>> 32) : 0;
+        final int replayOffset = covered >= 0 ? (int) covered : 0;
+
+        boolean clean = true;
+        for (Segment segment : segments.values()) {
+            if (segment.id < replayFrom) {
+                continue;
+            }
+            clean = replay(segment, segment.id == replayFrom ? replayOffset : 0);
+        }
+
+        if (segments.isEmpty()) {
+            roll(segmentSize);
+        } else {
+            active = segments.lastEntry().getValue();
+            if (!clean || hasDataAfter(active, active.end)) {
+                // Lo que queda detrás del último registro válido no se vuelve a leer ni se pisa
+                roll(segmentSize);
+            }
+        }
+        dirty = covered < 0 || replayedRecords > 0;
+    }
+
+    // Recorre los registros del segmento desde offset; devuelve false si acaba en uno corrupto
+    private boolean replay(Segment segment, int offset) {
+        final ByteBuffer buffer = segment.buffer;
+        int position = offset;
+        while (buffer.capacity() - position >= HEADER_SIZE) {
+            final int crc = buffer.getInt(position);
+            final byte type = buffer.get(position + 4);
+            final int keyLength = buffer.getShort(position + 5);
+            final int length = buffer.getInt(position + 7);
+            if (crc == 0 && type == 0 && keyLength == 0 && length == 0) {
+                break;
+            }
+            if ((type != PUT && type != DELETE) || keyLength < 0 || length < 0
+                || (long) HEADER_SIZE + keyLength + length > buffer.capacity() - position
+                || checksum(buffer, position + 4, HEADER_SIZE - 4 + keyLength + length) != crc) {
+                System.err.printf("[WARN] Registro incompleto o corrupto en %s (byte %d), se descarta el resto%n",
+                    segment.path.getFileName(), position);
+                segment.end = position;
+                return false;
+            }
+
+            final byte[] keyBytes = new byte[keyLength];
+            final ByteBuffer key = buffer.duplicate();
+            key.position(position + HEADER_SIZE);
+            key.get(keyBytes);
+            final int recordSize = HEADER_SIZE + keyLength + length;
+            final Location previous;
+            if (type == PUT) {
+                final Location location = new Location(segment, position + HEADER_SIZE + keyLength, length, recordSize);
+                segment.liveBytes += recordSize;
+                previous = index.put(new String(keyBytes, StandardCharsets.UTF_8), location);
+            } else {
+                previous = index.remove(new String(keyBytes, StandardCharsets.UTF_8));
+            }
+            if (previous != null) {
+                previous.segment.liveBytes -= previous.recordSize;
+            }
+            replayedRecords++;
+            position += recordSize;
+        }
+        segment.end = position;
+        return true;
+    }
+
+    private static boolean hasDataAfter(Segment segment, int offset) {
+        final ByteBuffer buffer = segment.buffer;
+        int i = offset;
+        for (; i + Long.BYTES <= buffer.capacity(); i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                return true;
+            }
+        }
+        for (; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ===== instantánea =====
+
+    private void writeSnapshot(TreeMap<Integer, Integer> ends, int coveredSegment, int coveredOffset,
+            List<Map.Entry<String, Location>> entries) throws IOException {
+        final Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temporary)) {
+            final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            final DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(ends.size());
+            for (Map.Entry<Integer, Integer> end : ends.entrySet()) {
+                out.writeInt(end.getKey());
+                out.writeInt(end.getValue());
+            }
+            out.writeInt(coveredSegment);
+            out.writeInt(coveredOffset);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Location> entry : entries) {
+                final Location location = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(location.segment.id);
+                out.writeInt(location.offset);
+                out.writeInt(location.length);
+                out.writeInt(location.recordSize);
+            }
+            out.flush();
+            final long crc = checked.getChecksum().getValue();
+            out.writeLong(crc);
+            out.flush();
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Carga la instantánea en el índice si es válida y coincide con los segmentos que hay, y
+    // devuelve hasta dónde está al día (segmento << 32 | offset), o -1. Los segmentos que ya no
+    // menciona (compactados) se borran
+    private long loadSnapshot() {
+        final Path path = directory.resolve(SNAPSHOT);
+        if (!Files.exists(path)) {
+            return -1;
+        }
+        try (InputStream file = Files.newInputStream(path)) {
+            final CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+            final DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Formato desconocido");
+            }
+            final TreeMap<Integer, Integer> ends = new TreeMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                final int id = in.readInt();
+                ends.put(id, in.readInt());
+            }
+            final int coveredSegment = in.readInt();
+            final int coveredOffset = in.readInt();
+            final Map<String, Location> entries = new ConcurrentHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                final String key = in.readUTF();
+                final Segment segment = segments.get(in.readInt());
+                final int offset = in.readInt();
+                final int length = in.readInt();
+                final int recordSize = in.readInt();
+                if (segment == null) {
+                    throw new IOException("Falta un segmento");
+                }
+                entries.put(key, new Location(segment, offset, length, recordSize));
+            }
+            final long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("CRC incorrecto");
+            }
+            if (!ends.containsKey(coveredSegment) || !segments.keySet().containsAll(ends.keySet())) {
+                throw new IOException("Faltan segmentos");
+            }
+
+            // Segmentos que la instantánea ya no menciona: se compactaron pero no se llegaron a borrar
+            for (Iterator<Segment> it = segments.values().iterator(); it.hasNext();) {
+                final Segment segment = it.next();
+                if (segment.id < coveredSegment && !ends.containsKey(segment.id)) {
+                    it.remove();
+                    Files.deleteIfExists(segment.path);
+                }
+            }
+            for (Segment segment : segments.values()) {
+                final Integer end = ends.get(segment.id);
+                segment.end = segment.id == coveredSegment ? coveredOffset : end != null ? end : 0;
+                segment.liveBytes = 0;
+            }
+            for (Location location : entries.values()) {
+                location.segment.liveBytes += location.recordSize;
+            }
+            index.putAll(entries);
+            return (long) coveredSegment << 32 | coveredOffset;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[WARN] Instantánea del índice no válida, se recorren todos los segmentos: " + e.getMessage());
+            return -1;
+        }
+    }
+}
@@ -1,23 +1,52 @@
 package es.uvigo.esei.dai.hybridserver;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
 import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestMethod;
 import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
 import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+import es.uvigo.esei.dai.hybridserver.http.MIME;
 
 public class MAPdaw implements HtmlRepository {
 
-    private final Map<String, String> pages;
+    // Copia propia, compartida por todos los hilos del pool y ya codificada en UTF-8: las
+    // páginas se envían tal cual están guardadas, sin copiarlas (ni al heap si están fuera)
+    private final PageStore pages;
+
+    // GET /html ya en bytes; lo mantienen postPage y deletePage
+    private final PageListing listing = new PageListing(
+            "<!DOCTYPE html><html><head><meta charset=\"utf-8\">"
+            + "<title>Listado de páginas</title></head><body>"
+            + "<h1>Páginas disponibles</h1>",
+            "<p>No hay páginas almacenadas.</p>",
+            "</body></html>",
+            "/html?uuid=");
 
     public MAPdaw(Map<String, String> pages) {
-        // Claves = UUID “planos”
-        this.pages = pages;
+        this(pages, new UuidPageIndex());
+    }
+
+    public MAPdaw(Map<String, String> pages, PageStore store) {
+        // Claves = UUID “planos”; los cambios posteriores en el mapa recibido no se ven aquí
+        this.pages = store;
+        pages.forEach((uuid, content) -> {
+            if (uuid != null && content != null) {
+                store.putIfAbsent(uuid, content.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        // También las que ya tenía el almacén (modo fichero o recuperadas del log)
+        listing.addAll(store.uuids());
     }
 
     @Override
-    public String getPage(HTTPRequest req) throws IOException {
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
         final String chain = req.getResourceChain() == null ? "/" : req.getResourceChain();
         final String resource = req.getResourceName(); // esperado: "html"
 
@@ -25,7 +54,7 @@ public class MAPdaw implements HtmlRepository {
         if ("/".equals(chain) || chain.isEmpty()) {
             String body = "<!DOCTYPE html><html><head><meta charset=\"utf-8\">"
                     + "<body><h1>Hybrid Server</h1>"
-                    + "<h2>Map mode</h2>"
+                    + "<h2>" + getModeName() + "</h2>"
                     + "<p>Pablo Freire Gullon</p></html>"
                     + "<p>Diego Alvarez Alvarez</p></html>"
                     + "</body></html>";
@@ -43,13 +72,16 @@ public class MAPdaw implements HtmlRepository {
         if (uuid != null)
             uuid = uuid.trim();
 
-        // 4) Sin uuid → listado (200)
+        // 4) Sin uuid → listado (200): entero, o una página de él si se pide con limit/after
         if (uuid == null || uuid.isEmpty()) {
-            return ok(buildListingHtmlAll());
+            if (params != null && (params.containsKey("limit") || params.containsKey("after"))) {
+                return buildListingPage(params.get("limit"), params.get("after"));
+            }
+            return buildListingHtmlAll();
         }
 
         // 5) Con uuid → servir si existe
-        final String page = pages.get(uuid);
+        final ByteBuffer page = pages.getBuffer(uuid);
         if (page != null) {
             return ok(page);
         }
@@ -57,53 +89,78 @@ public class MAPdaw implements HtmlRepository {
         return err(HTTPResponseStatus.S404, "Page not found");
     }
 
+    // Modo que se indica en la página de bienvenida
+    protected String getModeName() {
+        return "Map mode";
+    }
+
+    // Los almacenes en disco guardan su instantánea para que el próximo arranque no recorra el log
+    @Override
+    public void close() throws Exception {
+        if (pages instanceof AutoCloseable) {
+            ((AutoCloseable) pages).close();
+        }
+    }
+
     // ===== helpers =====
 
-    private String buildListingHtmlAll() {
-        StringBuilder html = new StringBuilder()
-                .append("<!DOCTYPE html><html><head><meta charset=\"utf-8\">")
-                .append("<title>Listado de páginas</title></head><body>")
-                .append("<h1>Páginas disponibles</h1>");
+    // El listado se envía por chunks copiando los bytes que ya tiene preparados PageListing
+    private HTTPResponse buildListingHtmlAll() {
+        HTTPResponse res = new HTTPResponse();
+        res.setStatus(HTTPResponseStatus.S200);
+        res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), MIME.TEXT_HTML.getMime());
+        res.setContentWriter(listing::writeTo);
+        return res;
+    }
+
+    // Paginación por clave: las páginas siguientes a "after" en orden de UUID, con un enlace a la
+    // siguiente página si quedan más
+    private HTTPResponse buildListingPage(String limitParam, String after) {
+        final int limit = PageListing.pageSize(limitParam);
+        if (limit < 0) {
+            return err(HTTPResponseStatus.S400, "Parámetro limit no válido");
+        }
+        if (after != null && after.trim().isEmpty()) {
+            after = null;
+        }
 
-        if (pages.isEmpty()) {
-            html.append("<p>No hay páginas almacenadas.</p>");
+        // Una más para saber si hay página siguiente
+        final List<String> uuids = listing.keysAfter(after == null ? null : after.trim(), limit + 1);
+        final StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><meta charset=\"utf-8\">"
+                + "<title>Listado de páginas</title></head><body><h1>Páginas disponibles</h1>");
+        if (uuids.isEmpty()) {
+            html.append("<p>No hay más páginas.</p>");
         } else {
             html.append("<ul>");
-            for (String id : pages.keySet()) {
-                html.append("<li><a href=\"/html?uuid=")
-                        .append(id)
-                        .append("\">")
-                        .append(id)
-                        .append("</a></li>");
+            for (String id : uuids.subList(0, Math.min(limit, uuids.size()))) {
+                html.append("<li><a href=\"/html?uuid=").append(id).append("\">").append(id).append("</a></li>");
             }
             html.append("</ul>");
         }
+        if (uuids.size() > limit) {
+            html.append("<p><a rel=\"next\" href=\"/html?limit=").append(limit).append("&amp;after=")
+                .append(URLEncoder.encode(uuids.get(limit - 1), StandardCharsets.UTF_8))
+                .append("\">Siguiente página</a></p>");
+        }
         html.append("</body></html>");
-        return html.toString();
+        return ok(html.toString());
     }
 
-    private String ok(String body) {
-        HTTPResponse res = new HTTPResponse();
-        res.setStatus(HTTPResponseStatus.S200);
-        res.putParameter("Content-Type", "text/html"); // <-- sin charset por si el test es estricto
-        res.putParameter("Connection", "close");
-        res.setContent(body);
-        return res.toString();
+    private static HTTPResponse ok(String body) {
+        return HTTPResponse.html(HTTPResponseStatus.S200, body);
     }
 
-    private String err(HTTPResponseStatus status, String msg) {
-        String body = "<html><body><h1>" + status.getCode() + " " + status.getStatus() +
-                "</h1><p>" + msg + "</p></body></html>";
-        HTTPResponse res = new HTTPResponse();
-        res.setStatus(status);
-        res.putParameter("Content-Type", "text/html"); // <-- igual que arriba
-        res.putParameter("Connection", "close");
-        res.setContent(body);
-        return res.toString();
+    // Página guardada: se envía sin volver a codificarla ni copiarla
+    private static HTTPResponse ok(ByteBuffer page) {
+        return HTTPResponse.html(HTTPResponseStatus.S200, page);
+    }
+
+    private static HTTPResponse err(HTTPResponseStatus status, String msg) {
+        return HTTPResponse.error(status, msg);
     }
 
 @Override
-public String postPage(HTTPRequest req) throws IOException {
+public HTTPResponse postPage(HTTPRequest req) throws IOException {
     final String resource = req.getResourceName(); // esperado "html"
     if (resource == null || !resource.equals("html")) {
         return err(HTTPResponseStatus.S400, "Bad Request");
@@ -117,34 +174,33 @@ public String postPage(HTTPRequest req) throws IOException {
         return err(HTTPResponseStatus.S400, "Falta el parámetro html");
     }
 
-    final String uuid = java.util.UUID.randomUUID().toString();
-    pages.put(uuid, html);
-
-    HTTPResponse res = new HTTPResponse();
-    res.setStatus(HTTPResponseStatus.S200);        // 201 Created (si el test exigiera 200, cámbialo)
-    res.putParameter("Content-Type", "text/html"); // mantén igual que en el resto de respuestas
-    res.putParameter("Connection", "close");
-    // opcional, pero REST-friendly:
-    // res.putParameter("Location", "html?uuid=" + uuid);
+    String uuid;
+    do {
+        uuid = java.util.UUID.randomUUID().toString();
+    } while (!pages.putIfAbsent(uuid, html.getBytes(StandardCharsets.UTF_8)));
+    listing.add(uuid);
 
     String body = "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Created</title></head>"
             + "<body><h1>Page created</h1>"
             + "<p><a href=\"html?uuid=" + uuid + "\">" + uuid + "</a></p>"  // <-- sin barra inicial
             + "</body></html>";
-
-    res.setContent(body);
-    return res.toString();
+    return ok(body);
 }
 
 
     @Override
-    public boolean exists(String path) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'exists'");
+    public boolean exists(String uuid) {
+        return uuid != null && pages.contains(uuid);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+        // Todo está en memoria; solo las altas y bajas en un almacén en disco esperan a escribirlo
+        return req.getMethod() != HTTPRequestMethod.GET && pages instanceof AutoCloseable;
     }
 
     @Override
-    public String deletePage(HTTPRequest req) throws IOException {
+    public HTTPResponse deletePage(HTTPRequest req) throws IOException {
         final String resource = req.getResourceName(); // "html"
         if (resource == null || !resource.equals("html")) {
             return err(HTTPResponseStatus.S400, "Bad Request");
@@ -160,10 +216,10 @@ public String postPage(HTTPRequest req) throws IOException {
         }
 
         // borrar
-        String removed = pages.remove(uuid);
-        if (removed == null) {
+        if (!pages.remove(uuid)) {
             return err(HTTPResponseStatus.S404, "Página no encontrada");
         }
+        listing.remove(uuid);
 
         // éxito
         return ok("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>Deleted</title></head>"
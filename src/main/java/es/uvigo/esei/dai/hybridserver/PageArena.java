@@ -0,0 +1,103 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Contenido de las páginas de un {@link UuidPageIndex}, seguido en segmentos de
+ * {@link #SEGMENT_SIZE} bytes: arrays del heap o, con {@code direct}, buffers directos fuera
+ * de él, de modo que el GC solo ve el índice. Una posición es {@code segmento << 32 | offset}.
+ *
+ * Solo se escribe al final del último segmento y nunca encima de lo ya escrito: la vista que
+ * devuelve {@link #slice(long, int)} sigue siendo válida aunque la página se borre o se
+ * compacte después, y el segmento se libera cuando ya no lo usa ninguna respuesta. Por eso el
+ * hueco de una página borrada no se reutiliza; se recupera copiando lo vivo a otra arena.
+ *
+ * Las escrituras las serializa el cerrojo del índice.
+ */
+class PageArena {
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    private final boolean direct;
+    private ByteBuffer[] segments = new ByteBuffer[4];
+    private int segmentCount;
+    // Último segmento de tamaño normal, en el que se sigue escribiendo
+    private int regularSegment = -1;
+    private int writeOffset = SEGMENT_SIZE;
+    private long allocatedBytes;
+
+    PageArena(boolean direct) {
+        this.direct = direct;
+    }
+
+    boolean isDirect() {
+        return direct;
+    }
+
+    /** Bytes reservados en segmentos, ocupados o no. */
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /** Arena vacía del mismo tipo, para compactar en ella. */
+    PageArena empty() {
+        return new PageArena(direct);
+    }
+
+    /**
+     * Vista de solo lectura de la página (posición y límite ajustados a ella). Con valores sin
+     * sentido, como los de una lectura optimista a medio cambiar, lanza una excepción en vez de
+     * leer fuera del segmento: la memoria no se toca hasta que se usa la vista.
+     */
+    ByteBuffer slice(long where, int length) {
+        final ByteBuffer segment = segments[(int) (where >>> 32)];
+        if (segment == null || length < 0) {
+            throw new IllegalStateException("Inconsistent read");
+        }
+        final int offset = (int) where;
+        final ByteBuffer view = segment.asReadOnlyBuffer();
+        view.position(offset);
+        view.limit(offset + length);
+        return view;
+    }
+
+    /** Copia al final lo que le queda a {@code src}; devuelve dónde. */
+    long append(ByteBuffer src) {
+        final int length = src.remaining();
+        // Las páginas que no caben en un segmento tienen uno propio
+        if (length > SEGMENT_SIZE) {
+            final ByteBuffer own = allocate(length);
+            own.put(src);
+            return (long) addSegment(own) << 32;
+        }
+        if (writeOffset + length > SEGMENT_SIZE) {
+            addSegment(allocate(SEGMENT_SIZE));
+            writeOffset = 0;
+        }
+
+        // El segmento normal puede no ser el último si después se añadió uno propio
+        final ByteBuffer segment = segments[regularSegment].duplicate();
+        segment.position(writeOffset);
+        segment.put(src);
+        final long where = (long) regularSegment << 32 | writeOffset;
+        writeOffset += length;
+        return where;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocatedBytes += capacity;
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private int addSegment(ByteBuffer segment) {
+        if (segmentCount == segments.length) {
+            final ByteBuffer[] grown = new ByteBuffer[segments.length * 2];
+            System.arraycopy(segments, 0, grown, 0, segmentCount);
+            segments = grown;
+        }
+        segments[segmentCount] = segment;
+        if (segment.capacity() == SEGMENT_SIZE) {
+            regularSegment = segmentCount;
+        }
+        return segmentCount++;
+    }
+}
@@ -0,0 +1,198 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caché de páginas limitada por el total de bytes, con LRU segmentado (SLRU) y admisión
+ * TinyLFU.
+ *
+ * Una página entra en el segmento de prueba ("probation"); si se vuelve a pedir pasa al
+ * protegido, que ocupa como mucho el 80 % de la caché y del que las menos usadas vuelven a
+ * prueba. Cuando no hay sitio se desaloja primero desde el final de prueba, así que una
+ * ráfaga de páginas que se piden una sola vez no echa a las populares.
+ *
+ * Además, una página nueva solo entra si el {@link FrequencySketch} estima que se ha pedido
+ * más veces que todas las que tendría que desalojar; si no, se rechaza y la caché no cambia.
+ */
+class PageCache {
+    /** Contenido ya codificado de una página y su Content-Type. */
+    static final class Page {
+        final byte[] content;
+        final String contentType;
+
+        Page(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+        }
+    }
+
+    private static final int PROTECTED_PERCENT = 80;
+    // Para dimensionar el sketch cuando solo se conoce el límite en bytes
+    private static final int ESTIMATED_PAGE_SIZE = 2 * 1024;
+
+    private final long maxBytes;
+    private final long maxProtectedBytes;
+
+    // En orden de inserción: el primero es el que lleva más tiempo sin usarse
+    private final LinkedHashMap<String, Page> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Page> protectedPages = new LinkedHashMap<>();
+    private long probationBytes;
+    private long protectedBytes;
+    private final FrequencySketch sketch;
+
+    // Cambia con cada invalidación: una página leída antes no debe guardarse después
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    PageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.maxProtectedBytes = maxBytes * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(64, maxBytes / ESTIMATED_PAGE_SIZE)));
+    }
+
+    synchronized Page get(String uuid) {
+        sketch.increment(uuid);
+
+        Page page = probation.remove(uuid);
+        if (page != null) {
+            probationBytes -= page.content.length;
+            promote(uuid, page);
+        } else {
+            page = protectedPages.remove(uuid);
+            if (page != null) {
+                // Al final: el más reciente
+                protectedPages.put(uuid, page);
+            }
+        }
+
+        if (page != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return page;
+    }
+
+    /** Sin contar como acceso ni cambiar el orden. */
+    synchronized boolean contains(String uuid) {
+        return probation.containsKey(uuid) || protectedPages.containsKey(uuid);
+    }
+
+    /** Valor a pasar a {@link #put(String, Page, long)} tras leer la página del repositorio. */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Guarda la página si no ha habido invalidaciones desde {@code generation} y la política
+     * de admisión lo permite. Devuelve si se ha guardado.
+     */
+    synchronized boolean put(String uuid, Page page, long generation) {
+        final int size = page.content.length;
+        if (generation != this.generation || size > maxBytes || contains(uuid)) {
+            return false;
+        }
+
+        final long needed = probationBytes + protectedBytes + size - maxBytes;
+        if (needed > 0) {
+            final List<Map.Entry<String, Page>> victims = victims(needed);
+            final int frequency = sketch.frequency(uuid);
+            for (Map.Entry<String, Page> victim : victims) {
+                if (sketch.frequency(victim.getKey()) >= frequency) {
+                    rejections++;
+                    return false;
+                }
+            }
+            for (Map.Entry<String, Page> victim : victims) {
+                remove(victim.getKey());
+                evictions++;
+            }
+        }
+
+        probation.put(uuid, page);
+        probationBytes += size;
+        return true;
+    }
+
+    synchronized void invalidate(String uuid) {
+        generation++;
+        remove(uuid);
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** Páginas que no se guardaron por ser menos populares que las que habría que desalojar. */
+    synchronized long getRejections() {
+        return rejections;
+    }
+
+    synchronized long getBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    synchronized int size() {
+        return probation.size() + protectedPages.size();
+    }
+
+    private void promote(String uuid, Page page) {
+        protectedPages.put(uuid, page);
+        protectedBytes += page.content.length;
+
+        final Iterator<Map.Entry<String, Page>> eldest = protectedPages.entrySet().iterator();
+        while (protectedBytes > maxProtectedBytes && eldest.hasNext()) {
+            final Map.Entry<String, Page> demoted = eldest.next();
+            if (demoted.getKey().equals(uuid)) {
+                break;
+            }
+            eldest.remove();
+            protectedBytes -= demoted.getValue().content.length;
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().content.length;
+        }
+    }
+
+    // Las que se desalojarían para liberar {@code needed} bytes: primero de prueba, luego protegidas
+    private List<Map.Entry<String, Page>> victims(long needed) {
+        final List<Map.Entry<String, Page>> victims = new ArrayList<>();
+        for (LinkedHashMap<String, Page> segment : List.of(probation, protectedPages)) {
+            for (Map.Entry<String, Page> entry : segment.entrySet()) {
+                if (needed <= 0) {
+                    return victims;
+                }
+                victims.add(entry);
+                needed -= entry.getValue().content.length;
+            }
+        }
+        return victims;
+    }
+
+    private void remove(String uuid) {
+        Page page = probation.remove(uuid);
+        if (page != null) {
+            probationBytes -= page.content.length;
+            return;
+        }
+        page = protectedPages.remove(uuid);
+        if (page != null) {
+            protectedBytes -= page.content.length;
+        }
+    }
+}
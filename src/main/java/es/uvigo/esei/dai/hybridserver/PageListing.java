@@ -0,0 +1,279 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Listado de páginas ({@code GET /html}) ya convertido en bytes, que se mantiene al crear y
+ * borrar páginas en lugar de recorrer el almacén y generar el HTML en cada petición.
+ *
+ * Las claves se reparten, ordenadas, en segmentos según sus dos primeros caracteres (256 para
+ * UUID), de modo que el orden de los segmentos es el de las claves. Cada segmento guarda sus
+ * claves y, aparte, sus elementos {@code <li>} ya codificados; un alta o un borrado solo
+ * descarta los bytes de su segmento, que se vuelven a generar en el siguiente listado. Enviar
+ * el listado es copiar esos bytes tal cual.
+ *
+ * Las claves y los bytes de cada segmento se sustituyen enteros, nunca se modifican, así que un
+ * listado en curso no se bloquea ni ve un segmento a medias; como al recorrer el almacén, puede
+ * reflejar o no los cambios hechos mientras se envía. {@link #getVersion()} cambia con cada
+ * alta o borrado.
+ */
+public class PageListing {
+    /** Páginas del listado paginado ({@code /html?limit=N&after=UUID}) si no se indica limit, y máximo. */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Segmento = dos primeros caracteres, limitados a ASCII para que el orden se mantenga
+    private static final int CHARS = 128;
+    private static final String[] NO_KEYS = new String[0];
+    private static final byte[] LIST_START = "<ul>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LIST_END = "</ul>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ITEM_MIDDLE = "\">".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ITEM_END = "</a></li>".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] header;
+    private final byte[] empty;
+    private final byte[] footer;
+    private final byte[] itemStart;
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(CHARS * CHARS);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+
+    private static final class Segment {
+        // Ordenadas; se sustituyen con cada cambio
+        private volatile String[] keys = NO_KEYS;
+        // null si hay que volver a generarlos
+        private volatile byte[] rendered;
+    }
+
+    /**
+     * @param header documento hasta la lista
+     * @param empty  lo que va en lugar de la lista si no hay páginas
+     * @param footer documento después de la lista
+     * @param href   enlace a una página, sin el UUID
+     */
+    public PageListing(String header, String empty, String footer, String href) {
+        this.header = header.getBytes(StandardCharsets.UTF_8);
+        this.empty = empty.getBytes(StandardCharsets.UTF_8);
+        this.footer = footer.getBytes(StandardCharsets.UTF_8);
+        this.itemStart = ("<li><a href=\"" + href).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public void add(String key) {
+        final Segment segment = segment(key, true);
+        synchronized (segment) {
+            final String[] keys = segment.keys;
+            final int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return;
+            }
+            final int at = -index - 1;
+            final String[] added = new String[keys.length + 1];
+            System.arraycopy(keys, 0, added, 0, at);
+            added[at] = key;
+            System.arraycopy(keys, at, added, at + 1, keys.length - at);
+            segment.keys = added;
+            segment.rendered = null;
+        }
+        size.incrementAndGet();
+        version.incrementAndGet();
+    }
+
+    public void remove(String key) {
+        final Segment segment = segment(key, false);
+        if (segment == null) {
+            return;
+        }
+        synchronized (segment) {
+            final String[] keys = segment.keys;
+            final int at = Arrays.binarySearch(keys, key);
+            if (at < 0) {
+                return;
+            }
+            final String[] removed = new String[keys.length - 1];
+            System.arraycopy(keys, 0, removed, 0, at);
+            System.arraycopy(keys, at + 1, removed, at, removed.length - at);
+            segment.keys = removed;
+            segment.rendered = null;
+        }
+        size.decrementAndGet();
+        version.incrementAndGet();
+    }
+
+    /** Añade muchas claves de una vez (al arrancar), ordenando cada segmento una sola vez. */
+    public void addAll(Iterator<String> keys) {
+        @SuppressWarnings("unchecked")
+        final List<String>[] grouped = new List[segments.length()];
+        while (keys.hasNext()) {
+            final String key = keys.next();
+            final int index = index(key);
+            if (grouped[index] == null) {
+                grouped[index] = new ArrayList<>();
+            }
+            grouped[index].add(key);
+        }
+
+        for (int index = 0; index < grouped.length; index++) {
+            if (grouped[index] == null) {
+                continue;
+            }
+            final Segment segment = segment(grouped[index].get(0), true);
+            synchronized (segment) {
+                final String[] merged = Arrays.copyOf(segment.keys, segment.keys.length + grouped[index].size());
+                int count = segment.keys.length;
+                for (String key : grouped[index]) {
+                    merged[count++] = key;
+                }
+                Arrays.sort(merged);
+                // Sin repetidas
+                int distinct = 0;
+                for (int i = 0; i < merged.length; i++) {
+                    if (distinct == 0 || !merged[i].equals(merged[distinct - 1])) {
+                        merged[distinct++] = merged[i];
+                    }
+                }
+                size.addAndGet(distinct - segment.keys.length);
+                segment.keys = distinct == merged.length ? merged : Arrays.copyOf(merged, distinct);
+                segment.rendered = null;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Hasta {@code limit} claves mayores que {@code after} (desde la primera si es null), en
+     * orden: solo se recorren los segmentos desde el de {@code after}, así que el coste no
+     * depende de cuántas páginas haya antes.
+     */
+    public List<String> keysAfter(String after, int limit) {
+        final List<String> page = new ArrayList<>(Math.min(limit, 1024));
+        final int first = after == null ? 0 : index(after);
+        for (int index = first; index < segments.length() && page.size() < limit; index++) {
+            final Segment segment = segments.get(index);
+            if (segment == null) {
+                continue;
+            }
+            final String[] keys = segment.keys;
+            int from = 0;
+            if (after != null && index == first) {
+                final int found = Arrays.binarySearch(keys, after);
+                from = found >= 0 ? found + 1 : -found - 1;
+            }
+            for (int i = from; i < keys.length && page.size() < limit; i++) {
+                page.add(keys[i]);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Tamaño de página pedido con el parámetro {@code limit}: {@link #DEFAULT_PAGE_SIZE} si no
+     * viene, como mucho {@link #MAX_PAGE_SIZE}; -1 si no es un número positivo.
+     */
+    public static int pageSize(String limit) {
+        if (limit == null || limit.trim().isEmpty()) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            final int size = Integer.parseInt(limit.trim());
+            return size > 0 ? Math.min(size, MAX_PAGE_SIZE) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Escribe el documento completo, generando antes los segmentos que hayan cambiado. */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(header);
+        if (size.get() == 0) {
+            out.write(empty);
+        } else {
+            out.write(LIST_START);
+            for (int index = 0; index < segments.length(); index++) {
+                final Segment segment = segments.get(index);
+                if (segment != null) {
+                    out.write(rendered(segment));
+                }
+            }
+            out.write(LIST_END);
+        }
+        out.write(footer);
+    }
+
+    private byte[] rendered(Segment segment) {
+        byte[] rendered = segment.rendered;
+        if (rendered != null) {
+            return rendered;
+        }
+        synchronized (segment) {
+            rendered = segment.rendered;
+            if (rendered == null) {
+                rendered = render(segment.keys);
+                segment.rendered = rendered;
+            }
+            return rendered;
+        }
+    }
+
+    private byte[] render(String[] keys) {
+        final byte[][] encoded = new byte[keys.length][];
+        int length = 0;
+        for (int i = 0; i < keys.length; i++) {
+            encoded[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            length += itemStart.length + 2 * encoded[i].length + ITEM_MIDDLE.length + ITEM_END.length;
+        }
+
+        final byte[] rendered = new byte[length];
+        int at = 0;
+        for (byte[] key : encoded) {
+            at = put(rendered, at, itemStart);
+            at = put(rendered, at, key);
+            at = put(rendered, at, ITEM_MIDDLE);
+            at = put(rendered, at, key);
+            at = put(rendered, at, ITEM_END);
+        }
+        return rendered;
+    }
+
+    private static int put(byte[] target, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, at, bytes.length);
+        return at + bytes.length;
+    }
+
+    private Segment segment(String key, boolean create) {
+        final int index = index(key);
+        final Segment segment = segments.get(index);
+        if (segment != null || !create) {
+            return segment;
+        }
+        segments.compareAndSet(index, null, new Segment());
+        return segments.get(index);
+    }
+
+    // Respeta el orden de las claves: si a < b, index(a) <= index(b)
+    private static int index(String key) {
+        final int first = key.isEmpty() ? 0 : Math.min(key.charAt(0), CHARS - 1);
+        if (first == CHARS - 1) {
+            // Fuera de ASCII el segundo carácter ya no mantendría el orden
+            return first * CHARS + CHARS - 1;
+        }
+        final int second = key.length() < 2 ? 0 : Math.min(key.charAt(1), CHARS - 1);
+        return first * CHARS + second;
+    }
+}
@@ -0,0 +1,38 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Almacén de páginas del modo memoria: contenido ya codificado en UTF-8 por UUID. Todas las
+ * implementaciones se pueden usar desde varios hilos a la vez.
+ */
+public interface PageStore {
+    /** Contenido de la página, o null si no existe. El array no se debe modificar. */
+    byte[] get(String uuid);
+
+    /**
+     * Contenido de la página como buffer de solo lectura, o null si no existe. Puede ser una
+     * vista de lo guardado (incluso fuera del heap) que se envía sin copiarla.
+     */
+    default ByteBuffer getBuffer(String uuid) {
+        final byte[] content = get(uuid);
+        return content == null ? null : ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    /** Guarda la página si no existe ya otra con ese UUID; devuelve si se ha guardado. */
+    boolean putIfAbsent(String uuid, byte[] content);
+
+    /** Borra la página; devuelve si existía. */
+    boolean remove(String uuid);
+
+    boolean contains(String uuid);
+
+    int size();
+
+    /**
+     * UUID de las páginas guardadas. Es débilmente consistente: no falla si hay cambios
+     * mientras se recorre, pero puede no reflejarlos.
+     */
+    Iterator<String> uuids();
+}
@@ -0,0 +1,178 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentEncoding;
+import es.uvigo.esei.dai.hybridserver.http.HTTPHeaders;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestMethod;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+/**
+ * Respuestas completas ya codificadas (línea de estado, cabeceras y cuerpo) de las páginas más
+ * pedidas, por UUID y por la codificación que negocia el cliente (sin comprimir, gzip o
+ * deflate). Un acierto se envía tal cual, sin pasar por los repositorios ni por
+ * {@link HTTPResponseEncoder}: solo se añaden detrás de la línea de estado las cabeceras de
+ * keep-alive de la conexión, que ya están codificadas en {@link KeepAlive}.
+ *
+ * Usa una {@link PageCache}, así que solo entran las páginas que se piden más que las que ya
+ * hay. No se usa para las peticiones condicionales (If-None-Match), que siguen respondiéndose
+ * con 304, y borrar una página descarta todas sus variantes. Tamaño 0 = desactivada.
+ */
+public class ResponseBytesCache {
+    public static final long DEFAULT_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final String IDENTITY = "identity";
+
+    private final PageCache cache;
+    private final boolean enabled;
+
+    /** @param cacheSize bytes como máximo de respuestas en memoria (0 = desactivada) */
+    public ResponseBytesCache(long cacheSize) {
+        this.enabled = cacheSize > 0;
+        this.cache = new PageCache(Math.max(0, cacheSize));
+    }
+
+    /** La respuesta guardada para la petición, o null (no está o no se puede guardar). */
+    public byte[] get(HTTPRequest req) {
+        final String key = key(req);
+        if (key == null) {
+            return null;
+        }
+        final PageCache.Page page = cache.get(key);
+        return page != null ? page.content : null;
+    }
+
+    /** Para pasar a {@link #put(HTTPRequest, HTTPResponse, long)}: se lee antes de pedir la respuesta. */
+    public long generation() {
+        return cache.generation();
+    }
+
+    /**
+     * Guarda la respuesta a la petición si se puede volver a enviar tal cual, o descarta las de
+     * la página si la petición la ha borrado. Se llama antes de añadir las cabeceras de keep-alive.
+     */
+    public void put(HTTPRequest req, HTTPResponse res, long generation) {
+        if (!enabled) {
+            return;
+        }
+        if (req.getMethod() == HTTPRequestMethod.DELETE) {
+            final String uuid = HtmlRepository.pageUuid(req);
+            if (uuid != null) {
+                invalidate(uuid);
+            }
+            return;
+        }
+
+        // Las que iban por chunks ya se han generado enteras para HTTP/1.0: no se guardan
+        final String key = key(req);
+        if (key == null || res.getStatus() != HTTPResponseStatus.S200 || res.isChunked()
+                || "HTTP/1.0".equals(req.getHttpVersion())
+                || res.containsParameter(HTTPHeaders.CONNECTION.getHeader())) {
+            return;
+        }
+        cache.put(key, new PageCache.Page(encode(res), null), generation);
+    }
+
+    private void invalidate(String uuid) {
+        cache.invalidate(IDENTITY + ':' + uuid);
+        for (HTTPContentEncoding encoding : HTTPContentEncoding.values()) {
+            cache.invalidate(encoding.getName() + ':' + uuid);
+        }
+    }
+
+    // null si la respuesta depende de algo más que la página y la codificación
+    private String key(HTTPRequest req) {
+        if (!enabled || req.getMethod() != HTTPRequestMethod.GET
+                || req.getHeader(HTTPHeaders.IF_NONE_MATCH.getHeader()) != null) {
+            return null;
+        }
+        final String uuid = HtmlRepository.pageUuid(req);
+        if (uuid == null) {
+            return null;
+        }
+        final HTTPContentEncoding encoding =
+            HTTPContentEncoding.negotiate(req.getHeader(HTTPHeaders.ACCEPT_ENCODING.getHeader()));
+        return (encoding != null ? encoding.getName() : IDENTITY) + ':' + uuid;
+    }
+
+    // Una sola copia al guardarla: el cuerpo puede ser una vista de memoria que se reutiliza
+    private static byte[] encode(HTTPResponse res) {
+        final ByteBuffer[] buffers = HTTPResponseEncoder.encode(res);
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        final byte[] bytes = new byte[length];
+        int pos = 0;
+        for (ByteBuffer buffer : buffers) {
+            final int remaining = buffer.remaining();
+            buffer.get(bytes, pos, remaining);
+            pos += remaining;
+        }
+        return bytes;
+    }
+
+    /**
+     * Envía una respuesta guardada con las cabeceras de la conexión. Si cabe en {@code scratch}
+     * va en un solo write; si no, en dos, y el cuerpo se escribe desde la caché sin copiarlo.
+     */
+    public static void write(byte[] response, byte[] connectionLines, OutputStream out, byte[] scratch) throws IOException {
+        final int statusLine = statusLineLength(response);
+        final int head = statusLine + connectionLines.length;
+        if (head > scratch.length) {
+            out.write(response, 0, statusLine);
+            out.write(connectionLines);
+            out.write(response, statusLine, response.length - statusLine);
+        } else {
+            final int inline = Math.min(response.length - statusLine, scratch.length - head);
+            System.arraycopy(response, 0, scratch, 0, statusLine);
+            System.arraycopy(connectionLines, 0, scratch, statusLine, connectionLines.length);
+            System.arraycopy(response, statusLine, scratch, head, inline);
+            out.write(scratch, 0, head + inline);
+            if (statusLine + inline < response.length) {
+                out.write(response, statusLine + inline, response.length - statusLine - inline);
+            }
+        }
+        out.flush();
+    }
+
+    /** Los buffers de una respuesta guardada para un write "gathering", sin copiarla. */
+    public static ByteBuffer[] buffers(byte[] response, byte[] connectionLines) {
+        final int statusLine = statusLineLength(response);
+        return new ByteBuffer[] {
+            ByteBuffer.wrap(response, 0, statusLine),
+            ByteBuffer.wrap(connectionLines),
+            ByteBuffer.wrap(response, statusLine, response.length - statusLine)
+        };
+    }
+
+    private static int statusLineLength(byte[] response) {
+        int i = 0;
+        while (response[i] != '\n') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /** Bytes de respuestas guardados ahora mismo. */
+    public long getBytes() {
+        return cache.getBytes();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+}
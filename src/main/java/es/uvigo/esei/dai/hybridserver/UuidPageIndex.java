@@ -0,0 +1,407 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link PageStore} para millones de páginas pequeñas: un índice hash de direccionamiento
+ * abierto (sondeo lineal) cuya clave son los dos {@code long} del UUID, y el contenido de
+ * todas las páginas seguido en una {@link PageArena}. Por página solo se guardan 16 bytes de
+ * clave, 8 de posición, 4 de longitud y 1 de estado, frente al String de 36 caracteres, el
+ * nodo del HashMap y el array de cada página de un mapa normal; buscar no calcula el hash ni
+ * compara ningún String. Con {@code offHeap} el contenido va en buffers directos y en el heap
+ * solo queda el índice.
+ *
+ * Las escrituras se serializan con un {@link StampedLock}. Las lecturas son optimistas: buscan
+ * la página sin bloquear y solo lo repiten con el cerrojo de lectura si entre tanto ha habido
+ * una escritura; como el contenido ya escrito no cambia, se copia (o se envía) después, sin
+ * cerrojo. Lo borrado deja hueco en los segmentos hasta que ocupa más que lo vivo; entonces
+ * se compactan.
+ *
+ * Las claves que no son un UUID en su forma canónica (minúsculas, con guiones) se guardan en
+ * un ConcurrentHashMap aparte.
+ */
+public class UuidPageIndex implements PageStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_LOAD_PERCENT = 70;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte DELETED = 2;
+
+    private static final byte[] HEX = new byte[128];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX["0123456789abcdef".charAt(i)] = (byte) i;
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+
+    // Tabla: posición i = clave (msb[i], lsb[i]), cuyo contenido está en la posición
+    // location[i] de la arena, con length[i] bytes
+    private long[] msb;
+    private long[] lsb;
+    private long[] location;
+    private int[] length;
+    private byte[] state;
+    private int size;
+    private int deleted;
+
+    private PageArena arena;
+    private long liveBytes;
+    private long deadBytes;
+
+    private final ConcurrentHashMap<String, byte[]> others = new ConcurrentHashMap<>();
+
+    public UuidPageIndex() {
+        this(false);
+    }
+
+    /** @param offHeap si el contenido se guarda en buffers directos, fuera del heap */
+    public UuidPageIndex(boolean offHeap) {
+        this.arena = new PageArena(offHeap);
+        allocateTable(INITIAL_CAPACITY);
+    }
+
+    public boolean isOffHeap() {
+        return arena.isDirect();
+    }
+
+    @Override
+    public byte[] get(String uuid) {
+        final ByteBuffer page = getBuffer(uuid);
+        if (page == null) {
+            return null;
+        }
+        final byte[] content = new byte[page.remaining()];
+        page.get(content);
+        return content;
+    }
+
+    /** Vista de la página guardada, sin copiarla. */
+    @Override
+    public ByteBuffer getBuffer(String uuid) {
+        if (!isCanonical(uuid)) {
+            final byte[] content = others.get(uuid);
+            return content == null ? null : ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+        final long high = mostSignificantBits(uuid);
+        final long low = leastSignificantBits(uuid);
+
+        final long stamp = lock.tryOptimisticRead();
+        ByteBuffer page;
+        try {
+            page = read(high, low);
+        } catch (RuntimeException e) {
+            // Se ha leído a medio cambiar: lo decide validate()
+            page = null;
+        }
+        if (lock.validate(stamp)) {
+            return page;
+        }
+
+        final long readStamp = lock.readLock();
+        try {
+            return read(high, low);
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    @Override
+    public boolean contains(String uuid) {
+        if (!isCanonical(uuid)) {
+            return others.containsKey(uuid);
+        }
+        final long high = mostSignificantBits(uuid);
+        final long low = leastSignificantBits(uuid);
+
+        final long stamp = lock.tryOptimisticRead();
+        boolean found;
+        try {
+            found = slotOf(high, low) >= 0;
+        } catch (RuntimeException e) {
+            found = false;
+        }
+        if (lock.validate(stamp)) {
+            return found;
+        }
+
+        final long readStamp = lock.readLock();
+        try {
+            return slotOf(high, low) >= 0;
+        } finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String uuid, byte[] content) {
+        if (!isCanonical(uuid)) {
+            return others.putIfAbsent(uuid, content) == null;
+        }
+        final long high = mostSignificantBits(uuid);
+        final long low = leastSignificantBits(uuid);
+
+        final long stamp = lock.writeLock();
+        try {
+            if (slotOf(high, low) >= 0) {
+                return false;
+            }
+            if ((size + deleted + 1) * 100L > state.length * (long) MAX_LOAD_PERCENT) {
+                // Si sobran borrados basta con reconstruir la tabla con el mismo tamaño
+                allocateTable(size * 100L > state.length * (long) MAX_LOAD_PERCENT / 2 ? state.length * 2 : state.length);
+            }
+
+            final int slot = freeSlot(high, low);
+            msb[slot] = high;
+            lsb[slot] = low;
+            location[slot] = arena.append(ByteBuffer.wrap(content));
+            length[slot] = content.length;
+            if (state[slot] == DELETED) {
+                deleted--;
+            }
+            state[slot] = USED;
+            size++;
+            liveBytes += content.length;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(String uuid) {
+        if (!isCanonical(uuid)) {
+            return others.remove(uuid) != null;
+        }
+        final long high = mostSignificantBits(uuid);
+        final long low = leastSignificantBits(uuid);
+
+        final long stamp = lock.writeLock();
+        try {
+            final int slot = slotOf(high, low);
+            if (slot < 0) {
+                return false;
+            }
+            state[slot] = DELETED;
+            size--;
+            deleted++;
+            liveBytes -= length[slot];
+            deadBytes += length[slot];
+
+            if (deadBytes > PageArena.SEGMENT_SIZE && deadBytes > liveBytes) {
+                compact();
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        final long stamp = lock.readLock();
+        try {
+            return size + others.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Bytes de contenido de las páginas guardadas (sin las claves que no son UUID). */
+    public long getContentBytes() {
+        final long stamp = lock.readLock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Bytes reservados para el contenido (en el heap o fuera de él), incluidos los huecos. */
+    public long getAllocatedBytes() {
+        final long stamp = lock.readLock();
+        try {
+            return arena.getAllocatedBytes();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** Copia de las claves tomada con el cerrojo de lectura, más las que no son UUID. */
+    @Override
+    public Iterator<String> uuids() {
+        final long[] keys;
+        final long stamp = lock.readLock();
+        try {
+            keys = new long[size * 2];
+            int k = 0;
+            for (int i = 0; i < state.length; i++) {
+                if (state[i] == USED) {
+                    keys[k++] = msb[i];
+                    keys[k++] = lsb[i];
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        final Iterator<String> rest = others.keySet().iterator();
+        return new Iterator<String>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length || rest.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (next < keys.length) {
+                    final String uuid = new UUID(keys[next], keys[next + 1]).toString();
+                    next += 2;
+                    return uuid;
+                }
+                return rest.next();
+            }
+        };
+    }
+
+    /** Si {@code key} es un UUID escrito como lo escribe {@link UUID#toString()}. */
+    static boolean isCanonical(String key) {
+        if (key == null || key.length() != 36
+            || key.charAt(8) != '-' || key.charAt(13) != '-' || key.charAt(18) != '-' || key.charAt(23) != '-') {
+            return false;
+        }
+        int invalid = 0;
+        for (int i = 0; i < 36; i++) {
+            if (i != 8 && i != 13 && i != 18 && i != 23) {
+                invalid |= digit(key.charAt(i));
+            }
+        }
+        return invalid >= 0;
+    }
+
+    static long mostSignificantBits(String uuid) {
+        return hex(uuid, 0, 8) << 32 | hex(uuid, 9, 13) << 16 | hex(uuid, 14, 18);
+    }
+
+    static long leastSignificantBits(String uuid) {
+        return hex(uuid, 19, 23) << 48 | hex(uuid, 24, 36);
+    }
+
+    private static long hex(String text, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value << 4 | digit(text.charAt(i));
+        }
+        return value;
+    }
+
+    // Valor de un dígito hexadecimal en minúscula, o -1
+    private static int digit(char c) {
+        return c < HEX.length ? HEX[c] : -1;
+    }
+
+    private static int hash(long high, long low) {
+        final long h = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // Posición de la clave, o -1. Con el sondeo acotado al tamaño de la tabla, una lectura
+    // optimista sobre una tabla a medio cambiar termina siempre
+    private int slotOf(long high, long low) {
+        final byte[] state = this.state;
+        final long[] msb = this.msb;
+        final long[] lsb = this.lsb;
+        final int mask = state.length - 1;
+
+        int slot = hash(high, low) & mask;
+        for (int probes = 0; probes < state.length; probes++) {
+            final byte s = state[slot];
+            if (s == FREE) {
+                return -1;
+            }
+            if (s == USED && msb[slot] == high && lsb[slot] == low) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private ByteBuffer read(long high, long low) {
+        final int slot = slotOf(high, low);
+        return slot < 0 ? null : arena.slice(location[slot], length[slot]);
+    }
+
+    // Primera posición libre o borrada de la secuencia de la clave (que no está)
+    private int freeSlot(long high, long low) {
+        final int mask = state.length - 1;
+        int slot = hash(high, low) & mask;
+        while (state[slot] == USED) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocateTable(int capacity) {
+        final long[] oldMsb = msb;
+        final long[] oldLsb = lsb;
+        final long[] oldLocation = location;
+        final int[] oldLength = length;
+        final byte[] oldState = state;
+
+        // Tablas nuevas: las lecturas optimistas en curso siguen viendo las antiguas enteras
+        final long[] newMsb = new long[capacity];
+        final long[] newLsb = new long[capacity];
+        final long[] newLocation = new long[capacity];
+        final int[] newLength = new int[capacity];
+        final byte[] newState = new byte[capacity];
+        final int mask = capacity - 1;
+
+        if (oldState != null) {
+            for (int i = 0; i < oldState.length; i++) {
+                if (oldState[i] == USED) {
+                    int slot = hash(oldMsb[i], oldLsb[i]) & mask;
+                    while (newState[slot] == USED) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newMsb[slot] = oldMsb[i];
+                    newLsb[slot] = oldLsb[i];
+                    newLocation[slot] = oldLocation[i];
+                    newLength[slot] = oldLength[i];
+                    newState[slot] = USED;
+                }
+            }
+        }
+
+        msb = newMsb;
+        lsb = newLsb;
+        location = newLocation;
+        length = newLength;
+        state = newState;
+        deleted = 0;
+    }
+
+    // Copia las páginas vivas a una arena nueva, sin los huecos de las borradas. La antigua
+    // se libera cuando no quede ninguna respuesta que la esté enviando
+    private void compact() {
+        final PageArena compacted = arena.empty();
+        for (int i = 0; i < state.length; i++) {
+            if (state[i] == USED) {
+                location[i] = compacted.append(arena.slice(location[i], length[i]));
+            }
+        }
+        arena = compacted;
+        deadBytes = 0;
+    }
+}
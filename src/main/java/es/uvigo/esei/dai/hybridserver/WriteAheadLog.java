@@ -0,0 +1,320 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Log de escritura anticipada de {@link DurablePageStore}: cada alta o borrado se añade como un
+ * registro con CRC32 al final del fichero {@code wal-NNNN.log} actual antes de aplicarse en
+ * memoria. {@link #rotate()} empieza un fichero nuevo, para que una instantánea pueda cubrir
+ * los anteriores y borrarlos.
+ *
+ * Cuándo llega a disco lo decide {@link DurablePageStore.Fsync}: con ALWAYS cada escritura se
+ * fuerza antes de volver; con GROUP un hilo fuerza a la vez todo lo escrito en los últimos
+ * {@code groupCommitMillis} ms y cada escritor espera en {@link #awaitDurable(long)} a que le
+ * toque; con OS se deja al sistema operativo.
+ *
+ * Los métodos que escriben se sincronizan sobre el log.
+ */
+class WriteAheadLog implements AutoCloseable {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    // Registro: crc (4) | tipo (1) | longitud de la clave (2) | longitud del contenido (4) | clave | contenido.
+    // El CRC cubre todo lo que va detrás de él
+    private static final int HEADER_SIZE = 11;
+
+    /** Destino de los registros al recuperar. */
+    interface Replay {
+        void put(String key, byte[] content);
+
+        void delete(String key);
+    }
+
+    private final Path directory;
+    private final DurablePageStore.Fsync fsync;
+    private final long groupCommitMillis;
+
+    private FileChannel channel;
+    private long generation;
+    // Bytes escritos desde que se abrió el log, y cuántos de ellos se sabe que están en disco
+    private long written;
+    private long synced;
+    private boolean closed;
+    private Thread flusher;
+
+    WriteAheadLog(Path directory, DurablePageStore.Fsync fsync, long groupCommitMillis) {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.groupCommitMillis = groupCommitMillis;
+    }
+
+    /**
+     * Aplica los registros de los ficheros posteriores a {@code afterGeneration} y deja el log
+     * abierto para seguir escribiendo en el último. Si acaba en un registro incompleto o
+     * corrupto (una caída a mitad de escritura) se trunca ahí. Devuelve cuántos registros ha leído.
+     */
+    synchronized long recover(long afterGeneration, Replay target) throws IOException {
+        final TreeMap<Long, Path> files = files(directory);
+        long records = 0;
+        for (Map.Entry<Long, Path> file : files.tailMap(afterGeneration, false).entrySet()) {
+            final Path path = file.getValue();
+            final long[] valid = new long[1];
+            records += replay(path, target, valid);
+            if (valid[0] < Files.size(path)) {
+                System.err.printf("[WARN] Registro incompleto o corrupto en %s (byte %d), se descarta el resto%n",
+                    path.getFileName(), valid[0]);
+                try (FileChannel truncated = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    truncated.truncate(valid[0]);
+                    truncated.force(true);
+                }
+            }
+        }
+
+        this.generation = files.isEmpty() ? afterGeneration + 1 : Math.max(files.lastKey(), afterGeneration + 1);
+        this.channel = open(generation);
+        if (fsync == DurablePageStore.Fsync.GROUP) {
+            flusher = new Thread(this::flushLoop, "HybridServer-WAL");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        return records;
+    }
+
+    /** Añade un registro; devuelve la marca que hay que pasar a {@link #awaitDurable(long)}. */
+    synchronized long append(byte type, String key, byte[] content) throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log closed");
+        }
+        final ByteBuffer record = ByteBuffer.wrap(encode(type, key, content));
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        written += record.limit();
+        if (fsync == DurablePageStore.Fsync.ALWAYS) {
+            channel.force(false);
+            synced = written;
+        } else if (fsync == DurablePageStore.Fsync.GROUP) {
+            notifyAll();
+        }
+        return written;
+    }
+
+    /** Con GROUP, espera a que lo escrito hasta {@code mark} esté en disco. */
+    void awaitDurable(long mark) throws IOException {
+        if (fsync != DurablePageStore.Fsync.GROUP) {
+            return;
+        }
+        synchronized (this) {
+            try {
+                while (synced < mark && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (synced < mark) {
+                throw new IOException("Write-ahead log closed before the write reached the disk");
+            }
+        }
+    }
+
+    /** Cierra el fichero actual (forzándolo a disco) y empieza otro; devuelve la generación cerrada. */
+    synchronized long rotate() throws IOException {
+        if (closed) {
+            throw new IOException("Write-ahead log closed");
+        }
+        channel.force(false);
+        channel.close();
+        synced = written;
+        notifyAll();
+        final long rotated = generation;
+        channel = open(++generation);
+        return rotated;
+    }
+
+    /** Borra los ficheros hasta {@code generation}, ya cubiertos por una instantánea. */
+    void deleteUpTo(long generation) throws IOException {
+        for (Path path : files(directory).headMap(generation, true).values()) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        final Thread flusher;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.force(false);
+                synced = written;
+            } finally {
+                channel.close();
+                notifyAll();
+            }
+            flusher = this.flusher;
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Group commit: espera a que haya algo escrito, deja pasar groupCommitMillis para que se junten
+    // más escrituras y las fuerza todas con un único force()
+    private void flushLoop() {
+        while (true) {
+            final FileChannel target;
+            final long mark;
+            try {
+                synchronized (this) {
+                    while (synced == written && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                Thread.sleep(groupCommitMillis);
+                synchronized (this) {
+                    target = channel;
+                    mark = written;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                // Lo ha forzado rotate() o close() al cerrarlo
+            } catch (IOException e) {
+                System.err.println("[WARN] No se pudo forzar el log a disco: " + e.getMessage());
+                continue;
+            }
+            synchronized (this) {
+                synced = Math.max(synced, mark);
+                notifyAll();
+            }
+        }
+    }
+
+    /** Registro completo, con su CRC; las instantáneas usan el mismo formato. */
+    static byte[] encode(byte type, String key, byte[] content) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Key too long");
+        }
+        final int length = content != null ? content.length : 0;
+        final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + length);
+        record.position(4);
+        record.put(type);
+        record.putShort((short) keyBytes.length);
+        record.putInt(length);
+        record.put(keyBytes);
+        if (content != null) {
+            record.put(content);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+        return record.array();
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        return FileChannel.open(directory.resolve(String.format("wal-%016d.log", generation)),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static TreeMap<Long, Path> files(Path directory) throws IOException {
+        final TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length())), path);
+                } catch (NumberFormatException e) {
+                    System.err.println("[WARN] Fichero ignorado en el log: " + name);
+                }
+            }
+        }
+        return files;
+    }
+
+    // Aplica los registros del fichero; en valid[0] deja hasta dónde son válidos
+    static long replay(Path path, Replay target, long[] valid) throws IOException {
+        final long size = Files.size(path);
+        long records = 0;
+        try (InputStream file = Files.newInputStream(path)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(file, 64 * 1024));
+            final byte[] header = new byte[HEADER_SIZE];
+            final CRC32 crc = new CRC32();
+            while (true) {
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    break;
+                }
+                final ByteBuffer fields = ByteBuffer.wrap(header);
+                final int expected = fields.getInt();
+                final byte type = fields.get();
+                final int keyLength = fields.getShort();
+                final int length = fields.getInt();
+                // Con una cabecera estropeada no se reserva nada más grande que el propio fichero
+                if ((type != PUT && type != DELETE) || keyLength < 0 || length < 0
+                    || (type == DELETE && length != 0)
+                    || valid[0] + HEADER_SIZE + keyLength + length > size) {
+                    break;
+                }
+
+                final byte[] key = new byte[keyLength];
+                final byte[] content = new byte[length];
+                try {
+                    in.readFully(key);
+                    in.readFully(content);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(header, 4, HEADER_SIZE - 4);
+                crc.update(key);
+                crc.update(content);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+
+                final String uuid = new String(key, StandardCharsets.UTF_8);
+                if (type == PUT) {
+                    target.put(uuid, content);
+                } else {
+                    target.delete(uuid);
+                }
+                records++;
+                valid[0] += HEADER_SIZE + keyLength + length;
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,124 @@
+package es.uvigo.esei.dai.hybridserver.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codifica lo que se escribe con "Transfer-Encoding: chunked": acumula hasta {@code chunkSize}
+ * bytes y los envía como un chunk. {@link #finish()} envía el chunk final vacío; ni ese método
+ * ni {@link #close()} cierran el stream de debajo, que normalmente es el del socket.
+ */
+public class ChunkedOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    // Hueco delante de los datos para el tamaño en hexadecimal + "\r\n" (hasta 7FFFFFFF)
+    private static final int SIZE_RESERVE = 10;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    // [reserva para el tamaño][datos][\r\n]: cada chunk sale con un único write
+    private final byte[] buffer;
+    private final int chunkSize;
+    private int count;
+    private boolean finished;
+
+    public ChunkedOutputStream(OutputStream out) {
+        this(out, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedOutputStream(OutputStream out, int chunkSize) {
+        super(out);
+        this.chunkSize = chunkSize;
+        this.buffer = new byte[SIZE_RESERVE + chunkSize + CRLF.length];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[SIZE_RESERVE + count++] = (byte) b;
+        if (count == chunkSize) {
+            writeBufferedChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len >= chunkSize) {
+            // Bloques grandes: se envían tal cual, sin pasar por el buffer
+            writeBufferedChunk();
+            writeSize(len);
+            out.write(b, off, len);
+            out.write(CRLF);
+            return;
+        }
+
+        while (len > 0) {
+            final int n = Math.min(len, chunkSize - count);
+            System.arraycopy(b, off, buffer, SIZE_RESERVE + count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == chunkSize) {
+                writeBufferedChunk();
+            }
+        }
+    }
+
+    /** Envía lo acumulado como un chunk (si hay algo) y hace flush. */
+    @Override
+    public void flush() throws IOException {
+        if (!finished) {
+            writeBufferedChunk();
+        }
+        out.flush();
+    }
+
+    /** Envía lo pendiente y el chunk final. No admite más escrituras. */
+    public void finish() throws IOException {
+        if (!finished) {
+            writeBufferedChunk();
+            out.write(LAST_CHUNK);
+            out.flush();
+            finished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeBufferedChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+
+        int start = SIZE_RESERVE;
+        buffer[--start] = '\n';
+        buffer[--start] = '\r';
+        for (int size = count; size > 0; size >>>= 4) {
+            buffer[--start] = HEX[size & 0xf];
+        }
+        final int end = SIZE_RESERVE + count;
+        buffer[end] = '\r';
+        buffer[end + 1] = '\n';
+
+        out.write(buffer, start, end + CRLF.length - start);
+        count = 0;
+    }
+
+    private void writeSize(int size) throws IOException {
+        out.write(Integer.toHexString(size).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Chunked stream already finished");
+        }
+    }
+}
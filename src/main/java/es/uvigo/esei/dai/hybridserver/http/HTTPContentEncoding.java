@@ -0,0 +1,134 @@
+package es.uvigo.esei.dai.hybridserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Codificaciones de contenido (Content-Encoding) que sabe generar el servidor y su
+ * negociación a partir de la cabecera Accept-Encoding de la petición.
+ */
+public enum HTTPContentEncoding {
+    GZIP("gzip"),
+    // En HTTP "deflate" es el formato zlib, que es lo que genera DeflaterOutputStream
+    DEFLATE("deflate");
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String name;
+
+    private HTTPContentEncoding(String name) {
+        this.name = name;
+    }
+
+    /** Valor para la cabecera Content-Encoding. */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Stream que comprime lo que se escribe y lo pasa a {@code out}. Al cerrarlo se termina
+     * la compresión y se liberan sus recursos, pero {@code out} sigue abierto.
+     *
+     * @param level nivel de compresión de {@link java.util.zip.Deflater} (0-9, o -1 por defecto)
+     */
+    public OutputStream wrap(OutputStream out, int level) throws IOException {
+        final OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(target, BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+            case DEFLATE:
+            default:
+                return new DeflaterOutputStream(target) {
+                    {
+                        def.setLevel(level);
+                    }
+                };
+        }
+    }
+
+    /** Comprime {@code data} entero. */
+    public byte[] encode(byte[] data, int level) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (OutputStream compressed = wrap(out, level)) {
+            compressed.write(data);
+        } catch (IOException e) {
+            // Escribiendo en memoria no puede ocurrir
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Elige la codificación para un valor de Accept-Encoding (por ejemplo
+     * "gzip, deflate;q=0.5, *;q=0"), o {@code null} si el cliente no acepta ninguna o no
+     * envió la cabecera. Gana la de mayor q; a igualdad, gzip.
+     */
+    public static HTTPContentEncoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+
+        final double[] quality = { -1, -1 };
+        double wildcard = -1;
+
+        for (String part : acceptEncoding.split(",")) {
+            final int semicolon = part.indexOf(';');
+            final String coding = (semicolon < 0 ? part : part.substring(0, semicolon)).trim();
+            final double q = semicolon < 0 ? 1 : quality(part.substring(semicolon + 1));
+
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                quality[GZIP.ordinal()] = q;
+            } else if (coding.equalsIgnoreCase("deflate")) {
+                quality[DEFLATE.ordinal()] = q;
+            } else if (coding.equals("*")) {
+                wildcard = q;
+            }
+        }
+
+        HTTPContentEncoding best = null;
+        double bestQuality = 0;
+        for (HTTPContentEncoding encoding : values()) {
+            final double q = quality[encoding.ordinal()] >= 0 ? quality[encoding.ordinal()] : wildcard;
+            if (q > bestQuality) {
+                best = encoding;
+                bestQuality = q;
+            }
+        }
+        return best;
+    }
+
+    // "q=0.8" (con espacios opcionales); si no se entiende se toma como 1
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            final String trimmed = parameter.trim();
+            if (trimmed.startsWith("q=") || trimmed.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(trimmed.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+}
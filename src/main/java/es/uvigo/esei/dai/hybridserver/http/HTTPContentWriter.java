@@ -0,0 +1,15 @@
+package es.uvigo.esei.dai.hybridserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Genera el cuerpo de una respuesta a medida que se envía, en lugar de tenerlo entero en
+ * memoria (ver {@link HTTPResponse#setContentWriter(HTTPContentWriter)}). Se ejecuta una sola
+ * vez, cuando ya se han enviado las cabeceras: si falla, la conexión se corta.
+ */
+@FunctionalInterface
+public interface HTTPContentWriter {
+    /** Escribe el cuerpo en {@code out}, sin cerrarlo. */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -17,19 +17,73 @@
  */
 package es.uvigo.esei.dai.hybridserver.http;
 
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
 public enum HTTPHeaders {
   CONTENT_LENGTH("Content-Length"),
-  CONTENT_TYPE("Content-Type"),
+  CONTENT_TYPE("Content-Type", "text/html", "text/html; charset=UTF-8", "application/xml"),
   HTTP_1_1("HTTP/1.1"),
-  CONNECTION("Connection");
+  CONNECTION("Connection", "close", "keep-alive"),
+  KEEP_ALIVE("Keep-Alive"),
+  TRANSFER_ENCODING("Transfer-Encoding", "chunked"),
+  ACCEPT_ENCODING("Accept-Encoding"),
+  CONTENT_ENCODING("Content-Encoding", "gzip", "deflate"),
+  VARY("Vary", "Accept-Encoding"),
+  ETAG("ETag"),
+  IF_NONE_MATCH("If-None-Match"),
+  CACHE_CONTROL("Cache-Control", "public, max-age=31536000, immutable"),
+  RETRY_AFTER("Retry-After");
+
+  private static final Map<String, HTTPHeaders> BY_NAME = new HashMap<>();
+
+  static {
+    for (HTTPHeaders header : values()) {
+      BY_NAME.put(header.header, header);
+    }
+  }
 
   private final String header;
+  // "Nombre: " y las líneas "Nombre: valor\r\n" más habituales, ya codificadas
+  private final byte[] prefix;
+  private final String[] commonValues;
+  private final byte[][] commonLines;
 
-  private HTTPHeaders(String header) {
+  private HTTPHeaders(String header, String... commonValues) {
     this.header = header;
+    this.prefix = (header + ": ").getBytes(StandardCharsets.US_ASCII);
+    this.commonValues = commonValues;
+    this.commonLines = new byte[commonValues.length][];
+    for (int i = 0; i < commonValues.length; i++) {
+      this.commonLines[i] = (header + ": " + commonValues[i] + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
   }
 
   public String getHeader() {
     return this.header;
   }
+
+  /** "Nombre: " en bytes. No se debe modificar el array. */
+  public byte[] getPrefix() {
+    return this.prefix;
+  }
+
+  /**
+   * Línea completa "Nombre: valor\r\n" si {@code value} es uno de los valores habituales de
+   * esta cabecera, o {@code null} si hay que codificarla. No se debe modificar el array.
+   */
+  public byte[] getLine(String value) {
+    for (int i = 0; i < this.commonValues.length; i++) {
+      if (this.commonValues[i].equals(value)) {
+        return this.commonLines[i];
+      }
+    }
+    return null;
+  }
+
+  /** Cabecera con ese nombre exacto, o {@code null} si no es una de las conocidas. */
+  public static HTTPHeaders forHeader(String name) {
+    return BY_NAME.get(name);
+  }
 }
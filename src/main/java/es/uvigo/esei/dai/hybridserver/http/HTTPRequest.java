@@ -26,6 +26,20 @@ public class HTTPRequest {
     private int contentLength;
     private final BufferedReader read;
 
+    /** Usado por {@link HTTPRequestParser}, que ya ha hecho todo el parseo sobre bytes. */
+    HTTPRequest(HTTPRequestMethod method, String resourceChain, String httpVersion,
+            Map<String, String> resourceParameters, Map<String, String> headerParameters,
+            String content, int contentLength) {
+        this.method = method;
+        this.resourceChain = resourceChain;
+        this.httpVersion = httpVersion;
+        this.resourceParameters = resourceParameters;
+        this.headerParameters = headerParameters;
+        this.content = content;
+        this.contentLength = contentLength;
+        this.read = null;
+    }
+
     public HTTPRequest(Reader reader) throws IOException, HTTPParseException {
         this.read = (reader instanceof BufferedReader)
             ? (BufferedReader) reader
@@ -139,6 +153,16 @@ public class HTTPRequest {
         return this.headerParameters;
     }
 
+    /** Valor de una cabecera sin distinguir mayúsculas en el nombre, o {@code null} si no está. */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> entry : this.headerParameters.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
     public String getContent() {
         return this.content;
     }
@@ -0,0 +1,446 @@
+package es.uvigo.esei.dai.hybridserver.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parser de peticiones HTTP que trabaja directamente sobre bytes, sin Reader ni expresiones
+ * regulares. Produce la misma vista que {@link HTTPRequest#HTTPRequest(java.io.Reader)}
+ * (método, recurso, parámetros, cabeceras y contenido decodificado).
+ *
+ * Es una máquina de estados que se puede alimentar por trozos: {@link #parse(ByteBuffer)}
+ * consume lo que haya en el buffer y devuelve {@code null} si la petición aún no está
+ * completa, guardando lo leído hasta la siguiente llamada. Cuando devuelve una petición deja
+ * sin consumir los bytes que vengan detrás (pipelining) y queda listo para la siguiente, así
+ * que una instancia sirve para toda una conexión. No es thread-safe.
+ */
+public class HTTPRequestParser {
+    public static final int DEFAULT_MAX_HEADER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 16 * 1024 * 1024;
+
+    private static final int INITIAL_LINE_SIZE = 256;
+    // Por encima de este tamaño el buffer del cuerpo no se conserva entre peticiones
+    private static final int RETAINED_BODY_SIZE = 64 * 1024;
+
+    private static final HTTPRequestMethod[] METHODS = HTTPRequestMethod.values();
+    private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+
+    // Nombres de cabecera habituales: si coinciden se reutiliza el String en lugar de crear uno
+    private static final String[] COMMON_HEADERS = {
+        "Host", "Connection", "Content-Length", "Content-Type", "User-Agent", "Accept",
+        "Accept-Encoding", "Accept-Language", "Cache-Control", "If-None-Match", "Keep-Alive"
+    };
+    private static final byte[][] COMMON_HEADER_BYTES = new byte[COMMON_HEADERS.length][];
+
+    static {
+        for (int i = 0; i < METHODS.length; i++) {
+            METHOD_NAMES[i] = METHODS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        for (int i = 0; i < COMMON_HEADERS.length; i++) {
+            COMMON_HEADER_BYTES[i] = COMMON_HEADERS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private enum State { REQUEST_LINE, HEADERS, BODY }
+
+    private final int maxHeaderSize;
+    private final int maxContentLength;
+
+    private State state = State.REQUEST_LINE;
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int lineLength;
+    private int headerSize;
+    private byte[] body = new byte[0];
+    private int bodyRead;
+    // Para decodificar %XX sin crear arrays intermedios
+    private byte[] scratch = new byte[INITIAL_LINE_SIZE];
+
+    private HTTPRequestMethod method;
+    private String resourceChain;
+    private String httpVersion;
+    private Map<String, String> resourceParameters;
+    private Map<String, String> headerParameters;
+    private int contentLength;
+
+    public HTTPRequestParser() {
+        this(DEFAULT_MAX_HEADER_SIZE, DEFAULT_MAX_CONTENT_LENGTH);
+    }
+
+    public HTTPRequestParser(int maxHeaderSize, int maxContentLength) {
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxContentLength = maxContentLength;
+    }
+
+    /**
+     * Consume bytes de {@code buffer} (entre su posición y su límite) y devuelve la petición en
+     * cuanto está completa, o {@code null} si hacen falta más datos. Tras una excepción el
+     * parser vuelve al estado inicial, pero la conexión no debería seguir usándose.
+     */
+    public HTTPRequest parse(ByteBuffer buffer) throws HTTPParseException {
+        try {
+            while (buffer.hasRemaining()) {
+                switch (state) {
+                    case REQUEST_LINE:
+                        if (!readLine(buffer)) {
+                            return null;
+                        }
+                        parseRequestLine();
+                        lineLength = 0;
+                        state = State.HEADERS;
+                        break;
+                    case HEADERS:
+                        if (!readLine(buffer)) {
+                            return null;
+                        }
+                        if (lineLength > 0) {
+                            parseHeader();
+                            lineLength = 0;
+                        } else if (contentLength > 0) {
+                            if (body.length < contentLength) {
+                                body = new byte[contentLength];
+                            }
+                            state = State.BODY;
+                        } else {
+                            return complete();
+                        }
+                        break;
+                    case BODY:
+                        final int n = Math.min(buffer.remaining(), contentLength - bodyRead);
+                        buffer.get(body, bodyRead, n);
+                        bodyRead += n;
+                        if (bodyRead == contentLength) {
+                            return complete();
+                        }
+                        break;
+                }
+            }
+            return null;
+        } catch (HTTPParseException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    /** {@code true} si se ha empezado a leer una petición que aún no está completa. */
+    public boolean isPartial() {
+        return state != State.REQUEST_LINE || lineLength > 0;
+    }
+
+    /** Descarta la petición a medio leer. */
+    public void reset() {
+        state = State.REQUEST_LINE;
+        lineLength = 0;
+        headerSize = 0;
+        bodyRead = 0;
+        method = null;
+        resourceChain = null;
+        httpVersion = null;
+        resourceParameters = null;
+        headerParameters = null;
+        contentLength = 0;
+        if (body.length > RETAINED_BODY_SIZE) {
+            body = new byte[0];
+        }
+    }
+
+    private HTTPRequest complete() throws HTTPParseException {
+        final String content = contentLength > 0 ? urlDecode(body, 0, contentLength) : null;
+        final HTTPRequest request = new HTTPRequest(
+            method, resourceChain, httpVersion, resourceParameters, headerParameters, content, contentLength
+        );
+        reset();
+        return request;
+    }
+
+    /**
+     * Copia en {@link #line} los bytes hasta el siguiente '\n' (sin el "\r\n") y devuelve
+     * {@code true} si la línea está completa.
+     */
+    private boolean readLine(ByteBuffer buffer) throws HTTPParseException {
+        final int start = buffer.position();
+        final int limit = buffer.limit();
+        int end = start;
+        boolean found = false;
+
+        if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int offset = buffer.arrayOffset();
+            while (end < limit) {
+                if (array[offset + end++] == '\n') {
+                    found = true;
+                    break;
+                }
+            }
+        } else {
+            while (end < limit) {
+                if (buffer.get(end++) == '\n') {
+                    found = true;
+                    break;
+                }
+            }
+        }
+
+        final int consumed = end - start;
+        headerSize += consumed;
+        if (headerSize > maxHeaderSize) {
+            throw new HTTPParseException("Header section too large");
+        }
+
+        ensureLineCapacity(lineLength + consumed);
+        buffer.get(line, lineLength, consumed);
+        lineLength += consumed;
+
+        if (!found) {
+            return false;
+        }
+
+        lineLength--;
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return true;
+    }
+
+    private void parseRequestLine() throws HTTPParseException {
+        if (lineLength == 0) {
+            throw new HTTPParseException("Missing request line");
+        }
+
+        // METHOD SP resource SP version, con cualquier cantidad de espacios en blanco entre medias
+        final int methodEnd = nextWhitespace(0);
+        final int resourceStart = skipWhitespace(methodEnd);
+        final int resourceEnd = nextWhitespace(resourceStart);
+        final int versionStart = skipWhitespace(resourceEnd);
+        final int versionEnd = nextWhitespace(versionStart);
+
+        if (methodEnd == 0 || resourceStart == lineLength || versionStart == lineLength
+            || skipWhitespace(versionEnd) != lineLength) {
+            throw new HTTPParseException("Malformed request line: " + lineAsString());
+        }
+
+        this.method = method(methodEnd);
+        this.httpVersion = new String(line, versionStart, versionEnd - versionStart, StandardCharsets.UTF_8);
+        if (!this.httpVersion.startsWith("HTTP/")) {
+            throw new HTTPParseException("Invalid HTTP version: " + this.httpVersion);
+        }
+
+        this.resourceChain = new String(line, resourceStart, resourceEnd - resourceStart, StandardCharsets.UTF_8);
+        this.resourceParameters = new HashMap<>();
+        this.headerParameters = new LinkedHashMap<>();
+
+        for (int i = resourceStart; i < resourceEnd; i++) {
+            if (line[i] == '?') {
+                parseQuery(i + 1, resourceEnd);
+                break;
+            }
+        }
+    }
+
+    private HTTPRequestMethod method(int length) throws HTTPParseException {
+        for (int i = 0; i < METHODS.length; i++) {
+            final byte[] name = METHOD_NAMES[i];
+            if (name.length == length && equalsIgnoreCase(name, line, 0)) {
+                return METHODS[i];
+            }
+        }
+        throw new HTTPParseException("Unsupported method: " + new String(line, 0, length, StandardCharsets.UTF_8));
+    }
+
+    /** Igual que {@code query.split("&")}: se conservan los pares vacíos salvo los del final. */
+    private void parseQuery(int start, int end) throws HTTPParseException {
+        while (end > start && line[end - 1] == '&') {
+            end--;
+        }
+
+        int pairStart = start;
+        while (pairStart < end) {
+            int pairEnd = pairStart;
+            while (pairEnd < end && line[pairEnd] != '&') {
+                pairEnd++;
+            }
+
+            int equals = pairStart;
+            while (equals < pairEnd && line[equals] != '=') {
+                equals++;
+            }
+
+            final String key = urlDecode(line, pairStart, equals - pairStart);
+            final String value = equals < pairEnd ? urlDecode(line, equals + 1, pairEnd - equals - 1) : "";
+            resourceParameters.put(key, value);
+
+            pairStart = pairEnd + 1;
+        }
+    }
+
+    private void parseHeader() throws HTTPParseException {
+        int colon = 0;
+        while (colon < lineLength && line[colon] != ':') {
+            colon++;
+        }
+        if (colon == 0 || colon == lineLength) {
+            throw new HTTPParseException("Invalid header line: " + lineAsString());
+        }
+
+        final int nameStart = trimStart(0, colon);
+        final int nameEnd = trimEnd(nameStart, colon);
+        final String name = headerName(nameStart, nameEnd);
+
+        final int valueStart = trimStart(colon + 1, lineLength);
+        int valueEnd = trimEnd(valueStart, lineLength);
+
+        if (name.equalsIgnoreCase("Host")) {
+            // Host: eliminar puerto si lo tiene
+            for (int i = valueStart; i < valueEnd; i++) {
+                if (line[i] == ':') {
+                    valueEnd = trimEnd(valueStart, i);
+                    break;
+                }
+            }
+        } else if (name.equalsIgnoreCase("Content-Length")) {
+            this.contentLength = contentLength(valueStart, valueEnd);
+        }
+
+        final String value = new String(line, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        headerParameters.put(name, value);
+    }
+
+    private String headerName(int start, int end) {
+        final int length = end - start;
+        for (int i = 0; i < COMMON_HEADER_BYTES.length; i++) {
+            final byte[] known = COMMON_HEADER_BYTES[i];
+            if (known.length == length && equals(known, line, start)) {
+                return COMMON_HEADERS[i];
+            }
+        }
+        return new String(line, start, length, StandardCharsets.UTF_8);
+    }
+
+    private int contentLength(int start, int end) throws HTTPParseException {
+        if (start == end) {
+            throw new HTTPParseException("Invalid Content-Length: ");
+        }
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > Integer.MAX_VALUE) {
+                throw new HTTPParseException(
+                    "Invalid Content-Length: " + new String(line, start, end - start, StandardCharsets.UTF_8)
+                );
+            }
+        }
+
+        if (value > maxContentLength) {
+            throw new HTTPParseException("Request too large");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Decodifica "application/x-www-form-urlencoded" ('+' y %XX) como {@code URLDecoder} en
+     * UTF-8. Si no hay nada que decodificar se crea el String directamente.
+     */
+    private String urlDecode(byte[] src, int offset, int length) throws HTTPParseException {
+        final int end = offset + length;
+        int i = offset;
+        while (i < end && src[i] != '%' && src[i] != '+') {
+            i++;
+        }
+        if (i == end) {
+            return new String(src, offset, length, StandardCharsets.UTF_8);
+        }
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int n = i - offset;
+        System.arraycopy(src, offset, scratch, 0, n);
+
+        while (i < end) {
+            final byte b = src[i++];
+            if (b == '+') {
+                scratch[n++] = ' ';
+            } else if (b == '%') {
+                final int hi = i + 1 < end ? Character.digit(src[i], 16) : -1;
+                final int lo = hi >= 0 ? Character.digit(src[i + 1], 16) : -1;
+                if (lo < 0) {
+                    throw new HTTPParseException("Illegal escape sequence in URL-encoded data");
+                }
+                scratch[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                scratch[n++] = b;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private void ensureLineCapacity(int capacity) {
+        if (line.length < capacity) {
+            final byte[] bigger = new byte[Math.max(capacity, line.length * 2)];
+            System.arraycopy(line, 0, bigger, 0, lineLength);
+            line = bigger;
+        }
+    }
+
+    private int nextWhitespace(int from) {
+        while (from < lineLength && !isWhitespace(line[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private int skipWhitespace(int from) {
+        while (from < lineLength && isWhitespace(line[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    // Mismo criterio que String.trim(): cualquier byte <= ' '
+    private int trimStart(int from, int to) {
+        while (from < to && (line[from] & 0xff) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (line[to - 1] & 0xff) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    private String lineAsString() {
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    // Los espacios en blanco de la expresión "\\s"
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static boolean equals(byte[] expected, byte[] data, int offset) {
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // expected está en mayúsculas
+    private static boolean equalsIgnoreCase(byte[] expected, byte[] data, int offset) {
+        for (int i = 0; i < expected.length; i++) {
+            final byte b = data[offset + i];
+            if (expected[i] != b && expected[i] != (b >= 'a' && b <= 'z' ? b - 32 : b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -17,9 +17,13 @@
  */
 package es.uvigo.esei.dai.hybridserver.http;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,12 +36,49 @@ public class HTTPResponse {
   private HTTPResponseStatus status;
   private Map<String,String> cabecera;
   private String contenido;
+  // El contenido ya codificado en UTF-8: es lo que se envía y lo que mide Content-Length
+  private byte[] contenidoBytes;
+  // O bien una vista de solo lectura de un contenido ya codificado (p. ej. fuera del heap),
+  // que se envía sin copiarla; contenidoBytes solo se crea si alguien lo pide
+  private ByteBuffer contenidoBuffer;
+  // Si no es null el cuerpo se genera al enviarlo, con "Transfer-Encoding: chunked"
+  private HTTPContentWriter contentWriter;
 
   public HTTPResponse() {
     this.version = "HTTP/1.1";
     this.status = HTTPResponseStatus.S200;
     this.cabecera = new HashMap<>();
     this.contenido = "";
+    this.contenidoBytes = new byte[0];
+  }
+
+  // Respuestas HTML de los repositorios: todas con el mismo Content-Type y el cuerpo ya codificado
+  public static HTTPResponse html(HTTPResponseStatus status, String body) {
+    return html(status, (body != null ? body : "").getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static HTTPResponse html(HTTPResponseStatus status, byte[] body) {
+    final HTTPResponse res = htmlHead(status);
+    res.setContentBytes(body);
+    return res;
+  }
+
+  public static HTTPResponse html(HTTPResponseStatus status, ByteBuffer body) {
+    final HTTPResponse res = htmlHead(status);
+    res.setContentBuffer(body);
+    return res;
+  }
+
+  public static HTTPResponse error(HTTPResponseStatus status, String message) {
+    return html(status, "<html><body><h1>" + status.getCode() + " " + status.getStatus() + "</h1><p>"
+      + message + "</p></body></html>");
+  }
+
+  private static HTTPResponse htmlHead(HTTPResponseStatus status) {
+    final HTTPResponse res = new HTTPResponse();
+    res.setStatus(status);
+    res.putParameter(HTTPHeaders.CONTENT_TYPE.getHeader(), MIME.TEXT_HTML.getMime());
+    return res;
   }
 
   public HTTPResponseStatus getStatus() {
@@ -57,13 +98,100 @@ public class HTTPResponse {
   }
 
   public String getContent() {
+    bufferContentUnchecked();
+    if (this.contenido == null) {
+      this.contenido = new String(getContentBytes(), StandardCharsets.UTF_8);
+    }
     return this.contenido;
   }
 
 // lo hago así para no tener que hacer "Content-Length" en el metodo printer
+// (en bytes UTF-8, no en caracteres: si no, con keep-alive el cliente se desincroniza)
 public void setContent(String content) {
+    this.contentWriter = null;
+    this.contenidoBuffer = null;
     this.contenido = content != null ? content : "";
-    this.cabecera.put("Content-Length", String.valueOf(this.contenido.length()));
+    this.contenidoBytes = this.contenido.getBytes(StandardCharsets.UTF_8);
+    this.cabecera.put("Content-Length", String.valueOf(this.contenidoBytes.length));
+}
+
+// Contenido ya codificado en UTF-8 (p. ej. desde una caché): el String solo se crea si se pide
+public void setContentBytes(byte[] content) {
+    this.contentWriter = null;
+    this.contenidoBuffer = null;
+    this.contenido = null;
+    this.contenidoBytes = content != null ? content : new byte[0];
+    this.cabecera.put("Content-Length", String.valueOf(this.contenidoBytes.length));
+}
+
+// Contenido ya codificado en UTF-8 que no se copia: se envía lo que le queda al buffer
+public void setContentBuffer(ByteBuffer content) {
+    this.contentWriter = null;
+    this.contenido = null;
+    this.contenidoBytes = null;
+    this.contenidoBuffer = content != null ? content.asReadOnlyBuffer() : ByteBuffer.allocate(0);
+    this.cabecera.put("Content-Length", String.valueOf(this.contenidoBuffer.remaining()));
+}
+
+public byte[] getContentBytes() {
+    bufferContentUnchecked();
+    if (this.contenidoBytes == null) {
+      final byte[] content = new byte[this.contenidoBuffer.remaining()];
+      this.contenidoBuffer.duplicate().get(content);
+      this.contenidoBytes = content;
+    }
+    return this.contenidoBytes;
+}
+
+// Tamaño del cuerpo en bytes sin copiarlo ni generarlo; -1 si va por chunks
+public int getContentLength() {
+    if (this.contentWriter != null) {
+      return -1;
+    }
+    return this.contenidoBuffer != null ? this.contenidoBuffer.remaining() : this.contenidoBytes.length;
+}
+
+// El cuerpo como buffer, sin copiarlo (no se debe modificar); cada llamada tiene su propia posición
+public ByteBuffer getContentBuffer() {
+    bufferContentUnchecked();
+    if (this.contenidoBuffer != null) {
+      return this.contenidoBuffer.duplicate();
+    }
+    return ByteBuffer.wrap(this.contenidoBytes);
+}
+
+// Cuerpo generado mientras se envía (listados, páginas grandes): no hay Content-Length
+public void setContentWriter(HTTPContentWriter writer) {
+    this.contentWriter = writer;
+    this.contenidoBuffer = null;
+    this.contenido = "";
+    this.contenidoBytes = new byte[0];
+    this.cabecera.remove("Content-Length");
+}
+
+public HTTPContentWriter getContentWriter() {
+    return this.contentWriter;
+}
+
+public boolean isChunked() {
+    return this.contentWriter != null;
+}
+
+// Genera ya el cuerpo por chunks y lo guarda como contenido normal (p. ej. para un cliente HTTP/1.0)
+public void bufferContent() throws IOException {
+    if (this.contentWriter != null) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      this.contentWriter.writeTo(out);
+      setContentBytes(out.toByteArray());
+    }
+}
+
+private void bufferContentUnchecked() {
+    try {
+      bufferContent();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
 }
 
 
@@ -93,6 +221,7 @@ public List<String> listParameters() {
 
 
 public void print(Writer writer) throws IOException {
+    bufferContent();
     StringBuilder sb = new StringBuilder();
 
     // 1. Línea de estado
@@ -115,8 +244,8 @@ public void print(Writer writer) throws IOException {
     sb.append("\r\n");
 
     // 4. Cuerpo (si lo hay)
-    if (this.contenido != null && !this.contenido.isEmpty()) {
-        sb.append(this.contenido);
+    if (getContentBytes().length > 0) {
+        sb.append(this.getContent());
     }
 
     // 5. Escribir en el Writer
@@ -0,0 +1,233 @@
+package es.uvigo.esei.dai.hybridserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Codifica un {@link HTTPResponse} directamente a bytes, sin pasar por un StringBuilder ni
+ * un Writer: la línea de estado, los nombres de cabecera y las líneas más habituales salen
+ * de las constantes ya codificadas de {@link HTTPResponseStatus} y {@link HTTPHeaders}, y el
+ * cuerpo es el buffer que guarda la respuesta, sin copiarlo (puede estar fuera del heap).
+ *
+ * El resultado es un {@code ByteBuffer[]} (cabecera + cuerpo) pensado para una escritura
+ * "gathering" sobre el canal. Content-Length siempre se calcula aquí a partir de los bytes
+ * del cuerpo, ignorando el valor que tuviera la respuesta.
+ *
+ * Las respuestas con {@link HTTPResponse#isChunked() cuerpo generado al vuelo} solo se envían
+ * por chunks con {@link #write(HTTPResponse, OutputStream)}; {@link #encode(HTTPResponse)}
+ * las genera antes enteras en memoria.
+ */
+public final class HTTPResponseEncoder {
+    // Cuerpos hasta este tamaño se copian detrás de la cabecera para enviar un único buffer
+    private static final int INLINE_CONTENT_LIMIT = 2 * 1024;
+
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] COLON_SPACE = { ':', ' ' };
+    // Para copiar a un OutputStream los cuerpos que no están en un array
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private HTTPResponseEncoder() {
+    }
+
+    /** Cabecera y, si lo hay y no se ha incluido en ella, cuerpo de la respuesta. */
+    public static ByteBuffer[] encode(HTTPResponse response) {
+        final ByteBuffer content = hasContent(response.getStatus()) ? response.getContentBuffer() : EMPTY.duplicate();
+        final int length = content.remaining();
+        final boolean inline = length <= INLINE_CONTENT_LIMIT;
+
+        final byte[] head = encodeHead(response, false, length, inline ? length : 0);
+        if (inline) {
+            content.get(head, head.length - length, length);
+            return new ByteBuffer[] { ByteBuffer.wrap(head) };
+        }
+        return new ByteBuffer[] { ByteBuffer.wrap(head), content };
+    }
+
+    /** Escribe la respuesta entera en un canal bloqueante. */
+    public static void write(HTTPResponse response, GatheringByteChannel channel) throws IOException {
+        if (response.isChunked()) {
+            write(response, Channels.newOutputStream(channel));
+            return;
+        }
+
+        final ByteBuffer[] buffers = encode(response);
+        final ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Escribe la respuesta en un stream (un write por buffer; solo se copian por partes los
+     * cuerpos que no están en un array accesible, como los de fuera del heap). Si el
+     * cuerpo se genera al vuelo se envía por chunks; si su generación falla no se escribe el
+     * chunk final, de modo que el cliente no puede tomar la respuesta por completa.
+     */
+    public static void write(HTTPResponse response, OutputStream out) throws IOException {
+        if (response.isChunked() && hasContent(response.getStatus())) {
+            out.write(encodeHead(response, true, 0, 0));
+            final ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+            response.getContentWriter().writeTo(chunked);
+            chunked.finish();
+            return;
+        }
+
+        byte[] copy = null;
+        for (ByteBuffer buffer : encode(response)) {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                continue;
+            }
+            if (copy == null) {
+                copy = new byte[Math.min(COPY_BUFFER_SIZE, buffer.remaining())];
+            }
+            while (buffer.hasRemaining()) {
+                final int length = Math.min(copy.length, buffer.remaining());
+                buffer.get(copy, 0, length);
+                out.write(copy, 0, length);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Línea de estado, cabeceras y línea en blanco, con {@code extra} bytes libres al final
+     * para copiar el cuerpo. Con {@code chunked} se indica "Transfer-Encoding: chunked" en
+     * lugar de Content-Length.
+     */
+    private static byte[] encodeHead(HTTPResponse response, boolean chunked, int contentLength, int extra) {
+        final boolean hasContent = hasContent(response.getStatus());
+        final byte[] statusLine = response.getStatus().getStatusLine(response.getVersion());
+        final byte[] contentLengthPrefix = HTTPHeaders.CONTENT_LENGTH.getPrefix();
+        final byte[] chunkedLine = HTTPHeaders.TRANSFER_ENCODING.getLine("chunked");
+
+        int headLength = statusLine.length + CRLF.length;
+        if (chunked) {
+            headLength += chunkedLine.length;
+        } else if (hasContent) {
+            headLength += contentLengthPrefix.length + digits(contentLength) + CRLF.length;
+        }
+        for (Map.Entry<String, String> header : response.getParameters().entrySet()) {
+            if (!isFramingHeader(header.getKey())) {
+                headLength += headerLength(header.getKey(), header.getValue());
+            }
+        }
+
+        final byte[] head = new byte[headLength + extra];
+
+        int pos = put(statusLine, head, 0);
+        if (chunked) {
+            pos = put(chunkedLine, head, pos);
+        } else if (hasContent) {
+            pos = put(contentLengthPrefix, head, pos);
+            pos = putInt(contentLength, head, pos);
+            pos = put(CRLF, head, pos);
+        }
+        for (Map.Entry<String, String> header : response.getParameters().entrySet()) {
+            if (!isFramingHeader(header.getKey())) {
+                pos = putHeader(header.getKey(), header.getValue(), head, pos);
+            }
+        }
+        put(CRLF, head, pos);
+
+        return head;
+    }
+
+    // 1xx, 204 y 304 no llevan cuerpo ni Content-Length
+    private static boolean hasContent(HTTPResponseStatus status) {
+        return status.getCode() >= 200 && status != HTTPResponseStatus.S204 && status != HTTPResponseStatus.S304;
+    }
+
+    // Las cabeceras que delimitan el cuerpo las pone siempre el encoder
+    private static boolean isFramingHeader(String name) {
+        return name.equalsIgnoreCase(HTTPHeaders.CONTENT_LENGTH.getHeader())
+            || name.equalsIgnoreCase(HTTPHeaders.TRANSFER_ENCODING.getHeader());
+    }
+
+    private static int headerLength(String name, String value) {
+        final HTTPHeaders known = HTTPHeaders.forHeader(name);
+        if (known != null) {
+            final byte[] line = known.getLine(value);
+            if (line != null) {
+                return line.length;
+            }
+            return known.getPrefix().length + utf8Length(value) + CRLF.length;
+        }
+        return utf8Length(name) + COLON_SPACE.length + utf8Length(value) + CRLF.length;
+    }
+
+    private static int putHeader(String name, String value, byte[] dst, int pos) {
+        final HTTPHeaders known = HTTPHeaders.forHeader(name);
+        if (known != null) {
+            final byte[] line = known.getLine(value);
+            if (line != null) {
+                return put(line, dst, pos);
+            }
+            pos = put(known.getPrefix(), dst, pos);
+        } else {
+            pos = putUtf8(name, dst, pos);
+            pos = put(COLON_SPACE, dst, pos);
+        }
+        pos = putUtf8(value, dst, pos);
+        return put(CRLF, dst, pos);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int put(byte[] src, byte[] dst, int pos) {
+        System.arraycopy(src, 0, dst, pos, src.length);
+        return pos + src.length;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int putInt(int value, byte[] dst, int pos) {
+        final int end = pos + digits(value);
+        int i = end;
+        do {
+            dst[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        return end;
+    }
+
+    private static int utf8Length(String text) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return bytes(text).length;
+            }
+        }
+        return length;
+    }
+
+    // Las cabeceras casi siempre son ASCII: se copian carácter a carácter sin crear un byte[]
+    private static int putUtf8(String text, byte[] dst, int pos) {
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x80) {
+                final byte[] rest = bytes(text.substring(i));
+                System.arraycopy(rest, 0, dst, pos, rest.length);
+                return pos + rest.length;
+            }
+            dst[pos++] = (byte) c;
+        }
+        return pos;
+    }
+}
@@ -17,6 +17,8 @@
  */
 package es.uvigo.esei.dai.hybridserver.http;
 
+import java.nio.charset.StandardCharsets;
+
 public enum HTTPResponseStatus {
   S100("Continue"),
   S101("Switching Protocols"),
@@ -59,12 +61,19 @@ public enum HTTPResponseStatus {
   S504("Gateway Time-out"),
   S505("HTTP Version not supported");
 
+  private static final String HTTP_1_0 = "HTTP/1.0";
+
   private final int code;
   private final String status;
+  // "HTTP/1.x CODE Reason\r\n" ya codificadas, para no concatenarlas en cada respuesta
+  private final byte[] statusLine11;
+  private final byte[] statusLine10;
 
   private HTTPResponseStatus(String status) {
     this.code = Integer.parseInt(this.name().substring(1));
     this.status = status;
+    this.statusLine11 = encodeStatusLine(HTTPHeaders.HTTP_1_1.getHeader());
+    this.statusLine10 = encodeStatusLine(HTTP_1_0);
   }
 
   public int getCode() {
@@ -75,6 +84,24 @@ public enum HTTPResponseStatus {
     return this.status;
   }
 
+  /**
+   * Línea de estado completa (con "\r\n") en bytes. Para HTTP/1.1 y HTTP/1.0 se devuelve
+   * siempre el mismo array, que no se debe modificar.
+   */
+  public byte[] getStatusLine(String version) {
+    if (HTTPHeaders.HTTP_1_1.getHeader().equals(version)) {
+      return this.statusLine11;
+    } else if (HTTP_1_0.equals(version)) {
+      return this.statusLine10;
+    } else {
+      return encodeStatusLine(version);
+    }
+  }
+
+  private byte[] encodeStatusLine(String version) {
+    return (version + " " + this.code + " " + this.status + "\r\n").getBytes(StandardCharsets.UTF_8);
+  }
+
   public static HTTPResponseStatus forCode(int code) {
     return HTTPResponseStatus.valueOf("S" + code);
   }
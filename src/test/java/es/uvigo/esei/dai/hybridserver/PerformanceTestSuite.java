@@ -0,0 +1,58 @@
+package es.uvigo.esei.dai.hybridserver;
+
+import org.junit.platform.suite.api.SelectClasses;
+import org.junit.platform.suite.api.Suite;
+
+import es.uvigo.esei.dai.hybridserver.performance.AsyncRepositoryTest;
+import es.uvigo.esei.dai.hybridserver.performance.ChunkedResponsesTest;
+import es.uvigo.esei.dai.hybridserver.performance.CircuitBreakerTest;
+import es.uvigo.esei.dai.hybridserver.performance.CompressionTest;
+import es.uvigo.esei.dai.hybridserver.performance.ConditionalRequestsTest;
+import es.uvigo.esei.dai.hybridserver.performance.ConnectionPoolTest;
+import es.uvigo.esei.dai.hybridserver.performance.DatabaseListingTest;
+import es.uvigo.esei.dai.hybridserver.performance.DurablePageStoreTest;
+import es.uvigo.esei.dai.hybridserver.performance.HTTPRequestParserTest;
+import es.uvigo.esei.dai.hybridserver.performance.HTTPResponseEncoderTest;
+import es.uvigo.esei.dai.hybridserver.performance.JdbcWriteBatcherTest;
+import es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest;
+import es.uvigo.esei.dai.hybridserver.performance.ListingPaginationTest;
+import es.uvigo.esei.dai.hybridserver.performance.LogPageStoreTest;
+import es.uvigo.esei.dai.hybridserver.performance.MapStorageConcurrencyTest;
+import es.uvigo.esei.dai.hybridserver.performance.NIOClientRequestsTest;
+import es.uvigo.esei.dai.hybridserver.performance.NegativeLookupFilterTest;
+import es.uvigo.esei.dai.hybridserver.performance.PageCacheTest;
+import es.uvigo.esei.dai.hybridserver.performance.PageListingTest;
+import es.uvigo.esei.dai.hybridserver.performance.RequestCoalescingTest;
+import es.uvigo.esei.dai.hybridserver.performance.ResponseBytesCacheTest;
+import es.uvigo.esei.dai.hybridserver.performance.StorageBulkheadTest;
+import es.uvigo.esei.dai.hybridserver.performance.UuidPageIndexTest;
+
+@Suite
+@SelectClasses({
+  NIOClientRequestsTest.class,
+  KeepAliveTest.class,
+  HTTPRequestParserTest.class,
+  HTTPResponseEncoderTest.class,
+  ChunkedResponsesTest.class,
+  CompressionTest.class,
+  ConditionalRequestsTest.class,
+  ConnectionPoolTest.class,
+  PageCacheTest.class,
+  MapStorageConcurrencyTest.class,
+  UuidPageIndexTest.class,
+  LogPageStoreTest.class,
+  DurablePageStoreTest.class,
+  PageListingTest.class,
+  DatabaseListingTest.class,
+  ListingPaginationTest.class,
+  JdbcWriteBatcherTest.class,
+  RequestCoalescingTest.class,
+  NegativeLookupFilterTest.class,
+  AsyncRepositoryTest.class,
+  ResponseBytesCacheTest.class,
+  StorageBulkheadTest.class,
+  CircuitBreakerTest.class
+})
+public class PerformanceTestSuite {
+
+}
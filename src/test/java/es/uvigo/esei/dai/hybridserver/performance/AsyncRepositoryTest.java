@@ -0,0 +1,204 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.uvigo.esei.dai.hybridserver.AsyncHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.CachingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.CompressingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.FILEdaw;
+import es.uvigo.esei.dai.hybridserver.HtmlRepository;
+import es.uvigo.esei.dai.hybridserver.LogPageStore;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+public class AsyncRepositoryTest {
+  private static final String UUID_1 = UUID.randomUUID().toString();
+
+  private ExecutorService storage;
+  // Tareas que han llegado al executor
+  private AtomicInteger submitted;
+  private Executor counting;
+
+  @BeforeEach
+  public void setUp() {
+    storage = Executors.newSingleThreadExecutor(task -> new Thread(task, "storage"));
+    submitted = new AtomicInteger();
+    counting = task -> {
+      submitted.incrementAndGet();
+      storage.execute(task);
+    };
+  }
+
+  @AfterEach
+  public void tearDown() throws InterruptedException {
+    storage.shutdownNow();
+    storage.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testInMemoryRepositoryCompletesInline() throws Exception {
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new MAPdaw(Map.of(UUID_1, "<html>Inline</html>")), counting);
+
+    final CompletableFuture<HTTPResponse> page = repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).build());
+    assertThat(page.isDone(), is(true));
+    assertThat(page.get().getContent(), is(equalTo("<html>Inline</html>")));
+
+    assertThat(repository.deletePageAsync(request("DELETE", "/html?uuid=" + UUID_1).build()).isDone(), is(true));
+    assertThat(submitted.get(), is(0));
+  }
+
+  @Test
+  public void testBlockingRepositoryRunsOnExecutor() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final String[] thread = new String[1];
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new MAPdaw(Map.of(UUID_1, "<html>Slow</html>")) {
+      @Override
+      public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        thread[0] = Thread.currentThread().getName();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return super.getPage(req);
+      }
+
+      @Override
+      public boolean mayBlock(HTTPRequest req) {
+        return true;
+      }
+    }, counting);
+
+    // Vuelve sin esperar a que el repositorio termine
+    final CompletableFuture<HTTPResponse> page = repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).build());
+    assertThat(page.isDone(), is(false));
+    release.countDown();
+
+    assertThat(page.get(10, TimeUnit.SECONDS).getContent(), is(equalTo("<html>Slow</html>")));
+    assertThat(thread[0], is(equalTo("storage")));
+    assertThat(submitted.get(), is(1));
+  }
+
+  @Test
+  public void testCachedPagesSkipTheExecutor() throws Exception {
+    final HtmlRepository blocking = new MAPdaw(Map.of(UUID_1, "<html>Cached</html>")) {
+      @Override
+      public boolean mayBlock(HTTPRequest req) {
+        return true;
+      }
+    };
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new CachingHtmlRepository(blocking), counting);
+
+    assertThat(repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).build()).get(10, TimeUnit.SECONDS).getStatus().getCode(), is(200));
+    assertThat(submitted.get(), is(1));
+
+    final CompletableFuture<HTTPResponse> cached = repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).build());
+    assertThat(cached.isDone(), is(true));
+    assertThat(cached.get().getContent(), is(equalTo("<html>Cached</html>")));
+    assertThat(submitted.get(), is(1));
+  }
+
+  @Test
+  public void testFailuresCompleteTheFuture() throws Exception {
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new MAPdaw(Map.of()) {
+      @Override
+      public HTTPResponse postPage(HTTPRequest req) throws IOException {
+        throw new IOException("Storage down");
+      }
+
+      @Override
+      public boolean mayBlock(HTTPRequest req) {
+        return true;
+      }
+    }, counting);
+
+    final CompletableFuture<HTTPResponse> post = repository.postPageAsync(request("POST", "/html").build());
+    final ExecutionException e = assertThrows(ExecutionException.class, () -> post.get(10, TimeUnit.SECONDS));
+    assertThat(e.getCause().getMessage(), is(equalTo("Storage down")));
+  }
+
+  @Test
+  public void testRejectedWorkCompletesTheFuture() throws Exception {
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new MAPdaw(Map.of()) {
+      @Override
+      public boolean mayBlock(HTTPRequest req) {
+        return true;
+      }
+    }, task -> {
+      throw new RejectedExecutionException("Full");
+    });
+
+    final CompletableFuture<HTTPResponse> page = repository.getPageAsync(request("GET", "/html").build());
+    assertThat(page.isCompletedExceptionally(), is(true));
+    final ExecutionException e = assertThrows(ExecutionException.class, page::get);
+    assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+  }
+
+  @Test
+  public void testCompressionRunsOffTheCallingThread() throws Exception {
+    final String caller = Thread.currentThread().getName();
+    final String[] compressedOn = new String[1];
+    // Lo que se lee en el repositorio se comprime después en ese mismo hilo
+    final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new CompressingHtmlRepository(
+      new MAPdaw(Map.of(UUID_1, "<html>" + "Olá mundo! ".repeat(1000) + "</html>")) {
+        @Override
+        public HTTPResponse getPage(HTTPRequest req) throws IOException {
+          compressedOn[0] = Thread.currentThread().getName();
+          return super.getPage(req);
+        }
+      }), counting);
+
+    final HTTPResponse gzip = repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).header("Accept-Encoding", "gzip").build()).get(10, TimeUnit.SECONDS);
+    assertThat(gzip.getParameters().get("Content-Encoding"), is(equalTo("gzip")));
+    assertThat(compressedOn[0], is(equalTo("storage")));
+    assertThat(submitted.get(), is(1));
+
+    // Ya comprimida, o sin comprimir, se responde en el mismo hilo
+    assertThat(repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).header("Accept-Encoding", "gzip").build()).isDone(), is(true));
+    compressedOn[0] = null;
+    assertThat(repository.getPageAsync(request("GET", "/html?uuid=" + UUID_1).build()).isDone(), is(true));
+    assertThat(compressedOn[0], is(equalTo(caller)));
+    assertThat(submitted.get(), is(1));
+  }
+
+  @Test
+  public void testOnlyDiskWritesMayBlock(@TempDir Path directory) throws Exception {
+    final MAPdaw memory = new MAPdaw(Map.of());
+    assertThat(memory.mayBlock(request("POST", "/html").build()), is(false));
+    assertThat(memory.mayBlock(request("GET", "/html?uuid=" + UUID_1).build()), is(false));
+
+    try (FILEdaw file = new FILEdaw(new LogPageStore(directory))) {
+      assertThat(file.mayBlock(request("POST", "/html").build()), is(true));
+      assertThat(file.mayBlock(request("DELETE", "/html?uuid=" + UUID_1).build()), is(true));
+      assertThat(file.mayBlock(request("GET", "/html?uuid=" + UUID_1).build()), is(false));
+    }
+
+    final HTTPResponse welcome = AsyncHtmlRepository.of(memory, counting).getPageAsync(request("GET", "/").build()).get();
+    assertThat(welcome.getStatus().getCode(), is(200));
+    assertThat(submitted.get(), is(0));
+  }
+}
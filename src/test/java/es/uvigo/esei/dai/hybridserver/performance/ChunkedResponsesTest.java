@@ -0,0 +1,114 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest.readResponse;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.http.ChunkedOutputStream;
+
+@Timeout(10L)
+public class ChunkedResponsesTest {
+  private static final int NUM_PAGES = 5000;
+  private static final String LARGE_UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+
+  private Map<String, String> pages;
+  private String largePage;
+
+  private HybridServer startServer(String mode) {
+    this.pages = new HashMap<>();
+    for (int i = 0; i < NUM_PAGES; i++) {
+      pages.put(UUID.randomUUID().toString(), "<html><body>Page " + i + "</body></html>");
+    }
+    this.largePage = "<html><body>" + "¡Olá mundo! ".repeat(20_000) + "</body></html>";
+    pages.put(LARGE_UUID, largePage);
+
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("server.mode", mode);
+
+    final HybridServer server = new HybridServer(pages, properties);
+    server.start();
+
+    return server;
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testListingIsChunked(String mode) throws IOException {
+    try (HybridServer server = startServer(mode); Socket socket = new Socket("localhost", server.getPort())) {
+      send(socket, "GET /html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+      final String response = readResponse(socket.getInputStream());
+      assertThat(response, startsWith("HTTP/1.1 200 OK"));
+      assertThat(response, containsString("Transfer-Encoding: chunked"));
+      assertThat(response, not(containsString("Content-Length")));
+      assertThat(response, endsWith("</body></html>"));
+      for (String uuid : pages.keySet()) {
+        assertThat(response, containsString("<a href=\"/html?uuid=" + uuid + "\">"));
+      }
+
+      // La conexión sigue siendo utilizable después del último chunk
+      send(socket, "GET /html?uuid=" + LARGE_UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      final String page = readResponse(socket.getInputStream());
+      assertThat(page, endsWith("\r\n\r\n" + largePage));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testHttp10GetsContentLength(String mode) throws IOException {
+    try (HybridServer server = startServer(mode); Socket socket = new Socket("localhost", server.getPort())) {
+      send(socket, "GET /html?uuid=" + LARGE_UUID + " HTTP/1.0\r\n\r\n");
+
+      final String response = readResponse(socket.getInputStream());
+      assertThat(response, not(containsString("Transfer-Encoding")));
+      assertThat(response, containsString(
+        "Content-Length: " + largePage.getBytes(StandardCharsets.UTF_8).length + "\r\n"
+      ));
+      assertThat(response, endsWith("\r\n\r\n" + largePage));
+    }
+  }
+
+  @Test
+  public void testChunkedOutputStream() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ChunkedOutputStream chunked = new ChunkedOutputStream(out, 4)) {
+      chunked.write("ab".getBytes(StandardCharsets.US_ASCII));
+      chunked.write('c');
+      chunked.write("defghijklmnopqrst".getBytes(StandardCharsets.US_ASCII));
+      chunked.write('u');
+    }
+
+    assertThat(out.toString(StandardCharsets.US_ASCII), is(equalTo(
+      "3\r\nabc\r\n11\r\ndefghijklmnopqrst\r\n1\r\nu\r\n0\r\n\r\n"
+    )));
+  }
+
+  private static void send(Socket socket, String request) throws IOException {
+    final OutputStream out = socket.getOutputStream();
+    out.write(request.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+}
@@ -0,0 +1,289 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.CachingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.CircuitBreakerHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.CircuitBreakerHtmlRepository.State;
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.HtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class CircuitBreakerTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+  private static final String UUID_1 = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String UUID_2 = "a35b6c5e-22d6-4707-98b4-462482e26c9e";
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() throws Exception {
+    final FlakyRepository flaky = new FlakyRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(flaky, 3, 0, 60_000);
+    flaky.failing.set(true);
+
+    // Un acierto entre medias vuelve a empezar la cuenta
+    status(breaker, UUID_1);
+    status(breaker, UUID_1);
+    flaky.failing.set(false);
+    assertThat(status(breaker, UUID_1), is(200));
+    flaky.failing.set(true);
+    assertThat(status(breaker, UUID_1), is(500));
+    assertThat(status(breaker, UUID_1), is(500));
+    assertThat(breaker.getState(), is(State.CLOSED));
+    assertThat(status(breaker, UUID_1), is(500));
+    assertThat(breaker.getState(), is(State.OPEN));
+
+    // Abierto: 503 sin llamar al repositorio ni pasar por el executor
+    final int calls = flaky.calls.get();
+    final HTTPResponse rejected = breaker.getPage(request("GET", "/html?uuid=" + UUID_1).build());
+    assertThat(rejected.getStatus().getCode(), is(503));
+    assertThat(rejected.getParameters().get("Retry-After"), is(equalTo("60")));
+    assertThat(breaker.postPage(request("POST", "/html?html=x").build()).getStatus().getCode(), is(503));
+    assertThat(breaker.mayBlock(request("GET", "/html?uuid=" + UUID_1).build()), is(false));
+    assertThat(flaky.calls.get(), is(calls));
+
+    // Lo que no usa el almacenamiento sigue respondiéndose
+    assertThat(breaker.getPage(request("GET", "/").build()).getStatus().getCode(), is(200));
+    assertThat(breaker.getOpenedCount(), is(1L));
+    assertThat(breaker.getRejectedCalls(), is(2L));
+  }
+
+  @Test
+  public void testSlowCallsCountAsFailures() throws Exception {
+    final FlakyRepository flaky = new FlakyRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(flaky, 2, 50, 60_000);
+
+    flaky.delayMillis.set(100);
+    assertThat(status(breaker, UUID_1), is(200));
+    assertThat(status(breaker, UUID_1), is(200));
+    assertThat(breaker.getState(), is(State.OPEN));
+    assertThat(status(breaker, UUID_1), is(503));
+  }
+
+  @Test
+  public void testHalfOpenProbeClosesOrReopens() throws Exception {
+    final FlakyRepository flaky = new FlakyRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(flaky, 1, 0, 50);
+
+    flaky.failing.set(true);
+    status(breaker, UUID_1);
+    assertThat(breaker.getState(), is(State.OPEN));
+
+    // La prueba falla: vuelve a abrirse
+    Thread.sleep(100);
+    assertThat(breaker.mayBlock(request("GET", "/html?uuid=" + UUID_1).build()), is(true));
+    assertThat(status(breaker, UUID_1), is(500));
+    assertThat(breaker.getState(), is(State.OPEN));
+    assertThat(status(breaker, UUID_1), is(503));
+
+    // La prueba va bien: se cierra
+    Thread.sleep(100);
+    flaky.failing.set(false);
+    assertThat(status(breaker, UUID_1), is(200));
+    assertThat(breaker.getState(), is(State.CLOSED));
+    assertThat(status(breaker, UUID_1), is(200));
+
+    assertThat(breaker.getOpenedCount(), is(2L));
+    assertThat(breaker.getHalfOpenedCount(), is(2L));
+    assertThat(breaker.getClosedCount(), is(1L));
+  }
+
+  @Test
+  public void testOnlyOneProbeAtATime() throws Exception {
+    final FlakyRepository flaky = new FlakyRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(flaky, 1, 0, 0);
+    flaky.failing.set(true);
+    status(breaker, UUID_1);
+    flaky.failing.set(false);
+
+    // Mientras la de prueba espera, las demás reciben 503
+    flaky.delayMillis.set(300);
+    final Thread probe = new Thread(() -> {
+      try {
+        status(breaker, UUID_1);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    probe.start();
+    while (breaker.getState() != State.HALF_OPEN) {
+      Thread.sleep(5);
+    }
+    assertThat(status(breaker, UUID_2), is(503));
+
+    probe.join();
+    assertThat(breaker.getState(), is(State.CLOSED));
+  }
+
+  @Test
+  public void testCachedPagesAreServedWhileOpen() throws Exception {
+    final FlakyRepository flaky = new FlakyRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(flaky, 1, 0, 60_000);
+    final HtmlRepository cached = new CachingHtmlRepository(breaker);
+
+    assertThat(status(cached, UUID_1), is(200));
+    flaky.failing.set(true);
+    assertThat(status(cached, UUID_2), is(500));
+    assertThat(breaker.getState(), is(State.OPEN));
+
+    assertThat(status(cached, UUID_1), is(200));
+    assertThat(status(cached, UUID_2), is(503));
+  }
+
+  @Test
+  public void testStalledDatabaseIsCutShortAndOpensTheBreaker() throws Exception {
+    final ConnectionPool pool = new ConnectionPool(getConnectionUrl(), getUsername(), getPassword(),
+      0, 4, 1000, 0, 0, 1000, 1000);
+    try (CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(new DBdaw(pool), 3, 0, 60_000);
+        Connection lock = DriverManager.getConnection(getConnectionUrl(), getUsername(), getPassword())) {
+      try (Statement statement = lock.createStatement()) {
+        statement.execute("LOCK TABLES HTML WRITE");
+      }
+
+      // Cada consulta se corta al segundo en lugar de esperar al bloqueo
+      for (int i = 0; i < 2; i++) {
+        final long start = System.nanoTime();
+        assertThat(status(breaker, UUID_1), is(500));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(5_000L)));
+      }
+      assertThat(breaker.getState(), is(State.CLOSED));
+
+      // Que no se pueda comprobar no es que no exista: también cuenta como fallo
+      assertThrows(IOException.class, () -> breaker.exists(UUID_1));
+      assertThat(breaker.getState(), is(State.OPEN));
+
+      final long start = System.nanoTime();
+      assertThat(status(breaker, UUID_2), is(503));
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(100L)));
+
+      try (Statement statement = lock.createStatement()) {
+        statement.execute("UNLOCK TABLES");
+      }
+    }
+  }
+
+  @Test
+  public void testStreamedReadsAreGuarded() throws Exception {
+    final StreamingRepository streaming = new StreamingRepository();
+    final CircuitBreakerHtmlRepository breaker = new CircuitBreakerHtmlRepository(streaming, 2, 0, 60_000);
+    final HTTPResponse[] responses = new HTTPResponse[5];
+    for (int i = 0; i < responses.length; i++) {
+      responses[i] = breaker.getPage(request("GET", "/html?uuid=" + UUID_1).build());
+      assertThat(responses[i].getStatus().getCode(), is(200));
+    }
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    responses[0].getContentWriter().writeTo(out);
+    assertThat(out.toString(StandardCharsets.UTF_8), is(equalTo("<html>Uno</html>")));
+
+    // Que se corte la conexión con el cliente no dice nada de la base de datos
+    assertThrows(IOException.class, () -> responses[1].getContentWriter().writeTo(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Broken pipe");
+      }
+    }));
+
+    streaming.failingReads.set(true);
+    assertThrows(IOException.class, () -> responses[2].getContentWriter().writeTo(new ByteArrayOutputStream()));
+    assertThat(breaker.getState(), is(State.CLOSED));
+    assertThrows(IOException.class, () -> responses[3].getContentWriter().writeTo(new ByteArrayOutputStream()));
+    assertThat(breaker.getState(), is(State.OPEN));
+
+    // Abierto, el envío que queda no llega a consultar
+    final int reads = streaming.reads.get();
+    assertThrows(IOException.class, () -> responses[4].getContentWriter().writeTo(new ByteArrayOutputStream()));
+    assertThat(streaming.reads.get(), is(reads));
+    assertThat(breaker.getRejectedCalls(), is(1L));
+  }
+
+  private static int status(HtmlRepository repository, String uuid) throws Exception {
+    return repository.getPage(request("GET", "/html?uuid=" + uuid).build()).getStatus().getCode();
+  }
+
+  /** Como las páginas grandes de {@link DBdaw}: la página se lee al enviar el cuerpo. */
+  private static class StreamingRepository extends FlakyRepository {
+    final AtomicBoolean failingReads = new AtomicBoolean();
+    final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+      final HTTPResponse res = super.getPage(req);
+      final byte[] content = res.getContentBytes();
+      res.setContentWriter(out -> {
+        reads.incrementAndGet();
+        if (failingReads.get()) {
+          throw new IOException("Database error", new SQLException("Lock wait timeout exceeded"));
+        }
+        out.write(content);
+      });
+      return res;
+    }
+  }
+
+  /** Repositorio que, a petición del test, responde 500 o tarda en responder. */
+  private static class FlakyRepository extends MAPdaw {
+    final AtomicBoolean failing = new AtomicBoolean();
+    final AtomicLong delayMillis = new AtomicLong();
+    final AtomicInteger calls = new AtomicInteger();
+
+    FlakyRepository() {
+      super(Map.of(UUID_1, "<html>Uno</html>", UUID_2, "<html>Dos</html>"));
+    }
+
+    @Override
+    public HTTPResponse getPage(HTTPRequest req) throws IOException {
+      calls.incrementAndGet();
+      try {
+        Thread.sleep(delayMillis.get());
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (failing.get() && mayBlock(req)) {
+        return HTTPResponse.error(HTTPResponseStatus.S500, "Database error");
+      }
+      return super.getPage(req);
+    }
+
+    @Override
+    public boolean mayBlock(HTTPRequest req) {
+      return "html".equals(req.getResourceName());
+    }
+  }
+}
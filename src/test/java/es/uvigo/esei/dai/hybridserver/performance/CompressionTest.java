@@ -0,0 +1,220 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.CompressingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPContentEncoding;
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+@Timeout(10L)
+public class CompressionTest {
+  private static final String PAGE_UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String SMALL_UUID = "b6ab4b6a-7c9f-4b55-8e1e-3cdb4b0a41c3";
+
+  private Map<String, String> pages;
+  private String page;
+  private CompressingHtmlRepository repository;
+
+  @BeforeEach
+  public void setUp() {
+    this.page = "<html><body>" + "<p>¡Olá mundo!</p>".repeat(500) + "</body></html>";
+    this.pages = new HashMap<>();
+    pages.put(PAGE_UUID, page);
+    pages.put(SMALL_UUID, "<html><body>Small</body></html>");
+    for (int i = 0; i < 200; i++) {
+      pages.put(UUID.randomUUID().toString(), "<html><body>Page " + i + "</body></html>");
+    }
+    this.repository = new CompressingHtmlRepository(new MAPdaw(pages));
+  }
+
+  @Test
+  public void testNegotiation() {
+    assertThat(HTTPContentEncoding.negotiate(null), is(nullValue()));
+    assertThat(HTTPContentEncoding.negotiate("identity"), is(nullValue()));
+    assertThat(HTTPContentEncoding.negotiate("gzip, deflate"), is(HTTPContentEncoding.GZIP));
+    assertThat(HTTPContentEncoding.negotiate("deflate, gzip;q=0.5"), is(HTTPContentEncoding.DEFLATE));
+    assertThat(HTTPContentEncoding.negotiate("x-gzip"), is(HTTPContentEncoding.GZIP));
+    assertThat(HTTPContentEncoding.negotiate("gzip;q=0, *"), is(HTTPContentEncoding.DEFLATE));
+    assertThat(HTTPContentEncoding.negotiate("*;q=0"), is(nullValue()));
+  }
+
+  @Test
+  public void testPageIsCompressedOnceAndCached() throws Exception {
+    final HTTPResponse first = get("/html?uuid=" + PAGE_UUID, "gzip");
+    final HTTPResponse second = get("/html?uuid=" + PAGE_UUID, "gzip");
+
+    for (HTTPResponse response : new HTTPResponse[] { first, second }) {
+      assertThat(response.getParameters().get("Content-Encoding"), is(equalTo("gzip")));
+      assertThat(response.getParameters().get("Vary"), is(equalTo("Accept-Encoding")));
+      assertThat(response.getParameters().get("Content-Type"), containsString("text/html"));
+      assertThat(response.getContentBytes().length, is(lessThan(page.length())));
+      assertThat(gunzip(response.getContentBytes()), is(equalTo(page)));
+    }
+    assertThat(repository.getCacheMisses(), is(1L));
+    assertThat(repository.getCacheHits(), is(1L));
+  }
+
+  @Test
+  public void testDeflate() throws Exception {
+    final HTTPResponse response = get("/html?uuid=" + PAGE_UUID, "deflate");
+
+    assertThat(response.getParameters().get("Content-Encoding"), is(equalTo("deflate")));
+    assertThat(inflate(response.getContentBytes()), is(equalTo(page)));
+  }
+
+  @Test
+  public void testWithoutAcceptEncoding() throws Exception {
+    final HTTPResponse response = get("/html?uuid=" + PAGE_UUID, null);
+
+    assertThat(response.getParameters().get("Content-Encoding"), is(nullValue()));
+    assertThat(response.getParameters().get("Vary"), is(equalTo("Accept-Encoding")));
+    assertThat(response.getContent(), is(equalTo(page)));
+  }
+
+  @Test
+  public void testSmallPageIsNotCompressed() throws Exception {
+    final HTTPResponse response = get("/html?uuid=" + SMALL_UUID, "gzip");
+
+    assertThat(response.getParameters().get("Content-Encoding"), is(nullValue()));
+    assertThat(response.getContent(), is(equalTo(pages.get(SMALL_UUID))));
+    assertThat(repository.getCacheBytes(), is(0L));
+  }
+
+  @Test
+  public void testDeleteInvalidatesCache() throws Exception {
+    get("/html?uuid=" + PAGE_UUID, "gzip");
+    assertThat(repository.getCacheBytes() > 0, is(true));
+
+    repository.deletePage(page("DELETE", PAGE_UUID).build());
+
+    assertThat(repository.getCacheBytes(), is(0L));
+    assertThat(get("/html?uuid=" + PAGE_UUID, "gzip").getStatus().getCode(), is(404));
+  }
+
+  @Test
+  public void testReadBeforeADeleteIsNotCached() throws Exception {
+    final CompressingHtmlRepository[] self = new CompressingHtmlRepository[1];
+    final AtomicBoolean deleteOnRead = new AtomicBoolean(true);
+    this.repository = self[0] = new CompressingHtmlRepository(new MAPdaw(pages) {
+      @Override
+      public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        final HTTPResponse res = super.getPage(req);
+        // Un borrado concurrente entre la lectura y el momento de guardar la versión comprimida
+        if (deleteOnRead.getAndSet(false)) {
+          try {
+            self[0].deletePage(page("DELETE", PAGE_UUID).build());
+          } catch (HTTPParseException e) {
+            throw new IOException(e);
+          }
+        }
+        return res;
+      }
+    });
+
+    assertThat(get("/html?uuid=" + PAGE_UUID, "gzip").getStatus().getCode(), is(200));
+    assertThat(repository.getCacheBytes(), is(0L));
+    assertThat(get("/html?uuid=" + PAGE_UUID, "gzip").getStatus().getCode(), is(404));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws Exception {
+    final Map<String, String> large = new HashMap<>();
+    for (int i = 0; i < 50; i++) {
+      large.put(UUID.randomUUID().toString(), "<html><body>" + ("Page " + i + " ").repeat(200) + "</body></html>");
+    }
+    this.repository = new CompressingHtmlRepository(new MAPdaw(large), 0, 400);
+    for (String uuid : large.keySet()) {
+      get("/html?uuid=" + uuid, "gzip");
+    }
+
+    assertThat(repository.getCacheBytes() <= 400, is(true));
+    assertThat(repository.getCacheEvictions() > 0, is(true));
+  }
+
+  @Test
+  public void testListingIsCompressedWhileStreamed() throws Exception {
+    final HTTPResponse response = get("/html", "gzip");
+    assertThat(response.isChunked(), is(true));
+    assertThat(response.getParameters().get("Content-Encoding"), is(equalTo("gzip")));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getContentWriter().writeTo(out);
+    final String listing = gunzip(out.toByteArray());
+    for (String uuid : pages.keySet()) {
+      assertThat(listing, containsString("<a href=\"/html?uuid=" + uuid + "\">"));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testServerSendsCompressedResponses(String mode) throws Exception {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("server.mode", mode);
+
+    try (HybridServer server = new HybridServer(pages, properties)) {
+      server.start();
+
+      for (String path : new String[] { "/html?uuid=" + PAGE_UUID, "/html" }) {
+        final HttpURLConnection connection =
+          (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+
+        assertThat(connection.getResponseCode(), is(200));
+        assertThat(connection.getHeaderField("Content-Encoding"), is(equalTo("gzip")));
+        try (InputStream in = new GZIPInputStream(connection.getInputStream())) {
+          assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8), containsString("</html>"));
+        }
+      }
+    }
+  }
+
+  private HTTPResponse get(String path, String acceptEncoding) throws IOException, HTTPParseException {
+    return repository.getPage(request("GET", path).header("Accept-Encoding", acceptEncoding).build());
+  }
+
+  private static String gunzip(byte[] data) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String inflate(byte[] data) throws IOException {
+    try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
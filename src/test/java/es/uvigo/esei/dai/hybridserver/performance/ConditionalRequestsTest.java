@@ -0,0 +1,153 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest.readResponse;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.get;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.CompressingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.ConditionalHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+@Timeout(10L)
+public class ConditionalRequestsTest {
+  private static final String UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String CONTENT = "<html><body>" + "Immutable page. ".repeat(200) + "</body></html>";
+  private static final String ETAG = "\"" + UUID + "\"";
+
+  private Map<String, String> pages;
+  private int contentLoads;
+  private ConditionalHtmlRepository repository;
+
+  @BeforeEach
+  public void setUp() {
+    this.pages = new HashMap<>();
+    pages.put(UUID, CONTENT);
+    this.contentLoads = 0;
+    // Cuenta las veces que se llega a pedir el contenido de la página
+    this.repository = new ConditionalHtmlRepository(new MAPdaw(pages) {
+      @Override
+      public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        contentLoads++;
+        return super.getPage(req);
+      }
+    });
+  }
+
+  @Test
+  public void testPageHasETagAndCacheControl() throws Exception {
+    final HTTPResponse response = repository.getPage(page("GET", UUID).build());
+
+    assertThat(response.getParameters().get("ETag"), is(equalTo(ETAG)));
+    assertThat(response.getParameters().get("Cache-Control"), containsString("immutable"));
+    assertThat(response.getContent(), is(equalTo(CONTENT)));
+  }
+
+  @Test
+  public void testListingHasNoETag() throws Exception {
+    final HTTPResponse response = repository.getPage(
+      get("/html").build()
+    );
+
+    assertThat(response.getParameters().get("ETag"), is(nullValue()));
+    assertThat(response.getParameters().get("Cache-Control"), is(nullValue()));
+  }
+
+  @Test
+  public void testRevalidationDoesNotLoadContent() throws Exception {
+    for (String ifNoneMatch : new String[] { ETAG, "W/" + ETAG, "\"other\", " + ETAG, "*" }) {
+      final HTTPResponse response = repository.getPage(page("GET", UUID).header("If-None-Match", ifNoneMatch).build());
+
+      assertThat(response.getStatus().getCode(), is(304));
+      assertThat(response.getParameters().get("ETag"), is(equalTo(ETAG)));
+      assertThat(response.getContentBytes().length, is(0));
+    }
+    assertThat(contentLoads, is(0));
+  }
+
+  @Test
+  public void testOtherTagGetsFullPage() throws Exception {
+    final HTTPResponse response = repository.getPage(page("GET", UUID).header("If-None-Match", "\"" + UUID + "-br\", \"x\"").build());
+
+    assertThat(response.getStatus().getCode(), is(200));
+    assertThat(response.getContent(), is(equalTo(CONTENT)));
+  }
+
+  @Test
+  public void testDeletedPageIsNotRevalidated() throws Exception {
+    repository.deletePage(page("DELETE", UUID).build());
+
+    assertThat(repository.getPage(page("GET", UUID).header("If-None-Match", ETAG).build()).getStatus().getCode(), is(404));
+  }
+
+  @Test
+  public void testCompressedVariantHasItsOwnETag() throws Exception {
+    final ConditionalHtmlRepository repository =
+      new ConditionalHtmlRepository(new CompressingHtmlRepository(new MAPdaw(pages)));
+    final String gzipETag = "\"" + UUID + "-gzip\"";
+
+    final HTTPResponse compressed = repository.getPage(page("GET", UUID).header("Accept-Encoding", "gzip").build());
+    assertThat(compressed.getParameters().get("ETag"), is(equalTo(gzipETag)));
+
+    final HTTPResponse revalidated = repository.getPage(page("GET", UUID).header("If-None-Match", gzipETag).header("Accept-Encoding", "gzip").build());
+    assertThat(revalidated.getStatus().getCode(), is(304));
+    assertThat(revalidated.getParameters().get("ETag"), is(equalTo(gzipETag)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testNotModifiedKeepsConnectionUsable(String mode) throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("server.mode", mode);
+
+    try (HybridServer server = new HybridServer(pages, properties)) {
+      server.start();
+
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nIf-None-Match: " + ETAG + "\r\n\r\n");
+        final String notModified = readResponse(socket.getInputStream());
+        assertThat(notModified, startsWith("HTTP/1.1 304 Not Modified"));
+        assertThat(notModified, containsString("ETag: " + ETAG));
+        assertThat(notModified, not(containsString("Content-Length")));
+        assertThat(notModified, endsWith("\r\n\r\n"));
+
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\n\r\n");
+        final String page = readResponse(socket.getInputStream());
+        assertThat(page, startsWith("HTTP/1.1 200 OK"));
+        assertThat(page, endsWith(CONTENT));
+      }
+    }
+  }
+
+  private static void send(Socket socket, String request) throws IOException {
+    final OutputStream out = socket.getOutputStream();
+    out.write(request.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+}
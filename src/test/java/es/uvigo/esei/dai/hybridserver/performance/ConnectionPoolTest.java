@@ -0,0 +1,263 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+
+@Timeout(10L)
+public class ConnectionPoolTest {
+  private static final String URL = "jdbc:poolfake:test";
+
+  private FakeDriver driver;
+  private ConnectionPool pool;
+
+  @BeforeEach
+  public void setUp() throws SQLException {
+    this.driver = new FakeDriver();
+    DriverManager.registerDriver(driver);
+  }
+
+  @AfterEach
+  public void tearDown() throws SQLException {
+    if (pool != null) {
+      pool.close();
+    }
+    DriverManager.deregisterDriver(driver);
+  }
+
+  @Test
+  public void testReusesConnections() throws SQLException {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 4, 1000, 0, 0);
+
+    for (int i = 0; i < 10; i++) {
+      try (Connection connection = pool.getConnection()) {
+        assertThat(pool.getActive(), is(1));
+        assertThat(connection.isClosed(), is(false));
+      }
+    }
+
+    assertThat(driver.opened.get(), is(1));
+    assertThat(pool.getActive(), is(0));
+    assertThat(pool.getIdle(), is(1));
+  }
+
+  @Test
+  public void testReturnedConnectionCannotBeUsed() throws SQLException {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 1, 1000, 0, 0);
+
+    final Connection first = pool.getConnection();
+    first.close();
+    first.close();
+
+    assertThat(first.isClosed(), is(true));
+    assertThrows(SQLException.class, () -> first.createStatement());
+
+    try (Connection second = pool.getConnection()) {
+      assertThat(second, is(not(sameInstance(first))));
+      assertThat(second.isClosed(), is(false));
+    }
+    assertThat(driver.opened.get(), is(1));
+  }
+
+  @Test
+  public void testTimesOutWhenPoolIsExhausted() throws SQLException {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 2, 200, 0, 0);
+
+    try (Connection a = pool.getConnection(); Connection b = pool.getConnection()) {
+      assertThrows(SQLTransientConnectionException.class, () -> pool.getConnection());
+      assertThat(pool.getActive(), is(2));
+    }
+    assertThat(driver.opened.get(), is(2));
+  }
+
+  @Test
+  public void testWaiterGetsReturnedConnection() throws Exception {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 1, 5000, 0, 0);
+
+    final Connection held = pool.getConnection();
+    final CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+      try {
+        return pool.getConnection();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    while (pool.getWaiting() == 0) {
+      Thread.sleep(5);
+    }
+    held.close();
+
+    try (Connection connection = waiter.get()) {
+      assertThat(connection.isClosed(), is(false));
+      assertThat(pool.getWaiting(), is(0));
+      assertThat(pool.getTotal(), is(1));
+    }
+    assertThat(driver.opened.get(), is(1));
+  }
+
+  @Test
+  public void testDiscardsExpiredAndBrokenConnections() throws Exception {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 2, 1000, 0, 50);
+
+    pool.getConnection().close();
+    Thread.sleep(100);
+    pool.getConnection().close();
+    assertThat(driver.opened.get(), is(2));
+    assertThat(driver.closed.get(), is(1));
+
+    // Una conexión que el driver da por cerrada no vuelve al pool
+    final Connection connection = pool.getConnection();
+    driver.breakConnections.set(true);
+    connection.close();
+    assertThat(pool.getTotal(), is(0));
+  }
+
+  @Test
+  public void testDriverFailureFreesSlot() throws SQLException {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 1, 200, 0, 0);
+
+    driver.refuse.set(true);
+    assertThrows(SQLException.class, () -> pool.getConnection());
+    driver.refuse.set(false);
+
+    try (Connection connection = pool.getConnection()) {
+      assertThat(pool.getTotal(), is(1));
+    }
+  }
+
+  @Test
+  public void testPassesTimeoutsToTheDriver() throws SQLException {
+    this.pool = new ConnectionPool(URL, "user", "pass", 0, 1, 1000, 0, 0, 3000, 1500);
+
+    try (Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        Statement prepared = connection.prepareStatement("SELECT 1")) {
+      assertThat(driver.info.getProperty("connectTimeout"), is(equalTo("3000")));
+      assertThat(driver.info.getProperty("user"), is(equalTo("user")));
+      // En segundos, hacia arriba
+      assertThat(statement.getQueryTimeout(), is(2));
+      assertThat(prepared.getQueryTimeout(), is(2));
+    }
+  }
+
+  /** Driver en memoria que cuenta las conexiones físicas abiertas y cerradas. */
+  private static class FakeDriver implements Driver {
+    final AtomicInteger opened = new AtomicInteger();
+    final AtomicInteger closed = new AtomicInteger();
+    final AtomicBoolean refuse = new AtomicBoolean();
+    final AtomicBoolean breakConnections = new AtomicBoolean();
+    // Propiedades de la última conexión abierta
+    volatile Properties info;
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+      if (!acceptsURL(url)) {
+        return null;
+      }
+      if (refuse.get()) {
+        throw new SQLException("Connection refused");
+      }
+      opened.incrementAndGet();
+      this.info = info;
+
+      final AtomicBoolean isClosed = new AtomicBoolean();
+      return (Connection) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] { Connection.class },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "close":
+              if (!isClosed.getAndSet(true)) {
+                closed.incrementAndGet();
+              }
+              return null;
+            case "isClosed":
+              return isClosed.get() || breakConnections.get();
+            case "isValid":
+              return !isClosed.get() && !breakConnections.get();
+            case "getAutoCommit":
+              return true;
+            case "createStatement":
+            case "prepareStatement":
+              return statement(method.getReturnType());
+            default:
+              return null;
+          }
+        }
+      );
+    }
+
+    // Sentencia que solo recuerda su tiempo máximo
+    private static Object statement(Class<?> type) {
+      final AtomicInteger queryTimeout = new AtomicInteger();
+      return Proxy.newProxyInstance(
+        FakeDriver.class.getClassLoader(), new Class<?>[] { type },
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "setQueryTimeout":
+              queryTimeout.set((Integer) args[0]);
+              return null;
+            case "getQueryTimeout":
+              return queryTimeout.get();
+            default:
+              return null;
+          }
+        }
+      );
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+      return url.startsWith("jdbc:poolfake:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+      return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+      return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+      return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+      return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      throw new SQLFeatureNotSupportedException();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class DatabaseListingTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+  private static final Pattern ITEM = Pattern.compile("<li><a href=\"/?html\\?uuid=([^\"]+)\">");
+  private static final Pattern CREATED = Pattern.compile("<a href=\"html\\?uuid=([^\"]+)\">");
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @Test
+  public void testPagesWrittenDuringAReloadAreListed() throws Exception {
+    final CountDownLatch queried = new CountDownLatch(1);
+    final CountDownLatch resume = new CountDownLatch(1);
+    final AtomicBoolean pauseNext = new AtomicBoolean();
+    // La recarga se detiene con la tabla ya leída, hasta que se crea otra página
+    final ConnectionPool pool = new ConnectionPool(getConnectionUrl(), getUsername(), getPassword()) {
+      @Override
+      public Connection getConnection() throws SQLException {
+        final Connection connection = super.getConnection();
+        if (!pauseNext.getAndSet(false)) {
+          return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+          (proxy, method, args) -> {
+            final Object result = invoke(connection, method, args);
+            if (!(result instanceof PreparedStatement)) {
+              return result;
+            }
+            return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { PreparedStatement.class },
+              (statement, call, callArgs) -> {
+                final Object rs = invoke(result, call, callArgs);
+                if ("executeQuery".equals(call.getName())) {
+                  queried.countDown();
+                  resume.await();
+                }
+                return rs;
+              });
+          });
+      }
+    };
+
+    // Sin caducidad: cada listado vuelve a leer la tabla
+    try (DBdaw repository = new DBdaw(pool, 0)) {
+      pauseNext.set(true);
+      final CompletableFuture<HTTPResponse> listing = CompletableFuture.supplyAsync(() -> {
+        try {
+          return repository.getPage(request("GET", "/html").build());
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      queried.await();
+
+      final Matcher created = CREATED.matcher(repository.postPage(request("POST", "/html").form("html", "<html>Nueva</html>").build()).getContent());
+      assertThat(created.find(), is(true));
+      resume.countDown();
+
+      final ByteArrayOutputStream html = new ByteArrayOutputStream();
+      listing.get(10, TimeUnit.SECONDS).getContentWriter().writeTo(html);
+      assertThat(items(html.toString(StandardCharsets.UTF_8)), hasItem(created.group(1)));
+    }
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static List<String> items(String html) {
+    final List<String> items = new ArrayList<>();
+    final Matcher matcher = ITEM.matcher(html);
+    while (matcher.find()) {
+      items.add(matcher.group(1));
+    }
+    return items;
+  }
+}
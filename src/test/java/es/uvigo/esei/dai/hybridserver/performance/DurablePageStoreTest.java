@@ -0,0 +1,264 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest.readResponse;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import es.uvigo.esei.dai.hybridserver.DurablePageStore;
+import es.uvigo.esei.dai.hybridserver.DurablePageStore.Fsync;
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.UuidPageIndex;
+
+@Timeout(30L)
+public class DurablePageStoreTest {
+  @TempDir
+  Path directory;
+
+  @ParameterizedTest
+  @EnumSource(Fsync.class)
+  public void testPagesSurviveRestart(Fsync fsync) throws IOException {
+    final String kept = UUID.randomUUID().toString();
+    final String deleted = UUID.randomUUID().toString();
+    try (DurablePageStore store = open(fsync, 60_000)) {
+      assertThat(store.putIfAbsent(kept, bytes("<html>Olá</html>")), is(true));
+      assertThat(store.putIfAbsent(kept, bytes("<html>Other</html>")), is(false));
+      store.putIfAbsent(deleted, bytes("<html>Deleted</html>"));
+      assertThat(store.remove(deleted), is(true));
+      assertThat(store.remove(deleted), is(false));
+    }
+
+    try (DurablePageStore store = open(fsync, 60_000)) {
+      // Al cerrar se guardó la instantánea y se borró el log que cubre
+      assertThat(store.getSnapshotPages(), is(1L));
+      assertThat(store.getReplayedRecords(), is(0L));
+      assertThat(text(store.get(kept)), is(equalTo("<html>Olá</html>")));
+      assertThat(store.get(deleted), is(nullValue()));
+      assertThat(store.size(), is(1));
+    }
+  }
+
+  @Test
+  public void testRecoversFromLogWithoutSnapshot() throws IOException {
+    final String kept = UUID.randomUUID().toString();
+    final String deleted = UUID.randomUUID().toString();
+    try (DurablePageStore store = open(Fsync.OS, 0)) {
+      store.putIfAbsent(kept, bytes("kept"));
+      store.putIfAbsent(deleted, bytes("deleted"));
+      store.remove(deleted);
+    }
+    assertThat(files("snapshot-").size(), is(0));
+
+    try (DurablePageStore store = open(Fsync.OS, 0)) {
+      assertThat(store.getSnapshotPages(), is(0L));
+      assertThat(store.getReplayedRecords(), is(3L));
+      assertThat(text(store.get(kept)), is(equalTo("kept")));
+      assertThat(store.get(deleted), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testReplaysWritesAfterSnapshot() throws IOException {
+    final String before = UUID.randomUUID().toString();
+    final String after = UUID.randomUUID().toString();
+    // Sin instantánea al cerrar: como si el proceso hubiese caído después de escribir
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      store.putIfAbsent(before, bytes("before"));
+      store.snapshot();
+      store.putIfAbsent(after, bytes("after"));
+      store.remove(before);
+      store.putIfAbsent(before, bytes("before again"));
+    }
+    // El log anterior a la instantánea ya no hace falta
+    assertThat(files("wal-").size(), is(1));
+
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      assertThat(store.getSnapshotPages(), is(1L));
+      assertThat(store.getReplayedRecords(), is(3L));
+      assertThat(text(store.get(before)), is(equalTo("before again")));
+      assertThat(text(store.get(after)), is(equalTo("after")));
+    }
+  }
+
+  @Test
+  public void testTornWriteIsDiscarded() throws IOException {
+    final String first = UUID.randomUUID().toString();
+    final String torn = UUID.randomUUID().toString();
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      store.putIfAbsent(first, bytes("first"));
+      store.putIfAbsent(torn, bytes("torn write"));
+    }
+
+    // Se corta el último registro por la mitad, como si no se hubiese llegado a escribir entero
+    final Path log = files("wal-").get(0);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 4);
+    }
+
+    final String next = UUID.randomUUID().toString();
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      assertThat(store.getReplayedRecords(), is(1L));
+      assertThat(text(store.get(first)), is(equalTo("first")));
+      assertThat(store.get(torn), is(nullValue()));
+      // Lo que viene después no se mezcla con el registro roto
+      store.putIfAbsent(next, bytes("next"));
+    }
+
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      assertThat(store.getReplayedRecords(), is(2L));
+      assertThat(text(store.get(first)), is(equalTo("first")));
+      assertThat(store.get(torn), is(nullValue()));
+      assertThat(text(store.get(next)), is(equalTo("next")));
+    }
+  }
+
+  @Test
+  public void testCorruptRecordStopsReplay() throws IOException {
+    final String first = UUID.randomUUID().toString();
+    final String corrupt = UUID.randomUUID().toString();
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      store.putIfAbsent(first, bytes("first"));
+      store.putIfAbsent(corrupt, bytes("corrupt"));
+    }
+
+    final Path log = files("wal-").get(0);
+    try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] { 'X' }), channel.size() - 1);
+    }
+
+    try (DurablePageStore store = open(Fsync.ALWAYS, 0)) {
+      assertThat(text(store.get(first)), is(equalTo("first")));
+      assertThat(store.get(corrupt), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testGroupCommitWithConcurrentWriters() throws Exception {
+    final int writers = 8;
+    final int pagesPerWriter = 50;
+    final List<String> uuids = new ArrayList<>();
+    try (DurablePageStore store = open(Fsync.GROUP, 0)) {
+      final ExecutorService pool = Executors.newFixedThreadPool(writers);
+      try {
+        final List<Future<List<String>>> results = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+          results.add(pool.submit(() -> {
+            final List<String> written = new ArrayList<>();
+            for (int i = 0; i < pagesPerWriter; i++) {
+              final String uuid = UUID.randomUUID().toString();
+              store.putIfAbsent(uuid, bytes(content(uuid)));
+              written.add(uuid);
+            }
+            return written;
+          }));
+        }
+        for (Future<List<String>> result : results) {
+          uuids.addAll(result.get());
+        }
+      } finally {
+        pool.shutdown();
+      }
+    }
+
+    try (DurablePageStore store = open(Fsync.GROUP, 0)) {
+      assertThat(store.size(), is(writers * pagesPerWriter));
+      for (String uuid : uuids) {
+        assertThat(text(store.get(uuid)), is(equalTo(content(uuid))));
+      }
+    }
+  }
+
+  @Test
+  public void testDurableMapRepositoryOverHttp() throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("repository", "map");
+    properties.setProperty("map.durable", "true");
+    properties.setProperty("map.durable.directory", directory.toString());
+
+    final String page = "<html><body>¡Olá tras reiniciar!</body></html>";
+    final String uuid;
+    try (HybridServer server = new HybridServer(properties)) {
+      server.start();
+      final String body = "html=" + URLEncoder.encode(page, StandardCharsets.UTF_8);
+      final String response = exchange(server,
+        "POST /html HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\n"
+        + "Content-Length: " + body.length() + "\r\n\r\n" + body);
+      final Matcher matcher = Pattern.compile("uuid=([0-9a-f-]{36})").matcher(response);
+      assertThat(matcher.find(), is(true));
+      uuid = matcher.group(1);
+    }
+
+    try (HybridServer server = new HybridServer(properties)) {
+      server.start();
+      final String response = exchange(server, "GET /html?uuid=" + uuid + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(response, containsString("200 OK"));
+      assertThat(response, endsWith("\r\n\r\n" + page));
+      assertThat(exchange(server, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"), containsString("Map mode"));
+    }
+  }
+
+  private DurablePageStore open(Fsync fsync, long snapshotInterval) throws IOException {
+    return new DurablePageStore(new UuidPageIndex(), directory, fsync, 2, snapshotInterval);
+  }
+
+  private List<Path> files(String prefix) throws IOException {
+    final List<Path> found = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(path -> path.getFileName().toString().startsWith(prefix)).sorted().forEach(found::add);
+    }
+    return found;
+  }
+
+  private static String exchange(HybridServer server, String request) throws IOException {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      final OutputStream out = socket.getOutputStream();
+      out.write(request.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      return readResponse(socket.getInputStream());
+    }
+  }
+
+  private static String content(String uuid) {
+    return "<html><body>Page " + uuid + "</body></html>";
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(byte[] bytes) {
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+}
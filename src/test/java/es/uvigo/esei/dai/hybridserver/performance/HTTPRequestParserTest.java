@@ -0,0 +1,150 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Named.named;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestParser;
+
+public class HTTPRequestParserTest {
+  public static Stream<Arguments> requests() {
+    return Stream.of(
+      arguments(named("Root", "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n")),
+      arguments(
+        named(
+          "Parameters",
+          "GET /hello/world.html?country=Spain&province=Ourense&city=Ourense&&empty= HTTP/1.1\r\n"
+          + "Host: localhost:8888\r\n"
+          + "Accept: text/html\r\n"
+          + "Accept-Encoding: gzip,deflate\r\n"
+          + "\r\n"
+        )
+      ),
+      arguments(
+        named(
+          "Encoded parameters",
+          "GET /html?uuid=a%2Bb+c&msg=%C2%A1Hola%21& HTTP/1.0\r\nHost:localhost\r\n\r\n"
+        )
+      ),
+      arguments(
+        named(
+          "Encoded POST",
+          "POST / HTTP/1.1\r\n"
+          + "Host: localhost\r\n"
+          + "Content-Type: application/x-www-form-urlencoded\r\n"
+          + "Content-Length: 116\r\n"
+          + "\r\n"
+          + "message=Hello+world%21%21&mensaje=%C2%A1%C2%A1Hola+mundo%21%21&mensaxe=Ola+mundo%21%21&mensagem=Ol%C3%A1+mundo%21%21"
+        )
+      ),
+      arguments(named("Lowercase method and LF only", "delete  /html?uuid=x\tHTTP/1.1\nX-Custom :  value \n\n"))
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("requests")
+  public void testSameViewAsReaderParser(String text) throws Exception {
+    final HTTPRequest expected = new HTTPRequest(new StringReader(text));
+    final HTTPRequest actual = new HTTPRequestParser().parse(bytes(text));
+
+    assertSameRequest(actual, expected);
+  }
+
+  @ParameterizedTest
+  @MethodSource("requests")
+  public void testResumesByteByByte(String text) throws Exception {
+    final HTTPRequestParser parser = new HTTPRequestParser();
+    final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+
+    HTTPRequest actual = null;
+    for (int i = 0; i < data.length; i++) {
+      assertThat(actual, is(nullValue()));
+      actual = parser.parse(ByteBuffer.wrap(data, i, 1));
+    }
+
+    assertThat(actual, is(notNullValue()));
+    assertSameRequest(actual, new HTTPRequest(new StringReader(text)));
+  }
+
+  @Test
+  public void testLeavesPipelinedRequestInBuffer() throws Exception {
+    final HTTPRequestParser parser = new HTTPRequestParser();
+    final ByteBuffer buffer = bytes(
+      "POST /html HTTP/1.1\r\nContent-Length: 7\r\n\r\nhtml=ab"
+      + "GET /html?uuid=1 HTTP/1.1\r\n\r\n"
+    );
+
+    assertThat(parser.parse(buffer).getContent(), is(equalTo("html=ab")));
+    assertThat(parser.isPartial(), is(false));
+    assertThat(parser.parse(buffer).getResourceParameters().get("uuid"), is(equalTo("1")));
+    assertThat(buffer.hasRemaining(), is(false));
+  }
+
+  @Test
+  public void testWaitsForBody() throws Exception {
+    final HTTPRequestParser parser = new HTTPRequestParser();
+
+    assertThat(parser.parse(bytes("POST /html HTTP/1.1\r\nContent-Length: 7\r\n\r\nhtml")), is(nullValue()));
+    assertThat(parser.isPartial(), is(true));
+    assertThat(parser.parse(bytes("=ab")).getContent(), is(equalTo("html=ab")));
+  }
+
+  @ParameterizedTest
+  @MethodSource("es.uvigo.esei.dai.hybridserver.step1.HTTPBadRequestsTest#badRequests")
+  public void testBadRequests(String text) {
+    assertThrows(HTTPParseException.class, () -> new HTTPRequestParser().parse(bytes(text + "\r\n")));
+  }
+
+  @Test
+  public void testRejectsOversizedHeaders() {
+    final HTTPRequestParser parser = new HTTPRequestParser(64, 1024);
+
+    assertThrows(
+      HTTPParseException.class,
+      () -> parser.parse(bytes("GET / HTTP/1.1\r\nX-Long: " + "a".repeat(100) + "\r\n\r\n"))
+    );
+    assertThat(parser.isPartial(), is(false));
+  }
+
+  @Test
+  public void testRejectsOversizedContent() {
+    assertThrows(
+      HTTPParseException.class,
+      () -> new HTTPRequestParser(1024, 10).parse(bytes("POST / HTTP/1.1\r\nContent-Length: 11\r\n\r\n"))
+    );
+  }
+
+  private static ByteBuffer bytes(String text) {
+    return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void assertSameRequest(HTTPRequest actual, HTTPRequest expected) {
+    assertThat(actual.getMethod(), is(equalTo(expected.getMethod())));
+    assertThat(actual.getResourceChain(), is(equalTo(expected.getResourceChain())));
+    assertThat(actual.getResourceName(), is(equalTo(expected.getResourceName())));
+    assertThat(actual.getResourcePath(), is(equalTo(expected.getResourcePath())));
+    assertThat(actual.getHttpVersion(), is(equalTo(expected.getHttpVersion())));
+    assertThat(actual.getHeaderParameters(), is(equalTo(expected.getHeaderParameters())));
+    assertThat(actual.getContent(), is(equalTo(expected.getContent())));
+    assertThat(actual.getContentLength(), is(equalTo(expected.getContentLength())));
+    assertThat(actual.getResourceParameters(), is(equalTo(expected.getResourceParameters())));
+    assertThat(actual.toString(), is(equalTo(expected.toString())));
+  }
+}
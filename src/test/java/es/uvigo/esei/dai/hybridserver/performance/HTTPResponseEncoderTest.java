@@ -0,0 +1,130 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.collection.IsArrayWithSize.arrayWithSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseStatus;
+
+public class HTTPResponseEncoderTest {
+  @Test
+  public void testContentLengthCountsUtf8Bytes() throws IOException {
+    final HTTPResponse response = new HTTPResponse();
+    response.putParameter("Content-Type", "text/html; charset=UTF-8");
+    response.setContent("¡Olá, mundo!");
+
+    final String text = write(response);
+
+    assertThat(text, is(equalTo(
+      "HTTP/1.1 200 OK\r\n"
+      + "Content-Length: 14\r\n"
+      + "Content-Type: text/html; charset=UTF-8\r\n"
+      + "\r\n"
+      + "¡Olá, mundo!"
+    )));
+  }
+
+  @Test
+  public void testIgnoresStaleContentLength() throws IOException {
+    final HTTPResponse response = new HTTPResponse();
+    response.setContent("hello");
+    response.putParameter("Content-Length", "99");
+
+    assertThat(write(response), is(equalTo("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello")));
+  }
+
+  @Test
+  public void testLargeContentIsNotCopied() {
+    final byte[] content = "a".repeat(64 * 1024).getBytes(StandardCharsets.UTF_8);
+    final HTTPResponse response = new HTTPResponse();
+    response.setContentBytes(content);
+
+    final ByteBuffer[] buffers = HTTPResponseEncoder.encode(response);
+
+    assertThat(buffers, is(arrayWithSize(2)));
+    assertThat(buffers[1].array(), is(sameInstance(content)));
+    assertThat(
+      new String(buffers[0].array(), StandardCharsets.US_ASCII),
+      containsString("Content-Length: 65536\r\n")
+    );
+  }
+
+  @Test
+  public void testDirectContentIsNotCopied() throws IOException {
+    final ByteBuffer content = ByteBuffer.allocateDirect(64 * 1024);
+    while (content.hasRemaining()) {
+      content.put((byte) 'b');
+    }
+    content.flip();
+    final HTTPResponse response = new HTTPResponse();
+    response.setContentBuffer(content);
+
+    final ByteBuffer[] buffers = HTTPResponseEncoder.encode(response);
+
+    assertThat(buffers, is(arrayWithSize(2)));
+    assertThat(buffers[1].isDirect(), is(true));
+    assertThat(buffers[1].remaining(), is(64 * 1024));
+    assertThat(content.remaining(), is(64 * 1024));
+    assertThat(write(response), is(equalTo("HTTP/1.1 200 OK\r\nContent-Length: 65536\r\n\r\n" + "b".repeat(64 * 1024))));
+    assertThat(response.getContent(), is(equalTo("b".repeat(64 * 1024))));
+  }
+
+  @Test
+  public void testNotModifiedHasNoContent() throws IOException {
+    final HTTPResponse response = new HTTPResponse();
+    response.setStatus(HTTPResponseStatus.S304);
+    response.setContent("ignored");
+
+    final String text = write(response);
+
+    assertThat(text, is(equalTo("HTTP/1.1 304 Not Modified\r\n\r\n")));
+    assertThat(text, not(containsString("Content-Length")));
+  }
+
+  @Test
+  public void testOtherVersions() throws IOException {
+    final HTTPResponse response = new HTTPResponse();
+    response.setVersion("HTTP/1.0");
+    response.setStatus(HTTPResponseStatus.S404);
+
+    assertThat(write(response), is(equalTo("HTTP/1.0 404 Not Found\r\nContent-Length: 0\r\n\r\n")));
+  }
+
+  @Test
+  public void testRepositoryResponsesShareOneShape() throws IOException {
+    final HTTPResponse page = HTTPResponse.html(HTTPResponseStatus.S200, "¡Olá!".getBytes(StandardCharsets.UTF_8));
+    assertThat(page.getContentLength(), is(7));
+    assertThat(page.getContent(), is(equalTo("¡Olá!")));
+    assertThat(write(page), is(equalTo(
+      "HTTP/1.1 200 OK\r\nContent-Length: 7\r\nContent-Type: text/html\r\n\r\n¡Olá!")));
+
+    final HTTPResponse error = HTTPResponse.error(HTTPResponseStatus.S404, "Not found");
+    assertThat(error.getStatus(), is(HTTPResponseStatus.S404));
+    assertThat(error.getContent(), is(equalTo("<html><body><h1>404 Not Found</h1><p>Not found</p></body></html>")));
+    assertThat(error.getContentLength(), is(error.getContentBytes().length));
+
+    final HTTPResponse chunked = new HTTPResponse();
+    chunked.setContentWriter(out -> out.write('x'));
+    assertThat(chunked.getContentLength(), is(-1));
+  }
+
+  private static String write(HTTPResponse response) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    HTTPResponseEncoder.write(response, out);
+
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
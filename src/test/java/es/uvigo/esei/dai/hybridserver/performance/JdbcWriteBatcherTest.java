@@ -0,0 +1,223 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.JdbcWriteBatcher;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class JdbcWriteBatcherTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+
+  private ConnectionPool pool;
+  private ExecutorService clients;
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @BeforeEach
+  public void setUp() {
+    pool = new ConnectionPool(getConnectionUrl(), getUsername(), getPassword());
+    clients = Executors.newFixedThreadPool(32);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    clients.shutdownNow();
+    clients.awaitTermination(10, TimeUnit.SECONDS);
+    pool.close();
+  }
+
+  @Test
+  public void testConcurrentInsertsShareTransactions() throws Exception {
+    final int initial = count();
+    try (JdbcWriteBatcher batcher = new JdbcWriteBatcher(pool, 64, 20)) {
+      final List<String> uuids = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+        uuids.add(UUID.randomUUID().toString());
+      }
+      final List<Future<?>> inserts = submitTogether(uuids, uuid -> batcher.insert(uuid, "<html>" + uuid + "</html>"));
+      for (Future<?> insert : inserts) {
+        insert.get(10, TimeUnit.SECONDS);
+      }
+
+      // Cuando vuelve insert() la fila ya está confirmada
+      for (String uuid : uuids) {
+        assertThat(content(uuid), is(equalTo("<html>" + uuid + "</html>")));
+      }
+      assertThat(count(), is(initial + uuids.size()));
+      assertThat(batcher.getOperations(), is(32L));
+      assertThat(batcher.getBatches(), is(lessThan(32L)));
+      assertThat(batcher.getRetriedBatches(), is(0L));
+    }
+  }
+
+  @Test
+  public void testOperationsKeepTheirOrderInsideABatch() throws Exception {
+    final String uuid = UUID.randomUUID().toString();
+    try (JdbcWriteBatcher batcher = new JdbcWriteBatcher(pool, 64, 500)) {
+      final Future<?> insert = clients.submit(() -> {
+        batcher.insert(uuid, "<html>Short-lived</html>");
+        return null;
+      });
+      // Da tiempo a que el alta entre en la cola antes que la baja, dentro de la misma ventana
+      Thread.sleep(100);
+      assertThat(batcher.delete(uuid), is(true));
+      insert.get(10, TimeUnit.SECONDS);
+
+      assertThat(content(uuid), is((String) null));
+      assertThat(batcher.getBatches(), is(1L));
+      assertThat(batcher.delete(uuid), is(false));
+    }
+  }
+
+  @Test
+  public void testFailedOperationOnlyFailsItsCaller() throws Exception {
+    final String existing = anyUuid();
+    try (JdbcWriteBatcher batcher = new JdbcWriteBatcher(pool, 64, 200)) {
+      final List<String> uuids = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        uuids.add(UUID.randomUUID().toString());
+      }
+      uuids.add(4, existing);
+      final List<Future<?>> inserts = submitTogether(uuids, uuid -> batcher.insert(uuid, "<html>New</html>"));
+
+      for (int i = 0; i < uuids.size(); i++) {
+        final String uuid = uuids.get(i);
+        final Future<?> insert = inserts.get(i);
+        if (uuid.equals(existing)) {
+          final Exception e = assertThrows(Exception.class, () -> insert.get(10, TimeUnit.SECONDS));
+          assertThat(e.getCause() instanceof SQLException, is(true));
+          assertThat(content(uuid), is(not("<html>New</html>")));
+        } else {
+          insert.get(10, TimeUnit.SECONDS);
+          assertThat(content(uuid), is(equalTo("<html>New</html>")));
+        }
+      }
+      assertThat(batcher.getRetriedBatches(), is(1L));
+    }
+  }
+
+  @Test
+  public void testClosedBatcherRejectsOperations() throws Exception {
+    final JdbcWriteBatcher batcher = new JdbcWriteBatcher(pool);
+    final String uuid = UUID.randomUUID().toString();
+    batcher.insert(uuid, "<html>Before closing</html>");
+    batcher.close();
+
+    assertThrows(SQLException.class, () -> batcher.insert(UUID.randomUUID().toString(), "<html>Late</html>"));
+    assertThrows(SQLException.class, () -> batcher.delete(uuid));
+    assertThat(content(uuid), is(equalTo("<html>Before closing</html>")));
+  }
+
+  @Test
+  public void testRepositoryWritesThroughBatcher() throws Exception {
+    final JdbcWriteBatcher batcher = new JdbcWriteBatcher(pool, 64, 1);
+    final DBdaw repository = new DBdaw(pool, DBdaw.DEFAULT_LISTING_MAX_AGE_MILLIS, batcher);
+
+    final HTTPResponse created = repository.postPage(request("POST", "/html").form("html", "<html>Batched</html>").build());
+    assertThat(created.getStatus().getCode(), is(200));
+    final Matcher matcher = Pattern.compile("uuid=([0-9a-f-]{36})").matcher(created.getContent());
+    assertThat(matcher.find(), is(true));
+    final String uuid = matcher.group(1);
+    assertThat(content(uuid), is(equalTo("<html>Batched</html>")));
+
+    assertThat(delete(repository, uuid).getStatus().getCode(), is(200));
+    assertThat(delete(repository, uuid).getStatus().getCode(), is(404));
+    assertThat(content(uuid), is((String) null));
+    assertThat(batcher.getOperations(), is(3L));
+
+    // Cierra el lote y luego el pool
+    repository.close();
+    assertThrows(SQLException.class, () -> batcher.insert(UUID.randomUUID().toString(), "<html>Late</html>"));
+  }
+
+  private interface Write {
+    void apply(String uuid) throws SQLException;
+  }
+
+  // Lanza una escritura por UUID, todas a la vez, en el orden de la lista
+  private List<Future<?>> submitTogether(List<String> uuids, Write write) throws InterruptedException {
+    final CountDownLatch ready = new CountDownLatch(uuids.size());
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (String uuid : uuids) {
+      futures.add(clients.submit(() -> {
+        ready.countDown();
+        start.await();
+        write.apply(uuid);
+        return null;
+      }));
+    }
+    ready.await();
+    start.countDown();
+    return futures;
+  }
+
+  private static HTTPResponse delete(DBdaw repository, String uuid) throws Exception {
+    return repository.deletePage(page("DELETE", uuid).build());
+  }
+
+  private String content(String uuid) throws Exception {
+    final Connection c = getConnection();
+    try (PreparedStatement ps = c.prepareStatement("SELECT content FROM HTML WHERE uuid = ?")) {
+      ps.setString(1, uuid);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getString("content") : null;
+      }
+    }
+  }
+
+  private String anyUuid() throws Exception {
+    try (Statement statement = getConnection().createStatement();
+        ResultSet rs = statement.executeQuery("SELECT uuid FROM HTML LIMIT 1")) {
+      assertThat(rs.next(), is(true));
+      return rs.getString("uuid");
+    }
+  }
+
+  private int count() throws Exception {
+    try (Statement statement = getConnection().createStatement();
+        ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM HTML")) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+}
@@ -0,0 +1,253 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+
+@Timeout(5L)
+public class KeepAliveTest {
+  private static final String UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String CONTENT = "This is the html page " + UUID + ".";
+  private static final int NUM_CLIENTS = 4;
+
+  private HybridServer startServer(String mode, int maxRequests) {
+    return startServer(mode, maxRequests, 2000);
+  }
+
+  private HybridServer startServer(String mode, int maxRequests, int timeoutMillis) {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", Integer.toString(NUM_CLIENTS));
+    properties.setProperty("server.mode", mode);
+    properties.setProperty("server.keepAliveTimeout", Integer.toString(timeoutMillis));
+    properties.setProperty("server.maxKeepAliveRequests", Integer.toString(maxRequests));
+
+    final HybridServer server = new HybridServer(Collections.singletonMap(UUID, CONTENT), properties);
+    server.start();
+
+    return server;
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testSeveralRequestsOnOneConnection(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 3); Socket socket = new Socket("localhost", server.getPort())) {
+      for (int i = 1; i <= 3; i++) {
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        final String response = readResponse(socket.getInputStream());
+        assertThat(response, startsWith("HTTP/1.1 200 OK"));
+        assertThat(response, containsString(CONTENT));
+        assertThat(response, containsString(i < 3 ? "Connection: keep-alive" : "Connection: close"));
+      }
+
+      // Tras la última petición permitida el servidor cierra la conexión
+      assertThat(socket.getInputStream().read(), is(equalTo(-1)));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testPipelinedRequests(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10); Socket socket = new Socket("localhost", server.getPort())) {
+      final String request = "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n";
+      send(socket, request + request);
+
+      assertThat(readResponse(socket.getInputStream()), containsString(CONTENT));
+      assertThat(readResponse(socket.getInputStream()), containsString(CONTENT));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testConnectionCloseIsHonoured(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10); Socket socket = new Socket("localhost", server.getPort())) {
+      send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+      assertThat(readResponse(socket.getInputStream()), containsString("Connection: close"));
+      assertThat(socket.getInputStream().read(), is(equalTo(-1)));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testHttp10ClosesByDefault(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10); Socket socket = new Socket("localhost", server.getPort())) {
+      send(socket, "GET /html?uuid=" + UUID + " HTTP/1.0\r\n\r\n");
+
+      assertThat(readResponse(socket.getInputStream()), containsString("Connection: close"));
+      assertThat(socket.getInputStream().read(), is(equalTo(-1)));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testHttp10KeepAlive(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10); Socket socket = new Socket("localhost", server.getPort())) {
+      for (int i = 0; i < 2; i++) {
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.0\r\nConnection: keep-alive\r\n\r\n");
+
+        assertThat(readResponse(socket.getInputStream()), containsString("Connection: keep-alive"));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testNoTimeoutIsNotAnnouncedAsZero(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10, 0); Socket socket = new Socket("localhost", server.getPort())) {
+      // La segunda sale ya de la caché de respuestas, con las cabeceras precodificadas
+      for (int i = 0; i < 2; i++) {
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        final String response = readResponse(socket.getInputStream());
+        if (mode.equals("nio")) {
+          assertThat(response, containsString("Keep-Alive: max="));
+          assertThat(response, not(containsString("timeout=")));
+        } else {
+          // Cada conexión ocupa un hilo: en modo bloqueante siempre hay límite
+          assertThat(response, containsString("Keep-Alive: timeout=5, max="));
+        }
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testSubSecondTimeoutRoundsUp(String mode) throws IOException {
+    try (HybridServer server = startServer(mode, 10, 500); Socket socket = new Socket("localhost", server.getPort())) {
+      for (int i = 0; i < 2; i++) {
+        send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        assertThat(readResponse(socket.getInputStream()), containsString("Keep-Alive: timeout=1, max="));
+      }
+    }
+  }
+
+  @Test
+  public void testIdleConnectionsDoNotStarveTheBlockingPool() throws IOException {
+    try (HybridServer server = startServer("blocking", 10, 0)) {
+      // Tantas conexiones keep-alive inactivas como hilos tiene el pool
+      final List<Socket> idle = new ArrayList<>();
+      try {
+        for (int i = 0; i < NUM_CLIENTS; i++) {
+          final Socket socket = new Socket("localhost", server.getPort());
+          idle.add(socket);
+          send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+          assertThat(readResponse(socket.getInputStream()), containsString("Connection: keep-alive"));
+        }
+
+        // La siguiente se atiende antes de que venza el keep-alive de las demás
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+          send(socket, "GET /html?uuid=" + UUID + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+          final String response = readResponse(socket.getInputStream());
+          assertThat(response, startsWith("HTTP/1.1 200 OK"));
+          assertThat(response, containsString(CONTENT));
+        }
+
+        // Una de las inactivas ha cedido su hilo
+        int closed = 0;
+        for (Socket socket : idle) {
+          socket.setSoTimeout(100);
+          try {
+            if (socket.getInputStream().read() == -1) {
+              closed++;
+            }
+          } catch (SocketTimeoutException | SocketException ignore) {
+          }
+        }
+        assertThat(closed, is(equalTo(1)));
+      } finally {
+        for (Socket socket : idle) {
+          socket.close();
+        }
+      }
+    }
+  }
+
+  private static void send(Socket socket, String request) throws IOException {
+    final OutputStream out = socket.getOutputStream();
+    out.write(request.getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  /**
+   * Lee una respuesta completa sin esperar al cierre: cabeceras y Content-Length bytes, o los
+   * chunks hasta el último si viene con "Transfer-Encoding: chunked" (devuelve el cuerpo ya
+   * decodificado).
+   */
+  static String readResponse(InputStream in) throws IOException {
+    final String headers = readHead(in);
+    int length = 0;
+    boolean chunked = false;
+    for (String line : headers.split("\r\n")) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        length = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+      } else if (line.equalsIgnoreCase("transfer-encoding: chunked")) {
+        chunked = true;
+      }
+    }
+
+    if (!chunked) {
+      return headers + new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    int size;
+    while ((size = Integer.parseInt(readLine(in), 16)) > 0) {
+      body.write(in.readNBytes(size));
+      assertThat(readLine(in), is(equalTo("")));
+    }
+    assertThat(readLine(in), is(equalTo("")));
+
+    return headers + body.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String readHead(InputStream in) throws IOException {
+    final ByteArrayOutputStream head = new ByteArrayOutputStream();
+    int window = 0, c;
+    // window guarda los cuatro últimos bytes leídos: "\r\n\r\n" marca el fin de las cabeceras
+    while (window != 0x0D0A0D0A && (c = in.read()) != -1) {
+      head.write(c);
+      window = (window << 8) | c;
+    }
+    return head.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    final StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        throw new IOException("Unexpected end of stream");
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+}
@@ -0,0 +1,132 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.HtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.PageListing;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class ListingPaginationTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+  private static final Pattern ITEM = Pattern.compile("<li><a href=\"/?html\\?uuid=([^\"]+)\">");
+  private static final Pattern NEXT = Pattern.compile("<a rel=\"next\" href=\"/?html\\?([^\"]+)\">");
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @Test
+  public void testMapPagesCoverEveryPageInOrder() throws Exception {
+    final Map<String, String> pages = new HashMap<>();
+    for (int i = 0; i < 250; i++) {
+      pages.put(UUID.randomUUID().toString(), "<html>Page " + i + "</html>");
+    }
+    final MAPdaw repository = new MAPdaw(pages);
+
+    assertThat(walk(repository, 7), is(equalTo(new ArrayList<>(new TreeSet<>(pages.keySet())))));
+  }
+
+  @Test
+  public void testDatabasePagesCoverEveryPageInOrder() throws Exception {
+    try (DBdaw repository = new DBdaw(new ConnectionPool(getConnectionUrl(), getUsername(), getPassword()))) {
+      final List<String> all = walk(repository, 1000);
+      assertThat(all.size(), is(10));
+      assertThat(walk(repository, 3), is(equalTo(all)));
+      assertThat(new ArrayList<>(new TreeSet<>(all)), is(equalTo(all)));
+    }
+  }
+
+  @Test
+  public void testCursorNeedNotExist() throws Exception {
+    final MAPdaw repository = new MAPdaw(Map.of("a", "A", "c", "C", "e", "E"));
+    assertThat(items(get(repository, "/html?limit=10&after=b")), is(equalTo(Arrays.asList("c", "e"))));
+    assertThat(items(get(repository, "/html?limit=10&after=e")), is(equalTo(List.of())));
+    assertThat(get(repository, "/html?limit=10&after=e"), containsString("No hay más páginas"));
+    // Sin limit, el tamaño por defecto
+    assertThat(items(get(repository, "/html?after=a")), is(equalTo(Arrays.asList("c", "e"))));
+  }
+
+  @Test
+  public void testInvalidLimit() throws Exception {
+    final MAPdaw repository = new MAPdaw(Map.of("a", "A"));
+    for (String limit : new String[] { "0", "-1", "many" }) {
+      assertThat(repository.getPage(request("GET", "/html?limit=" + limit).build()).getStatus().getCode(), is(400));
+    }
+    assertThat(PageListing.pageSize("5000"), is(PageListing.MAX_PAGE_SIZE));
+    assertThat(PageListing.pageSize(null), is(PageListing.DEFAULT_PAGE_SIZE));
+  }
+
+  @Test
+  public void testListingWithoutParametersIsNotPaginated() throws Exception {
+    final MAPdaw repository = new MAPdaw(Map.of("a", "A", "b", "B"));
+    final HTTPResponse response = repository.getPage(request("GET", "/html").build());
+    assertThat(response.isChunked(), is(true));
+  }
+
+  // Recorre el listado siguiendo los enlaces a la página siguiente
+  private static List<String> walk(HtmlRepository repository, int limit) throws Exception {
+    final List<String> all = new ArrayList<>();
+    String path = "/html?limit=" + limit;
+    while (path != null) {
+      final String html = get(repository, path);
+      final List<String> items = items(html);
+      assertThat(items.size(), is(lessThanOrEqualTo(limit)));
+      all.addAll(items);
+
+      final Matcher next = NEXT.matcher(html);
+      if (next.find()) {
+        assertThat(items.size(), is(limit));
+        path = "/html?" + next.group(1).replace("&amp;", "&");
+      } else {
+        assertThat(html, not(containsString("rel=\"next\"")));
+        path = null;
+      }
+    }
+    return all;
+  }
+
+  private static String get(HtmlRepository repository, String path) throws Exception {
+    final HTTPResponse response = repository.getPage(request("GET", path).build());
+    assertThat(response.getStatus().getCode(), is(200));
+    return response.getContent();
+  }
+
+  private static List<String> items(String html) {
+    final List<String> items = new ArrayList<>();
+    final Matcher matcher = ITEM.matcher(html);
+    while (matcher.find()) {
+      items.add(matcher.group(1));
+    }
+    return items;
+  }
+
+}
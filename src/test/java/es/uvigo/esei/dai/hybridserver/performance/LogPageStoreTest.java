@@ -0,0 +1,238 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest.readResponse;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.LogPageStore;
+
+@Timeout(30L)
+public class LogPageStoreTest {
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void testPagesSurviveRestart() throws IOException {
+    final String kept = UUID.randomUUID().toString();
+    final String deleted = UUID.randomUUID().toString();
+    try (LogPageStore store = open()) {
+      assertThat(store.putIfAbsent(kept, bytes("<html>Olá</html>")), is(true));
+      assertThat(store.putIfAbsent(kept, bytes("<html>Other</html>")), is(false));
+      store.putIfAbsent(deleted, bytes("<html>Deleted</html>"));
+      assertThat(store.remove(deleted), is(true));
+      assertThat(text(store.get(kept)), is(equalTo("<html>Olá</html>")));
+    }
+
+    try (LogPageStore store = open()) {
+      // Al cerrar se guardó la instantánea: no hace falta leer ningún registro
+      assertThat(store.getReplayedRecords(), is(0L));
+      assertThat(text(store.get(kept)), is(equalTo("<html>Olá</html>")));
+      assertThat(store.get(deleted), is(nullValue()));
+      assertThat(store.size(), is(1));
+    }
+
+    // Sin instantánea se recorren todos los segmentos, con el mismo resultado
+    Files.delete(directory.resolve("index.snapshot"));
+    try (LogPageStore store = open()) {
+      assertThat(store.getReplayedRecords(), is(3L));
+      assertThat(text(store.get(kept)), is(equalTo("<html>Olá</html>")));
+      assertThat(store.get(deleted), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testReplaysWritesAfterSnapshot() throws IOException {
+    final String before = UUID.randomUUID().toString();
+    final String after = UUID.randomUUID().toString();
+    try (LogPageStore store = open()) {
+      store.putIfAbsent(before, bytes("before"));
+      store.snapshot();
+      store.putIfAbsent(after, bytes("after"));
+      store.remove(before);
+      // Caída del proceso: sin close(), la instantánea se queda atrás
+      Files.copy(directory.resolve("index.snapshot"), directory.resolve("crashed.snapshot"));
+    }
+    Files.move(directory.resolve("crashed.snapshot"), directory.resolve("index.snapshot"), StandardCopyOption.REPLACE_EXISTING);
+
+    try (LogPageStore store = open()) {
+      assertThat(store.getReplayedRecords(), is(2L));
+      assertThat(store.get(before), is(nullValue()));
+      assertThat(text(store.get(after)), is(equalTo("after")));
+    }
+  }
+
+  @Test
+  public void testTornWriteIsDiscarded() throws IOException {
+    final String first = UUID.randomUUID().toString();
+    final String torn = UUID.randomUUID().toString();
+    try (LogPageStore store = open()) {
+      store.putIfAbsent(first, bytes("first"));
+      store.putIfAbsent(torn, bytes("torn write"));
+    }
+    Files.delete(directory.resolve("index.snapshot"));
+
+    // Se estropea el último byte del último registro, como si no se hubiese llegado a escribir
+    final Path segment = segments().get(0);
+    final int end = HEADER + 36 + "first".length() + HEADER + 36 + "torn write".length();
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] { 'X' }), end - 1);
+    }
+
+    final String next = UUID.randomUUID().toString();
+    try (LogPageStore store = open()) {
+      assertThat(text(store.get(first)), is(equalTo("first")));
+      assertThat(store.get(torn), is(nullValue()));
+      // Lo que viene después no se mezcla con el registro roto
+      store.putIfAbsent(next, bytes("next"));
+    }
+    Files.delete(directory.resolve("index.snapshot"));
+
+    try (LogPageStore store = open()) {
+      assertThat(text(store.get(first)), is(equalTo("first")));
+      assertThat(store.get(torn), is(nullValue()));
+      assertThat(text(store.get(next)), is(equalTo("next")));
+    }
+  }
+
+  @Test
+  public void testCompactionDropsDeletedPages() throws IOException {
+    final List<String> uuids = new ArrayList<>();
+    try (LogPageStore store = open()) {
+      for (int i = 0; i < 500; i++) {
+        final String uuid = UUID.randomUUID().toString();
+        uuids.add(uuid);
+        store.putIfAbsent(uuid, bytes(content(i)));
+      }
+      for (int i = 0; i < uuids.size(); i++) {
+        if (i % 10 != 0) {
+          store.remove(uuids.get(i));
+        }
+      }
+      final int before = store.getSegmentCount();
+      final ByteBuffer inFlight = store.getBuffer(uuids.get(0));
+
+      store.compact();
+
+      assertThat(store.getSegmentCount(), is(lessThan(before)));
+      assertThat(segments().size(), is(store.getSegmentCount()));
+      // Una respuesta que ya tenía la página la sigue pudiendo enviar
+      final byte[] sent = new byte[inFlight.remaining()];
+      inFlight.get(sent);
+      assertThat(text(sent), is(equalTo(content(0))));
+    }
+
+    for (boolean snapshot : new boolean[] { true, false }) {
+      if (!snapshot) {
+        Files.delete(directory.resolve("index.snapshot"));
+      }
+      try (LogPageStore store = open()) {
+        assertThat(store.size(), is(50));
+        for (int i = 0; i < uuids.size(); i++) {
+          if (i % 10 == 0) {
+            assertThat(text(store.get(uuids.get(i))), is(equalTo(content(i))));
+          } else {
+            assertThat(store.get(uuids.get(i)), is(nullValue()));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFileRepositoryOverHttp() throws IOException {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("repository", "file");
+    properties.setProperty("file.directory", directory.toString());
+
+    final String page = "<html><body>¡Olá desde disco!</body></html>";
+    final String uuid;
+    try (HybridServer server = new HybridServer(properties)) {
+      server.start();
+      final String body = "html=" + URLEncoder.encode(page, StandardCharsets.UTF_8);
+      final String response = exchange(server,
+        "POST /html HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-www-form-urlencoded\r\n"
+        + "Content-Length: " + body.length() + "\r\n\r\n" + body);
+      final Matcher matcher = Pattern.compile("uuid=([0-9a-f-]{36})").matcher(response);
+      assertThat(matcher.find(), is(true));
+      uuid = matcher.group(1);
+    }
+
+    // Otro servidor sobre el mismo directorio
+    try (HybridServer server = new HybridServer(properties)) {
+      server.start();
+      final String response = exchange(server, "GET /html?uuid=" + uuid + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+      assertThat(response, containsString("200 OK"));
+      assertThat(response, endsWith("\r\n\r\n" + page));
+      assertThat(exchange(server, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n"), containsString("File mode"));
+    }
+  }
+
+  // Cabecera de cada registro: crc, tipo, longitud de la clave y del contenido
+  private static final int HEADER = 4 + 1 + 2 + 4;
+
+  private LogPageStore open() throws IOException {
+    return new LogPageStore(directory, SEGMENT_SIZE, false, 0);
+  }
+
+  private List<Path> segments() throws IOException {
+    final List<Path> segments = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().forEach(segments::add);
+    }
+    return segments;
+  }
+
+  private static String exchange(HybridServer server, String request) throws IOException {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      final OutputStream out = socket.getOutputStream();
+      out.write(request.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+      return readResponse(socket.getInputStream());
+    }
+  }
+
+  private static String content(int i) {
+    return "<html><body>Page " + i + "</body></html>";
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(byte[] bytes) {
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,172 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.performance.KeepAliveTest.readResponse;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.get;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+@Timeout(30L)
+public class MapStorageConcurrencyTest {
+  private static final int THREADS = 8;
+  private static final int OPERATIONS = 500;
+  private static final Pattern CREATED = Pattern.compile("uuid=([0-9a-f-]{36})");
+
+  @Test
+  public void testCopiesCallerMap() throws Exception {
+    final Map<String, String> pages = new HashMap<>();
+    final String uuid = UUID.randomUUID().toString();
+    pages.put(uuid, "<html>Copy</html>");
+    final MAPdaw repository = new MAPdaw(pages);
+
+    pages.clear();
+    assertThat(repository.getPage(page("GET", uuid).build()).getContent(), is(equalTo("<html>Copy</html>")));
+
+    repository.deletePage(page("DELETE", uuid).build());
+    assertThat(repository.exists(uuid), is(false));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testOffHeapStorage(String mode) throws Exception {
+    final Map<String, String> pages = new HashMap<>();
+    final String uuid = UUID.randomUUID().toString();
+    final String page = "<html><body>" + "¡Olá mundo! ".repeat(20_000) + "</body></html>";
+    pages.put(uuid, page);
+
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "4");
+    properties.setProperty("server.mode", mode);
+    properties.setProperty("map.storage", "offheap");
+
+    try (HybridServer server = new HybridServer(pages, properties)) {
+      server.start();
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        final OutputStream out = socket.getOutputStream();
+        out.write(("GET /html?uuid=" + uuid + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        final String response = readResponse(socket.getInputStream());
+        assertThat(response, containsString("Content-Length: " + page.getBytes(StandardCharsets.UTF_8).length + "\r\n"));
+        assertThat(response, endsWith("\r\n\r\n" + page));
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentReadsAndWrites() throws Exception {
+    final Map<String, String> initial = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      initial.put(UUID.randomUUID().toString(), "<html>Initial " + i + "</html>");
+    }
+    final MAPdaw repository = new MAPdaw(initial);
+
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    try {
+      // Listados mientras otros hilos crean y borran páginas
+      final Future<Integer> lister = executor.submit(() -> {
+        start.await();
+        int listings = 0;
+        while (writing.get()) {
+          listing(repository);
+          listings++;
+        }
+        return listings;
+      });
+
+      final List<Future<Integer>> writers = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        final int thread = t;
+        writers.add(executor.submit((Callable<Integer>) () -> {
+          start.await();
+          int kept = 0;
+          for (int i = 0; i < OPERATIONS; i++) {
+            final String content = "<html>Thread " + thread + " page " + i + "</html>";
+            final String uuid = post(repository, content);
+
+            // Cada página creada se lee inmediatamente igual que se escribió
+            assertThat(repository.getPage(page("GET", uuid).build()).getContent(), is(equalTo(content)));
+
+            if (i % 2 == 0) {
+              assertThat(repository.deletePage(page("DELETE", uuid).build()).getStatus().getCode(), is(200));
+              assertThat(repository.getPage(page("GET", uuid).build()).getStatus().getCode(), is(404));
+            } else {
+              kept++;
+            }
+          }
+          return kept;
+        }));
+      }
+
+      start.countDown();
+      int kept = 0;
+      for (Future<Integer> writer : writers) {
+        kept += writer.get();
+      }
+      writing.set(false);
+      lister.get();
+
+      assertThat(count(listing(repository), "<li>"), is(initial.size() + kept));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String post(MAPdaw repository, String content) throws Exception {
+    final HTTPResponse response = repository.postPage(request("POST", "/html").form("html", content).build());
+    final Matcher matcher = CREATED.matcher(response.getContent());
+    assertThat(matcher.find(), is(true));
+    return matcher.group(1);
+  }
+
+  private static String listing(MAPdaw repository) throws Exception {
+    final HTTPResponse response = repository.getPage(get("/html").build());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getContentWriter().writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static int count(String text, String token) {
+    int count = 0;
+    for (int i = text.indexOf(token); i >= 0; i = text.indexOf(token, i + token.length())) {
+      count++;
+    }
+    return count;
+  }
+}
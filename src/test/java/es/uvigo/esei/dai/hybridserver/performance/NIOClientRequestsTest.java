@@ -0,0 +1,123 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.deleteStatus;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.extractUUIDFromText;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.getContent;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.getContentWithType;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.getStatus;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.postContent;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.utils.HybridServerTestCase;
+import es.uvigo.esei.dai.hybridserver.utils.TestUtils;
+
+public class NIOClientRequestsTest extends HybridServerTestCase {
+  private static final String UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String CONTENT = "This is the html page " + UUID + ".";
+
+  @Override
+  protected HybridServer createHybridServer() {
+    final Map<String, String> pages = new HashMap<>();
+    pages.put(UUID, CONTENT);
+
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "2");
+    properties.setProperty("server.mode", "nio");
+    properties.setProperty("server.eventLoops", "1");
+
+    return new HybridServer(pages, properties);
+  }
+
+  @Test
+  public void testGetHtmlPage() throws IOException {
+    assertThat(getContentWithType(url + "html?uuid=" + UUID, "text/html"), containsString(CONTENT));
+  }
+
+  @Test
+  public void testGetHtmlList() throws IOException {
+    assertThat(getContentWithType(url + "html", "text/html"), containsString(UUID));
+  }
+
+  @Test
+  public void testPostAndDelete() throws IOException {
+    final String content = "<html><body>Testing POST</body></html>";
+
+    final String uuid = extractUUIDFromText(postContent(url + "html", singletonMap("html", content)));
+    assertThat(uuid, is(notNullValue()));
+    assertThat(getContent(url + "html?uuid=" + uuid), is(equalTo(content)));
+
+    assertThat(deleteStatus(url + "html?uuid=" + uuid), is(equalTo(200)));
+    assertThat(getStatus(url + "html?uuid=" + uuid), is(equalTo(404)));
+  }
+
+  @Test
+  public void testGetInvalidResource() throws IOException {
+    assertThat(getStatus(url + "xxx?uuid=" + UUID), is(equalTo(400)));
+  }
+
+  @Test
+  public void testRequestSplitInFragments() throws Exception {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      final OutputStream out = socket.getOutputStream();
+      out.write(("GET /html?uuid=" + UUID + " HTTP/1.1\r\nHo").getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      Thread.sleep(100);
+      out.write("st: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+
+      final String response = TestUtils.readToString(socket.getInputStream());
+      assertThat(response, startsWith("HTTP/1.1 200 OK"));
+      assertThat(response, containsString(CONTENT));
+    }
+  }
+
+  @Test
+  public void testIdleConnectionsDoNotBlockWorkers() throws IOException {
+    // Muchas más conexiones abiertas que hilos en el pool: ninguna ocupa un trabajador
+    final List<Socket> idle = new ArrayList<>();
+    try {
+      for (int i = 0; i < 200; i++) {
+        idle.add(new Socket("localhost", server.getPort()));
+      }
+
+      for (int i = 0; i < 10; i++) {
+        assertThat(getContentWithType(url + "html?uuid=" + UUID, "text/html"), containsString(CONTENT));
+      }
+    } finally {
+      for (Socket socket : idle) {
+        socket.close();
+      }
+    }
+  }
+
+  @Test
+  public void testMalformedRequest() throws IOException {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.getOutputStream().write("GET\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      final InputStream in = socket.getInputStream();
+
+      assertThat(TestUtils.readToString(in), startsWith("HTTP/1.1 400 Bad Request"));
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.CountingBloomFilter;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class NegativeLookupFilterTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @Test
+  public void testNoFalseNegativesAndBoundedFalsePositives() {
+    final CountingBloomFilter filter = new CountingBloomFilter(100_000, 0.01);
+    final List<String> keys = new ArrayList<>();
+    for (int i = 0; i < 100_000; i++) {
+      final String key = UUID.randomUUID().toString();
+      keys.add(key);
+      filter.add(key);
+    }
+    for (String key : keys) {
+      assertThat(filter.mightContain(key), is(true));
+    }
+
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (filter.mightContain(UUID.randomUUID().toString())) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives, is(lessThan(1_500)));
+    assertThat(filter.size(), is(100_000L));
+  }
+
+  @Test
+  public void testRemovedKeysDisappearWithoutAffectingOthers() {
+    final CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+    final List<String> kept = new ArrayList<>();
+    final List<String> removed = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      final String key = UUID.randomUUID().toString();
+      filter.add(key);
+      (i % 2 == 0 ? kept : removed).add(key);
+    }
+    for (String key : removed) {
+      filter.remove(key);
+    }
+
+    for (String key : kept) {
+      assertThat(filter.mightContain(key), is(true));
+    }
+    int stillThere = 0;
+    for (String key : removed) {
+      if (filter.mightContain(key)) {
+        stillThere++;
+      }
+    }
+    assertThat(stillThere, is(lessThan(150)));
+    assertThat(filter.size(), is(5_000L));
+  }
+
+  @Test
+  public void testUnknownPagesSkipTheDatabase() throws Exception {
+    try (DBdaw repository = repository()) {
+      for (String uuid : storedUuids()) {
+        assertThat(get(repository, uuid).getStatus().getCode(), is(200));
+        assertThat(repository.exists(uuid), is(true));
+      }
+      assertThat(repository.getAvoidedLookups(), is(0L));
+
+      for (int i = 0; i < 100; i++) {
+        assertThat(get(repository, UUID.randomUUID().toString()).getStatus().getCode(), is(404));
+      }
+      // Con un 1 % de falsos positivos, casi ninguna llega a la base de datos
+      assertThat(repository.getAvoidedLookups(), is(greaterThan(90L)));
+    }
+  }
+
+  @Test
+  public void testFilterFollowsPostsAndDeletes() throws Exception {
+    try (DBdaw repository = repository()) {
+      final String uuid = post(repository, "<html>Filtered</html>");
+      assertThat(get(repository, uuid).getStatus().getCode(), is(200));
+
+      assertThat(delete(repository, uuid).getStatus().getCode(), is(200));
+      final long avoided = repository.getAvoidedLookups();
+      assertThat(get(repository, uuid).getStatus().getCode(), is(404));
+      assertThat(repository.getAvoidedLookups(), is(avoided + 1));
+    }
+  }
+
+  @Test
+  public void testFilterGrowsWithoutLosingPages() throws Exception {
+    try (DBdaw repository = repository()) {
+      final int capacity = repository.getFilterCapacity();
+      final List<String> posted = new ArrayList<>();
+      while (posted.size() <= capacity) {
+        posted.add(post(repository, "<html>Page " + posted.size() + "</html>"));
+      }
+
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (repository.getFilterCapacity() == capacity && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(repository.getFilterCapacity(), is(2 * capacity));
+      for (String uuid : posted) {
+        assertThat(repository.exists(uuid), is(true));
+      }
+      for (String uuid : storedUuids()) {
+        assertThat(repository.exists(uuid), is(true));
+      }
+    }
+
+    // El hilo que lo rehace se para al cerrar el repositorio
+    assertThat(Thread.getAllStackTraces().keySet().stream()
+      .anyMatch(thread -> thread.getName().equals("HybridServer-FilterRebuild")), is(false));
+  }
+
+  private DBdaw repository() {
+    return new DBdaw(new ConnectionPool(getConnectionUrl(), getUsername(), getPassword()),
+      DBdaw.DEFAULT_LISTING_MAX_AGE_MILLIS, null, 0.01);
+  }
+
+  private List<String> storedUuids() throws Exception {
+    final List<String> uuids = new ArrayList<>();
+    try (Statement statement = getConnection().createStatement();
+        ResultSet rs = statement.executeQuery("SELECT uuid FROM HTML")) {
+      while (rs.next()) {
+        uuids.add(rs.getString("uuid"));
+      }
+    }
+    assertThat(uuids.isEmpty(), is(false));
+    return uuids;
+  }
+
+  private static String post(DBdaw repository, String html) throws Exception {
+    final HTTPResponse created = repository.postPage(request("POST", "/html").form("html", html).build());
+    assertThat(created.getStatus().getCode(), is(200));
+    final Matcher matcher = Pattern.compile("uuid=([0-9a-f-]{36})").matcher(created.getContent());
+    assertThat(matcher.find(), is(true));
+    return matcher.group(1);
+  }
+
+  private static HTTPResponse get(DBdaw repository, String uuid) throws Exception {
+    return repository.getPage(page("GET", uuid).build());
+  }
+
+  private static HTTPResponse delete(DBdaw repository, String uuid) throws Exception {
+    return repository.deletePage(page("DELETE", uuid).build());
+  }
+}
@@ -0,0 +1,136 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.CachingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+public class PageCacheTest {
+  private static final int PAGE_SIZE = 1000;
+
+  private Map<String, String> pages;
+  private List<String> uuids;
+  private int loads;
+
+  @BeforeEach
+  public void setUp() {
+    this.pages = new HashMap<>();
+    this.uuids = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      final String uuid = UUID.randomUUID().toString();
+      final String body = "<html><body>" + i + "</body></html>";
+      pages.put(uuid, body + " ".repeat(PAGE_SIZE - body.length()));
+      uuids.add(uuid);
+    }
+    this.loads = 0;
+  }
+
+  private CachingHtmlRepository repository(long cacheSize) {
+    // Cuenta las lecturas que llegan al repositorio
+    return new CachingHtmlRepository(new MAPdaw(pages) {
+      @Override
+      public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        loads++;
+        return super.getPage(req);
+      }
+    }, cacheSize);
+  }
+
+  @Test
+  public void testReadThrough() throws Exception {
+    final CachingHtmlRepository repository = repository(1024 * 1024);
+    final String uuid = uuids.get(0);
+
+    for (int i = 0; i < 5; i++) {
+      final HTTPResponse response = get(repository, uuid);
+      assertThat(response.getStatus().getCode(), is(200));
+      assertThat(response.getContent(), is(equalTo(pages.get(uuid))));
+      assertThat(response.getParameters().get("Content-Type"), is(equalTo("text/html")));
+    }
+
+    assertThat(loads, is(1));
+    assertThat(repository.getCacheMisses(), is(1L));
+    assertThat(repository.getCacheHits(), is(4L));
+    assertThat(repository.getCacheBytes(), is((long) PAGE_SIZE));
+  }
+
+  @Test
+  public void testMissingPagesAreNotCached() throws Exception {
+    final CachingHtmlRepository repository = repository(1024 * 1024);
+
+    get(repository, "missing");
+    get(repository, "missing");
+
+    assertThat(loads, is(2));
+    assertThat(repository.getCacheSize(), is(0));
+  }
+
+  @Test
+  public void testDeleteInvalidates() throws Exception {
+    final CachingHtmlRepository repository = repository(1024 * 1024);
+    final String uuid = uuids.get(0);
+    get(repository, uuid);
+    assertThat(repository.exists(uuid), is(true));
+
+    repository.deletePage(page("DELETE", uuid).build());
+
+    assertThat(repository.getCacheSize(), is(0));
+    assertThat(repository.exists(uuid), is(false));
+    assertThat(get(repository, uuid).getStatus().getCode(), is(404));
+  }
+
+  @Test
+  public void testBoundedByBytes() throws Exception {
+    final CachingHtmlRepository repository = repository(20 * PAGE_SIZE);
+
+    for (String uuid : uuids) {
+      get(repository, uuid);
+      assertThat(repository.getCacheBytes(), is(lessThanOrEqualTo(20L * PAGE_SIZE)));
+    }
+    assertThat(repository.getCacheSize(), is(20));
+    assertThat(repository.getCacheEvictions() + repository.getCacheRejections(), is(greaterThan(0L)));
+  }
+
+  @Test
+  public void testHotSetSurvivesScan() throws Exception {
+    final CachingHtmlRepository repository = repository(20 * PAGE_SIZE);
+    final List<String> hot = uuids.subList(0, 10);
+    for (int round = 0; round < 5; round++) {
+      for (String uuid : hot) {
+        get(repository, uuid);
+      }
+    }
+
+    // Un recorrido de páginas que se piden una sola vez
+    for (String uuid : uuids.subList(10, uuids.size())) {
+      get(repository, uuid);
+    }
+
+    final int before = loads;
+    for (String uuid : hot) {
+      get(repository, uuid);
+    }
+    assertThat(loads, is(before));
+  }
+
+  private static HTTPResponse get(CachingHtmlRepository repository, String uuid) throws Exception {
+    return repository.getPage(page("GET", uuid).build());
+  }
+}
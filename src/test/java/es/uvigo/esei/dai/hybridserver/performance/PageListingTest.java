@@ -0,0 +1,158 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.get;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.PageListing;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+public class PageListingTest {
+  private static final String HEADER = "<html><body>";
+  private static final String EMPTY = "<p>Empty</p>";
+  private static final String FOOTER = "</body></html>";
+  private static final String HREF = "/html?uuid=";
+
+  @Test
+  public void testEmptyListing() throws IOException {
+    final PageListing listing = listing();
+    assertThat(text(listing), is(equalTo(HEADER + EMPTY + FOOTER)));
+
+    listing.add("a");
+    listing.remove("a");
+    assertThat(text(listing), is(equalTo(HEADER + EMPTY + FOOTER)));
+  }
+
+  @Test
+  public void testKeysAreSorted() throws IOException {
+    final PageListing listing = listing();
+    final List<String> keys = Arrays.asList("b", "a", "ab", "", "Z", "ñ", "~", "\u007f", "ÿ1", "é0", "z9", "9z");
+    for (String key : keys) {
+      listing.add(key);
+    }
+    assertThat(text(listing), is(equalTo(expected(new TreeSet<>(keys)))));
+  }
+
+  @Test
+  public void testIncrementalChangesMatchFullRendering() throws IOException {
+    final Random random = new Random(42);
+    final PageListing listing = listing();
+    final TreeSet<String> keys = new TreeSet<>();
+    for (int i = 0; i < 2000; i++) {
+      keys.add(UUID.randomUUID().toString());
+    }
+    listing.addAll(keys.iterator());
+    assertThat(listing.size(), is(keys.size()));
+
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 50; i++) {
+        if (random.nextBoolean() && !keys.isEmpty()) {
+          final String removed = keys.first();
+          keys.remove(removed);
+          listing.remove(removed);
+        } else {
+          final String added = UUID.randomUUID().toString();
+          keys.add(added);
+          listing.add(added);
+        }
+      }
+      // Borrar algo que no está no cambia nada
+      listing.remove(UUID.randomUUID().toString());
+
+      assertThat(listing.size(), is(keys.size()));
+      assertThat(text(listing), is(equalTo(expected(keys))));
+    }
+  }
+
+  @Test
+  public void testAddAllMergesAndSkipsDuplicates() throws IOException {
+    final PageListing listing = listing();
+    listing.add("a1");
+    listing.addAll(Arrays.asList("a2", "a1", "b1", "a2").iterator());
+
+    assertThat(listing.size(), is(3));
+    assertThat(text(listing), is(equalTo(expected(new TreeSet<>(Arrays.asList("a1", "a2", "b1"))))));
+  }
+
+  @Test
+  public void testVersionChangesOnlyWithChanges() {
+    final PageListing listing = listing();
+    final long initial = listing.getVersion();
+
+    listing.add("a");
+    final long added = listing.getVersion();
+    assertThat(added, is(not(equalTo(initial))));
+
+    listing.add("a");
+    listing.remove("b");
+    assertThat(listing.getVersion(), is(equalTo(added)));
+
+    listing.remove("a");
+    assertThat(listing.getVersion(), is(not(equalTo(added))));
+  }
+
+  @Test
+  public void testMapListingFollowsPostsAndDeletes() throws Exception {
+    final String initial = UUID.randomUUID().toString();
+    final MAPdaw repository = new MAPdaw(Collections.singletonMap(initial, "<html>Initial</html>"));
+    assertThat(listing(repository), containsString("<a href=\"/html?uuid=" + initial + "\">"));
+
+    final HTTPResponse created = repository.postPage(request("POST", "/html").form("html", "<html>Posted</html>").build());
+    final Matcher matcher = Pattern.compile("uuid=([0-9a-f-]{36})").matcher(created.getContent());
+    assertThat(matcher.find(), is(true));
+    final String posted = matcher.group(1);
+    assertThat(listing(repository), containsString("<a href=\"/html?uuid=" + posted + "\">"));
+
+    repository.deletePage(page("DELETE", initial).build());
+    assertThat(listing(repository), not(containsString(initial)));
+    assertThat(listing(repository), containsString(posted));
+  }
+
+  private static PageListing listing() {
+    return new PageListing(HEADER, EMPTY, FOOTER, HREF);
+  }
+
+  private static String expected(TreeSet<String> keys) {
+    if (keys.isEmpty()) {
+      return HEADER + EMPTY + FOOTER;
+    }
+    final StringBuilder html = new StringBuilder(HEADER).append("<ul>");
+    for (String key : keys) {
+      html.append("<li><a href=\"").append(HREF).append(key).append("\">").append(key).append("</a></li>");
+    }
+    return html.append("</ul>").append(FOOTER).toString();
+  }
+
+  private static String text(PageListing listing) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    listing.writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  private static String listing(MAPdaw repository) throws Exception {
+    final HTTPResponse response = repository.getPage(get("/html").build());
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    response.getContentWriter().writeTo(out);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+}
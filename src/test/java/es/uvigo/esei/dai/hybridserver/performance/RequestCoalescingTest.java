@@ -0,0 +1,215 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.request;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.CoalescingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+
+public class RequestCoalescingTest {
+  private static final int CLIENTS = 20;
+
+  private Map<String, String> pages;
+  private String uuid;
+  private ExecutorService clients;
+
+  // Lecturas que llegan al repositorio, que esperan a que se abra la puerta
+  private AtomicInteger loads;
+  private volatile CountDownLatch gate;
+  private volatile boolean failing;
+
+  @BeforeEach
+  public void setUp() {
+    pages = new HashMap<>();
+    uuid = UUID.randomUUID().toString();
+    pages.put(uuid, "<html>Popular</html>");
+    pages.put(UUID.randomUUID().toString(), "<html>Other</html>");
+    clients = Executors.newFixedThreadPool(CLIENTS);
+    loads = new AtomicInteger();
+    gate = new CountDownLatch(0);
+    failing = false;
+  }
+
+  @AfterEach
+  public void tearDown() throws InterruptedException {
+    clients.shutdownNow();
+    clients.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  private CoalescingHtmlRepository repository() {
+    return new CoalescingHtmlRepository(new MAPdaw(pages) {
+      @Override
+      public HTTPResponse getPage(HTTPRequest req) throws IOException {
+        loads.incrementAndGet();
+        try {
+          gate.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        if (failing) {
+          throw new IOException("Backend down");
+        }
+        return super.getPage(req);
+      }
+    });
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneRead() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+    gate = new CountDownLatch(1);
+
+    final List<Future<HTTPResponse>> responses = getConcurrently(repository, uuid);
+    awaitWaiters(repository, CLIENTS - 1);
+    gate.countDown();
+
+    final List<HTTPResponse> received = new ArrayList<>();
+    for (Future<HTTPResponse> response : responses) {
+      received.add(response.get(10, TimeUnit.SECONDS));
+    }
+    for (HTTPResponse response : received) {
+      assertThat(response.getStatus().getCode(), is(200));
+      assertThat(response.getContent(), is(equalTo("<html>Popular</html>")));
+    }
+    assertThat(loads.get(), is(1));
+    assertThat(repository.getBackendCalls(), is(1L));
+    assertThat(repository.getCoalescedRequests(), is((long) CLIENTS - 1));
+
+    // Cada uno tiene su respuesta: cambiar las cabeceras de una no afecta a las demás
+    received.get(0).putParameter("Connection", "close");
+    assertThat(received.get(1), is(not(sameInstance(received.get(0)))));
+    assertThat(received.get(1).getParameters().get("Connection"), is(nullValue()));
+  }
+
+  @Test
+  public void testFinishedReadsAreNotReused() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(get(repository, uuid).getContent(), is(equalTo("<html>Popular</html>")));
+    }
+    assertThat(loads.get(), is(3));
+    assertThat(repository.getCoalescedRequests(), is(0L));
+  }
+
+  @Test
+  public void testDifferentPagesAreNotCoalesced() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+    gate = new CountDownLatch(1);
+
+    final List<Future<HTTPResponse>> responses = new ArrayList<>();
+    for (String page : pages.keySet()) {
+      responses.add(clients.submit(() -> get(repository, page)));
+    }
+    while (loads.get() < pages.size()) {
+      Thread.sleep(1);
+    }
+    gate.countDown();
+    for (Future<HTTPResponse> response : responses) {
+      assertThat(response.get(10, TimeUnit.SECONDS).getStatus().getCode(), is(200));
+    }
+    assertThat(repository.getBackendCalls(), is((long) pages.size()));
+    assertThat(repository.getCoalescedRequests(), is(0L));
+  }
+
+  @Test
+  public void testFailureReachesEveryWaiter() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+    gate = new CountDownLatch(1);
+    failing = true;
+
+    final List<Future<HTTPResponse>> responses = getConcurrently(repository, uuid);
+    awaitWaiters(repository, CLIENTS - 1);
+    gate.countDown();
+
+    for (Future<HTTPResponse> response : responses) {
+      final ExecutionException e = assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+      assertThat(e.getCause() instanceof IOException, is(true));
+    }
+    assertThat(loads.get(), is(1));
+
+    // El error no se queda guardado: la siguiente vuelve a intentarlo
+    failing = false;
+    assertThat(get(repository, uuid).getStatus().getCode(), is(200));
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void testReadsAfterDeleteDoNotJoinOlderRead() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+    gate = new CountDownLatch(1);
+
+    final Future<HTTPResponse> before = clients.submit(() -> get(repository, uuid));
+    while (loads.get() < 1) {
+      Thread.sleep(1);
+    }
+    assertThat(repository.deletePage(page("DELETE", uuid).build()).getStatus().getCode(), is(200));
+
+    // No espera a la lectura de antes del borrado: hace la suya y ya no la encuentra
+    final Future<HTTPResponse> after = clients.submit(() -> get(repository, uuid));
+    while (loads.get() < 2) {
+      Thread.sleep(1);
+    }
+    gate.countDown();
+    before.get(10, TimeUnit.SECONDS);
+    assertThat(after.get(10, TimeUnit.SECONDS).getStatus().getCode(), is(404));
+    assertThat(repository.getCoalescedRequests(), is(0L));
+  }
+
+  @Test
+  public void testListingIsNotCoalesced() throws Exception {
+    final CoalescingHtmlRepository repository = repository();
+
+    final HTTPResponse listing = repository.getPage(request("GET", "/html").build());
+    assertThat(listing.getStatus().getCode(), is(200));
+    assertThat(repository.getBackendCalls(), is(0L));
+  }
+
+  private List<Future<HTTPResponse>> getConcurrently(CoalescingHtmlRepository repository, String page) {
+    final List<Future<HTTPResponse>> responses = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      responses.add(clients.submit(() -> get(repository, page)));
+    }
+    return responses;
+  }
+
+  // Hasta que todos menos el que lee están esperando su resultado
+  private static void awaitWaiters(CoalescingHtmlRepository repository, long waiters) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (repository.getCoalescedRequests() < waiters && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(repository.getCoalescedRequests(), is(waiters));
+  }
+
+  private static HTTPResponse get(CoalescingHtmlRepository repository, String page) throws Exception {
+    return repository.getPage(page("GET", page).build());
+  }
+}
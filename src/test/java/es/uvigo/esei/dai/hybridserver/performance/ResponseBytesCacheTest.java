@@ -0,0 +1,143 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.get;
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import es.uvigo.esei.dai.hybridserver.CompressingHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.HtmlRepository;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.ResponseBytesCache;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequestMethod;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponseEncoder;
+import es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder;
+
+public class ResponseBytesCacheTest {
+  private static final byte[] CONNECTION = "Connection: keep-alive\r\nKeep-Alive: timeout=5, max=98\r\n"
+    .getBytes(StandardCharsets.US_ASCII);
+
+  private String uuid;
+  private HtmlRepository repository;
+  private ResponseBytesCache cache;
+
+  @BeforeEach
+  public void setUp() {
+    final Map<String, String> pages = new HashMap<>();
+    uuid = UUID.randomUUID().toString();
+    pages.put(uuid, "<html><body>" + "Olá mundo! ".repeat(200) + "</body></html>");
+    repository = new CompressingHtmlRepository(new MAPdaw(pages));
+    cache = new ResponseBytesCache(1024 * 1024);
+  }
+
+  @Test
+  public void testHitIsTheEncodedResponse() throws Exception {
+    final HTTPResponse response = load(page("GET", uuid));
+    final byte[] expected = encode(response);
+
+    final byte[] cached = cache.get(page("GET", uuid).build());
+    assertThat(cached, is(equalTo(expected)));
+    assertThat(cache.getHits(), is(1L));
+
+    // Las cabeceras de la conexión van justo después de la línea de estado
+    final String head = "HTTP/1.1 200 OK\r\n" + new String(CONNECTION, StandardCharsets.US_ASCII);
+    final ByteArrayOutputStream small = new ByteArrayOutputStream();
+    ResponseBytesCache.write(cached, CONNECTION, small, new byte[8 * 1024]);
+    assertThat(small.toString(StandardCharsets.UTF_8), startsWith(head));
+    assertThat(small.size(), is(cached.length + CONNECTION.length));
+
+    // Con un buffer pequeño se escribe por partes, pero lo enviado es lo mismo
+    final ByteArrayOutputStream split = new ByteArrayOutputStream();
+    ResponseBytesCache.write(cached, CONNECTION, split, new byte[64]);
+    assertThat(split.toByteArray(), is(equalTo(small.toByteArray())));
+
+    final ByteArrayOutputStream gathered = new ByteArrayOutputStream();
+    for (ByteBuffer buffer : ResponseBytesCache.buffers(cached, CONNECTION)) {
+      gathered.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+    assertThat(gathered.toByteArray(), is(equalTo(small.toByteArray())));
+  }
+
+  @Test
+  public void testEncodingsAreSeparateVariants() throws Exception {
+    final HTTPRequestBuilder identity = page("GET", uuid);
+    final HTTPRequestBuilder gzip = page("GET", uuid).header("Accept-Encoding", "gzip");
+    load(identity);
+    assertThat(cache.get(gzip.build()), is(nullValue()));
+
+    load(gzip);
+    final String compressed = new String(cache.get(gzip.build()), StandardCharsets.ISO_8859_1);
+    assertThat(compressed, containsString("Content-Encoding: gzip\r\n"));
+    assertThat(new String(cache.get(identity.build()), StandardCharsets.ISO_8859_1),
+      not(containsString("Content-Encoding")));
+  }
+
+  @Test
+  public void testDeleteDropsEveryVariant() throws Exception {
+    final HTTPRequestBuilder identity = page("GET", uuid);
+    final HTTPRequestBuilder gzip = page("GET", uuid).header("Accept-Encoding", "gzip");
+    load(identity);
+    load(gzip);
+    assertThat(cache.size(), is(2));
+
+    load(page("DELETE", uuid));
+    assertThat(cache.get(identity.build()), is(nullValue()));
+    assertThat(cache.get(gzip.build()), is(nullValue()));
+    assertThat(cache.size(), is(0));
+  }
+
+  @Test
+  public void testReadsFromBeforeADeleteAreNotStored() throws Exception {
+    final HTTPRequest get = page("GET", uuid).build();
+    final long generation = cache.generation();
+    final HTTPResponse before = repository.getPage(get);
+
+    load(page("DELETE", uuid));
+    cache.put(get, before, generation);
+    assertThat(cache.get(get), is(nullValue()));
+  }
+
+  @Test
+  public void testOnlyPlainPageReadsAreStored() throws Exception {
+    load(page("GET", uuid).header("If-None-Match", "\"" + uuid + "\""));
+    load(page("GET", uuid).version("HTTP/1.0"));
+    load(page("GET", UUID.randomUUID().toString()));
+    load(get("/html?limit=10"));
+    load(get("/"));
+    assertThat(cache.size(), is(0));
+
+    assertThat(new ResponseBytesCache(0).get(page("GET", uuid).build()), is(nullValue()));
+  }
+
+  // Como el servidor: la respuesta del repositorio se guarda antes de añadirle las cabeceras de la conexión
+  private HTTPResponse load(HTTPRequestBuilder request) throws Exception {
+    final HTTPRequest req = request.build();
+    final long generation = cache.generation();
+    final HTTPResponse res = req.getMethod() == HTTPRequestMethod.DELETE ? repository.deletePage(req) : repository.getPage(req);
+    cache.put(req, res, generation);
+    return res;
+  }
+
+  private static byte[] encode(HTTPResponse response) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    HTTPResponseEncoder.write(response, out);
+    return out.toByteArray();
+  }
+}
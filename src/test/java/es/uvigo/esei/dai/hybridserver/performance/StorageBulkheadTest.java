@@ -0,0 +1,235 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static es.uvigo.esei.dai.hybridserver.utils.HTTPRequestBuilder.page;
+import static es.uvigo.esei.dai.hybridserver.utils.TestUtils.getStatus;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dbunit.dataset.IDataSet;
+import org.dbunit.dataset.xml.FlatXmlDataSetBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import es.uvigo.esei.dai.hybridserver.AsyncHtmlRepository;
+import es.uvigo.esei.dai.hybridserver.ConnectionPool;
+import es.uvigo.esei.dai.hybridserver.DBdaw;
+import es.uvigo.esei.dai.hybridserver.HybridServer;
+import es.uvigo.esei.dai.hybridserver.MAPdaw;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+import es.uvigo.esei.dai.hybridserver.http.HTTPResponse;
+import es.uvigo.esei.dai.hybridserver.utils.JdbcTestCase;
+
+public class StorageBulkheadTest extends JdbcTestCase {
+  // Las del dataset de la base de datos de step3
+  private static final String DATASET = "/es/uvigo/esei/dai/hybridserver/step3/";
+  private static final String SLOW_UUID = "6df1047e-cf19-4a83-8cf3-38f5e53f7725";
+  private static final String OTHER_UUID = "a35b6c5e-22d6-4707-98b4-462482e26c9e";
+  private static final String LARGE_UUID = "0b1f8e2c-6a1d-4c55-9d3e-7f2a4b8c9e10";
+
+  private ExecutorService clients;
+
+  @Override
+  protected IDataSet getDataSet() throws Exception {
+    return new FlatXmlDataSetBuilder()
+      .setMetaDataSetFromDtd(getClass().getResourceAsStream(DATASET + "dataset.dtd"))
+      .setCaseSensitiveTableNames(false)
+      .setColumnSensing(true).build(getClass().getResourceAsStream(DATASET + "dataset.xml"));
+  }
+
+  @BeforeEach
+  public void startClients() {
+    clients = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void stopClients() throws InterruptedException {
+    clients.shutdownNow();
+    clients.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testQueuedRequestsExpire() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger calls = new AtomicInteger();
+    final ThreadPoolExecutor storage = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+    try {
+      final AsyncHtmlRepository repository = AsyncHtmlRepository.of(new MAPdaw(Map.of(SLOW_UUID, "<html>Slow</html>")) {
+        @Override
+        public HTTPResponse getPage(HTTPRequest req) throws IOException {
+          calls.incrementAndGet();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          return super.getPage(req);
+        }
+
+        @Override
+        public boolean mayBlock(HTTPRequest req) {
+          return true;
+        }
+      }, storage, 100);
+
+      final CompletableFuture<HTTPResponse> running = repository.getPageAsync(page("GET", SLOW_UUID).build());
+      final CompletableFuture<HTTPResponse> queued = repository.getPageAsync(page("GET", SLOW_UUID).build());
+      // La cola (de 1) está llena: falla sin esperar
+      final CompletableFuture<HTTPResponse> rejected = repository.getPageAsync(page("GET", SLOW_UUID).build());
+      assertThat(rejected.isCompletedExceptionally(), is(true));
+
+      // La de la cola caduca aunque el hilo siga ocupado, y deja su sitio libre
+      final ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+      assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+      assertThat(storage.getQueue().size(), is(0));
+
+      release.countDown();
+      assertThat(running.get(5, TimeUnit.SECONDS).getStatus().getCode(), is(200));
+      assertThat(calls.get(), is(1));
+    } finally {
+      storage.shutdownNow();
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "nio" })
+  public void testFullBulkheadFailsFastAndSparesOtherRequests(String mode) throws Exception {
+    try (HybridServer server = startServer(mode); Connection lock = lockPages()) {
+      final String url = String.format("http://localhost:%d/", server.getPort());
+
+      // Ocupa el único hilo de la base de datos con una consulta que espera al bloqueo
+      final Future<Integer> slow = clients.submit(() -> getStatus(url + "html?uuid=" + SLOW_UUID));
+      awaitBlockedQueries(1);
+
+      long start = System.nanoTime();
+      final HttpURLConnection other = (HttpURLConnection) new URL(url + "html?uuid=" + OTHER_UUID).openConnection();
+      assertThat(other.getResponseCode(), is(503));
+      assertThat(other.getHeaderField("Retry-After"), is("1"));
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(2_000L)));
+
+      // Lo que no usa la base de datos no espera
+      start = System.nanoTime();
+      assertThat(getStatus(url), is(200));
+      assertThat(getStatus(url + "xml"), is(400));
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), is(lessThan(2_000L)));
+
+      try (Statement statement = lock.createStatement()) {
+        statement.execute("UNLOCK TABLES");
+      }
+      assertThat(slow.get(10, TimeUnit.SECONDS), is(200));
+    }
+  }
+
+  @Test
+  public void testLargePagesAreReadOnTheStorageExecutor() throws Exception {
+    final String content = "<html><body>" + "¡Olá mundo! ".repeat(20_000) + "</body></html>";
+    try (Connection connection = DriverManager.getConnection(getConnectionUrl(), getUsername(), getPassword());
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO HTML (uuid, content) VALUES (?, ?)")) {
+      statement.setString(1, LARGE_UUID);
+      statement.setString(2, content);
+      statement.executeUpdate();
+    }
+
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger submitted = new AtomicInteger();
+    final ThreadPoolExecutor storage = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+    try (DBdaw repository = new DBdaw(new ConnectionPool(getConnectionUrl(), getUsername(), getPassword()), 0, null, 0,
+        task -> {
+          submitted.incrementAndGet();
+          storage.execute(task);
+        })) {
+      final HTTPResponse response = repository.getPage(page("GET", LARGE_UUID).build());
+      assertThat(response.isChunked(), is(true));
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      response.getContentWriter().writeTo(out);
+      assertThat(out.toString(StandardCharsets.UTF_8), is(content));
+      assertThat(submitted.get(), is(1));
+
+      // Con el executor ocupado, el envío falla enseguida en lugar de abrir otra consulta
+      storage.execute(() -> {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      final HTTPResponse blocked = repository.getPage(page("GET", LARGE_UUID).build());
+      final IOException e = assertThrows(IOException.class,
+        () -> blocked.getContentWriter().writeTo(new ByteArrayOutputStream()));
+      assertThat(e.getCause() instanceof RejectedExecutionException, is(true));
+    } finally {
+      release.countDown();
+      storage.shutdownNow();
+    }
+  }
+
+  private HybridServer startServer(String mode) {
+    final Properties properties = new Properties();
+    properties.setProperty("port", "8888");
+    properties.setProperty("numClients", "8");
+    properties.setProperty("server.mode", mode);
+    properties.setProperty("db.url", getConnectionUrl());
+    properties.setProperty("db.user", getUsername());
+    properties.setProperty("db.password", getPassword());
+    properties.setProperty("db.executor.threads", "1");
+    properties.setProperty("db.executor.queue", "0");
+
+    final HybridServer server = new HybridServer(properties);
+    server.start();
+    return server;
+  }
+
+  // Mientras esté abierta, las consultas a HTML esperan
+  private Connection lockPages() throws Exception {
+    final Connection connection = DriverManager.getConnection(getConnectionUrl(), getUsername(), getPassword());
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("LOCK TABLES HTML WRITE");
+    }
+    return connection;
+  }
+
+  private void awaitBlockedQueries(int expected) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int blocked = 0;
+    while (blocked < expected && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+      try (Statement statement = getConnection().createStatement();
+          ResultSet rs = statement.executeQuery(
+            "SELECT COUNT(*) FROM information_schema.PROCESSLIST WHERE STATE LIKE '%lock%' AND INFO LIKE 'SELECT%'")) {
+        rs.next();
+        blocked = rs.getInt(1);
+      }
+    }
+    assertThat(blocked, is(expected));
+  }
+}
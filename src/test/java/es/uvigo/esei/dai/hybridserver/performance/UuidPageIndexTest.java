@@ -0,0 +1,205 @@
+package es.uvigo.esei.dai.hybridserver.performance;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import es.uvigo.esei.dai.hybridserver.UuidPageIndex;
+
+@Timeout(30L)
+public class UuidPageIndexTest {
+  @Test
+  public void testPutGetRemove() {
+    final UuidPageIndex index = new UuidPageIndex();
+    final String uuid = UUID.randomUUID().toString();
+
+    assertThat(index.putIfAbsent(uuid, bytes("<html>Olá</html>")), is(true));
+    assertThat(index.putIfAbsent(uuid, bytes("<html>Other</html>")), is(false));
+    assertThat(text(index.get(uuid)), is(equalTo("<html>Olá</html>")));
+    assertThat(index.contains(uuid), is(true));
+    assertThat(index.size(), is(1));
+
+    assertThat(index.remove(uuid), is(true));
+    assertThat(index.remove(uuid), is(false));
+    assertThat(index.get(uuid), is(nullValue()));
+    assertThat(index.contains(uuid), is(false));
+    assertThat(index.size(), is(0));
+
+    assertThat(index.putIfAbsent(uuid, bytes("<html>Again</html>")), is(true));
+    assertThat(text(index.get(uuid)), is(equalTo("<html>Again</html>")));
+  }
+
+  @Test
+  public void testNonCanonicalKeys() {
+    final UuidPageIndex index = new UuidPageIndex();
+    final String uuid = UUID.randomUUID().toString();
+    index.putIfAbsent(uuid, bytes("lower"));
+    index.putIfAbsent(uuid.toUpperCase(), bytes("upper"));
+    index.putIfAbsent("not-a-uuid", bytes("other"));
+
+    assertThat(text(index.get(uuid)), is(equalTo("lower")));
+    assertThat(text(index.get(uuid.toUpperCase())), is(equalTo("upper")));
+    assertThat(text(index.get("not-a-uuid")), is(equalTo("other")));
+    assertThat(index.size(), is(3));
+    assertThat(keys(index), is(equalTo(Set.of(uuid, uuid.toUpperCase(), "not-a-uuid"))));
+  }
+
+  @Test
+  public void testGrowsAndCompacts() {
+    final UuidPageIndex index = new UuidPageIndex();
+    final List<String> uuids = new ArrayList<>();
+    for (int i = 0; i < 50_000; i++) {
+      final String uuid = UUID.randomUUID().toString();
+      uuids.add(uuid);
+      assertThat(index.putIfAbsent(uuid, bytes(content(i))), is(true));
+    }
+    // Una página mayor que un segmento
+    final String large = UUID.randomUUID().toString();
+    index.putIfAbsent(large, bytes("x".repeat(3 << 20)));
+
+    // Borrar la mayoría fuerza la compactación de los segmentos
+    for (int i = 0; i < uuids.size(); i++) {
+      if (i % 10 != 0) {
+        assertThat(index.remove(uuids.get(i)), is(true));
+      }
+    }
+
+    assertThat(index.size(), is(5001));
+    for (int i = 0; i < uuids.size(); i++) {
+      if (i % 10 == 0) {
+        assertThat(text(index.get(uuids.get(i))), is(equalTo(content(i))));
+      } else {
+        assertThat(index.get(uuids.get(i)), is(nullValue()));
+      }
+    }
+    assertThat(index.get(large).length, is(3 << 20));
+    assertThat(keys(index).size(), is(5001));
+  }
+
+  @Test
+  public void testReadsWhileWriting() throws Exception {
+    final UuidPageIndex index = new UuidPageIndex();
+    final List<String> stable = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      final String uuid = UUID.randomUUID().toString();
+      stable.add(uuid);
+      index.putIfAbsent(uuid, bytes(content(i)));
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final AtomicBoolean writing = new AtomicBoolean(true);
+    try {
+      final List<Future<?>> readers = new ArrayList<>();
+      for (int r = 0; r < 3; r++) {
+        readers.add(executor.submit(() -> {
+          while (writing.get()) {
+            for (int i = 0; i < stable.size(); i++) {
+              assertThat(text(index.get(stable.get(i))), is(equalTo(content(i))));
+            }
+          }
+          return null;
+        }));
+      }
+
+      // Altas y bajas que hacen crecer la tabla y compactar los segmentos
+      for (int round = 0; round < 5; round++) {
+        final List<String> churn = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+          final String uuid = UUID.randomUUID().toString();
+          churn.add(uuid);
+          index.putIfAbsent(uuid, bytes(content(i) + " ".repeat(100)));
+        }
+        churn.forEach(index::remove);
+      }
+      writing.set(false);
+
+      for (Future<?> reader : readers) {
+        reader.get();
+      }
+      assertThat(index.size(), is(1000));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testOffHeapPagesAreServedWithoutCopies() {
+    final UuidPageIndex index = new UuidPageIndex(true);
+    final String uuid = UUID.randomUUID().toString();
+    index.putIfAbsent(uuid, bytes("<html>Olá</html>"));
+
+    final ByteBuffer page = index.getBuffer(uuid);
+    assertThat(index.isOffHeap(), is(true));
+    assertThat(page.isDirect(), is(true));
+    assertThat(page.isReadOnly(), is(true));
+    assertThat(text(index.get(uuid)), is(equalTo("<html>Olá</html>")));
+    assertThat(index.getBuffer(UUID.randomUUID().toString()), is(nullValue()));
+  }
+
+  @Test
+  public void testOffHeapCompactionKeepsSlicesInUse() {
+    final UuidPageIndex index = new UuidPageIndex(true);
+    final String kept = UUID.randomUUID().toString();
+    final String sent = UUID.randomUUID().toString();
+    index.putIfAbsent(kept, bytes("kept"));
+    index.putIfAbsent(sent, bytes("sent"));
+    // Respuesta en curso con la página que se va a borrar
+    final ByteBuffer inFlight = index.getBuffer(sent);
+
+    final List<String> uuids = new ArrayList<>();
+    for (int i = 0; i < 30_000; i++) {
+      final String uuid = UUID.randomUUID().toString();
+      uuids.add(uuid);
+      index.putIfAbsent(uuid, bytes(content(i) + " ".repeat(100)));
+    }
+    final long allocated = index.getAllocatedBytes();
+    index.remove(sent);
+    uuids.forEach(index::remove);
+
+    // Lo borrado se ha devuelto al compactar
+    assertThat(index.getAllocatedBytes() < allocated, is(true));
+    assertThat(text(index.get(kept)), is(equalTo("kept")));
+    assertThat(index.get(sent), is(nullValue()));
+
+    final byte[] content = new byte[inFlight.remaining()];
+    inFlight.get(content);
+    assertThat(text(content), is(equalTo("sent")));
+  }
+
+  private static String content(int i) {
+    return "<html><body>Page " + i + "</body></html>";
+  }
+
+  private static Set<String> keys(UuidPageIndex index) {
+    final Set<String> keys = new HashSet<>();
+    for (Iterator<String> uuids = index.uuids(); uuids.hasNext();) {
+      keys.add(uuids.next());
+    }
+    return keys;
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String text(byte[] bytes) {
+    return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+  }
+}
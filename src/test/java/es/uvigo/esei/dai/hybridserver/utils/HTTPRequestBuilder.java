@@ -0,0 +1,76 @@
+package es.uvigo.esei.dai.hybridserver.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import es.uvigo.esei.dai.hybridserver.http.HTTPParseException;
+import es.uvigo.esei.dai.hybridserver.http.HTTPRequest;
+
+/**
+ * Construye peticiones para los tests que llaman directamente a un repositorio, sin pasar
+ * por un socket. Por defecto son HTTP/1.1 y sin cabeceras ni cuerpo.
+ */
+public final class HTTPRequestBuilder {
+  private final String method;
+  private final String path;
+  private String version = "HTTP/1.1";
+  private final StringBuilder headers = new StringBuilder();
+  private final StringBuilder form = new StringBuilder();
+
+  private HTTPRequestBuilder(String method, String path) {
+    this.method = method;
+    this.path = path;
+  }
+
+  public static HTTPRequestBuilder request(String method, String path) {
+    return new HTTPRequestBuilder(method, path);
+  }
+
+  public static HTTPRequestBuilder get(String path) {
+    return request("GET", path);
+  }
+
+  /** Petición sobre una página: {@code /html?uuid=<uuid>}. */
+  public static HTTPRequestBuilder page(String method, String uuid) {
+    return request(method, "/html?uuid=" + uuid);
+  }
+
+  public HTTPRequestBuilder version(String version) {
+    this.version = version;
+    return this;
+  }
+
+  /** Añade una cabecera; con {@code value} null no se añade, para los tests que la prueban con y sin ella. */
+  public HTTPRequestBuilder header(String name, String value) {
+    if (value != null) {
+      headers.append(name).append(": ").append(value).append("\r\n");
+    }
+    return this;
+  }
+
+  /** Añade un parámetro al cuerpo, que se envía como formulario (application/x-www-form-urlencoded). */
+  public HTTPRequestBuilder form(String name, String value) {
+    if (form.length() > 0) {
+      form.append('&');
+    }
+    form.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+    return this;
+  }
+
+  public HTTPRequest build() throws IOException, HTTPParseException {
+    return new HTTPRequest(new StringReader(toString()));
+  }
+
+  @Override
+  public String toString() {
+    if (form.length() == 0) {
+      return method + " " + path + " " + version + "\r\n" + headers + "\r\n";
+    }
+    // Codificado con URLEncoder solo tiene caracteres ASCII: tantos bytes como caracteres
+    return method + " " + path + " " + version + "\r\n" + headers
+      + "Content-Type: application/x-www-form-urlencoded\r\n"
+      + "Content-Length: " + form.length() + "\r\n\r\n" + form;
+  }
+}